@@ -0,0 +1,278 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the reword phases on an on-disk repository made by {@link SyntheticRepositoryGenerator}: linear
+ * history or mainline with short side branches merged back periodically, commits to reword are random commits given
+ * by full ids. Each measured invocation runs one phase, the phases before it are run by the iteration setup and the
+ * instance is reset after it.
+ * {@link #doReword(RewriteState)} is run in dry-run mode, so history is searched and new commits are hashed, but not
+ * written; {@link #doRewordAndWrite(WriteState)} writes them into a pack too, by the number of threads given by
+ * the 'parallelism' parameter (see {@link GitFastReword#setParallelism(int)});
+ * {@link #linkBranchesToNewCommits(LinkState)} publishes commits written into a pack by the setup.
+ * <p>
+ * Run with 'gradle jmh', allocation rates are reported by the GC profiler. JMH args are passed by -PjmhArgs, ex.
+ * -PjmhArgs='RewordPhasesBenchmark.findCommitRebaseOnto -p historyDepth=1000000 -p mergeInterval=10 -prof gc'
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class RewordPhasesBenchmark {
+    private static final String BRANCH = SyntheticRepositoryGenerator.MAIN_BRANCH;
+    private static final PrintStream NULL_PRINT_STREAM = new PrintStream(OutputStream.nullOutputStream());
+
+    @Benchmark
+    public void loadCommitsToReword(LoadState state) throws IOException, GitOperationFailureException {
+        state.gitFastReword.loadCommitsToReword(state.repositoryState.newRewordEntrySource());
+    }
+
+    @Benchmark
+    public void findCommitRebaseOnto(RebaseOntoState state) throws IOException {
+        state.gitFastReword.findCommitRebaseOnto();
+    }
+
+    @Benchmark
+    public void doReword(RewriteState state) throws IOException {
+        state.gitFastReword.doReword();
+    }
+
+    @Benchmark
+    public void doRewordAndWrite(WriteState state) throws IOException {
+        state.gitFastReword.doReword();
+    }
+
+    @Benchmark
+    public void linkBranchesToNewCommits(LinkState state) throws IOException {
+        state.gitFastReword.linkBranchesToNewCommits();
+    }
+
+    /**
+     * Generated repository shared by all benchmark threads, removed after the trial
+     */
+    @State(Scope.Benchmark)
+    public static class RepositoryState {
+        // Count of all commits, including side branches
+        @Param({"10000", "100000"})
+        public int historyDepth;
+
+        // Side branch is merged every N mainline commits, 0 for linear history
+        @Param({"0", "10"})
+        public int mergeInterval;
+
+        @Param({"10", "1000"})
+        public int targetCount;
+
+        private Path repoDir;
+        private ObjectId headId;
+        private List<String> targets;
+
+        @Setup(Level.Trial)
+        public void generateRepository() throws IOException {
+            repoDir = Files.createTempDirectory("reword-phases-benchmark");
+            SyntheticRepositoryGenerator generator = mergeInterval > 0
+                    ? new SyntheticRepositoryGenerator(SyntheticRepositoryGenerator.Shape.MERGES, historyDepth)
+                    .setMergeInterval(mergeInterval)
+                    : new SyntheticRepositoryGenerator(SyntheticRepositoryGenerator.Shape.LINEAR, historyDepth);
+            SyntheticRepositoryGenerator.Result result = generator.generate(repoDir);
+            headId = result.getHeadId();
+
+            List<ObjectId> shuffled = new ArrayList<>(result.getCommits());
+            Collections.shuffle(shuffled, new Random(targetCount));
+            targets = new ArrayList<>();
+            for (var commitId : shuffled.subList(0, Math.min(targetCount, shuffled.size()))) {
+                targets.add(commitId.getName());
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void removeRepository() {
+            deleteRecursively(repoDir.toFile());
+        }
+
+        RewordEntrySource newRewordEntrySource() {
+            Iterator<String> iterator = targets.iterator();
+            return () -> iterator.hasNext() ? new RewordEntry(iterator.next(), "Benchmark reword") : null;
+        }
+    }
+
+    /**
+     * Instance opened on the generated repository, prepared for a reword and run through the phases before the
+     * measured one before each iteration, reset after it
+     */
+    @State(Scope.Thread)
+    public abstract static class PhaseState {
+        RepositoryState repositoryState;
+        GitFastReword gitFastReword;
+
+        @Setup(Level.Trial)
+        public void openRepository(RepositoryState repositoryState) throws IOException, RepositoryNotFoundException {
+            this.repositoryState = repositoryState;
+            gitFastReword = new GitFastReword();
+            gitFastReword.openRepository(repositoryState.repoDir);
+            gitFastReword.setInfoPrintStream(NULL_PRINT_STREAM);
+            gitFastReword.setErrPrintStream(NULL_PRINT_STREAM);
+        }
+
+        @Setup(Level.Iteration)
+        public void setUpIteration() throws IOException, RepositoryNotOpenedException, GitOperationFailureException {
+            configure();
+            gitFastReword.prepareReword();
+            runPhasesBefore();
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDownIteration() throws IOException {
+            restore();
+            gitFastReword.reset();
+        }
+
+        @TearDown(Level.Trial)
+        public void closeRepository() {
+            gitFastReword.close();
+        }
+
+        /**
+         * Set options read when the reword is prepared
+         */
+        void configure() {
+        }
+
+        /**
+         * Run the phases before the measured one
+         */
+        void runPhasesBefore() throws IOException, GitOperationFailureException {
+        }
+
+        /**
+         * Undo repository changes of the measured phase
+         */
+        void restore() throws IOException {
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class LoadState extends PhaseState {
+    }
+
+    @State(Scope.Thread)
+    public static class RebaseOntoState extends PhaseState {
+        @Override
+        void runPhasesBefore() throws IOException, GitOperationFailureException {
+            gitFastReword.loadCommitsToReword(repositoryState.newRewordEntrySource());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class RewriteState extends PhaseState {
+        @Param({"1", "4"})
+        public int parallelism;
+
+        @Override
+        void runPhasesBefore() throws IOException, GitOperationFailureException {
+            gitFastReword.setDryRun(true);
+            gitFastReword.setParallelism(parallelism);
+            gitFastReword.loadCommitsToReword(repositoryState.newRewordEntrySource());
+            gitFastReword.findCommitRebaseOnto();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class WriteState extends PhaseState {
+        private static final OffsetDateTime BASE_COMMITTER_TIME = OffsetDateTime.of(2020, 1, 1, 0, 0, 0, 0,
+                ZoneOffset.UTC);
+
+        @Param({"1", "4", "32"})
+        public int parallelism;
+
+        private int iteration;
+        private Set<String> packFileNames;
+
+        @Override
+        void configure() {
+            // Commits of every iteration get new ids, so none of them is skipped as existing
+            gitFastReword.setCommitterTime(BASE_COMMITTER_TIME.plusSeconds(++iteration));
+        }
+
+        @Override
+        void runPhasesBefore() throws IOException, GitOperationFailureException {
+            gitFastReword.setSinglePackWrite(true);
+            gitFastReword.setParallelism(parallelism);
+            gitFastReword.loadCommitsToReword(repositoryState.newRewordEntrySource());
+            gitFastReword.findCommitRebaseOnto();
+            packFileNames = listPackFileNames();
+        }
+
+        @Override
+        void restore() throws IOException {
+            // Packs written by the iteration are not referenced, they are removed to keep the repository size
+            for (String packFileName : listPackFileNames()) {
+                if (!packFileNames.contains(packFileName)) {
+                    Files.delete(getPackDir().resolve(packFileName));
+                }
+            }
+        }
+
+        private Path getPackDir() {
+            return repositoryState.repoDir.resolve(Constants.DOT_GIT).resolve("objects").resolve("pack");
+        }
+
+        private Set<String> listPackFileNames() {
+            Set<String> names = new HashSet<>();
+            String[] fileNames = getPackDir().toFile().list();
+            if (fileNames != null) {
+                Collections.addAll(names, fileNames);
+            }
+            return names;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class LinkState extends PhaseState {
+        @Override
+        void runPhasesBefore() throws IOException, GitOperationFailureException {
+            gitFastReword.setSinglePackWrite(true);
+            gitFastReword.loadCommitsToReword(repositoryState.newRewordEntrySource());
+            gitFastReword.findCommitRebaseOnto();
+            gitFastReword.doReword();
+        }
+
+        @Override
+        void restore() throws IOException {
+            gitFastReword.updateRef(BRANCH, repositoryState.headId, false, "benchmark: reset");
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,127 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Evaluator of relative ancestry expressions: a base revision followed by a chain of '~N' and '^N' steps
+ * (ex. HEAD~3, HEAD^2~10, b1~2^). First-parent chains walked are memoized, so expressions sharing a base
+ * (HEAD~1, HEAD~2, ..., HEAD~N) are evaluated by a single walk
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+class AncestryResolver {
+    // Base can't contain steps or a path
+    private static final Pattern EXPRESSION_PATTERN = Pattern.compile("([^~^:]+)((?:[~^][0-9]*)+)");
+
+    private final CommitLookup commitLookup;
+
+    // <commit id, the commit and its first-parent ancestors in order>
+    private final Map<ObjectId, List<ObjectId>> firstParentChains = new HashMap<>();
+
+    /**
+     * Create resolver
+     *
+     * @param commitLookup Commits lookup to read parents with
+     */
+    AncestryResolver(CommitLookup commitLookup) {
+        this.commitLookup = commitLookup;
+    }
+
+    /**
+     * Get base of a relative ancestry expression
+     *
+     * @param revision Revision string
+     * @return Base revision string or null if the revision is not an ancestry expression
+     */
+    static String getBase(String revision) {
+        Matcher matcher = EXPRESSION_PATTERN.matcher(revision);
+        return matcher.matches() ? matcher.group(1) : null;
+    }
+
+    /**
+     * Evaluate ancestry expression steps
+     *
+     * @param baseCommitId Base commit id
+     * @param revision     Ancestry expression, the base is ignored
+     * @return Commit id or null if there is no such ancestor
+     * @throws IOException In case of any fatal JGit errors (ex. commit not exists)
+     */
+    ObjectId resolve(ObjectId baseCommitId, String revision) throws IOException {
+        Matcher matcher = EXPRESSION_PATTERN.matcher(revision);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not an ancestry expression: " + revision);
+        }
+        String steps = matcher.group(2);
+
+        // First-parent steps are accumulated and taken at once from the memoized chain
+        ObjectId commitId = baseCommitId;
+        int firstParentSteps = 0;
+        int position = 0;
+        while (position < steps.length()) {
+            char operator = steps.charAt(position++);
+            int numberStart = position;
+            while (position < steps.length() && Character.isDigit(steps.charAt(position))) {
+                ++position;
+            }
+            int number = numberStart == position ? 1 : parseStepNumber(steps, numberStart, position);
+
+            if (operator == '~' || number == 1) {
+                firstParentSteps = (int) Math.min((long) firstParentSteps + number, Integer.MAX_VALUE);
+            } else if (number > 1) {
+                commitId = getFirstParentAncestor(commitId, firstParentSteps);
+                firstParentSteps = 0;
+                if (commitId == null) {
+                    return null;
+                }
+
+                ObjectId[] parentsIds = commitLookup.getParents(commitId);
+                if (parentsIds.length < number) {
+                    return null;
+                }
+                commitId = parentsIds[number - 1];
+            }
+            // '^0' is the commit itself
+        }
+        return getFirstParentAncestor(commitId, firstParentSteps);
+    }
+
+    /**
+     * Parse decimal number of a step. Numbers not fitting int are saturated, no commit has so many ancestors or
+     * parents, so such steps lead to no commit
+     */
+    private static int parseStepNumber(String steps, int start, int end) {
+        long number = 0;
+        for (int i = start; i < end; ++i) {
+            number = Math.min(number * 10 + (steps.charAt(i) - '0'), Integer.MAX_VALUE);
+        }
+        return (int) number;
+    }
+
+    /**
+     * Get N-th first-parent ancestor, the chain is extended only as far as needed
+     */
+    private ObjectId getFirstParentAncestor(ObjectId commitId, int generation) throws IOException {
+        List<ObjectId> chain = firstParentChains.computeIfAbsent(commitId, id -> {
+            List<ObjectId> newChain = new ArrayList<>();
+            newChain.add(id);
+            return newChain;
+        });
+
+        while (chain.size() <= generation) {
+            ObjectId[] parentsIds = commitLookup.getParents(chain.get(chain.size() - 1));
+            if (parentsIds.length == 0) {
+                return null;
+            }
+            chain.add(parentsIds[0]);
+        }
+        return chain.get(generation);
+    }
+}
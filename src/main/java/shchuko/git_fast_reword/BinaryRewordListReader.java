@@ -0,0 +1,176 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Reader of binary reword lists, for machine-generated jobs. The file is memory-mapped, commit ids are taken as raw
+ * bytes and messages are kept as slices of the mapped file until they are needed.
+ * <p>
+ * Format (integers are big-endian):
+ * <pre>
+ * 'G' 'F' 'R' 'W'  magic
+ * uint32           format version, 1
+ * records till the end of the file:
+ *   byte[20]       raw commit id
+ *   uint32         message length
+ *   byte[length]   UTF-8 message
+ * </pre>
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public class BinaryRewordListReader implements RewordListReader {
+    private static final byte[] MAGIC = {'G', 'F', 'R', 'W'};
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = MAGIC.length + Integer.BYTES;
+    private static final int RECORD_HEADER_LENGTH = Constants.OBJECT_ID_LENGTH + Integer.BYTES;
+
+    private final MappedInput input;
+    private long position;
+
+    /**
+     * Open binary reword list file
+     *
+     * @param path Path to the file
+     * @throws IOException If the file can't be opened or has no valid header
+     */
+    public BinaryRewordListReader(Path path) throws IOException {
+        this(path, MappedInput.DEFAULT_WINDOW_SIZE);
+    }
+
+    BinaryRewordListReader(Path path, int windowSize) throws IOException {
+        input = new MappedInput(path, windowSize);
+        try {
+            readHeader();
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Check does data start with binary reword list magic
+     *
+     * @param head First bytes of a file
+     * @return True if magic found
+     */
+    static boolean hasMagic(byte[] head) {
+        if (head.length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; ++i) {
+            if (head[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write binary reword list header
+     *
+     * @param outputStream Stream to write to
+     * @throws IOException In case of writing errors
+     */
+    public static void writeHeader(OutputStream outputStream) throws IOException {
+        outputStream.write(MAGIC);
+        writeInt(outputStream, VERSION);
+    }
+
+    /**
+     * Write binary reword list record
+     *
+     * @param outputStream Stream to write to
+     * @param commitId     Commit id
+     * @param message      New commit message
+     * @throws IOException In case of writing errors
+     */
+    public static void writeRecord(OutputStream outputStream, ObjectId commitId, String message) throws IOException {
+        byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
+        commitId.copyRawTo(outputStream);
+        writeInt(outputStream, messageBytes.length);
+        outputStream.write(messageBytes);
+    }
+
+    /**
+     * Read next record
+     *
+     * @return Next entry or null if there are no more records
+     * @throws IOException In case of reading errors or if the file is truncated
+     */
+    @Override
+    public RewordEntry next() throws IOException {
+        if (position == input.size()) {
+            return null;
+        }
+        if (input.size() - position < RECORD_HEADER_LENGTH) {
+            throw new IOException("Truncated record at offset " + position);
+        }
+
+        ByteBuffer commitIdBytes = input.slice(position, Constants.OBJECT_ID_LENGTH);
+        byte[] rawCommitId = new byte[Constants.OBJECT_ID_LENGTH];
+        commitIdBytes.get(rawCommitId);
+        long messageLength = Integer.toUnsignedLong(input.getInt(position + Constants.OBJECT_ID_LENGTH));
+        if (input.size() - position - RECORD_HEADER_LENGTH < messageLength || messageLength > Integer.MAX_VALUE) {
+            throw new IOException("Truncated record at offset " + position);
+        }
+
+        ByteBuffer message = input.slice(position + RECORD_HEADER_LENGTH, (int) messageLength);
+        position += RECORD_HEADER_LENGTH + messageLength;
+        return new RewordEntry(null, ObjectId.fromRaw(rawCommitId), message, RewordEntry::decodeUtf8);
+    }
+
+    /**
+     * Binary records can't be skipped, a malformed file fails reading
+     *
+     * @return Always 0
+     */
+    @Override
+    public int getMalformedRecordsCount() {
+        return 0;
+    }
+
+    /**
+     * Binary records can't be skipped, a malformed file fails reading
+     *
+     * @return Always 0
+     */
+    @Override
+    public int getFirstMalformedRecordLine() {
+        return 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    private void readHeader() throws IOException {
+        if (input.size() < HEADER_LENGTH) {
+            throw new IOException("Not a binary reword list");
+        }
+        byte[] magic = new byte[MAGIC.length];
+        input.slice(0, MAGIC.length).get(magic);
+        if (!hasMagic(magic)) {
+            throw new IOException("Not a binary reword list");
+        }
+        int version = input.getInt(MAGIC.length);
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary reword list version " + version);
+        }
+        position = HEADER_LENGTH;
+    }
+
+    private static void writeInt(OutputStream outputStream, int value) throws IOException {
+        outputStream.write(value >>> 24);
+        outputStream.write(value >>> 16);
+        outputStream.write(value >>> 8);
+        outputStream.write(value);
+    }
+}
@@ -0,0 +1,501 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Resolver of many (abbreviated) object ids at once. Ids are sorted, so each pack index is searched by a single
+ * merged pass over its fan-out table and each loose objects directory is listed once. Object types are read from
+ * pack entry headers or loose object headers, objects are not inflated.
+ * <p>
+ * Alternate object directories are searched too. Pack index versions 1 and 2 are supported
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+class BulkObjectResolver {
+    private static final int PACK_INDEX_V2_SIGNATURE = 0xff744f63; // "\377tOc"
+    private static final int PACK_INDEX_V2_HEADER_LENGTH = 8;
+    private static final int FANOUT_LENGTH = 256 * 4;
+    private static final int LOOSE_OBJECT_FILE_NAME_LENGTH = Constants.OBJECT_ID_STRING_LENGTH - 2;
+
+    // Type and size varint, then delta base offset varint or delta base id
+    private static final int PACK_ENTRY_HEADER_MAX_LENGTH = 32;
+    // The longest type name and object size
+    private static final int LOOSE_OBJECT_HEADER_MAX_LENGTH = 32;
+
+    private final File objectsDirectory;
+
+    /**
+     * Create resolver
+     *
+     * @param objectsDirectory Repository objects directory
+     */
+    BulkObjectResolver(File objectsDirectory) {
+        this.objectsDirectory = objectsDirectory;
+    }
+
+    /**
+     * Resolve object names
+     *
+     * @param objectNames Full or abbreviated hexadecimal object ids, each one should satisfy
+     *                    {@link AbbreviatedObjectId#isId(String)}
+     * @return Resolutions in the order of the passed names
+     * @throws IOException In case of unreadable pack indexes or objects
+     */
+    Resolution[] resolve(List<String> objectNames) throws IOException {
+        List<Lookup> lookups = new ArrayList<>(objectNames.size());
+        for (String objectName : objectNames) {
+            lookups.add(new Lookup(AbbreviatedObjectId.fromString(objectName)));
+        }
+        List<Lookup> sortedLookups = new ArrayList<>(lookups);
+        sortedLookups.sort(Comparator.comparing(lookup -> lookup.name));
+
+        List<File> directories = listObjectDirectories();
+        List<PackIndexFile> packIndexes = new ArrayList<>();
+        try {
+            for (File directory : directories) {
+                for (File indexFile : listPackIndexes(directory)) {
+                    PackIndexFile packIndex = PackIndexFile.read(indexFile);
+                    packIndexes.add(packIndex);
+                    packIndex.findAll(sortedLookups);
+                }
+                findLooseObjects(directory, sortedLookups);
+            }
+
+            Resolution[] resolutions = new Resolution[lookups.size()];
+            for (int i = 0; i < resolutions.length; ++i) {
+                Lookup lookup = lookups.get(i);
+                if (lookup.objectId == null || lookup.ambiguous) {
+                    resolutions[i] = new Resolution(null, Constants.OBJ_BAD, lookup.ambiguous);
+                } else if (lookup.packIndex != null) {
+                    int type = readPackedType(lookup.packIndex, lookup.packOffset, directories, packIndexes);
+                    resolutions[i] = new Resolution(lookup.objectId, type, false);
+                } else {
+                    resolutions[i] = new Resolution(lookup.objectId, readLooseType(lookup.looseFile), false);
+                }
+            }
+            return resolutions;
+        } finally {
+            for (var packIndex : packIndexes) {
+                packIndex.closePack();
+            }
+        }
+    }
+
+    /**
+     * Get objects directory and its alternates, recursively
+     */
+    private List<File> listObjectDirectories() throws IOException {
+        List<File> directories = new ArrayList<>();
+        Set<File> seenDirectories = new HashSet<>();
+        Deque<File> directoriesToVisit = new ArrayDeque<>();
+        directoriesToVisit.add(objectsDirectory);
+
+        while (!directoriesToVisit.isEmpty()) {
+            File directory = directoriesToVisit.poll();
+            if (!directory.isDirectory() || !seenDirectories.add(directory.getCanonicalFile())) {
+                continue;
+            }
+            directories.add(directory);
+
+            File alternatesFile = new File(new File(directory, "info"), "alternates");
+            if (alternatesFile.isFile()) {
+                for (String line : Files.readAllLines(alternatesFile.toPath(), StandardCharsets.UTF_8)) {
+                    String alternate = line.strip();
+                    if (!alternate.isEmpty() && !alternate.startsWith("#")) {
+                        File alternateDirectory = new File(alternate);
+                        directoriesToVisit.add(alternateDirectory.isAbsolute()
+                                ? alternateDirectory : new File(directory, alternate));
+                    }
+                }
+            }
+        }
+        return directories;
+    }
+
+    private static List<File> listPackIndexes(File directory) {
+        File[] indexFiles = new File(directory, "pack").listFiles((dir, name) ->
+                name.startsWith("pack-") && name.endsWith(".idx"));
+        if (indexFiles == null) {
+            return Collections.emptyList();
+        }
+
+        List<File> packIndexes = new ArrayList<>();
+        for (File indexFile : indexFiles) {
+            if (PackIndexFile.getPackFile(indexFile).isFile()) {
+                packIndexes.add(indexFile);
+            }
+        }
+        return packIndexes;
+    }
+
+    private static void findLooseObjects(File directory, List<Lookup> sortedLookups) {
+        // Lookups are sorted, so each fan-out directory is listed once
+        String listedPrefix = null;
+        String[] fileNames = new String[0];
+        for (Lookup lookup : sortedLookups) {
+            if (lookup.ambiguous) {
+                continue;
+            }
+
+            String prefix = lookup.name.substring(0, 2);
+            if (!prefix.equals(listedPrefix)) {
+                listedPrefix = prefix;
+                String[] listedNames = new File(directory, prefix).list();
+                fileNames = listedNames != null ? listedNames : new String[0];
+                Arrays.sort(fileNames);
+            }
+
+            String suffix = lookup.name.substring(2);
+            int position = Arrays.binarySearch(fileNames, suffix);
+            if (position < 0) {
+                position = -position - 1;
+            }
+            for (; position < fileNames.length && !lookup.ambiguous; ++position) {
+                String fileName = fileNames[position];
+                if (!fileName.startsWith(suffix)) {
+                    break;
+                }
+                if (fileName.length() == LOOSE_OBJECT_FILE_NAME_LENGTH && ObjectId.isId(prefix + fileName)) {
+                    File looseFile = new File(new File(directory, prefix), fileName);
+                    lookup.addMatch(ObjectId.fromString(prefix + fileName), null, 0, looseFile);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read type of a packed object, deltas are followed to their bases
+     */
+    private static int readPackedType(PackIndexFile packIndex, long offset, List<File> directories,
+                                      List<PackIndexFile> packIndexes) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(PACK_ENTRY_HEADER_MAX_LENGTH);
+        while (true) {
+            packIndex.readPack(header, offset);
+
+            int position = 0;
+            int c = header.get(position++) & 0xff;
+            int type = (c >> 4) & 0x07;
+            while ((c & 0x80) != 0) {
+                c = header.get(position++) & 0xff;
+            }
+
+            switch (type) {
+                case Constants.OBJ_OFS_DELTA: {
+                    c = header.get(position++) & 0xff;
+                    long baseDistance = c & 0x7f;
+                    while ((c & 0x80) != 0) {
+                        c = header.get(position++) & 0xff;
+                        baseDistance = ((baseDistance + 1) << 7) + (c & 0x7f);
+                    }
+                    if (baseDistance <= 0 || baseDistance >= offset) {
+                        throw new IOException("Corrupted delta base offset in " + packIndex.indexFile);
+                    }
+                    offset -= baseDistance;
+                    break;
+                }
+                case Constants.OBJ_REF_DELTA: {
+                    ObjectId baseId = new ObjectId(header.getInt(position), header.getInt(position + 4),
+                            header.getInt(position + 8), header.getInt(position + 12), header.getInt(position + 16));
+                    return readType(baseId, directories, packIndexes);
+                }
+                default:
+                    return type;
+            }
+        }
+    }
+
+    /**
+     * Read type of an object by its full id
+     */
+    private static int readType(ObjectId objectId, List<File> directories, List<PackIndexFile> packIndexes)
+            throws IOException {
+        for (var packIndex : packIndexes) {
+            long offset = packIndex.findOffset(objectId);
+            if (offset >= 0) {
+                return readPackedType(packIndex, offset, directories, packIndexes);
+            }
+        }
+
+        String name = objectId.name();
+        for (File directory : directories) {
+            File looseFile = new File(new File(directory, name.substring(0, 2)), name.substring(2));
+            if (looseFile.isFile()) {
+                return readLooseType(looseFile);
+            }
+        }
+        return Constants.OBJ_BAD;
+    }
+
+    /**
+     * Read type of a loose object, only the object header is inflated
+     */
+    private static int readLooseType(File looseFile) throws IOException {
+        byte[] header = new byte[LOOSE_OBJECT_HEADER_MAX_LENGTH];
+        int length = 0;
+        try (InputStream in = new InflaterInputStream(new FileInputStream(looseFile))) {
+            int readLength;
+            while (length < header.length && (readLength = in.read(header, length, header.length - length)) > 0) {
+                length += readLength;
+            }
+        }
+
+        for (int i = 0; i < length; ++i) {
+            if (header[i] == ' ') {
+                switch (new String(header, 0, i, StandardCharsets.US_ASCII)) {
+                    case Constants.TYPE_COMMIT:
+                        return Constants.OBJ_COMMIT;
+                    case Constants.TYPE_TREE:
+                        return Constants.OBJ_TREE;
+                    case Constants.TYPE_BLOB:
+                        return Constants.OBJ_BLOB;
+                    case Constants.TYPE_TAG:
+                        return Constants.OBJ_TAG;
+                    default:
+                        return Constants.OBJ_BAD;
+                }
+            }
+        }
+        return Constants.OBJ_BAD;
+    }
+
+    /**
+     * Result of an object name resolution
+     */
+    static final class Resolution {
+        private final ObjectId objectId;
+        private final int type;
+        private final boolean ambiguous;
+
+        private Resolution(ObjectId objectId, int type, boolean ambiguous) {
+            this.objectId = objectId;
+            this.type = type;
+            this.ambiguous = ambiguous;
+        }
+
+        /**
+         * @return Object id or null if the object is not found or the name is ambiguous
+         */
+        ObjectId getObjectId() {
+            return objectId;
+        }
+
+        /**
+         * @return Object type, {@link Constants#OBJ_BAD} if the object is not found or the name is ambiguous
+         */
+        int getType() {
+            return type;
+        }
+
+        /**
+         * @return True if more than one object matches the name
+         */
+        boolean isAmbiguous() {
+            return ambiguous;
+        }
+    }
+
+    /**
+     * Search state of a single name
+     */
+    private static final class Lookup {
+        private final AbbreviatedObjectId abbreviation;
+        private final String name;
+
+        private ObjectId objectId;
+        private boolean ambiguous;
+
+        // Where the object is found: pack and offset in it, or loose object file
+        private PackIndexFile packIndex;
+        private long packOffset;
+        private File looseFile;
+
+        private Lookup(AbbreviatedObjectId abbreviation) {
+            this.abbreviation = abbreviation;
+            this.name = abbreviation.name();
+        }
+
+        private void addMatch(ObjectId matchedId, PackIndexFile matchedPackIndex, long matchedPackOffset,
+                              File matchedLooseFile) {
+            if (objectId == null) {
+                objectId = matchedId;
+                packIndex = matchedPackIndex;
+                packOffset = matchedPackOffset;
+                looseFile = matchedLooseFile;
+            } else if (!objectId.equals(matchedId)) {
+                // The same object may be stored in several packs, that is not an ambiguity
+                ambiguous = true;
+            }
+        }
+    }
+
+    /**
+     * Memory-mapped pack index file and lazily opened pack file
+     */
+    private static final class PackIndexFile {
+        private final File indexFile;
+        private final MappedByteBuffer data;
+        private final int objectCount;
+
+        private final int fanoutOffset;
+        private final int namesOffset;
+        private final int nameStride;
+        private final int offsetsOffset;
+        private final int offsetStride;
+        private final int largeOffsetsOffset;
+
+        private FileChannel packChannel;
+
+        private PackIndexFile(File indexFile, MappedByteBuffer data) throws IOException {
+            this.indexFile = indexFile;
+            this.data = data;
+
+            if (data.limit() >= PACK_INDEX_V2_HEADER_LENGTH && data.getInt(0) == PACK_INDEX_V2_SIGNATURE) {
+                int version = data.getInt(4);
+                if (version != 2) {
+                    throw new IOException("Unsupported pack index version " + version + ": " + indexFile);
+                }
+                fanoutOffset = PACK_INDEX_V2_HEADER_LENGTH;
+                objectCount = data.getInt(fanoutOffset + FANOUT_LENGTH - 4);
+                namesOffset = fanoutOffset + FANOUT_LENGTH;
+                nameStride = Constants.OBJECT_ID_LENGTH;
+                // Names table is followed by CRC32 table, then 32-bit offsets and 64-bit offsets tables
+                offsetsOffset = namesOffset + objectCount * (Constants.OBJECT_ID_LENGTH + 4);
+                offsetStride = 4;
+                largeOffsetsOffset = offsetsOffset + objectCount * 4;
+            } else {
+                // Version 1: fan-out table and (offset, name) entries
+                fanoutOffset = 0;
+                objectCount = data.getInt(fanoutOffset + FANOUT_LENGTH - 4);
+                offsetsOffset = FANOUT_LENGTH;
+                offsetStride = 4 + Constants.OBJECT_ID_LENGTH;
+                namesOffset = offsetsOffset + 4;
+                nameStride = offsetStride;
+                largeOffsetsOffset = -1;
+            }
+        }
+
+        static PackIndexFile read(File indexFile) throws IOException {
+            try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+                return new PackIndexFile(indexFile, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+
+        static File getPackFile(File indexFile) {
+            String indexName = indexFile.getName();
+            return new File(indexFile.getParentFile(), indexName.substring(0, indexName.length() - 4) + ".pack");
+        }
+
+        /**
+         * Find objects matching the lookups. Lookups are sorted, so the search for each one starts where
+         * the previous one has finished
+         */
+        void findAll(List<Lookup> sortedLookups) {
+            int[] name = new int[Constants.OBJECT_ID_LENGTH / 4];
+            int cursor = 0;
+            for (Lookup lookup : sortedLookups) {
+                if (lookup.ambiguous) {
+                    continue;
+                }
+
+                AbbreviatedObjectId abbreviation = lookup.abbreviation;
+                int position = findFirst(abbreviation, cursor, name);
+                cursor = position;
+                for (; position < objectCount && !lookup.ambiguous; ++position) {
+                    if (abbreviation.prefixCompare(readName(position, name), 0) != 0) {
+                        break;
+                    }
+                    lookup.addMatch(new ObjectId(name[0], name[1], name[2], name[3], name[4]),
+                            this, getOffset(position), null);
+                }
+            }
+        }
+
+        /**
+         * Find offset of an object in the pack
+         *
+         * @return Offset or -1 if the object is not in the pack
+         */
+        long findOffset(AnyObjectId objectId) {
+            AbbreviatedObjectId abbreviation = AbbreviatedObjectId.fromObjectId(objectId);
+            int[] name = new int[Constants.OBJECT_ID_LENGTH / 4];
+            int position = findFirst(abbreviation, 0, name);
+            if (position < objectCount && abbreviation.prefixCompare(readName(position, name), 0) == 0) {
+                return getOffset(position);
+            }
+            return -1;
+        }
+
+        /**
+         * Read bytes of the pack, fewer bytes are read if the pack ends
+         */
+        void readPack(ByteBuffer buffer, long offset) throws IOException {
+            if (packChannel == null) {
+                packChannel = FileChannel.open(getPackFile(indexFile).toPath(), StandardOpenOption.READ);
+            }
+
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                if (packChannel.read(buffer, offset + buffer.position()) <= 0) {
+                    break;
+                }
+            }
+        }
+
+        void closePack() throws IOException {
+            if (packChannel != null) {
+                packChannel.close();
+                packChannel = null;
+            }
+        }
+
+        /**
+         * Find position of the first name not less than the abbreviation
+         */
+        private int findFirst(AbbreviatedObjectId abbreviation, int fromPosition, int[] name) {
+            int firstByte = abbreviation.getFirstByte();
+            int low = Math.max(fromPosition, firstByte == 0 ? 0 : data.getInt(fanoutOffset + (firstByte - 1) * 4));
+            int high = data.getInt(fanoutOffset + firstByte * 4);
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (abbreviation.prefixCompare(readName(middle, name), 0) > 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private int[] readName(int position, int[] name) {
+            int offset = namesOffset + position * nameStride;
+            for (int i = 0; i < name.length; ++i) {
+                name[i] = data.getInt(offset + i * 4);
+            }
+            return name;
+        }
+
+        private long getOffset(int position) {
+            long offset = data.getInt(offsetsOffset + position * offsetStride) & 0xffffffffL;
+            if (largeOffsetsOffset >= 0 && (offset & 0x80000000L) != 0) {
+                return data.getLong(largeOffsetsOffset + (int) (offset & 0x7fffffffL) * 8);
+            }
+            return offset;
+        }
+    }
+}
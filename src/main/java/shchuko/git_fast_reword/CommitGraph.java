@@ -0,0 +1,368 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A reader of git commit-graph files (objects/info/commit-graph or a split commit-graph chain in
+ * objects/info/commit-graphs). Provides parents, root trees, commit times and generation numbers of the commits
+ * without reading objects themselves. Files are memory-mapped.
+ * <p>
+ * Commits are identified by positions: layers of a chain are numbered continuously, base layer first
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+class CommitGraph {
+    static final int NO_POSITION = -1;
+    static final int GENERATION_NUMBER_ZERO = 0;
+
+    private static final int SIGNATURE = 0x43475048; // "CGPH"
+    private static final int CHUNK_OID_FANOUT = 0x4f494446; // "OIDF"
+    private static final int CHUNK_OID_LOOKUP = 0x4f49444c; // "OIDL"
+    private static final int CHUNK_COMMIT_DATA = 0x43444154; // "CDAT"
+    private static final int CHUNK_EXTRA_EDGES = 0x45444745; // "EDGE"
+    private static final int CHUNK_BASE_GRAPHS = 0x42415345; // "BASE"
+
+    private static final int HEADER_LENGTH = 8;
+    private static final int CHUNK_LOOKUP_ENTRY_LENGTH = 12;
+    private static final int FANOUT_LENGTH = 256 * 4;
+    private static final int COMMIT_DATA_LENGTH = Constants.OBJECT_ID_LENGTH + 16;
+
+    private static final int PARENT_NONE = 0x70000000;
+    private static final int PARENT_EXTRA_EDGES = 0x80000000;
+    private static final int PARENT_LAST_EDGE = 0x80000000;
+
+    private static final int[] NO_PARENTS = new int[0];
+
+    // Base layer first
+    private final Layer[] layers;
+    private final int commitCount;
+
+    // Lazily filled, so the same position is always represented by the same id instance
+    private final CommitId[] commitIds;
+
+    private CommitGraph(Layer[] layers) {
+        this.layers = layers;
+        Layer top = layers[layers.length - 1];
+        this.commitCount = top.basePosition + top.commitCount;
+        this.commitIds = new CommitId[commitCount];
+    }
+
+    /**
+     * Open commit-graph of an object directory. A single commit-graph file is preferred, like git itself does
+     *
+     * @param objectsDirectory Repository objects directory
+     * @return Commit graph or null if there is no commit-graph
+     * @throws IOException If commit-graph exists but can not be read or is corrupted
+     */
+    static CommitGraph open(File objectsDirectory) throws IOException {
+        File infoDirectory = new File(objectsDirectory, "info");
+
+        File graphFile = new File(infoDirectory, "commit-graph");
+        if (graphFile.isFile()) {
+            return new CommitGraph(new Layer[]{Layer.read(graphFile, 0)});
+        }
+
+        File chainDirectory = new File(infoDirectory, "commit-graphs");
+        File chainFile = new File(chainDirectory, "commit-graph-chain");
+        if (!chainFile.isFile()) {
+            return null;
+        }
+
+        List<Layer> layers = new ArrayList<>();
+        int basePosition = 0;
+        for (String line : Files.readAllLines(chainFile.toPath(), StandardCharsets.US_ASCII)) {
+            String graphHash = line.strip();
+            if (graphHash.isEmpty()) {
+                continue;
+            }
+
+            Layer layer = Layer.read(new File(chainDirectory, "graph-" + graphHash + ".graph"), basePosition);
+            if (layer.baseGraphsCount != layers.size()) {
+                throw new IOException("Commit-graph chain is corrupted: " + chainFile.getAbsolutePath());
+            }
+            layers.add(layer);
+            basePosition += layer.commitCount;
+        }
+
+        return layers.isEmpty() ? null : new CommitGraph(layers.toArray(new Layer[0]));
+    }
+
+    /**
+     * Get count of commits in the graph (all layers)
+     *
+     * @return Count of commits
+     */
+    int getCommitCount() {
+        return commitCount;
+    }
+
+    /**
+     * Find a commit position
+     *
+     * @param commitId Commit id
+     * @return Commit position or {@link #NO_POSITION} if the commit is not in the graph
+     */
+    int findCommit(AnyObjectId commitId) {
+        if (commitId instanceof CommitId && ((CommitId) commitId).getGraph() == this) {
+            return ((CommitId) commitId).getPosition();
+        }
+
+        for (int i = layers.length - 1; i >= 0; --i) {
+            int position = layers[i].findCommit(commitId);
+            if (position != NO_POSITION) {
+                return position;
+            }
+        }
+        return NO_POSITION;
+    }
+
+    /**
+     * Get id of a commit. Returned ids know their positions, so looking them up is cheap
+     *
+     * @param position Commit position
+     * @return Commit id
+     */
+    CommitId getCommitId(int position) {
+        CommitId commitId = commitIds[position];
+        if (commitId == null) {
+            Layer layer = getLayer(position);
+            int offset = layer.oidLookupOffset + (position - layer.basePosition) * Constants.OBJECT_ID_LENGTH;
+            commitId = new CommitId(this, position, layer.data, offset);
+            commitIds[position] = commitId;
+        }
+        return commitId;
+    }
+
+    /**
+     * Get commit root tree id
+     *
+     * @param position Commit position
+     * @return Tree id
+     */
+    ObjectId getTreeId(int position) {
+        Layer layer = getLayer(position);
+        ByteBuffer data = layer.data;
+        int offset = layer.getCommitDataOffset(position);
+        return new ObjectId(data.getInt(offset), data.getInt(offset + 4), data.getInt(offset + 8),
+                data.getInt(offset + 12), data.getInt(offset + 16));
+    }
+
+    /**
+     * Get positions of commit parents
+     *
+     * @param position Commit position
+     * @return Parents positions in the commit parents order
+     */
+    int[] getParents(int position) {
+        Layer layer = getLayer(position);
+        int dataOffset = layer.getCommitDataOffset(position) + Constants.OBJECT_ID_LENGTH;
+        int firstParent = layer.data.getInt(dataOffset);
+        int secondParent = layer.data.getInt(dataOffset + 4);
+
+        if (firstParent == PARENT_NONE) {
+            return NO_PARENTS;
+        }
+        if (secondParent == PARENT_NONE) {
+            return new int[]{firstParent};
+        }
+        if ((secondParent & PARENT_EXTRA_EDGES) == 0) {
+            return new int[]{firstParent, secondParent};
+        }
+
+        // Octopus merge: parents starting from the second are in the extra edges list
+        int edgeOffset = layer.extraEdgesOffset + (secondParent & ~PARENT_EXTRA_EDGES) * 4;
+        int parentsCount = 1;
+        while ((layer.data.getInt(edgeOffset + (parentsCount - 1) * 4) & PARENT_LAST_EDGE) == 0) {
+            ++parentsCount;
+        }
+        ++parentsCount;
+
+        int[] parents = new int[parentsCount];
+        parents[0] = firstParent;
+        for (int i = 1; i < parentsCount; ++i) {
+            parents[i] = layer.data.getInt(edgeOffset + (i - 1) * 4) & ~PARENT_LAST_EDGE;
+        }
+        return parents;
+    }
+
+    /**
+     * Get commit time
+     *
+     * @param position Commit position
+     * @return Committer time, seconds since epoch
+     */
+    long getCommitTime(int position) {
+        Layer layer = getLayer(position);
+        int dataOffset = layer.getCommitDataOffset(position) + Constants.OBJECT_ID_LENGTH + 8;
+        long timeHigh = layer.data.getInt(dataOffset) & 0x3L;
+        long timeLow = layer.data.getInt(dataOffset + 4) & 0xffffffffL;
+        return (timeHigh << 32) | timeLow;
+    }
+
+    /**
+     * Get commit topological generation number (1 for root commits, 1 + max of parents generations otherwise)
+     *
+     * @param position Commit position
+     * @return Generation number or {@link #GENERATION_NUMBER_ZERO} if the graph writer did not compute it
+     */
+    int getGeneration(int position) {
+        Layer layer = getLayer(position);
+        int dataOffset = layer.getCommitDataOffset(position) + Constants.OBJECT_ID_LENGTH + 8;
+        return layer.data.getInt(dataOffset) >>> 2;
+    }
+
+    private Layer getLayer(int position) {
+        for (int i = layers.length - 1; i > 0; --i) {
+            if (position >= layers[i].basePosition) {
+                return layers[i];
+            }
+        }
+        return layers[0];
+    }
+
+    /**
+     * Commit id stored in a commit graph, knows its position in the graph
+     */
+    static final class CommitId extends ObjectId {
+        private final CommitGraph graph;
+        private final int position;
+
+        private CommitId(CommitGraph graph, int position, ByteBuffer data, int offset) {
+            super(data.getInt(offset), data.getInt(offset + 4), data.getInt(offset + 8),
+                    data.getInt(offset + 12), data.getInt(offset + 16));
+            this.graph = graph;
+            this.position = position;
+        }
+
+        CommitGraph getGraph() {
+            return graph;
+        }
+
+        int getPosition() {
+            return position;
+        }
+    }
+
+    /**
+     * A single commit-graph file
+     */
+    private static final class Layer {
+        private final MappedByteBuffer data;
+        private final int basePosition;
+        private final int baseGraphsCount;
+        private final int commitCount;
+
+        private final int oidFanoutOffset;
+        private final int oidLookupOffset;
+        private final int commitDataOffset;
+        private final int extraEdgesOffset;
+
+        private Layer(MappedByteBuffer data, int basePosition) throws IOException {
+            this.data = data;
+            this.basePosition = basePosition;
+
+            if (data.limit() < HEADER_LENGTH || data.getInt(0) != SIGNATURE) {
+                throw new IOException("Not a commit-graph file");
+            }
+            int version = data.get(4);
+            int hashVersion = data.get(5);
+            if (version != 1 || hashVersion != 1) {
+                throw new IOException("Unsupported commit-graph version " + version + ", hash version " + hashVersion);
+            }
+            int chunksCount = data.get(6) & 0xff;
+            baseGraphsCount = data.get(7) & 0xff;
+
+            int fanoutOffset = -1;
+            int lookupOffset = -1;
+            int dataOffset = -1;
+            int edgesOffset = -1;
+            for (int i = 0; i < chunksCount; ++i) {
+                int entryOffset = HEADER_LENGTH + i * CHUNK_LOOKUP_ENTRY_LENGTH;
+                int chunkId = data.getInt(entryOffset);
+                int chunkOffset = (int) data.getLong(entryOffset + 4);
+                switch (chunkId) {
+                    case CHUNK_OID_FANOUT:
+                        fanoutOffset = chunkOffset;
+                        break;
+                    case CHUNK_OID_LOOKUP:
+                        lookupOffset = chunkOffset;
+                        break;
+                    case CHUNK_COMMIT_DATA:
+                        dataOffset = chunkOffset;
+                        break;
+                    case CHUNK_EXTRA_EDGES:
+                        edgesOffset = chunkOffset;
+                        break;
+                    case CHUNK_BASE_GRAPHS:
+                    default:
+                        // Base graphs are listed in the chain file, other chunks are not used
+                        break;
+                }
+            }
+            if (fanoutOffset < 0 || lookupOffset < 0 || dataOffset < 0) {
+                throw new IOException("Commit-graph required chunk is missing");
+            }
+
+            oidFanoutOffset = fanoutOffset;
+            oidLookupOffset = lookupOffset;
+            commitDataOffset = dataOffset;
+            extraEdgesOffset = edgesOffset;
+            commitCount = data.getInt(oidFanoutOffset + FANOUT_LENGTH - 4);
+        }
+
+        static Layer read(File graphFile, int basePosition) throws IOException {
+            try (FileChannel channel = FileChannel.open(graphFile.toPath(), StandardOpenOption.READ)) {
+                return new Layer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), basePosition);
+            }
+        }
+
+        int getCommitDataOffset(int position) {
+            return commitDataOffset + (position - basePosition) * COMMIT_DATA_LENGTH;
+        }
+
+        int findCommit(AnyObjectId commitId) {
+            byte[] rawId = new byte[Constants.OBJECT_ID_LENGTH];
+            commitId.copyRawTo(rawId, 0);
+
+            int firstByte = rawId[0] & 0xff;
+            int low = firstByte == 0 ? 0 : data.getInt(oidFanoutOffset + (firstByte - 1) * 4);
+            int high = data.getInt(oidFanoutOffset + firstByte * 4);
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                int compareResult = compareId(rawId, oidLookupOffset + middle * Constants.OBJECT_ID_LENGTH);
+                if (compareResult == 0) {
+                    return basePosition + middle;
+                } else if (compareResult < 0) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            return NO_POSITION;
+        }
+
+        private int compareId(byte[] rawId, int offset) {
+            for (int i = 0; i < Constants.OBJECT_ID_LENGTH; ++i) {
+                int compareResult = Integer.compare(rawId[i] & 0xff, data.get(offset + i) & 0xff);
+                if (compareResult != 0) {
+                    return compareResult;
+                }
+            }
+            return 0;
+        }
+    }
+}
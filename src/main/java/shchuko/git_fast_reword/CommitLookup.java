@@ -0,0 +1,191 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.BitmapIndex;
+import org.eclipse.jgit.lib.ObjectDatabase;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import java.io.IOException;
+
+/**
+ * Access to commits for history walks. Parents, commit times and generation numbers are served by commit-graph if the
+ * repository has one, so commits are not inflated during walks. A commit is inflated by {@link RevWalk} only if it is
+ * not in the commit-graph or if its message or identities are needed ({@link #parseCommit(AnyObjectId)}).
+ * Generation numbers are known only for commits in the commit-graph ({@link #getGraphGeneration(AnyObjectId)}), they
+ * are not computed for other commits: that walks down to the root commits
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+class CommitLookup implements AutoCloseable {
+    static final int GENERATION_UNKNOWN = 0;
+
+    private final RevWalk walk;
+    private final CommitGraph commitGraph;
+
+    private int parsedCommitsCount;
+
+    /**
+     * Create commits lookup, commit-graph is used if it exists and is not disabled by core.commitGraph config
+     *
+     * @param repository Repository to lookup commits in
+     */
+    CommitLookup(Repository repository) {
+        this(repository, openCommitGraph(repository));
+    }
+
+    /**
+     * Create commits lookup
+     *
+     * @param repository  Repository to lookup commits in
+     * @param commitGraph Commit graph of the repository, null to inflate all commits
+     */
+    CommitLookup(Repository repository, CommitGraph commitGraph) {
+        this.walk = new RevWalk(repository);
+        this.commitGraph = commitGraph;
+    }
+
+    /**
+     * Get commit parents
+     *
+     * @param commitId Commit id
+     * @return Ids of the parents in the commit parents order
+     * @throws IOException In case of any fatal JGit errors (ex. commit not exists)
+     */
+    ObjectId[] getParents(AnyObjectId commitId) throws IOException {
+        int position = findInCommitGraph(commitId);
+        if (position == CommitGraph.NO_POSITION) {
+            return parse(commitId).getParents();
+        }
+
+        int[] parentsPositions = commitGraph.getParents(position);
+        ObjectId[] parents = new ObjectId[parentsPositions.length];
+        for (int i = 0; i < parentsPositions.length; ++i) {
+            parents[i] = commitGraph.getCommitId(parentsPositions[i]);
+        }
+        return parents;
+    }
+
+    /**
+     * Get commit time
+     *
+     * @param commitId Commit id
+     * @return Committer time, seconds since epoch
+     * @throws IOException In case of any fatal JGit errors (ex. commit not exists)
+     */
+    long getCommitTime(AnyObjectId commitId) throws IOException {
+        int position = findInCommitGraph(commitId);
+        if (position == CommitGraph.NO_POSITION) {
+            return parse(commitId).getCommitTime();
+        }
+        return commitGraph.getCommitTime(position);
+    }
+
+    /**
+     * Get commit generation number stored in the commit-graph
+     *
+     * @param commitId Commit id
+     * @return Generation number or {@link #GENERATION_UNKNOWN} if the commit is not in the commit-graph or the graph
+     * has no generation number for it
+     */
+    int getGraphGeneration(AnyObjectId commitId) {
+        int position = findInCommitGraph(commitId);
+        if (position == CommitGraph.NO_POSITION) {
+            return GENERATION_UNKNOWN;
+        }
+        // Generation number zero means it was not computed when the graph was written
+        int generation = commitGraph.getGeneration(position);
+        return generation != CommitGraph.GENERATION_NUMBER_ZERO ? generation : GENERATION_UNKNOWN;
+    }
+
+    /**
+     * Parse a commit with its message and identities
+     *
+     * @param commitId Commit id
+     * @return Parsed commit
+     * @throws IOException In case of any fatal JGit errors (ex. commit not exists)
+     */
+    RevCommit parseCommit(AnyObjectId commitId) throws IOException {
+        return parse(commitId);
+    }
+
+    /**
+     * Get count of commits inflated by this lookup, commits served by the commit-graph are not counted
+     *
+     * @return Count of distinct commits read from the object database
+     */
+    int getParsedCommitsCount() {
+        return parsedCommitsCount;
+    }
+
+    /**
+     * Get pack bitmap index of the repository
+     *
+     * @return Bitmap index or null if the repository packs have no bitmaps
+     * @throws IOException In case the bitmap index can't be read
+     */
+    BitmapIndex getBitmapIndex() throws IOException {
+        return walk.getObjectReader().getBitmapIndex();
+    }
+
+    /**
+     * Get object reader of the lookup, it may be shared with other walks
+     *
+     * @return Object reader
+     */
+    ObjectReader getObjectReader() {
+        return walk.getObjectReader();
+    }
+
+    /**
+     * Implementation of AutoClosable interface
+     */
+    @Override
+    public void close() {
+        walk.close();
+    }
+
+    private RevCommit parse(AnyObjectId commitId) throws IOException {
+        // Parsed commits are kept by the walk, they are not read again
+        RevObject parsed = walk.lookupOrNull(commitId);
+        boolean cached = parsed instanceof RevCommit && ((RevCommit) parsed).getRawBuffer() != null;
+        RevCommit commit = walk.parseCommit(commitId);
+        if (!cached) {
+            ++parsedCommitsCount;
+        }
+        return commit;
+    }
+
+    private int findInCommitGraph(AnyObjectId commitId) {
+        return commitGraph != null ? commitGraph.findCommit(commitId) : CommitGraph.NO_POSITION;
+    }
+
+    /**
+     * Open commit-graph of the repository
+     *
+     * @param repository Repository to open commit-graph of
+     * @return Commit graph or null if it does not exist, disabled or can't be read
+     */
+    static CommitGraph openCommitGraph(Repository repository) {
+        if (!repository.getConfig().getBoolean("core", "commitGraph", true)) {
+            return null;
+        }
+
+        ObjectDatabase objectDatabase = repository.getObjectDatabase();
+        if (!(objectDatabase instanceof ObjectDirectory)) {
+            return null;
+        }
+
+        try {
+            return CommitGraph.open(((ObjectDirectory) objectDatabase).getDirectory());
+        } catch (IOException e) {
+            // Like git itself, ignore unusable commit-graph and read the commits
+            return null;
+        }
+    }
+}
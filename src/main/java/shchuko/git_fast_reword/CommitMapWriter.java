@@ -0,0 +1,95 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writer of old to new commit ids mapping in the format of git filter-repo 'commit-map' file: a header line, then
+ * a line per commit with old and new ids separated by a space. Lines are buffered, ids are written without
+ * creating strings. Lines go to a temporary file next to the target one, it is moved to the target path by
+ * {@link #commit()} only, so the file never names objects of a failed reword
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+class CommitMapWriter implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String HEADER = String.format("%-" + Constants.OBJECT_ID_STRING_LENGTH + "s %s\n", "old", "new");
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final Path path;
+    private final Path tmpPath;
+    private final Writer writer;
+    private final char[] idBuffer = new char[Constants.OBJECT_ID_STRING_LENGTH];
+    private boolean committed;
+
+    /**
+     * Create writer, the temporary file is created or truncated and the header is written
+     *
+     * @param path Path to the commit map file
+     * @throws IOException In case of any I/O errors
+     */
+    CommitMapWriter(Path path) throws IOException {
+        this.path = path;
+        tmpPath = path.resolveSibling(path.getFileName() + TMP_SUFFIX);
+        writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(tmpPath), StandardCharsets.US_ASCII),
+                BUFFER_SIZE);
+        writer.write(HEADER);
+    }
+
+    /**
+     * Write a line of a commit
+     *
+     * @param oldCommitId Id of the commit
+     * @param newCommitId Id of its copy or the same id if the commit is not changed
+     * @throws IOException In case of any I/O errors
+     */
+    void write(AnyObjectId oldCommitId, AnyObjectId newCommitId) throws IOException {
+        oldCommitId.copyTo(idBuffer, writer);
+        writer.write(' ');
+        newCommitId.copyTo(idBuffer, writer);
+        writer.write('\n');
+    }
+
+    /**
+     * Finish the file and move it to the target path, an existing file is replaced
+     *
+     * @throws IOException In case of any I/O errors
+     */
+    void commit() throws IOException {
+        writer.close();
+        try {
+            Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        committed = true;
+    }
+
+    /**
+     * Close the writer, the temporary file is deleted if it is not committed
+     *
+     * @throws IOException In case of any I/O errors
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            writer.close();
+        } finally {
+            if (!committed) {
+                Files.deleteIfExists(tmpPath);
+            }
+        }
+    }
+}
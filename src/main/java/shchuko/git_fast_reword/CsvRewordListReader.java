@@ -0,0 +1,210 @@
+package shchuko.git_fast_reword;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Streaming reader of reword lists in CSV format (RFC 4180): 'revision,message' records. Fields may be enclosed in
+ * double quotes, then they may contain commas, line breaks and double quotes escaped by doubling them.
+ * <p>
+ * The input is read by fixed-size chunks and only the current record is kept in memory, so lists of any size can be
+ * read. Unquoted fields are stripped, blank lines are skipped. Records not having exactly two fields are skipped and
+ * counted as malformed
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public class CsvRewordListReader implements RewordListReader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int END_OF_INPUT = -1;
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int bufferPosition;
+    private int bufferLength;
+    private boolean inputStarted;
+    private boolean endOfInput;
+
+    private final StringBuilder field = new StringBuilder();
+    // Character ended the last read field: ',', line break or END_OF_INPUT
+    private int fieldTerminator;
+    private boolean fieldQuoted;
+    private boolean recordMalformed;
+
+    private int lineNumber = 1;
+    private int malformedRecordsCount;
+    private int firstMalformedRecordLine;
+
+    /**
+     * Open reword list file, UTF-8 encoding is expected
+     *
+     * @param path Path to the file
+     * @throws IOException If the file can't be opened
+     */
+    public CsvRewordListReader(Path path) throws IOException {
+        this(new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Create reword list reader
+     *
+     * @param reader Reader to read the list from, closed by {@link #close()}
+     */
+    public CsvRewordListReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Read next record
+     *
+     * @return Next entry or null if there are no more records
+     * @throws IOException In case of reading errors or if a quoted field is not terminated
+     */
+    @Override
+    public RewordEntry next() throws IOException {
+        while (!endOfInput) {
+            int recordLine = lineNumber;
+            recordMalformed = false;
+
+            String revision = readField();
+            boolean revisionQuoted = fieldQuoted;
+            String message = null;
+            int fieldsCount = 1;
+            while (fieldTerminator == ',') {
+                String value = readField();
+                if (fieldsCount == 1) {
+                    message = value;
+                }
+                ++fieldsCount;
+            }
+            finishRecord();
+
+            if (fieldsCount == 1 && revision.isEmpty() && !revisionQuoted) {
+                continue;
+            }
+            if (fieldsCount != 2 || revision.isEmpty() || recordMalformed) {
+                if (malformedRecordsCount++ == 0) {
+                    firstMalformedRecordLine = recordLine;
+                }
+                continue;
+            }
+            return new RewordEntry(revision, message);
+        }
+        return null;
+    }
+
+    @Override
+    public int getMalformedRecordsCount() {
+        return malformedRecordsCount;
+    }
+
+    @Override
+    public int getFirstMalformedRecordLine() {
+        return firstMalformedRecordLine;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private String readField() throws IOException {
+        field.setLength(0);
+        fieldQuoted = false;
+
+        int c = skipWhitespaces(read());
+        if (c != '"') {
+            while (!isFieldEnd(c)) {
+                field.append((char) c);
+                c = read();
+            }
+            fieldTerminator = c;
+            return field.toString().strip();
+        }
+
+        fieldQuoted = true;
+        int quoteLine = lineNumber;
+        while (true) {
+            c = read();
+            if (c == END_OF_INPUT) {
+                throw new IOException("Unterminated quoted field started at line " + quoteLine);
+            }
+            if (c == '"') {
+                c = read();
+                if (c != '"') {
+                    break;
+                }
+            }
+            field.append((char) c);
+        }
+
+        // Only whitespaces are allowed between the closing quote and the field end
+        c = skipWhitespaces(c);
+        if (!isFieldEnd(c)) {
+            recordMalformed = true;
+            while (!isFieldEnd(c)) {
+                c = read();
+            }
+        }
+        fieldTerminator = c;
+        return field.toString();
+    }
+
+    private void finishRecord() throws IOException {
+        if (fieldTerminator == '\r') {
+            int c = read();
+            if (c != '\n') {
+                unread();
+            }
+        }
+        if (fieldTerminator == END_OF_INPUT) {
+            endOfInput = true;
+        }
+    }
+
+    private int skipWhitespaces(int c) throws IOException {
+        while (c == ' ' || c == '\t') {
+            c = read();
+        }
+        return c;
+    }
+
+    private static boolean isFieldEnd(int c) {
+        return c == ',' || c == '\n' || c == '\r' || c == END_OF_INPUT;
+    }
+
+    private int read() throws IOException {
+        if (bufferPosition == bufferLength) {
+            do {
+                bufferLength = reader.read(buffer, 0, buffer.length);
+            } while (bufferLength == 0);
+            if (bufferLength == END_OF_INPUT) {
+                bufferLength = 0;
+                bufferPosition = 0;
+                return END_OF_INPUT;
+            }
+            bufferPosition = !inputStarted && buffer[0] == BYTE_ORDER_MARK ? 1 : 0;
+            inputStarted = true;
+            if (bufferPosition == bufferLength) {
+                return read();
+            }
+        }
+
+        char c = buffer[bufferPosition++];
+        if (c == '\n') {
+            ++lineNumber;
+        }
+        return c;
+    }
+
+    // Only a character read from the current buffer can be returned back
+    private void unread() {
+        if (bufferPosition > 0) {
+            --bufferPosition;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package shchuko.git_fast_reword;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client sending CLI requests to {@link GitFastRewordDaemon}. The daemon is started if it is not running
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+class DaemonClient {
+    private static final long START_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final long START_POLL_MILLIS = 50;
+    private static final int EXIT_CONNECTION_LOST = 1;
+
+    private final Path daemonFile;
+    private final boolean startDaemon;
+
+    /**
+     * Create client of the daemon serving the default daemon file, the daemon is started if it is not running
+     */
+    DaemonClient() {
+        this(GitFastRewordDaemon.getDefaultDaemonFile(), true);
+    }
+
+    /**
+     * Create client
+     *
+     * @param daemonFile  Daemon file the daemon publishes its port and token to
+     * @param startDaemon True to start the daemon if it is not running
+     */
+    DaemonClient(Path daemonFile, boolean startDaemon) {
+        this.daemonFile = daemonFile;
+        this.startDaemon = startDaemon;
+    }
+
+    /**
+     * Run CLI request by the daemon, its output is copied to the passed streams
+     *
+     * @param args    CLI args
+     * @param workDir Working directory of the request
+     * @param out     Output stream
+     * @param err     Error stream
+     * @return Exit status of the request
+     * @throws IOException If the daemon is not available, the request is not sent in this case
+     */
+    int run(String[] args, Path workDir, PrintStream out, PrintStream err) throws IOException {
+        Properties daemonProperties = new Properties();
+        Socket socket = connect(daemonProperties);
+
+        // Request may be already handled, so it must not be repeated from here
+        try (socket;
+             DataOutputStream requestStream = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+             DataInputStream responseStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            requestStream.writeInt(GitFastRewordDaemon.PROTOCOL_VERSION);
+            GitFastRewordDaemon.writeString(requestStream,
+                    daemonProperties.getProperty(GitFastRewordDaemon.TOKEN_PROPERTY, ""));
+            GitFastRewordDaemon.writeString(requestStream, workDir.toAbsolutePath().toString());
+            requestStream.writeInt(args.length);
+            for (String arg : args) {
+                GitFastRewordDaemon.writeString(requestStream, arg);
+            }
+            requestStream.flush();
+
+            byte[] buffer = new byte[0];
+            while (true) {
+                byte type = responseStream.readByte();
+                if (type == GitFastRewordDaemon.FRAME_EXIT) {
+                    int exitStatus = responseStream.readInt();
+                    out.flush();
+                    err.flush();
+                    return exitStatus;
+                }
+
+                int length = responseStream.readInt();
+                if (buffer.length < length) {
+                    buffer = new byte[length];
+                }
+                responseStream.readFully(buffer, 0, length);
+                PrintStream stream = type == GitFastRewordDaemon.FRAME_ERR ? err : out;
+                stream.write(buffer, 0, length);
+                stream.flush();
+            }
+        } catch (IOException e) {
+            err.println("Daemon connection lost: " + e.getMessage());
+            return EXIT_CONNECTION_LOST;
+        }
+    }
+
+    /**
+     * Connect to the daemon, start it if it is not running
+     *
+     * @param daemonProperties Properties to load the daemon file to
+     */
+    private Socket connect(Properties daemonProperties) throws IOException {
+        try {
+            return tryConnect(daemonProperties);
+        } catch (IOException e) {
+            if (!startDaemon) {
+                throw e;
+            }
+        }
+
+        startDaemonProcess();
+        long deadline = System.currentTimeMillis() + START_TIMEOUT_MILLIS;
+        while (true) {
+            try {
+                return tryConnect(daemonProperties);
+            } catch (IOException e) {
+                if (System.currentTimeMillis() >= deadline) {
+                    throw new IOException("daemon has not started in " + START_TIMEOUT_MILLIS + " ms", e);
+                }
+            }
+            try {
+                Thread.sleep(START_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting for daemon start", e);
+            }
+        }
+    }
+
+    private Socket tryConnect(Properties daemonProperties) throws IOException {
+        daemonProperties.clear();
+        try (Reader reader = Files.newBufferedReader(daemonFile, StandardCharsets.ISO_8859_1)) {
+            daemonProperties.load(reader);
+        }
+
+        int port;
+        try {
+            port = Integer.parseInt(daemonProperties.getProperty(GitFastRewordDaemon.PORT_PROPERTY, ""));
+        } catch (NumberFormatException e) {
+            throw new IOException("malformed daemon file " + daemonFile, e);
+        }
+        return new Socket(InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * Start the daemon in a new JVM with the same classpath, it outlives this process
+     */
+    private void startDaemonProcess() throws IOException {
+        String javaHome = System.getProperty("java.home");
+        if (javaHome == null) {
+            // Native executable, the daemon needs a JVM
+            throw new IOException("daemon can't be started from a native executable");
+        }
+
+        Path directory = daemonFile.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path logFile = directory.resolve(daemonFile.getFileName() + ".log");
+
+        String java = Paths.get(javaHome, "bin", "java").toString();
+        ProcessBuilder processBuilder = new ProcessBuilder(java,
+                "-cp", System.getProperty("java.class.path"),
+                GitFastRewordDaemon.class.getName(),
+                daemonFile.toAbsolutePath().toString());
+        processBuilder.redirectErrorStream(true);
+        processBuilder.redirectOutput(ProcessBuilder.Redirect.appendTo(logFile.toFile()));
+        processBuilder.start().getOutputStream().close();
+    }
+}
@@ -2,16 +2,20 @@ package shchuko.git_fast_reword;
 
 import org.eclipse.jgit.errors.AmbiguousObjectException;
 import org.eclipse.jgit.errors.RevisionSyntaxException;
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
 import org.eclipse.jgit.lib.*;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
-import org.eclipse.jgit.revwalk.filter.RevFilter;
 import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.ReceiveCommand;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.file.Path;
+import java.time.OffsetDateTime;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A utility to do fast git commit messages' reword
@@ -19,24 +23,77 @@ import java.util.*;
  * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
  */
 public class GitFastReword implements AutoCloseable {
+    // Ref name prefixes tried by Repository.resolve(), the same as RefDatabase.SEARCH_PATH
+    private static final String[] REF_SEARCH_PATH =
+            {"", Constants.R_REFS, Constants.R_TAGS, Constants.R_HEADS, Constants.R_REMOTES};
+    // Progress monitor tasks: history search (also writes commits with one thread) and commits writing by threads
+    private static final String PROGRESS_SEARCH_TASK = "Walking commits";
+    private static final String PROGRESS_WRITE_TASK = "Writing commits";
+
     private Repository repository;
 
     private boolean allowRewordMergeCommits;
+    private boolean batchRefUpdate;
+    private boolean singlePackWrite;
+    private boolean rewriteAllBranches;
+    private boolean rewriteRemoteTrackingBranches;
+    private boolean rewriteTags;
+    private int parallelism = 1;
+    private boolean dryRun;
+    private Path commitMapPath;
+    private boolean keepCommitCache;
+    private OffsetDateTime committerTime;
     private String userName;
     private String userEmail;
+    // Committer of all the commits created by the current reword
+    private PersonIdent committer;
 
     private String currentBranchFullName;
+    private ObjectId currentBranchOldHeadId;
+    private ObjectId currentBranchNewHeadId;
     private ObjectId commitRebaseOntoId;
-    private int commitRebaseOntoCommitTime;
 
-    // <commit id, new commit message>
-    private final Map<ObjectId, String> commitsToReword = new HashMap<>();
+    // Branches other than the current one to rewrite, updates of branches and tags pointing to rewritten commits
+    private final List<Ref> otherBranchesRefs = new ArrayList<>();
+    private final List<ReceiveCommand> otherRefsUpdates = new ArrayList<>();
+
+    // Commits below it can't be descendants of any commit to reword
+    private HistoryCutoff rewordCutoff;
+
+    // Commits parents and generation numbers access, commit-graph backed if available. Kept between rewords if
+    // commit cache is kept, commits are immutable so parsed ones stay valid
+    private CommitLookup commitLookup;
+
+    // Pack bitmaps based reachability, null if the repository has no bitmaps
+    private ReachabilityBitmaps reachabilityBitmaps;
+    // Objects reachable from the current branch head, then (after 'onto' is found) only commits to be walked
+    // by reword: reachable from the current branch head, but not from 'onto'
+    private BitmapIndex.BitmapBuilder rewordCandidates;
+
+    // <commit id, entry with new commit message>, messages are decoded only when new commits are built
+    private final ObjectIdMap<RewordEntry> commitsToReword = new ObjectIdMap<>();
+
+    // <old commit id, commit id after visit>, handed over to the reword result, so a new one is created for each reword
+    private RewrittenCommitsMap visitedCommits = new RewrittenCommitsMap();
+    private int createdCommitsCount;
+
+    // New commits writer if more than one thread is used, search only plans commits then
+    private ParallelCommitWriter parallelCommitWriter;
+
+    // Commit map file writer, null if the file is not requested
+    private CommitMapWriter commitMapWriter;
 
-    // <old commit id, commit id after visit>
-    private final Map<ObjectId, ObjectId> visitedCommits = new HashMap<>();
+    // Statistics of the current reword, returned by it
+    private RewordStats stats;
+    // Count of commits parsed by the commits lookup before the reword, the lookup may be kept between rewords
+    private int parsedCommitsCountBefore;
 
     private PrintStream infoPrintStream;
     private PrintStream errPrintStream;
+    // Buffered info messages sink of the current reword, flushed before error messages and when the reword ends
+    private PrintStream infoSink;
+    private boolean verbose;
+    private ProgressMonitor progressMonitor = NullProgressMonitor.INSTANCE;
 
 
     /**
@@ -98,64 +155,303 @@ public class GitFastReword implements AutoCloseable {
         this.allowRewordMergeCommits = allowRewordMergeCommits;
     }
 
+    /**
+     * Is batch ref update mode enabled
+     *
+     * @return True if refs are updated once after reword, false if HEAD is moved on each commit
+     */
+    public boolean isBatchRefUpdate() {
+        return batchRefUpdate;
+    }
+
+    /**
+     * Set batch ref update mode. In this mode rewritten history is built without moving HEAD, then the current branch
+     * is updated by one batched ref update with a single reflog entry instead of a HEAD update per commit
+     *
+     * @param batchRefUpdate Pass true to update refs once after reword, false to move HEAD on each commit
+     */
+    public void setBatchRefUpdate(boolean batchRefUpdate) {
+        this.batchRefUpdate = batchRefUpdate;
+    }
+
+    /**
+     * Is single pack write mode enabled
+     *
+     * @return True if new commits are written into a single pack file, false if they are written as loose objects
+     */
+    public boolean isSinglePackWrite() {
+        return singlePackWrite;
+    }
+
+    /**
+     * Set single pack write mode. In this mode all new commits are written into one new pack file instead of a loose
+     * object file per commit. New commits are readable only after the pack is written, so this mode implies batch ref
+     * update (see {@link #setBatchRefUpdate(boolean)}). Pack is not written if the repository is not stored on a local
+     * filesystem
+     *
+     * @param singlePackWrite Pass true to write new commits into a single pack file, false to write loose objects
+     */
+    public void setSinglePackWrite(boolean singlePackWrite) {
+        this.singlePackWrite = singlePackWrite;
+    }
+
+    /**
+     * Is all branches rewrite mode enabled
+     *
+     * @return True if all local branches containing reworded commits are rewritten, false if only the current one
+     */
+    public boolean isRewriteAllBranches() {
+        return rewriteAllBranches;
+    }
+
+    /**
+     * Set all branches rewrite mode. In this mode every local branch containing reworded commits (or their
+     * descendants) is moved onto the rewritten history, not only the current one. All the branches are rewritten by
+     * one traversal, commits shared by the branches are created once. Refs are published together, so this mode
+     * implies batch ref update (see {@link #setBatchRefUpdate(boolean)})
+     *
+     * @param rewriteAllBranches Pass true to rewrite all local branches, false to rewrite only the current one
+     */
+    public void setRewriteAllBranches(boolean rewriteAllBranches) {
+        this.rewriteAllBranches = rewriteAllBranches;
+    }
+
+    /**
+     * Are remote-tracking branches rewritten in all branches rewrite mode
+     *
+     * @return True if remote-tracking branches are rewritten too
+     */
+    public boolean isRewriteRemoteTrackingBranches() {
+        return rewriteRemoteTrackingBranches;
+    }
+
+    /**
+     * Set rewrite of remote-tracking branches (refs/remotes/...) in all branches rewrite mode
+     * (see {@link #setRewriteAllBranches(boolean)}), has no effect if the mode is disabled
+     *
+     * @param rewriteRemoteTrackingBranches Pass true to rewrite remote-tracking branches too
+     */
+    public void setRewriteRemoteTrackingBranches(boolean rewriteRemoteTrackingBranches) {
+        this.rewriteRemoteTrackingBranches = rewriteRemoteTrackingBranches;
+    }
+
+    /**
+     * Is tags rewrite mode enabled
+     *
+     * @return True if tags pointing to rewritten commits are rewritten too
+     */
+    public boolean isRewriteTags() {
+        return rewriteTags;
+    }
+
+    /**
+     * Set tags rewrite mode. In this mode tags pointing to rewritten commits are moved onto their copies: annotated
+     * tags are recreated with the same tagger, message and headers (signatures are dropped, they become invalid),
+     * lightweight tags are just moved. Tags are published together with the branches, so this mode implies batch ref
+     * update (see {@link #setBatchRefUpdate(boolean)})
+     *
+     * @param rewriteTags Pass true to rewrite tags
+     */
+    public void setRewriteTags(boolean rewriteTags) {
+        this.rewriteTags = rewriteTags;
+    }
+
+    /**
+     * Get count of threads new commits are written with
+     *
+     * @return Threads count
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set count of threads new commits are written with. With more than one thread history is searched first, then
+     * commits are formatted, hashed (by topological levels) and deflated by the threads, and inserted by the calling
+     * thread. New commits are written into a single pack (see {@link #setSinglePackWrite(boolean)}) and refs are
+     * updated once (see {@link #setBatchRefUpdate(boolean)}). Written data does not depend on threads count
+     *
+     * @param parallelism Threads count, 1 to write commits while history is searched
+     * @throws IllegalArgumentException If threads count is less than 1
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Threads count must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Is dry-run mode enabled
+     *
+     * @return True if new commits are only hashed
+     */
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    /**
+     * Set dry-run mode. In this mode reword is done as usual, but new commits (and tags) are only hashed in memory:
+     * no objects, refs or reflogs are written. Predicted ids and refs updates are returned by reword
+     * (see {@link RewordResult})
+     *
+     * @param dryRun Pass true to enable dry-run mode
+     */
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    /**
+     * Get committer time of new commits
+     *
+     * @return Committer time or null if the time of a reword start is used
+     */
+    public OffsetDateTime getCommitterTime() {
+        return committerTime;
+    }
+
+    /**
+     * Set committer time of new commits. Ids of new commits depend on it, so a dry-run and a later real reword with
+     * the same committer time give the same ids. By default the time of a reword start is used for all its commits
+     *
+     * @param committerTime Committer time with its offset, seconds precision. To use a reword start time pass null
+     */
+    public void setCommitterTime(OffsetDateTime committerTime) {
+        this.committerTime = committerTime;
+    }
+
+    /**
+     * Get path of the commit map file
+     *
+     * @return Path to write old to new commit ids mapping to or null if it is not written
+     */
+    public Path getCommitMapPath() {
+        return commitMapPath;
+    }
+
+    /**
+     * Set path of the commit map file. The file gets old to new commit ids mapping in the format of git filter-repo
+     * 'commit-map' file: a line per commit visited by reword, not changed commits are mapped to themselves. Lines are
+     * written to a temporary file while commits are visited, it replaces the file only after new commits and refs are
+     * written, a failed reword leaves the file as it was. In dry-run mode the file gets predicted ids
+     *
+     * @param commitMapPath Path to the file, it is replaced on reword. To disable the file pass null
+     */
+    public void setCommitMapPath(Path commitMapPath) {
+        this.commitMapPath = commitMapPath;
+    }
+
+    /**
+     * Check is a message printed for every commit visited by reword
+     *
+     * @return True if messages of every commit are printed
+     */
+    public boolean isVerbose() {
+        return verbose;
+    }
+
+    /**
+     * Set printing of a message for every commit visited by reword (pick, reword, reset, fast-forward), the same as
+     * its reflog message. Messages are written to the info print stream through a buffer
+     *
+     * @param verbose Pass true to print messages of every commit
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Get progress monitor of history rewriting
+     *
+     * @return Current progress monitor
+     */
+    public ProgressMonitor getProgressMonitor() {
+        return progressMonitor;
+    }
+
+    /**
+     * Set progress monitor of history rewriting. It is updated on every commit visited by history search and every
+     * commit written by threads (see {@link #setParallelism(int)})
+     *
+     * @param progressMonitor Progress monitor. To disable progress reporting pass null
+     */
+    public void setProgressMonitor(ProgressMonitor progressMonitor) {
+        this.progressMonitor = progressMonitor != null ? progressMonitor : NullProgressMonitor.INSTANCE;
+    }
+
+    /**
+     * Set keeping of parsed commits and commit-graph between rewords. Used by a long-lived
+     * process rewording the same repository many times, the cache is dropped when the repository is closed
+     *
+     * @param keepCommitCache Pass true to keep the cache
+     */
+    void setKeepCommitCache(boolean keepCommitCache) {
+        this.keepCommitCache = keepCommitCache;
+        if (!keepCommitCache) {
+            closeCommitLookup();
+        }
+    }
+
     /**
      * Reword a commit message by its revision string. Commit should be reachable from current branch head
      *
      * @param commitRevStr A string to identify the commit (sha-1 hash, HEAD^2, ...)
      * @param newMessage   New commit message
+     * @return Reword result: new commits ids, refs updates and statistics
      * @throws RepositoryNotOpenedException If the repository is not opened (by {@link #openRepository(Path)})
      * @throws GitOperationFailureException In case of any operations errors (ex. commit not exists)
      */
-    public void reword(String commitRevStr, String newMessage) throws RepositoryNotOpenedException, GitOperationFailureException {
+    public RewordResult reword(String commitRevStr, String newMessage) throws RepositoryNotOpenedException, GitOperationFailureException {
         Map<String, String> map = new HashMap<>();
         map.put(commitRevStr, newMessage);
-        reword(map);
+        return reword(map);
     }
 
     /**
      * Reword commits messages by revision strings. Commits should be reachable from current branch head and have common ancestor
      *
      * @param commitsData Key - string to identify the commit (sha-1 hash, HEAD^2, ...), value - new commit message
+     * @return Reword result: new commits ids, refs updates and statistics
      * @throws RepositoryNotOpenedException If the repository is not opened (by {@link #openRepository(Path)})
      * @throws GitOperationFailureException In case of any operations errors (ex. rebase not finished/commit not found)
      */
-    public void reword(Map<String, String> commitsData) throws RepositoryNotOpenedException, GitOperationFailureException {
-        try {
-            if (!isOpen()) {
-                throw new RepositoryNotOpenedException();
-            }
-
-            if (!isRepositoryStateSafe()) {
-                throw new GitOperationFailureException("Repository is in an unsafe state");
-            }
-
-            tryLoadUserConfig();
-            if (userName == null || userEmail == null) {
-                throw new GitOperationFailureException("Missing user.name or user.email");
-            }
-
-            try {
-                saveCurrentBranch();
-            } catch (IOException e) {
-                throw new GitOperationFailureException("Error while determining current branch", e);
-            }
-
-            try {
-                if (!isHeadNormal()) {
-                    throw new GitOperationFailureException("HEAD is detached or not exists");
-                }
-            } catch (IOException e) {
-                throw new GitOperationFailureException("Error while determining current HEAD ref", e);
+    public RewordResult reword(Map<String, String> commitsData) throws RepositoryNotOpenedException, GitOperationFailureException {
+        Iterator<Map.Entry<String, String>> iterator = commitsData.entrySet().iterator();
+        return reword(() -> {
+            if (!iterator.hasNext()) {
+                return null;
             }
+            Map.Entry<String, String> item = iterator.next();
+            return new RewordEntry(item.getKey(), item.getValue());
+        });
+    }
 
+    /**
+     * Reword commits messages by revision strings read from a source. Entries are resolved while they are read, so
+     * the source is not loaded into memory at once. Commits should be reachable from current branch head and have
+     * common ancestor. If some revision string is given more than once, the last message is used
+     *
+     * @param rewordEntrySource Source of revision strings and new commit messages
+     * @return Reword result: new commits ids, refs updates and statistics
+     * @throws RepositoryNotOpenedException If the repository is not opened (by {@link #openRepository(Path)})
+     * @throws GitOperationFailureException In case of any operations errors (ex. rebase not finished/commit not found)
+     */
+    public RewordResult reword(RewordEntrySource rewordEntrySource) throws RepositoryNotOpenedException, GitOperationFailureException {
+        RewordEvents.RewordEnd rewordEndEvent = beginRewordEvents();
+        RewordResult result = null;
+        infoSink = infoPrintStream != null ? new PrintStream(new BufferedOutputStream(infoPrintStream, 1 << 16)) : null;
+        try {
+            prepareReword();
             try {
-                loadCommitsToReword(commitsData);
+                loadCommitsToReword(rewordEntrySource);
             } catch (IOException e) {
                 throw new GitOperationFailureException("Error while loading repository commits", e);
             }
 
             if (commitsToReword.isEmpty()) {
                 printInfoMsg("Nothing to reword", LogConstants.INFO.getVal());
+                result = RewordResult.empty(dryRun, finishStats());
+                return result;
             } else {
                 commitRebaseOntoId = null;
                 try {
@@ -171,26 +467,177 @@ public class GitFastReword implements AutoCloseable {
                 try {
                     doReword();
                 } catch (IOException e) {
+                    if (isRefsUpdatedOnce()) {
+                        throw new GitOperationFailureException("Fatal error, refs were not changed", e);
+                    }
                     String restoreStatus = tryRestoreHeadRef() ? "succeed" : "failed";
                     throw new GitOperationFailureException("Fatal error, restore HEAD " + restoreStatus, e);
                 }
 
-                try {
-                    linkBranchesToNewCommits();
-                } catch (IOException e) {
-                    throw new GitOperationFailureException("Fatal error, please restore git refs manually", e);
+                RewordResult plannedResult = new RewordResult(dryRun, visitedCommits.getRewrittenView(),
+                        getPlannedRefUpdates(), commitsToReword.size(), visitedCommits.size(), stats);
+                if (!dryRun) {
+                    try {
+                        linkBranchesToNewCommits();
+                    } catch (IOException e) {
+                        // Batch update reports refs left updated by itself
+                        if (isRefsUpdatedOnce()) {
+                            throw new GitOperationFailureException("Refs update failed: " + e.getMessage(), e);
+                        }
+                        throw new GitOperationFailureException("Fatal error, please restore git refs manually", e);
+                    }
+                }
+                if (commitMapWriter != null) {
+                    try {
+                        commitMapWriter.commit();
+                    } catch (IOException e) {
+                        throw new GitOperationFailureException("Error while writing commit map file", e);
+                    }
                 }
+                finishStats();
+                result = plannedResult;
+                return result;
             }
         } finally {
+            commitRewordEndEvent(rewordEndEvent, result);
+            closeCommitMapWriter();
+            flushInfoSink();
+            infoSink = null;
             reset();
         }
     }
 
+    /**
+     * Close the commit map writer, the temporary file of a failed reword is deleted
+     */
+    private void closeCommitMapWriter() {
+        if (commitMapWriter == null) {
+            return;
+        }
+        try {
+            commitMapWriter.close();
+        } catch (IOException e) {
+            printErrMsg("Can't remove temporary commit map file: " + e.getMessage(), LogConstants.ERR.getVal());
+        }
+        commitMapWriter = null;
+    }
+
+    /**
+     * Record reword start event and begin reword end event
+     *
+     * @return Reword end event spanning the reword, committed by {@link #commitRewordEndEvent(RewordEvents.RewordEnd,
+     * RewordResult)}
+     */
+    private RewordEvents.RewordEnd beginRewordEvents() {
+        RewordEvents.RewordStart rewordStartEvent = new RewordEvents.RewordStart();
+        if (rewordStartEvent.shouldCommit()) {
+            rewordStartEvent.repository = isOpen() ? repository.getDirectory().getAbsolutePath() : null;
+            rewordStartEvent.dryRun = dryRun;
+            rewordStartEvent.parallelism = parallelism;
+            rewordStartEvent.commit();
+        }
+
+        RewordEvents.RewordEnd rewordEndEvent = new RewordEvents.RewordEnd();
+        rewordEndEvent.begin();
+        return rewordEndEvent;
+    }
+
+    /**
+     * Commit reword end event, must be called before the instance is reset
+     *
+     * @param rewordEndEvent Event begun by {@link #beginRewordEvents()}
+     * @param result         Reword result or null if the reword failed
+     */
+    private void commitRewordEndEvent(RewordEvents.RewordEnd rewordEndEvent, RewordResult result) {
+        rewordEndEvent.end();
+        if (!rewordEndEvent.shouldCommit()) {
+            return;
+        }
+        rewordEndEvent.succeeded = result != null;
+        rewordEndEvent.branch = currentBranchFullName;
+        rewordEndEvent.oldHeadId = currentBranchOldHeadId != null ? currentBranchOldHeadId.getName() : null;
+        rewordEndEvent.newHeadId = currentBranchNewHeadId != null ? currentBranchNewHeadId.getName() : null;
+        if (result != null) {
+            rewordEndEvent.rewordedCommitsCount = result.getRewordedCommitsCount();
+            rewordEndEvent.rewrittenCommitsCount = result.getRewrittenCommits().size();
+            rewordEndEvent.visitedCommitsCount = result.getVisitedCommitsCount();
+            rewordEndEvent.refUpdatesCount = result.getRefUpdates().size();
+        }
+        rewordEndEvent.commit();
+    }
+
+    /**
+     * Check the repository state and load what every reword phase needs: user identity, current and other branches,
+     * commits lookup. Phases ({@link #loadCommitsToReword(RewordEntrySource)}, {@link #findCommitRebaseOnto()},
+     * {@link #doReword()}, {@link #linkBranchesToNewCommits()}) are run after it, then the instance is {@link #reset()}
+     *
+     * @throws RepositoryNotOpenedException If the repository is not opened (by {@link #openRepository(Path)})
+     * @throws GitOperationFailureException If the repository state is not safe or branches can't be read
+     */
+    void prepareReword() throws RepositoryNotOpenedException, GitOperationFailureException {
+        stats.startPhase(RewordStats.Phase.PREPARE);
+        if (!isOpen()) {
+            throw new RepositoryNotOpenedException();
+        }
+
+        if (!isRepositoryStateSafe()) {
+            throw new GitOperationFailureException("Repository is in an unsafe state");
+        }
+
+        tryLoadUserConfig();
+        if (userName == null || userEmail == null) {
+            throw new GitOperationFailureException("Missing user.name or user.email");
+        }
+        committer = committerTime != null
+                ? new PersonIdent(userName, userEmail, committerTime.toInstant().toEpochMilli(),
+                        committerTime.getOffset().getTotalSeconds() / 60)
+                : new PersonIdent(userName, userEmail);
+
+        try {
+            saveCurrentBranch();
+        } catch (IOException e) {
+            throw new GitOperationFailureException("Error while determining current branch", e);
+        }
+
+        try {
+            if (!isHeadNormal()) {
+                throw new GitOperationFailureException("HEAD is detached or not exists");
+            }
+        } catch (IOException e) {
+            throw new GitOperationFailureException("Error while determining current HEAD ref", e);
+        }
+
+        try {
+            loadOtherBranchesRefs();
+        } catch (IOException e) {
+            throw new GitOperationFailureException("Error while reading branches", e);
+        }
+
+        if (commitLookup == null) {
+            commitLookup = new CommitLookup(repository);
+        }
+        parsedCommitsCountBefore = commitLookup.getParsedCommitsCount();
+        reachabilityBitmaps = ReachabilityBitmaps.open(commitLookup);
+    }
+
+    /**
+     * Finish the current phase of the reword statistics and count commits parsed by the reword
+     *
+     * @return Complete statistics of the reword
+     */
+    private RewordStats finishStats() {
+        stats.finishPhase();
+        stats.addParsedCommits(commitLookup.getParsedCommitsCount() - parsedCommitsCountBefore);
+        parsedCommitsCountBefore = commitLookup.getParsedCommitsCount();
+        return stats;
+    }
+
     /**
      * Implementation of AutoClosable interface
      */
     @Override
     public void close() {
+        closeCommitLookup();
         if (repository != null) {
             repository.close();
             repository = null;
@@ -239,13 +686,35 @@ public class GitFastReword implements AutoCloseable {
     /**
      * Reset {@link GitFastReword} instance after a reword, not closes repository
      */
-    private void reset() {
-        visitedCommits.clear();
+    void reset() {
+        visitedCommits = new RewrittenCommitsMap();
         commitsToReword.clear();
+        createdCommitsCount = 0;
+        parallelCommitWriter = null;
+        commitMapWriter = null;
+        committer = null;
 
         currentBranchFullName = null;
+        currentBranchOldHeadId = null;
+        currentBranchNewHeadId = null;
         commitRebaseOntoId = null;
-        commitRebaseOntoCommitTime = Integer.MAX_VALUE;
+        otherBranchesRefs.clear();
+        otherRefsUpdates.clear();
+        rewordCutoff = null;
+        reachabilityBitmaps = null;
+        rewordCandidates = null;
+        stats = new RewordStats();
+
+        if (!keepCommitCache) {
+            closeCommitLookup();
+        }
+    }
+
+    private void closeCommitLookup() {
+        if (commitLookup != null) {
+            commitLookup.close();
+            commitLookup = null;
+        }
     }
 
     /**
@@ -273,6 +742,7 @@ public class GitFastReword implements AutoCloseable {
      */
     private void saveCurrentBranch() throws IOException {
         currentBranchFullName = repository.getFullBranch();
+        currentBranchOldHeadId = currentBranchFullName != null ? repository.resolve(currentBranchFullName) : null;
     }
 
     /**
@@ -286,193 +756,664 @@ public class GitFastReword implements AutoCloseable {
     }
 
     /**
-     * Reword commits messages by revision strings. Commits should be reachable from current branch head and have common ancestor
+     * Load branches to rewrite besides the current one, if all branches rewrite mode is enabled
      *
-     * @param commitsData Key - string to identify the commit (sha-1 hash, HEAD^2, ...), value - new commit message
      * @throws IOException In case of any fatal JGit errors
      */
-    private void loadCommitsToReword(Map<String, String> commitsData) throws IOException {
+    private void loadOtherBranchesRefs() throws IOException {
+        otherBranchesRefs.clear();
+        if (!rewriteAllBranches) {
+            return;
+        }
+
+        List<String> prefixes = new ArrayList<>();
+        prefixes.add(Constants.R_HEADS);
+        if (rewriteRemoteTrackingBranches) {
+            prefixes.add(Constants.R_REMOTES);
+        }
+        RefDatabase refDatabase = repository.getRefDatabase();
+        for (String prefix : prefixes) {
+            for (Ref ref : refDatabase.getRefs(prefix).values()) {
+                // Symbolic refs (ex. refs/remotes/origin/HEAD) follow their targets
+                if (!ref.isSymbolic() && ref.getObjectId() != null && !ref.getName().equals(currentBranchFullName)) {
+                    otherBranchesRefs.add(ref);
+                }
+            }
+        }
+    }
+
+    /**
+     * Load commits to reword. Commits should be reachable from current branch head and have common ancestor
+     *
+     * @param rewordEntrySource Source of revision strings and new commit messages
+     * @throws IOException                  In case of any fatal JGit errors
+     * @throws GitOperationFailureException If the source can't be read
+     */
+    void loadCommitsToReword(RewordEntrySource rewordEntrySource)
+            throws IOException, GitOperationFailureException {
+        stats.startPhase(RewordStats.Phase.RESOLVE);
         commitsToReword.clear();
 
-        // <commit id, new commit message>
-        Map<ObjectId, String> existCommits = new HashMap<>();
+        // <commit id, entry with new commit message>
+        ObjectIdMap<RewordEntry> existCommits = new ObjectIdMap<>();
+
+        // Plain (abbreviated) ids are resolved all at once, ancestry expressions (HEAD~N, ...) sharing a base
+        // by a single walk, other revision strings one by one
+        BulkObjectResolver bulkObjectResolver = newBulkObjectResolver();
+        Map<String, Ref> refs = bulkObjectResolver != null ? repository.getRefDatabase().getRefs(RefDatabase.ALL) : null;
+        List<RewordEntry> objectIdsData = new ArrayList<>();
+        // <base revision string, expressions with the base>
+        Map<String, List<RewordEntry>> ancestryExpressionsData = new LinkedHashMap<>();
 
         // Filtering commits exist in this repository
-        for (var item : commitsData.entrySet()) {
-            if (item.getKey() == null || item.getValue() == null) {
+        RewordEntry item;
+        while ((item = readRewordEntry(rewordEntrySource)) != null) {
+            if (item.getRevision() == null || !item.hasMessage()) {
                 printErrMsg("Commit with null field(s)", LogConstants.SKIP.getVal());
                 continue;
             }
 
-            if (item.getValue().isEmpty()) {
-                printErrMsg(item.getKey() + " has empty message", LogConstants.WARN.getVal());
+            if (item.isMessageEmpty()) {
+                printErrMsg(item.getRevision() + " has empty message", LogConstants.WARN.getVal());
             }
 
-            try {
-                ObjectId objectId = repository.resolve(item.getKey());
+            if (item.getCommitId() != null) {
+                resolveCommitId(item, existCommits);
+                continue;
+            }
 
-                if (objectId == null || repository.open(objectId).getType() != Constants.OBJ_COMMIT) {
-                    printErrMsg(item.getKey() + " not found", LogConstants.SKIP.getVal());
-                } else {
-                    existCommits.put(objectId, item.getValue());
-                }
-            } catch (AmbiguousObjectException e) {
-                printErrMsg(item.getKey() + " more than one object which matches", LogConstants.SKIP.getVal());
-            } catch (IOException | RevisionSyntaxException e) {
-                printErrMsg(item.getKey() + " not found", LogConstants.SKIP.getVal());
+            String ancestryBase = AncestryResolver.getBase(item.getRevision());
+            if (bulkObjectResolver != null && isObjectIdString(item.getRevision(), refs)) {
+                objectIdsData.add(item);
+            } else if (ancestryBase != null) {
+                ancestryExpressionsData.computeIfAbsent(ancestryBase, base -> new ArrayList<>()).add(item);
+            } else {
+                resolveCommit(item, existCommits);
             }
         }
 
+        if (!objectIdsData.isEmpty()) {
+            RewordEvents.ResolveBatch resolveBatchEvent = new RewordEvents.ResolveBatch();
+            resolveBatchEvent.begin();
+            int existCommitsCountBefore = existCommits.size();
+            resolveCommitsInBulk(bulkObjectResolver, objectIdsData, existCommits);
+            commitResolveBatchEvent(resolveBatchEvent, "object ids", null, objectIdsData.size(),
+                    existCommits.size() - existCommitsCountBefore);
+        }
+        if (!ancestryExpressionsData.isEmpty()) {
+            resolveAncestryExpressions(ancestryExpressionsData, existCommits);
+        }
+
         // Filtering commits reachable current branch head
-        RevWalk walk = new RevWalk(repository);
-        walk.markStart(walk.parseCommit(repository.resolve(currentBranchFullName)));
-
-        Iterator<RevCommit> iterator = walk.iterator();
-        while (iterator.hasNext() && !existCommits.isEmpty()) {
-            RevCommit commit = iterator.next();
-            ObjectId commitId = commit.getId();
-
-            if (existCommits.containsKey(commitId)) {
-                String newCommitMsg = existCommits.get(commit.getId());
-                existCommits.remove(commitId);
-
-                if (commit.getParentCount() == 0) {
-                    printErrMsg(commit.getName() + " has no parents, cannot be reworded", LogConstants.SKIP.getVal());
-                } else if (commit.getParentCount() == 1 || allowRewordMergeCommits) {
-                    commitsToReword.put(commit.getId(), newCommitMsg);
-                } else if (commit.getParentCount() >= 2) {
-                    printErrMsg(commit.getName() + " is merge commit", LogConstants.SKIP.getVal());
+        stats.startPhase(RewordStats.Phase.REACHABILITY);
+        Set<ObjectId> reachableCommits;
+        int visitedCommitsCount;
+        if (reachabilityBitmaps != null) {
+            rewordCandidates = reachabilityBitmaps.getReachable(currentBranchOldHeadId);
+            visitedCommitsCount = reachabilityBitmaps.getWalkedCommitsCount();
+            reachableCommits = new HashSet<>();
+            for (var commitId : existCommits.keys()) {
+                if (rewordCandidates.contains(commitId)) {
+                    reachableCommits.add(commitId);
                 }
             }
+        } else {
+            ReachabilityChecker reachabilityChecker = new ReachabilityChecker(commitLookup);
+            reachableCommits = reachabilityChecker.findReachable(currentBranchOldHeadId, existCommits.keys());
+            visitedCommitsCount = reachabilityChecker.getVisitedCommitsCount();
         }
-        walk.dispose();
+        stats.addReachabilityVisitedCommits(visitedCommitsCount);
+
+        for (int i = 0; i < existCommits.size(); ++i) {
+            ObjectId commitId = existCommits.getKey(i);
+            if (!reachableCommits.contains(commitId)) {
+                printErrMsg(commitId.getName() + " exists, but not found on current branch", LogConstants.SKIP.getVal());
+                continue;
+            }
 
-        for (var commit : existCommits.entrySet()) {
-            if (!commitsToReword.containsKey(commit.getKey())) {
-                printErrMsg(commit.getKey().getName() + " exists, but not found on current branch", LogConstants.SKIP.getVal());
+            int parentsCount = commitLookup.getParents(commitId).length;
+            if (parentsCount == 0) {
+                printErrMsg(commitId.getName() + " has no parents, cannot be reworded", LogConstants.SKIP.getVal());
+            } else if (parentsCount == 1 || allowRewordMergeCommits) {
+                commitsToReword.put(commitId, existCommits.getValue(i));
+            } else {
+                printErrMsg(commitId.getName() + " is merge commit", LogConstants.SKIP.getVal());
             }
         }
 
+        if (verbose && reachableCommits.size() < existCommits.size()) {
+            printInfoMsg("Reachability check stopped after " + visitedCommitsCount + " commits visited",
+                    LogConstants.INFO.getVal());
+        }
     }
 
     /**
-     * Find common ancestor fot all passed to reword commits
+     * Read next entry of commits to reword
      *
-     * @throws IOException In case of any fatal JGit errors
+     * @param rewordEntrySource Source to read from
+     * @return Next entry or null if there are no more entries
+     * @throws GitOperationFailureException If the source can't be read
+     */
+    private static RewordEntry readRewordEntry(RewordEntrySource rewordEntrySource)
+            throws GitOperationFailureException {
+        try {
+            return rewordEntrySource.next();
+        } catch (IOException e) {
+            throw new GitOperationFailureException("Error while reading commits to reword: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Create bulk resolver of object ids
+     *
+     * @return Resolver or null if the repository is not stored on a local filesystem
+     */
+    private BulkObjectResolver newBulkObjectResolver() {
+        ObjectDatabase objectDatabase = repository.getObjectDatabase();
+        if (objectDatabase instanceof ObjectDirectory) {
+            return new BulkObjectResolver(((ObjectDirectory) objectDatabase).getDirectory());
+        }
+        return null;
+    }
+
+    /**
+     * Check is revision string a plain (abbreviated) object id. Like {@link Repository#resolve(String)} does,
+     * a ref is preferred over an abbreviated id with the same name
+     *
+     * @param revision Revision string
+     * @param refs     All refs of the repository
+     * @return True if revision string should be resolved as an object id
+     */
+    private static boolean isObjectIdString(String revision, Map<String, Ref> refs) {
+        if (ObjectId.isId(revision)) {
+            return true;
+        }
+        if (!AbbreviatedObjectId.isId(revision)) {
+            return false;
+        }
+        for (String prefix : REF_SEARCH_PATH) {
+            if (refs.containsKey(prefix + revision)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check a commit id given without revision string and put it to exist commits if it is a commit
+     *
+     * @param item         Entry with commit id
+     * @param existCommits Exist commits, key - commit id, value - entry with new commit message
+     */
+    private void resolveCommitId(RewordEntry item, ObjectIdMap<RewordEntry> existCommits) {
+        try {
+            // Commit is parsed anyway to check its parents, not found or not a commit objects fail parsing
+            commitLookup.getParents(item.getCommitId());
+            existCommits.put(item.getCommitId(), item);
+        } catch (IOException e) {
+            printErrMsg(item.getRevision() + " not found", LogConstants.SKIP.getVal());
+        }
+    }
+
+    /**
+     * Resolve a revision string and put it to exist commits if it is a commit
+     *
+     * @param item         Entry with revision string
+     * @param existCommits Exist commits, key - commit id, value - entry with new commit message
+     */
+    private void resolveCommit(RewordEntry item, ObjectIdMap<RewordEntry> existCommits) {
+        String revision = item.getRevision();
+        try {
+            ObjectId objectId = repository.resolve(revision);
+
+            if (objectId == null || repository.open(objectId).getType() != Constants.OBJ_COMMIT) {
+                printErrMsg(revision + " not found", LogConstants.SKIP.getVal());
+            } else {
+                existCommits.put(objectId, item);
+            }
+        } catch (AmbiguousObjectException e) {
+            printErrMsg(revision + " more than one object which matches", LogConstants.SKIP.getVal());
+        } catch (IOException | RevisionSyntaxException e) {
+            printErrMsg(revision + " not found", LogConstants.SKIP.getVal());
+        }
+    }
+
+    /**
+     * Resolve (abbreviated) object ids at once and put commits to exist commits. If the object database can't be
+     * read in bulk, ids are resolved one by one
+     *
+     * @param bulkObjectResolver Bulk resolver to use
+     * @param objectIdsData      Entries with (abbreviated) object ids
+     * @param existCommits       Exist commits, key - commit id, value - entry with new commit message
      */
-    private void findCommitRebaseOnto() throws IOException {
-        RevWalk walk = new RevWalk(repository);
-        walk.setRevFilter(RevFilter.MERGE_BASE);
-        for (var commitId : commitsToReword.keySet()) {
-            walk.markStart(walk.parseCommit(commitId));
+    private void resolveCommitsInBulk(BulkObjectResolver bulkObjectResolver,
+                                      List<RewordEntry> objectIdsData,
+                                      ObjectIdMap<RewordEntry> existCommits) {
+        List<String> objectIdStrings = new ArrayList<>(objectIdsData.size());
+        for (var item : objectIdsData) {
+            objectIdStrings.add(item.getRevision());
+        }
+
+        BulkObjectResolver.Resolution[] resolutions;
+        try {
+            resolutions = bulkObjectResolver.resolve(objectIdStrings);
+        } catch (IOException e) {
+            for (var item : objectIdsData) {
+                resolveCommit(item, existCommits);
+            }
+            return;
+        }
+
+        for (int i = 0; i < resolutions.length; ++i) {
+            String revision = objectIdsData.get(i).getRevision();
+            if (resolutions[i].isAmbiguous()) {
+                printErrMsg(revision + " more than one object which matches", LogConstants.SKIP.getVal());
+            } else if (resolutions[i].getType() != Constants.OBJ_COMMIT) {
+                printErrMsg(revision + " not found", LogConstants.SKIP.getVal());
+            } else {
+                existCommits.put(resolutions[i].getObjectId(), objectIdsData.get(i));
+            }
         }
+    }
+
+    /**
+     * Resolve ancestry expressions and put commits to exist commits. Each base is resolved once, expressions are
+     * evaluated by {@link AncestryResolver}, so walked first-parent chains are shared
+     *
+     * @param ancestryExpressionsData Key - base revision string, value - expressions with the base and new messages
+     * @param existCommits            Exist commits, key - commit id, value - entry with new commit message
+     */
+    private void resolveAncestryExpressions(Map<String, List<RewordEntry>> ancestryExpressionsData,
+                                            ObjectIdMap<RewordEntry> existCommits) {
+        AncestryResolver ancestryResolver = new AncestryResolver(commitLookup);
+        for (var baseData : ancestryExpressionsData.entrySet()) {
+            RewordEvents.ResolveBatch resolveBatchEvent = new RewordEvents.ResolveBatch();
+            resolveBatchEvent.begin();
+            int existCommitsCountBefore = existCommits.size();
+
+            String baseError;
+            ObjectId baseCommitId = null;
+            try {
+                // '^0' peels the base to a commit
+                baseCommitId = repository.resolve(baseData.getKey() + "^0");
+                baseError = baseCommitId == null ? " not found" : null;
+            } catch (AmbiguousObjectException e) {
+                baseError = " more than one object which matches";
+            } catch (IOException | RevisionSyntaxException e) {
+                baseError = " not found";
+            }
+
+            for (var item : baseData.getValue()) {
+                if (baseError != null) {
+                    printErrMsg(item.getRevision() + baseError, LogConstants.SKIP.getVal());
+                    continue;
+                }
+
+                ObjectId commitId;
+                try {
+                    commitId = ancestryResolver.resolve(baseCommitId, item.getRevision());
+                } catch (IOException e) {
+                    commitId = null;
+                }
+
+                if (commitId == null) {
+                    printErrMsg(item.getRevision() + " not found", LogConstants.SKIP.getVal());
+                } else {
+                    existCommits.put(commitId, item);
+                }
+            }
+            commitResolveBatchEvent(resolveBatchEvent, "ancestry", baseData.getKey(), baseData.getValue().size(),
+                    existCommits.size() - existCommitsCountBefore);
+        }
+    }
+
+    private static void commitResolveBatchEvent(RewordEvents.ResolveBatch resolveBatchEvent, String kind, String base,
+                                                int entriesCount, int resolvedCount) {
+        resolveBatchEvent.end();
+        if (resolveBatchEvent.shouldCommit()) {
+            resolveBatchEvent.kind = kind;
+            resolveBatchEvent.base = base;
+            resolveBatchEvent.entriesCount = entriesCount;
+            resolveBatchEvent.resolvedCount = resolvedCount;
+            resolveBatchEvent.commit();
+        }
+    }
+
+    /**
+     * Find common ancestor fot all passed to reword commits. Search is ordered by generation numbers if commit-graph
+     * has them, so it is not affected by commit times. Also find the cutoff of the search: the lowest generation of
+     * commits to reword, or 'onto' commit time if some of them have no generation number in commit-graph
+     *
+     * @throws IOException In case of any fatal JGit errors
+     */
+    void findCommitRebaseOnto() throws IOException {
+        stats.startPhase(RewordStats.Phase.MERGE_BASE);
+        RewordEvents.MergeBase mergeBaseEvent = new RewordEvents.MergeBase();
+        mergeBaseEvent.begin();
 
-        RevCommit commonAncestorCommit = walk.next();
         // Used 1st parent of common ancestor commit if exists
-        commitRebaseOntoId = commonAncestorCommit != null ? commonAncestorCommit.getParent(0) : null;
+        MergeBaseFinder.RebaseOnto rebaseOnto = new MergeBaseFinder(commitLookup).findRebaseOnto(commitsToReword.keys());
+        commitRebaseOntoId = rebaseOnto != null ? rebaseOnto.getCommitId() : null;
 
-        if (commitRebaseOntoId != null) {
-            commitRebaseOntoCommitTime = walk.parseCommit(commitRebaseOntoId).getCommitTime();
+        // Without generation numbers commits older than 'onto' are not walked, 'onto' is an ancestor of all of them
+        if (rebaseOnto != null && !HistoryCutoff.hasGraphGenerations(commitLookup, commitsToReword.keys())) {
+            rewordCutoff = HistoryCutoff.byCommitTime(commitLookup, rebaseOnto.getCommitTime());
         } else {
-            commitRebaseOntoCommitTime = Integer.MAX_VALUE;
+            rewordCutoff = HistoryCutoff.of(commitLookup, commitsToReword.keys());
         }
 
+        // Commits reachable from 'onto' can't be descendants of commits to reword
+        if (rewordCandidates != null && commitRebaseOntoId != null) {
+            for (var ref : otherBranchesRefs) {
+                rewordCandidates.or(reachabilityBitmaps.getReachable(ref.getObjectId()));
+            }
+            rewordCandidates.andNot(reachabilityBitmaps.getReachable(commitRebaseOntoId));
+        }
+
+        mergeBaseEvent.end();
+        if (mergeBaseEvent.shouldCommit()) {
+            mergeBaseEvent.commitsCount = commitsToReword.size();
+            mergeBaseEvent.ontoId = commitRebaseOntoId != null ? commitRebaseOntoId.getName() : null;
+            if (rewordCutoff.isByGeneration()) {
+                mergeBaseEvent.cutoffGeneration = (int) rewordCutoff.getBound();
+            } else {
+                mergeBaseEvent.cutoffCommitTime = TimeUnit.SECONDS.toMillis(rewordCutoff.getBound());
+            }
+            mergeBaseEvent.commit();
+        }
     }
 
     /**
      * Reword commits
      *
-     * @throws IOException In case of any fatal JGit errors
+     * @throws IOException In case of any fatal JGit errors or if the commit map file can't be written
      */
-    private void doReword() throws IOException {
+    void doReword() throws IOException {
+        stats.startPhase(RewordStats.Phase.REWRITE);
         visitedCommits.clear();
+        // Committed by reword after refs are updated
+        commitMapWriter = commitMapPath != null ? new CommitMapWriter(commitMapPath) : null;
+
+        putVisitedCommit(commitRebaseOntoId, commitRebaseOntoId);
+        moveDetachedHead(commitRebaseOntoId, RefLogConstants.REBASE_START + commitRebaseOntoId.getName());
+
+        parallelCommitWriter = parallelism > 1
+                ? new ParallelCommitWriter(repository, parallelism, committer)
+                : null;
+
+        try (ObjectInserter objectInserter = newObjectInserter()) {
+            // Visited commits are shared, commits of the current branch are not visited again
+            progressMonitor.beginTask(PROGRESS_SEARCH_TASK, ProgressMonitor.UNKNOWN);
+            dfsReword(objectInserter, currentBranchOldHeadId);
+            for (var ref : otherBranchesRefs) {
+                dfsReword(objectInserter, ref.getObjectId());
+            }
+            progressMonitor.endTask();
+            if (parallelCommitWriter != null) {
+                progressMonitor.beginTask(PROGRESS_WRITE_TASK, parallelCommitWriter.getPlannedCount());
+                parallelCommitWriter.write(objectInserter, this::onPlannedCommitWritten);
+                progressMonitor.endTask();
+                // Planned commits are read by the writer, not by the commits lookup
+                stats.addParsedCommits(parallelCommitWriter.getPlannedCount());
+                stats.addInsertedObjects(parallelCommitWriter.getPlannedCount(), parallelCommitWriter.getWrittenBytes());
+            }
 
-        visitedCommits.put(commitRebaseOntoId, commitRebaseOntoId);
-        String refLogMsg = RefLogConstants.REBASE_START + commitRebaseOntoId.getName();
-        updateRef(Constants.HEAD, commitRebaseOntoId, true, refLogMsg);
-        printInfoMsg(refLogMsg, LogConstants.INFO.getVal());
+            currentBranchNewHeadId = getNewCommitId(currentBranchOldHeadId);
+            for (var ref : otherBranchesRefs) {
+                ObjectId oldHeadId = ref.getObjectId();
+                ObjectId newHeadId = getNewCommitId(oldHeadId);
+                if (!newHeadId.equals(oldHeadId)) {
+                    otherRefsUpdates.add(new ReceiveCommand(oldHeadId, newHeadId, ref.getName(),
+                            ReceiveCommand.Type.UPDATE_NONFASTFORWARD));
+                }
+            }
+            if (rewriteTags) {
+                rewriteTags(objectInserter);
+            }
 
-        RevWalk walk = new RevWalk(repository);
-        ObjectInserter objectInserter = repository.newObjectInserter();
-        dfsReword(walk, objectInserter, repository.resolve(currentBranchFullName));
-        walk.dispose();
+            RewordEvents.InserterFlush inserterFlushEvent = new RewordEvents.InserterFlush();
+            inserterFlushEvent.begin();
+            objectInserter.flush();
+            inserterFlushEvent.end();
+            if (inserterFlushEvent.shouldCommit()) {
+                inserterFlushEvent.inserter = objectInserter.getClass().getSimpleName();
+                inserterFlushEvent.insertedObjectsCount = stats.getInsertedObjectsCount();
+                inserterFlushEvent.insertedBytes = stats.getInsertedBytes();
+                inserterFlushEvent.commit();
+            }
+        }
+    }
+
+    /**
+     * Get id of a commit after reword
+     *
+     * @param oldCommitId Commit id
+     * @return Id of the commit copy or the passed id if the commit is not changed
+     */
+    private ObjectId getNewCommitId(ObjectId oldCommitId) {
+        ObjectId newCommitId = visitedCommits.get(oldCommitId);
+        return newCommitId != null ? newCommitId : oldCommitId;
+    }
+
+    /**
+     * Register a commit written by {@link ParallelCommitWriter}
+     *
+     * @throws IOException In case of any fatal JGit errors
+     */
+    private void onPlannedCommitWritten(ObjectId oldCommitId, ObjectId newCommitId, String message, boolean reworded)
+            throws IOException {
+        onCommitCreated(oldCommitId, newCommitId);
+        moveDetachedHead(newCommitId, (reworded ? RefLogConstants.REBASE_REWORD : RefLogConstants.REBASE_PICK)
+                + getShortMessage(message));
+        progressMonitor.update(1);
+    }
+
+    /**
+     * Register a created commit copy
+     *
+     * @param oldCommitId Id of the commit copied
+     * @param newCommitId Id of the copy
+     * @throws IOException If the commit map file can't be written
+     */
+    private void onCommitCreated(ObjectId oldCommitId, ObjectId newCommitId) throws IOException {
+        putVisitedCommit(oldCommitId, newCommitId);
+        ++createdCommitsCount;
+        stats.addRewrittenCommit();
+    }
+
+    /**
+     * Register a visited commit and write it to the commit map file
+     *
+     * @param oldCommitId Id of the visited commit
+     * @param newCommitId Id of its copy or the same id if the commit is not changed
+     * @throws IOException If the commit map file can't be written
+     */
+    private void putVisitedCommit(ObjectId oldCommitId, ObjectId newCommitId) throws IOException {
+        visitedCommits.put(oldCommitId, newCommitId);
+        if (commitMapWriter != null) {
+            commitMapWriter.write(oldCommitId, newCommitId);
+        }
+    }
+
+    /**
+     * Create copies of the tags pointing to rewritten commits and plan their refs updates
+     *
+     * @param objectInserter Inserter the rewritten commits are created by, tags are written to the same batch
+     * @throws IOException In case of any fatal JGit errors
+     */
+    private void rewriteTags(ObjectInserter objectInserter) throws IOException {
+        TagRewriter tagRewriter = new TagRewriter(repository);
+        otherRefsUpdates.addAll(tagRewriter.rewrite(visitedCommits, objectInserter));
+        stats.addInsertedObjects(tagRewriter.getCreatedTagsCount(), tagRewriter.getCreatedTagsBytes());
+
+        for (String tagName : tagRewriter.getSkippedTagsNames()) {
+            printErrMsg(tagName + " points to a rewritten commit through another tag, not rewritten",
+                    LogConstants.WARN.getVal());
+        }
+        if (tagRewriter.getStrippedSignaturesCount() > 0) {
+            printErrMsg(tagRewriter.getStrippedSignaturesCount() + " signed tag(s) rewritten without signature",
+                    LogConstants.WARN.getVal());
+        }
+    }
+
+    /**
+     * Create an object inserter according to the write mode
+     *
+     * @return Hashing only inserter in dry-run mode. Pack inserter in single pack write mode or if more than one
+     * thread is used, if the repository is stored on a local filesystem, otherwise the repository default (loose
+     * objects) inserter
+     */
+    private ObjectInserter newObjectInserter() {
+        if (dryRun) {
+            return new HashOnlyObjectInserter();
+        }
+        ObjectDatabase objectDatabase = repository.getObjectDatabase();
+        if ((singlePackWrite || parallelism > 1) && objectDatabase instanceof ObjectDirectory) {
+            int compression = repository.getConfig().get(CoreConfig.KEY).getCompression();
+            return new PackObjectInserter((ObjectDirectory) objectDatabase, compression);
+        }
+        return objectDatabase.newInserter();
     }
 
     /**
-     * Part of reword algorithm uses depth-first search
+     * Part of reword algorithm uses depth-first search. Search is iterative (an explicit stack of
+     * {@link DfsFrame} is used instead of recursion), so history depth is not limited by thread stack size.
+     * Commits are inflated only to be copied, parents and generation numbers are got by {@link CommitLookup}.
+     * A commit below the cutoff (generation lower than any commit to reword has, or older than 'onto' without
+     * commit-graph) can't be a descendant of commits to reword, so search does not go through it. If the repository
+     * has pack bitmaps, search does not go through commits reachable from 'onto' too.
+     * If more than one thread is used, new commits are only planned, they are written by {@link ParallelCommitWriter}
      *
-     * @param walk           A RevWalk to be used to parse commits
      * @param objectInserter In ObjectInserter to be used to create commits in repository
-     * @param oldCommitId    Id of the commit to to be copied
-     * @return Id of the passed commit if no changes in ancestors, otherwise id of edited commit copy
+     * @param headCommitId   Id of the commit to start search from
+     * @return Id of the passed commit if no changes in ancestors or the commit copy is planned, otherwise id of edited
+     * commit copy
      * @throws IOException In case of any fatal JGit errors
      */
-    private ObjectId dfsReword(RevWalk walk, ObjectInserter objectInserter, ObjectId oldCommitId) throws IOException {
+    private ObjectId dfsReword(ObjectInserter objectInserter, ObjectId headCommitId) throws IOException {
+        Deque<DfsFrame> stack = new ArrayDeque<>();
+
+        ObjectId newCommitId = dfsVisit(headCommitId, stack);
+        while (!stack.isEmpty()) {
+            DfsFrame frame = stack.peek();
+            if (newCommitId != null) {
+                if (parallelCommitWriter != null && parallelCommitWriter.isPlanned(frame.getNextParent())) {
+                    frame.setNextParentPlanned();
+                } else {
+                    frame.setNextParentNewId(newCommitId);
+                }
+            }
+
+            if (frame.hasNotVisitedParents()) {
+                newCommitId = dfsVisit(frame.getNextParent(), stack);
+            } else {
+                stack.pop();
+                newCommitId = dfsLeave(objectInserter, frame);
+            }
+        }
+        return newCommitId;
+    }
+
+    /**
+     * Enter a commit on depth-first search
+     *
+     * @param oldCommitId Id of the commit to be copied
+     * @param stack       Search stack, a frame is pushed if commit parents should be visited
+     * @return Id of the commit after visit if it is known right away, null if a frame was pushed
+     * @throws IOException In case of any fatal JGit errors
+     */
+    private ObjectId dfsVisit(ObjectId oldCommitId, Deque<DfsFrame> stack) throws IOException {
         if (oldCommitId.equals(commitRebaseOntoId)) {
             return oldCommitId;
         }
 
-        if (visitedCommits.containsKey(oldCommitId)) {
-            ObjectId newCommitId = visitedCommits.get(oldCommitId);
-
-            String refLogMsg = RefLogConstants.REBASE_RESET + "'" + newCommitId.getName() + "'";
-            updateRef(Constants.HEAD, newCommitId, true, refLogMsg);
-            printInfoMsg(refLogMsg, LogConstants.INFO.getVal());
+        // New ids of planned commits are not known while searching
+        if (parallelCommitWriter != null && parallelCommitWriter.isPlanned(oldCommitId)) {
+            return oldCommitId;
+        }
 
-            return newCommitId;
+        ObjectId visitedCommitId = visitedCommits.get(oldCommitId);
+        if (visitedCommitId != null) {
+            moveDetachedHead(visitedCommitId, RefLogConstants.REBASE_RESET + "'" + visitedCommitId.getName() + "'");
+            return visitedCommitId;
         }
 
-        RevCommit oldCommit = walk.parseCommit(oldCommitId);
-        if (oldCommit.getCommitTime() < commitRebaseOntoCommitTime) {
-            String refLogMsg = RefLogConstants.REBASE_RESET + "'" + oldCommitId.getName() + "'";
-            updateRef(Constants.HEAD, oldCommitId, true, refLogMsg);
-            printInfoMsg(refLogMsg, LogConstants.INFO.getVal());
-            visitedCommits.put(oldCommitId, oldCommitId);
+        if (rewordCutoff.isBelow(oldCommitId)
+                || (rewordCandidates != null && !rewordCandidates.contains(oldCommitId))) {
+            moveDetachedHead(oldCommitId, RefLogConstants.REBASE_RESET + "'" + oldCommitId.getName() + "'");
+            putVisitedCommit(oldCommitId, oldCommitId);
+            stats.addCutOffCommit();
+            progressMonitor.update(1);
             return oldCommitId;
         }
 
-        List<ObjectId> parentsIds = new ArrayList<>();
-        boolean newParentCreated = false;
-        for (var parent : oldCommit.getParents()) {
-            ObjectId newParentId = dfsReword(walk, objectInserter, parent.getId());
-            parentsIds.add(newParentId);
+        stack.push(new DfsFrame(oldCommitId, commitLookup.getParents(oldCommitId)));
+        return null;
+    }
 
-            if (newParentId != parent.getId()) {
-                newParentCreated = true;
-            }
+    /**
+     * Leave a commit on depth-first search, all the commit parents are visited
+     *
+     * @param objectInserter In ObjectInserter to be used to create commits in repository
+     * @param frame          Search frame of the commit
+     * @return Id of the commit if no changes in ancestors or the commit copy is planned, otherwise id of edited commit
+     * copy
+     * @throws IOException In case of any fatal JGit errors
+     */
+    private ObjectId dfsLeave(ObjectInserter objectInserter, DfsFrame frame) throws IOException {
+        ObjectId oldCommitId = frame.getOldCommitId();
+        progressMonitor.update(1);
+
+        RewordEntry rewordEntry = commitsToReword.get(oldCommitId);
+        if (!frame.isNewParentCreated() && rewordEntry == null) {
+            moveDetachedHead(oldCommitId, RefLogConstants.REBASE_FAST_FORWARD.getVal());
+            // Not walked again if reached by other path
+            putVisitedCommit(oldCommitId, oldCommitId);
+            stats.addFastForwardedCommit();
+            return oldCommitId;
         }
 
-        String newCommitMessage = commitsToReword.get(oldCommit.getId());
-        if (!newParentCreated && newCommitMessage == null) {
-            updateRef(Constants.HEAD, oldCommitId, true, RefLogConstants.REBASE_FAST_FORWARD.getVal());
-            printInfoMsg(RefLogConstants.REBASE_FAST_FORWARD.getVal(), LogConstants.INFO.getVal());
+        if (parallelCommitWriter != null) {
+            parallelCommitWriter.plan(oldCommitId, rewordEntry, frame.getNewParentsIds());
             return oldCommitId;
         }
 
+        RevCommit oldCommit = commitLookup.parseCommit(oldCommitId);
         CommitBuilder builder = new CommitBuilder();
-        builder.setTreeId(oldCommit.getTree().getId());
-        builder.setParentIds(parentsIds);
+        builder.setTreeId(oldCommit.getTree());
+        builder.setParentIds(frame.getNewParentsIds());
         builder.setAuthor(oldCommit.getAuthorIdent());
-        builder.setCommitter(new PersonIdent(userName, userEmail));
+        builder.setCommitter(committer);
         builder.setEncoding(oldCommit.getEncoding());
+        String newCommitMessage = rewordEntry != null ? rewordEntry.getMessage() : null;
         builder.setMessage(newCommitMessage != null ? newCommitMessage : oldCommit.getFullMessage());
 
-        ObjectId newCommitId = objectInserter.insert(builder);
-        visitedCommits.put(oldCommitId, newCommitId);
-        RevCommit newCommit = walk.parseCommit(newCommitId);
+        byte[] newCommit = builder.build();
+        ObjectId newCommitId = objectInserter.insert(Constants.OBJ_COMMIT, newCommit);
+        stats.addInsertedObjects(1, newCommit.length);
+        onCommitCreated(oldCommitId, newCommitId);
 
-        String refLogMsg;
         if (newCommitMessage != null) {
-            refLogMsg = RefLogConstants.REBASE_REWORD + newCommit.getShortMessage();
+            moveDetachedHead(newCommitId, RefLogConstants.REBASE_REWORD + getShortMessage(builder.getMessage()));
         } else {
-            refLogMsg = RefLogConstants.REBASE_PICK + newCommit.getShortMessage();
+            moveDetachedHead(newCommitId, RefLogConstants.REBASE_PICK + getShortMessage(builder.getMessage()));
         }
-        updateRef(Constants.HEAD, newCommitId, true, refLogMsg);
-        printInfoMsg(refLogMsg, LogConstants.INFO.getVal());
 
         return newCommitId;
     }
 
+    /**
+     * Get short message of a commit, the same as {@link RevCommit#getShortMessage()} returns
+     *
+     * @param fullMessage Full commit message
+     * @return First paragraph of the message with line breaks replaced by spaces
+     */
+    private static String getShortMessage(String fullMessage) {
+        int paragraphEnd = fullMessage.indexOf("\n\n");
+        String firstParagraph = paragraphEnd < 0 ? fullMessage : fullMessage.substring(0, paragraphEnd);
+        return firstParagraph.stripTrailing().replace("\r\n", " ").replace('\n', ' ');
+    }
+
     /**
      * Try restore HEAD onto current branch head
      */
@@ -491,7 +1432,13 @@ public class GitFastReword implements AutoCloseable {
      *
      * @throws IOException In case of any fatal JGit errors
      */
-    private void linkBranchesToNewCommits() throws IOException {
+    void linkBranchesToNewCommits() throws IOException {
+        stats.startPhase(RewordStats.Phase.PUBLISH);
+        if (isRefsUpdatedOnce()) {
+            publishRefsInBatch();
+            return;
+        }
+
         ObjectId lastCommitId = repository.resolve(Constants.HEAD);
 
         String branchRefLogMsg = RefLogConstants.REBASE_FINISH + currentBranchFullName + " onto " + commitRebaseOntoId.getName();
@@ -504,21 +1451,220 @@ public class GitFastReword implements AutoCloseable {
 
     }
 
+    /**
+     * Get refs updates planned by reword
+     *
+     * @return Update of the current branch if it is changed, then updates of other branches and tags
+     */
+    private List<ReceiveCommand> getPlannedRefUpdates() {
+        List<ReceiveCommand> refUpdates = new ArrayList<>();
+        if (!currentBranchNewHeadId.equals(currentBranchOldHeadId)) {
+            refUpdates.add(new ReceiveCommand(currentBranchOldHeadId, currentBranchNewHeadId, currentBranchFullName,
+                    ReceiveCommand.Type.UPDATE_NONFASTFORWARD));
+        }
+        refUpdates.addAll(otherRefsUpdates);
+        return refUpdates;
+    }
+
+    /**
+     * Publish rewritten history by one batched ref update. Current branch is updated through HEAD, so HEAD and the
+     * branch get a single summary reflog entry each. Other rewritten branches and tags are updated by the same batch.
+     * Update is rejected if some branch was moved during the reword
+     *
+     * @throws IOException In case of any fatal JGit errors or if ref update rejected
+     */
+    private void publishRefsInBatch() throws IOException {
+        boolean currentBranchChanged = !currentBranchNewHeadId.equals(currentBranchOldHeadId);
+        if (!currentBranchChanged) {
+            printInfoMsg(RefLogConstants.REBASE_FINISH + currentBranchFullName + " not changed", LogConstants.INFO.getVal());
+            if (otherRefsUpdates.isEmpty()) {
+                return;
+            }
+        }
+
+        String refLogMsg = RefLogConstants.REBASE_FINISH + currentBranchFullName + " onto " + commitRebaseOntoId.getName()
+                + ", " + createdCommitsCount + " commits rewritten";
+
+        RefDatabase refDatabase = repository.getRefDatabase();
+        BatchRefUpdate batchUpdate = new BatchRefUpdate(refDatabase) {
+            @Override
+            protected RefUpdate newUpdate(ReceiveCommand cmd) throws IOException {
+                boolean isCurrentBranch = cmd.getRefName().equals(currentBranchFullName);
+                RefUpdate refUpdate = refDatabase.newUpdate(isCurrentBranch ? Constants.HEAD : cmd.getRefName(), false);
+                refUpdate.setRefLogIdent(getRefLogIdent());
+                refUpdate.setRefLogMessage(isCurrentBranch ? getRefLogMessage()
+                        : RefLogConstants.REBASE_FINISH + cmd.getRefName() + " onto " + commitRebaseOntoId.getName(),
+                        false);
+                refUpdate.setExpectedOldObjectId(cmd.getOldId());
+                refUpdate.setNewObjectId(cmd.getNewId());
+                refUpdate.setForceUpdate(true);
+                return refUpdate;
+            }
+        };
+        batchUpdate.setAtomic(refDatabase.performsAtomicTransactions());
+        batchUpdate.setAllowNonFastForwards(true);
+        batchUpdate.setRefLogIdent(new PersonIdent(userName, userEmail));
+        batchUpdate.setRefLogMessage(refLogMsg, false);
+        // Type is set explicitly, otherwise JGit walks the history to check for fast-forward
+        if (currentBranchChanged) {
+            batchUpdate.addCommand(new ReceiveCommand(currentBranchOldHeadId, currentBranchNewHeadId,
+                    currentBranchFullName, ReceiveCommand.Type.UPDATE_NONFASTFORWARD));
+        }
+        batchUpdate.addCommand(otherRefsUpdates);
+
+        // An event per ref, all with the batch duration
+        List<RewordEvents.RefUpdate> refUpdateEvents = new ArrayList<>();
+        for (int i = 0; i < batchUpdate.getCommands().size(); ++i) {
+            RewordEvents.RefUpdate refUpdateEvent = new RewordEvents.RefUpdate();
+            refUpdateEvent.begin();
+            refUpdateEvents.add(refUpdateEvent);
+        }
+        try (RevWalk walk = new RevWalk(repository)) {
+            batchUpdate.execute(walk, NullProgressMonitor.INSTANCE);
+        }
+        for (int i = 0; i < refUpdateEvents.size(); ++i) {
+            ReceiveCommand command = batchUpdate.getCommands().get(i);
+            commitRefUpdateEvent(refUpdateEvents.get(i), command.getRefName(), command.getOldId(),
+                    command.getNewId().getName(), command.getResult().name(), true);
+        }
+
+        List<ReceiveCommand> rejectedCommands = new ArrayList<>();
+        for (var command : batchUpdate.getCommands()) {
+            if (command.getResult() != ReceiveCommand.Result.OK) {
+                rejectedCommands.add(command);
+            }
+        }
+        if (!rejectedCommands.isEmpty()) {
+            rollBackRefUpdates(batchUpdate.getCommands(), rejectedCommands);
+        }
+        // Current branch is updated through HEAD, both are logged. Tags have no reflogs by default
+        int reflogEntriesCount = currentBranchChanged ? 1 : 0;
+        for (var command : batchUpdate.getCommands()) {
+            if (!command.getRefName().startsWith(Constants.R_TAGS)) {
+                ++reflogEntriesCount;
+            }
+        }
+        stats.addUpdatedRefs(batchUpdate.getCommands().size(), reflogEntriesCount);
+        if (currentBranchChanged) {
+            printInfoMsg(refLogMsg, LogConstants.INFO.getVal());
+        }
+        for (var command : otherRefsUpdates) {
+            printInfoMsg(RefLogConstants.REBASE_FINISH + command.getRefName() + " onto " + commitRebaseOntoId.getName(),
+                    LogConstants.INFO.getVal());
+        }
+    }
+
+    /**
+     * Roll back refs updated by a batch some commands of which are rejected: the ref database may not perform atomic
+     * transactions, so refs updated by other commands are moved back to their old ids. Every rejected ref and every
+     * ref which can't be moved back is reported
+     *
+     * @param commands         All commands of the batch
+     * @param rejectedCommands Rejected commands, not empty
+     * @throws IOException Always, after the rollback
+     */
+    private void rollBackRefUpdates(List<ReceiveCommand> commands, List<ReceiveCommand> rejectedCommands)
+            throws IOException {
+        for (var command : rejectedCommands) {
+            printErrMsg("Update of " + command.getRefName() + " rejected: " + command.getResult()
+                    + (command.getMessage() != null ? " (" + command.getMessage() + ")" : ""), LogConstants.ERR.getVal());
+        }
+
+        List<String> notRestoredRefNames = new ArrayList<>();
+        RefDatabase refDatabase = repository.getRefDatabase();
+        for (var command : commands) {
+            if (command.getResult() != ReceiveCommand.Result.OK) {
+                continue;
+            }
+            RefUpdate refUpdate = refDatabase.newUpdate(command.getRefName(), false);
+            refUpdate.setRefLogIdent(new PersonIdent(userName, userEmail));
+            refUpdate.setRefLogMessage(RefLogConstants.RESET + command.getOldId().getName(), false);
+            refUpdate.setExpectedOldObjectId(command.getNewId());
+            refUpdate.setNewObjectId(command.getOldId());
+            refUpdate.setForceUpdate(true);
+            RefUpdate.Result result = refUpdate.update();
+            if (result == RefUpdate.Result.FORCED || result == RefUpdate.Result.NO_CHANGE) {
+                printErrMsg(command.getRefName() + " moved back to " + command.getOldId().getName(),
+                        LogConstants.WARN.getVal());
+            } else {
+                notRestoredRefNames.add(command.getRefName());
+                printErrMsg(command.getRefName() + " left at " + command.getNewId().getName() + " instead of "
+                        + command.getOldId().getName() + ": " + result, LogConstants.ERR.getVal());
+            }
+        }
+
+        String rejectedMessage = rejectedCommands.size() + " of " + commands.size() + " ref(s) rejected";
+        if (notRestoredRefNames.isEmpty()) {
+            throw new IOException(rejectedMessage + ", updated refs are moved back");
+        }
+        throw new IOException(rejectedMessage + ", please restore refs left updated manually: "
+                + String.join(", ", notRestoredRefNames));
+    }
+
+    /**
+     * Check are refs updated once after reword instead of moving HEAD on each commit
+     *
+     * @return True if batch ref update, single pack write, all branches, tags rewrite or dry-run mode is enabled or
+     * more than one thread is used
+     */
+    private boolean isRefsUpdatedOnce() {
+        return batchRefUpdate || singlePackWrite || rewriteAllBranches || rewriteTags || dryRun || parallelism > 1;
+    }
+
+    /**
+     * Move detached HEAD onto a commit while reword (skipped in batch ref update mode) and print the reflog message in
+     * verbose mode
+     *
+     * @param targetCommitId Commit to move HEAD onto
+     * @param refLogMsg      Reflog message
+     * @throws IOException In case of any fatal JGit errors
+     */
+    private void moveDetachedHead(ObjectId targetCommitId, String refLogMsg) throws IOException {
+        if (!isRefsUpdatedOnce()) {
+            updateRef(Constants.HEAD, targetCommitId, true, refLogMsg);
+        }
+        if (verbose) {
+            printInfoMsg(refLogMsg, LogConstants.INFO.getVal());
+        }
+    }
+
     void updateRef(String revStr, ObjectId targetCommitId, boolean detach, String refLogMsg) throws IOException {
+        RewordEvents.RefUpdate refUpdateEvent = new RewordEvents.RefUpdate();
+        refUpdateEvent.begin();
         RefUpdate headUpdate = repository.getRefDatabase().newUpdate(revStr, detach);
         headUpdate.setRefLogIdent(new PersonIdent(userName, userEmail));
         headUpdate.setRefLogMessage(refLogMsg, false);
         headUpdate.setNewObjectId(targetCommitId);
         headUpdate.setForceUpdate(true);
-        headUpdate.update();
+        RefUpdate.Result result = headUpdate.update();
+        stats.addUpdatedRefs(1, 1);
+        commitRefUpdateEvent(refUpdateEvent, revStr, headUpdate.getOldObjectId(), targetCommitId.getName(),
+                result.name(), false);
     }
 
     void updateRef(String revStr, String targetRevStr, boolean detach, String refLogMsg) throws IOException {
+        RewordEvents.RefUpdate refUpdateEvent = new RewordEvents.RefUpdate();
+        refUpdateEvent.begin();
         RefUpdate headUpdate = repository.getRefDatabase().newUpdate(revStr, detach);
         headUpdate.setRefLogIdent(new PersonIdent(userName, userEmail));
         headUpdate.setRefLogMessage(refLogMsg, false);
         headUpdate.setForceUpdate(true);
-        headUpdate.link(targetRevStr);
+        RefUpdate.Result result = headUpdate.link(targetRevStr);
+        stats.addUpdatedRefs(1, 1);
+        commitRefUpdateEvent(refUpdateEvent, revStr, headUpdate.getOldObjectId(), targetRevStr, result.name(), false);
+    }
+
+    private static void commitRefUpdateEvent(RewordEvents.RefUpdate refUpdateEvent, String refName, ObjectId oldId,
+                                             String newTarget, String result, boolean batched) {
+        refUpdateEvent.end();
+        if (refUpdateEvent.shouldCommit()) {
+            refUpdateEvent.refName = refName;
+            refUpdateEvent.oldId = oldId != null ? oldId.getName() : null;
+            refUpdateEvent.newTarget = newTarget;
+            refUpdateEvent.result = result;
+            refUpdateEvent.batched = batched;
+            refUpdateEvent.commit();
+        }
     }
 
     /**
@@ -529,6 +1675,8 @@ public class GitFastReword implements AutoCloseable {
      */
     private void printErrMsg(String msg, String beforeMsg) {
         if (errPrintStream != null) {
+            // Keep the order of messages if both are printed to one stream
+            flushInfoSink();
             if (beforeMsg == null) {
                 errPrintStream.println(msg);
             } else {
@@ -538,18 +1686,78 @@ public class GitFastReword implements AutoCloseable {
     }
 
     /**
-     * Print a message to infoPrintStream
+     * Print a message to infoPrintStream, through the buffered sink while reword
      *
      * @param msg       Message to print
      * @param beforeMsg Message prefix
      */
     private void printInfoMsg(String msg, String beforeMsg) {
-        if (infoPrintStream != null) {
+        PrintStream stream = infoSink != null ? infoSink : infoPrintStream;
+        if (stream != null) {
             if (beforeMsg == null) {
-                infoPrintStream.println(msg);
+                stream.println(msg);
             } else {
-                infoPrintStream.println(beforeMsg + " " + msg);
+                stream.println(beforeMsg + " " + msg);
+            }
+        }
+    }
+
+    private void flushInfoSink() {
+        if (infoSink != null) {
+            infoSink.flush();
+        }
+    }
+
+    /**
+     * Depth-first search frame: a commit being copied, its parents and new ids of already visited parents
+     */
+    private static final class DfsFrame {
+        private final ObjectId oldCommitId;
+        private final ObjectId[] oldParentsIds;
+        private final ObjectId[] newParentsIds;
+        private int visitedParentsCount;
+        private boolean newParentCreated;
+
+        DfsFrame(ObjectId oldCommitId, ObjectId[] oldParentsIds) {
+            this.oldCommitId = oldCommitId;
+            this.oldParentsIds = oldParentsIds;
+            this.newParentsIds = new ObjectId[oldParentsIds.length];
+        }
+
+        ObjectId getOldCommitId() {
+            return oldCommitId;
+        }
+
+        boolean hasNotVisitedParents() {
+            return visitedParentsCount < newParentsIds.length;
+        }
+
+        ObjectId getNextParent() {
+            return oldParentsIds[visitedParentsCount];
+        }
+
+        void setNextParentNewId(ObjectId newParentId) {
+            if (!newParentId.equals(getNextParent())) {
+                newParentCreated = true;
             }
+            newParentsIds[visitedParentsCount++] = newParentId;
+        }
+
+        /**
+         * Mark the next parent as planned to be copied, its old id is kept as it is
+         */
+        void setNextParentPlanned() {
+            newParentCreated = true;
+            newParentsIds[visitedParentsCount] = oldParentsIds[visitedParentsCount];
+            ++visitedParentsCount;
+        }
+
+        ObjectId[] getNewParentsIds() {
+            return newParentsIds;
+        }
+
+        boolean isNewParentCreated() {
+            return newParentCreated;
         }
     }
 
@@ -2,21 +2,50 @@ package shchuko.git_fast_reword;
 
 import org.apache.commons.cli.*;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class GitFastRewordCli {
     private final String[] args;
+    private final Path workDir;
+    private final PrintStream out;
+    private final PrintStream err;
+    // Instance kept by the daemon between requests, opened on the first one and never closed by CLI
+    private final GitFastReword sharedGitFastReword;
     private final Options options = new Options();
     private final HelpFormatter helpFormatter = new HelpFormatter();
     private CommandLine cmd;
 
     private final Map<String, String> commitsToReword = new HashMap<>();
+    private Path commitsListPath;
     private boolean rewordMergeCommits = true;
+    private boolean batchRefUpdate = false;
+    private boolean singlePackWrite = false;
+    private boolean rewriteAllBranches = false;
+    private boolean rewriteRemoteTrackingBranches = false;
+    private boolean rewriteTags = false;
+    private int threadsCount = 1;
+    private boolean dryRun = false;
+    private Path commitMapPath;
+    private String committerDate;
+    private OffsetDateTime committerTime;
+    private boolean useDaemon = false;
+    private boolean printStats = false;
+    private Path statsJsonPath;
+    private boolean verbose = false;
+    private boolean showProgress = false;
 
     private int exitStatus = EXIT_SUCCESS;
 
@@ -27,7 +56,25 @@ public class GitFastRewordCli {
     }
 
     public GitFastRewordCli(String[] args) {
+        this(args, Paths.get(System.getProperty("user.dir")), System.out, System.err, null);
+    }
+
+    /**
+     * Create CLI running on behalf of a client
+     *
+     * @param args                Client args
+     * @param workDir             Client working directory, relative paths are resolved against it
+     * @param out                 Client output stream
+     * @param err                 Client error stream
+     * @param sharedGitFastReword Instance to reword by, it is opened on the working directory if it is not open yet
+     *                            and is not closed. Null to create a new one
+     */
+    GitFastRewordCli(String[] args, Path workDir, PrintStream out, PrintStream err, GitFastReword sharedGitFastReword) {
         this.args = args;
+        this.workDir = workDir;
+        this.out = out;
+        this.err = err;
+        this.sharedGitFastReword = sharedGitFastReword;
         createParserOptions();
     }
 
@@ -39,32 +86,130 @@ public class GitFastRewordCli {
             return;
         }
 
-        if (loadArgs()) {
-            doReword();
+        if (!loadArgs()) {
+            return;
+        }
+
+        // A daemon runs requests by itself
+        if (useDaemon && sharedGitFastReword == null) {
+            try {
+                exitStatus = new DaemonClient().run(getDaemonArgs(), workDir, out, err);
+                return;
+            } catch (IOException e) {
+                err.println("Daemon is not available, reword in this process: " + e.getMessage());
+            }
         }
+        doReword();
     }
 
     public int getExitStatus() {
         return exitStatus;
     }
 
+    /**
+     * Get args of a daemon request: the environment of the client is not passed to the daemon, so committer date
+     * taken from GIT_COMMITTER_DATE is passed as an option
+     *
+     * @return Args to send to the daemon
+     */
+    private String[] getDaemonArgs() {
+        if (committerDate == null || cmd.hasOption(COMMITTER_DATE_OPT_LONG)) {
+            return args;
+        }
+        String[] daemonArgs = Arrays.copyOf(args, args.length + 2);
+        daemonArgs[args.length] = "--" + COMMITTER_DATE_OPT_LONG;
+        daemonArgs[args.length + 1] = committerDate;
+        return daemonArgs;
+    }
+
+    /**
+     * Parse committer date in git internal format ('[@]SECONDS +HHMM') or in ISO 8601 format with an offset
+     *
+     * @param date Date string
+     * @return Parsed date or null if the format is not supported
+     */
+    static OffsetDateTime parseCommitterDate(String date) {
+        String[] parts = date.strip().split("\\s+");
+        try {
+            if (parts.length == 2 && parts[1].matches("[+-]\\d{4}")) {
+                long seconds = Long.parseLong(parts[0].startsWith("@") ? parts[0].substring(1) : parts[0]);
+                return Instant.ofEpochSecond(seconds).atOffset(ZoneOffset.of(parts[1]));
+            }
+            return OffsetDateTime.parse(date.strip());
+        } catch (DateTimeException | NumberFormatException e) {
+            return null;
+        }
+    }
+
     private void createParserOptions() {
         options.addOption(ALLOW_REWORD_MERGES_OPT_SHORT, ALLOW_REWORD_MERGES_OPT_LONG, false, ALLOW_REWORD_MERGES_OPT_INFO);
+        options.addOption(BATCH_REF_UPDATE_OPT_SHORT, BATCH_REF_UPDATE_OPT_LONG, false, BATCH_REF_UPDATE_OPT_INFO);
+        options.addOption(SINGLE_PACK_WRITE_OPT_SHORT, SINGLE_PACK_WRITE_OPT_LONG, false, SINGLE_PACK_WRITE_OPT_INFO);
+        options.addOption(ALL_BRANCHES_OPT_SHORT, ALL_BRANCHES_OPT_LONG, false, ALL_BRANCHES_OPT_INFO);
+        options.addOption(REMOTES_OPT_SHORT, REMOTES_OPT_LONG, false, REMOTES_OPT_INFO);
+        options.addOption(TAGS_OPT_SHORT, TAGS_OPT_LONG, false, TAGS_OPT_INFO);
+        options.addOption(THREADS_OPT_SHORT, THREADS_OPT_LONG, true, THREADS_OPT_INFO);
+        options.addOption(COMMIT_MAP_OPT_SHORT, COMMIT_MAP_OPT_LONG, true, COMMIT_MAP_OPT_INFO);
+        options.addOption(DRY_RUN_OPT_SHORT, DRY_RUN_OPT_LONG, false, DRY_RUN_OPT_INFO);
+        options.addOption(null, COMMITTER_DATE_OPT_LONG, true, COMMITTER_DATE_OPT_INFO);
+        options.addOption(DAEMON_OPT_SHORT, DAEMON_OPT_LONG, false, DAEMON_OPT_INFO);
+        options.addOption(STATS_OPT_SHORT, STATS_OPT_LONG, false, STATS_OPT_INFO);
+        options.addOption(null, STATS_JSON_OPT_LONG, true, STATS_JSON_OPT_INFO);
+        options.addOption(VERBOSE_OPT_SHORT, VERBOSE_OPT_LONG, false, VERBOSE_OPT_INFO);
+        options.addOption(null, PROGRESS_OPT_LONG, false, PROGRESS_OPT_INFO);
         options.addOption(HELP_OPT_SHORT, HELP_OPT_LONG, false, HELP_OPT_INFO);
     }
 
     private boolean loadArgs() {
         if (cmd.hasOption(HELP_OPT_SHORT) || cmd.hasOption(HELP_OPT_LONG)) {
-            helpFormatter.printHelp(USAGE, options);
+            printHelp();
             exitStatus = EXIT_SUCCESS;
             return false;
         }
 
         rewordMergeCommits = cmd.hasOption(ALLOW_REWORD_MERGES_OPT_SHORT) || cmd.hasOption(ALLOW_REWORD_MERGES_OPT_LONG);
+        batchRefUpdate = cmd.hasOption(BATCH_REF_UPDATE_OPT_SHORT) || cmd.hasOption(BATCH_REF_UPDATE_OPT_LONG);
+        singlePackWrite = cmd.hasOption(SINGLE_PACK_WRITE_OPT_SHORT) || cmd.hasOption(SINGLE_PACK_WRITE_OPT_LONG);
+        rewriteAllBranches = cmd.hasOption(ALL_BRANCHES_OPT_SHORT) || cmd.hasOption(ALL_BRANCHES_OPT_LONG);
+        rewriteRemoteTrackingBranches = cmd.hasOption(REMOTES_OPT_SHORT) || cmd.hasOption(REMOTES_OPT_LONG);
+        rewriteTags = cmd.hasOption(TAGS_OPT_SHORT) || cmd.hasOption(TAGS_OPT_LONG);
+        dryRun = cmd.hasOption(DRY_RUN_OPT_SHORT) || cmd.hasOption(DRY_RUN_OPT_LONG);
+        useDaemon = cmd.hasOption(DAEMON_OPT_SHORT) || cmd.hasOption(DAEMON_OPT_LONG);
+        printStats = cmd.hasOption(STATS_OPT_SHORT) || cmd.hasOption(STATS_OPT_LONG);
+        verbose = cmd.hasOption(VERBOSE_OPT_SHORT) || cmd.hasOption(VERBOSE_OPT_LONG);
+        showProgress = cmd.hasOption(PROGRESS_OPT_LONG);
+        if (cmd.hasOption(COMMIT_MAP_OPT_SHORT)) {
+            commitMapPath = workDir.resolve(cmd.getOptionValue(COMMIT_MAP_OPT_SHORT).strip());
+        }
+        if (cmd.hasOption(STATS_JSON_OPT_LONG)) {
+            statsJsonPath = workDir.resolve(cmd.getOptionValue(STATS_JSON_OPT_LONG).strip());
+        }
+        if (cmd.hasOption(THREADS_OPT_SHORT)) {
+            try {
+                threadsCount = Integer.parseInt(cmd.getOptionValue(THREADS_OPT_SHORT).strip());
+            } catch (NumberFormatException e) {
+                threadsCount = 0;
+            }
+            if (threadsCount < 1) {
+                printWrongArgs("Threads count must be a positive number");
+                return false;
+            }
+        }
+        // The daemon gets the date of the client as an option, its own environment is not used
+        committerDate = cmd.hasOption(COMMITTER_DATE_OPT_LONG) || sharedGitFastReword != null
+                ? cmd.getOptionValue(COMMITTER_DATE_OPT_LONG)
+                : System.getenv(COMMITTER_DATE_ENV);
+        if (committerDate != null) {
+            committerTime = parseCommitterDate(committerDate);
+            if (committerTime == null) {
+                printWrongArgs("Committer date must be in '[@]SECONDS +HHMM' or ISO 8601 format: " + committerDate);
+                return false;
+            }
+        }
         String[] pureArgs = cmd.getArgs();
 
         if (pureArgs.length == 1) {
-            loadFromFile(pureArgs[0].strip());
+            commitsListPath = workDir.resolve(pureArgs[0].strip());
             return true;
         }
 
@@ -77,45 +222,127 @@ public class GitFastRewordCli {
         return false;
     }
 
-    private void loadFromFile(String path) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
-            String fileToHashPath;
-            while ((fileToHashPath = reader.readLine()) != null) {
-                String[] rewordInfo = fileToHashPath.split(",");
+    private RewordResult rewordFromFile(GitFastReword gitFastReword)
+            throws RepositoryNotOpenedException, GitOperationFailureException {
+        try (RewordListReader reader = RewordListReader.open(commitsListPath)) {
+            RewordResult result;
+            // Entries are streamed into reword, the file is never loaded at once. Binary and NDJSON lists are
+            // machine-generated, their messages are taken as is
+            if (reader instanceof CsvRewordListReader) {
+                result = gitFastReword.reword(() -> {
+                    RewordEntry entry = reader.next();
+                    return entry != null
+                            ? new RewordEntry(entry.getRevision(), entry.getMessage().concat(System.lineSeparator()))
+                            : null;
+                });
+            } else {
+                result = gitFastReword.reword(reader);
+            }
 
-                if (rewordInfo.length == 2) {
-                    commitsToReword.put(rewordInfo[0].strip(), rewordInfo[1].strip().concat(System.lineSeparator()));
-                }
+            if (reader.getMalformedRecordsCount() > 0) {
+                err.println("Input file: " + reader.getMalformedRecordsCount()
+                        + " malformed line(s) ignored, first at line " + reader.getFirstMalformedRecordLine());
             }
+            return result;
         } catch (IOException e) {
-            System.err.println("Input file reading error");
+            throw new GitOperationFailureException("Input file reading error", e);
         }
     }
 
     private void doReword() {
-        try (GitFastReword gitFastReword = new GitFastReword()) {
-            gitFastReword.openRepository(Paths.get(System.getProperty("user.dir")));
+        GitFastReword gitFastReword = sharedGitFastReword != null ? sharedGitFastReword : new GitFastReword();
+        try {
+            if (!gitFastReword.isOpen()) {
+                gitFastReword.openRepository(workDir);
+            }
             gitFastReword.setAllowRewordMergeCommits(rewordMergeCommits);
-            gitFastReword.setInfoPrintStream(System.out);
-            gitFastReword.setErrPrintStream(System.err);
-            gitFastReword.reword(commitsToReword);
+            gitFastReword.setBatchRefUpdate(batchRefUpdate);
+            gitFastReword.setSinglePackWrite(singlePackWrite);
+            gitFastReword.setRewriteAllBranches(rewriteAllBranches);
+            gitFastReword.setRewriteRemoteTrackingBranches(rewriteRemoteTrackingBranches);
+            gitFastReword.setRewriteTags(rewriteTags);
+            gitFastReword.setParallelism(threadsCount);
+            gitFastReword.setDryRun(dryRun);
+            gitFastReword.setCommitMapPath(commitMapPath);
+            gitFastReword.setCommitterTime(committerTime);
+            gitFastReword.setInfoPrintStream(out);
+            gitFastReword.setErrPrintStream(err);
+            gitFastReword.setVerbose(verbose);
+            gitFastReword.setProgressMonitor(showProgress ? new ThrottledProgressMonitor(err) : null);
+            RewordResult result = commitsListPath != null
+                    ? rewordFromFile(gitFastReword)
+                    : gitFastReword.reword(commitsToReword);
+            if (result.isDryRun()) {
+                printDryRunReport(result);
+            }
+            if (printStats) {
+                out.print(result.getStats());
+            }
+            if (statsJsonPath != null) {
+                Files.writeString(statsJsonPath, result.getStats().toJson() + System.lineSeparator());
+            }
 
             exitStatus = EXIT_SUCCESS;
         } catch (IOException | RepositoryNotFoundException | RepositoryNotOpenedException | GitOperationFailureException e) {
-            System.err.println("An error caused: " + e.getMessage());
+            err.println("An error caused: " + e.getMessage());
             exitStatus = EXIT_FAILURE;
         } catch (Exception e) {
-            System.err.println("Fatal error: " + e.getMessage());
+            err.println("Fatal error: " + e.getMessage());
             exitStatus = EXIT_FAILURE;
+        } finally {
+            if (gitFastReword != sharedGitFastReword) {
+                gitFastReword.close();
+            }
+        }
+    }
+
+    private void printDryRunReport(RewordResult report) {
+        for (var entry : report.getRewrittenCommits().entrySet()) {
+            out.println(DRY_RUN_PREFIX + entry.getKey().getName() + " -> " + entry.getValue().getName());
+        }
+        for (var command : report.getRefUpdates()) {
+            out.println(DRY_RUN_PREFIX + command.getRefName() + " " + command.getOldId().getName()
+                    + " -> " + command.getNewId().getName());
         }
+        out.println(DRY_RUN_PREFIX + report.getRewrittenCommits().size() + " commit(s) would be rewritten ("
+                + report.getRewordedCommitsCount() + " reworded, " + report.getVisitedCommitsCount() + " visited), "
+                + report.getRefUpdates().size() + " ref(s) would be updated");
+        out.println(DRY_RUN_PREFIX + "load " + TimeUnit.NANOSECONDS.toMillis(report.getLoadNanos())
+                + " ms, merge base " + TimeUnit.NANOSECONDS.toMillis(report.getMergeBaseNanos())
+                + " ms, rewrite " + TimeUnit.NANOSECONDS.toMillis(report.getRewriteNanos()) + " ms");
     }
 
     private void printWrongArgs(String msg) {
         this.exitStatus = EXIT_FAILURE;
-        System.err.println(msg);
-        helpFormatter.printHelp(USAGE, options);
+        err.println(msg);
+        printHelp();
+    }
+
+    private void printHelp() {
+        PrintWriter writer = new PrintWriter(out);
+        helpFormatter.printHelp(writer, helpFormatter.getWidth(), USAGE, null, options,
+                helpFormatter.getLeftPadding(), helpFormatter.getDescPadding(), null);
+        writer.flush();
     }
 
+    private static final String DAEMON_OPT_SHORT = "d";
+    private static final String DAEMON_OPT_LONG = "daemon";
+    private static final String DAEMON_OPT_INFO = "Reword by a background process keeping the repository open, the process is started if it is not running";
+
+    private static final String STATS_OPT_SHORT = "s";
+    private static final String STATS_OPT_LONG = "stats";
+    private static final String STATS_OPT_INFO = "Print wall and CPU time of the reword phases and counters of the work done";
+
+    private static final String STATS_JSON_OPT_LONG = "stats-json";
+    private static final String STATS_JSON_OPT_INFO = "Write reword phases times and counters to a file as a JSON object";
+
+    private static final String VERBOSE_OPT_SHORT = "v";
+    private static final String VERBOSE_OPT_LONG = "verbose";
+    private static final String VERBOSE_OPT_INFO = "Print a line for every commit visited by reword";
+
+    private static final String PROGRESS_OPT_LONG = "progress";
+    private static final String PROGRESS_OPT_INFO = "Print progress of history rewriting to the error stream, at most once per second";
+
     private static final String HELP_OPT_SHORT = "h";
     private static final String HELP_OPT_LONG = "help";
     private static final String HELP_OPT_INFO = "Print this help";
@@ -124,6 +351,43 @@ public class GitFastRewordCli {
     private static final String ALLOW_REWORD_MERGES_OPT_LONG = "reword-merges";
     private static final String ALLOW_REWORD_MERGES_OPT_INFO = "Allow reword merge commits";
 
+    private static final String BATCH_REF_UPDATE_OPT_SHORT = "b";
+    private static final String BATCH_REF_UPDATE_OPT_LONG = "batch-ref-update";
+    private static final String BATCH_REF_UPDATE_OPT_INFO = "Update refs once after reword instead of moving HEAD on each commit";
+
+    private static final String SINGLE_PACK_WRITE_OPT_SHORT = "p";
+    private static final String SINGLE_PACK_WRITE_OPT_LONG = "single-pack";
+    private static final String SINGLE_PACK_WRITE_OPT_INFO = "Write new commits into a single pack file instead of loose objects";
+
+    private static final String ALL_BRANCHES_OPT_SHORT = "a";
+    private static final String ALL_BRANCHES_OPT_LONG = "all-branches";
+    private static final String ALL_BRANCHES_OPT_INFO = "Rewrite all local branches containing reworded commits, implies --batch-ref-update";
+
+    private static final String REMOTES_OPT_SHORT = "r";
+    private static final String REMOTES_OPT_LONG = "remotes";
+    private static final String REMOTES_OPT_INFO = "With --all-branches rewrite remote-tracking branches too";
+
+    private static final String TAGS_OPT_SHORT = "t";
+    private static final String TAGS_OPT_LONG = "tags";
+    private static final String TAGS_OPT_INFO = "Rewrite tags pointing to reworded commits or their descendants, implies --batch-ref-update";
+
+    private static final String THREADS_OPT_SHORT = "j";
+    private static final String THREADS_OPT_LONG = "threads";
+    private static final String THREADS_OPT_INFO = "Count of threads new commits are written with, implies --batch-ref-update";
+
+    private static final String COMMIT_MAP_OPT_SHORT = "c";
+    private static final String COMMIT_MAP_OPT_LONG = "commit-map";
+    private static final String COMMIT_MAP_OPT_INFO = "Write old and new ids of visited commits (not changed ones to themselves) to a file after refs are updated, in git filter-repo commit-map format";
+
+    private static final String DRY_RUN_OPT_SHORT = "n";
+    private static final String DRY_RUN_OPT_LONG = "dry-run";
+    private static final String DRY_RUN_OPT_INFO = "Only compute new commit ids and print them, nothing is written to the repository";
+    private static final String DRY_RUN_PREFIX = "[ Dry run ] ";
+
+    private static final String COMMITTER_DATE_OPT_LONG = "committer-date";
+    private static final String COMMITTER_DATE_OPT_INFO = "Committer date of new commits, '[@]SECONDS +HHMM' or ISO 8601. Defaults to GIT_COMMITTER_DATE, otherwise the reword start time";
+    private static final String COMMITTER_DATE_ENV = "GIT_COMMITTER_DATE";
+
     private static final String USAGE = "git-fast-reword {COMMIT-ID MSG}|{COMMITS-LIST-FILE-PATH} [OPTIONS]";
 
     private static final int EXIT_SUCCESS = 0;
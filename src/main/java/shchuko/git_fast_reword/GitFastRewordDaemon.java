@@ -0,0 +1,539 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived process running CLI requests of {@link DaemonClient}. Repositories are kept open between requests
+ * together with their parsed commits and commit-graphs (see {@link GitFastReword#setKeepCommitCache(boolean)}),
+ * JGit pack index windows stay in the process-wide cache, so repeated rewords skip JVM startup and repository opening.
+ * A repository is closed after it is not used for a while, the daemon stops after it gets no requests for a while.
+ * Repositories are kept by the canonical path of their git directory found from the working directory like git does,
+ * so requests from subdirectories of a repository share it and are run one by one.
+ * <p>
+ * The daemon listens on a loopback TCP port. The port and a random token are written to the daemon file readable
+ * by the owner only, a request without the token is rejected. The daemon file is guarded by a lock, so only one daemon
+ * serves it.
+ * <p>
+ * Request: protocol version (int), token, working directory, args count (int) and args. Strings are sent as UTF-8
+ * bytes count (int) and bytes. Response: frames of type (byte) and payload - output and error bytes (count and bytes)
+ * and the exit status (int) ending the response. The token is checked before the rest of the request is read, sizes
+ * of the request parts are limited, a request not sent in time is dropped. Requests are run by a bounded thread pool,
+ * connections exceeding its queue are closed
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public class GitFastRewordDaemon implements Closeable {
+    static final int PROTOCOL_VERSION = 1;
+    static final byte FRAME_OUT = 1;
+    static final byte FRAME_ERR = 2;
+    static final byte FRAME_EXIT = 3;
+
+    static final String PORT_PROPERTY = "port";
+    static final String TOKEN_PROPERTY = "token";
+
+    private static final long REPOSITORY_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final long DAEMON_IDLE_TIMEOUT_MILLIS = TimeUnit.HOURS.toMillis(3);
+    private static final long EVICTION_PERIOD_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final int TOKEN_LENGTH = 32;
+    private static final int FRAME_BUFFER_SIZE = 8192;
+
+    private static final int REQUEST_READ_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(10);
+    private static final int MAX_STRING_BYTES = 1 << 20;
+    private static final int MAX_REQUEST_BYTES = 16 << 20;
+    private static final int MAX_ARGS_COUNT = 1024;
+    private static final int MAX_REQUEST_THREADS = 8;
+    private static final int MAX_QUEUED_REQUESTS = 64;
+
+    private final Path daemonFile;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final ServerSocket serverSocket;
+    private final String token;
+    private final long repositoryIdleTimeoutMillis;
+    private final long daemonIdleTimeoutMillis;
+
+    private final ThreadPoolExecutor requestExecutor = new ThreadPoolExecutor(MAX_REQUEST_THREADS, MAX_REQUEST_THREADS,
+            1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(MAX_QUEUED_REQUESTS), runnable -> {
+        Thread thread = new Thread(runnable, "git-fast-reword-request");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ScheduledExecutorService evictionExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "git-fast-reword-eviction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // <canonical git directory, or working directory outside of a repository; repository kept open>, guarded by this
+    private final Map<Path, WarmRepository> repositories = new HashMap<>();
+    private int activeRequestsCount;
+    private long lastRequestTime = System.currentTimeMillis();
+    private boolean closed;
+
+    /**
+     * Start the daemon serving the default daemon file (see {@link #getDefaultDaemonFile()}) or the passed one
+     *
+     * @param args Optional path to the daemon file
+     */
+    public static void main(String[] args) {
+        Path daemonFile = args.length > 0 ? Paths.get(args[0]) : getDefaultDaemonFile();
+        GitFastRewordDaemon daemon;
+        try {
+            daemon = start(daemonFile, REPOSITORY_IDLE_TIMEOUT_MILLIS, DAEMON_IDLE_TIMEOUT_MILLIS);
+        } catch (IOException e) {
+            System.err.println("Daemon start failed: " + e.getMessage());
+            return;
+        }
+        if (daemon == null) {
+            System.err.println("Daemon is already running: " + daemonFile);
+            return;
+        }
+        daemon.serve();
+    }
+
+    /**
+     * Get the daemon file the CLI uses by default
+     *
+     * @return Path to the daemon file in the user home directory
+     */
+    static Path getDefaultDaemonFile() {
+        return Paths.get(System.getProperty("user.home"), ".git-fast-reword", "daemon");
+    }
+
+    /**
+     * Start a daemon: lock the daemon file, listen on a loopback port and publish the port and the token
+     *
+     * @param daemonFile                  Daemon file to publish the port and the token to
+     * @param repositoryIdleTimeoutMillis Time a repository is kept open without requests
+     * @param daemonIdleTimeoutMillis     Time the daemon runs without requests
+     * @return Started daemon or null if another daemon serves the file
+     * @throws IOException In case of any I/O errors
+     */
+    static GitFastRewordDaemon start(Path daemonFile, long repositoryIdleTimeoutMillis, long daemonIdleTimeoutMillis)
+            throws IOException {
+        Path directory = daemonFile.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        setOwnerOnlyPermissions(directory, "rwx------");
+
+        FileChannel lockChannel = FileChannel.open(directory.resolve(daemonFile.getFileName() + ".lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Locked by a daemon of this process
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            return null;
+        }
+
+        try {
+            return new GitFastRewordDaemon(daemonFile, lockChannel, lock, repositoryIdleTimeoutMillis,
+                    daemonIdleTimeoutMillis);
+        } catch (IOException e) {
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    private GitFastRewordDaemon(Path daemonFile, FileChannel lockChannel, FileLock lock,
+                                long repositoryIdleTimeoutMillis, long daemonIdleTimeoutMillis) throws IOException {
+        this.daemonFile = daemonFile;
+        this.lockChannel = lockChannel;
+        this.lock = lock;
+        this.repositoryIdleTimeoutMillis = repositoryIdleTimeoutMillis;
+        this.daemonIdleTimeoutMillis = daemonIdleTimeoutMillis;
+
+        byte[] tokenBytes = new byte[TOKEN_LENGTH / 2];
+        new SecureRandom().nextBytes(tokenBytes);
+        StringBuilder tokenBuilder = new StringBuilder(TOKEN_LENGTH);
+        for (byte b : tokenBytes) {
+            tokenBuilder.append(String.format("%02x", b));
+        }
+        token = tokenBuilder.toString();
+
+        serverSocket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+        try {
+            writeDaemonFile();
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+
+        requestExecutor.allowCoreThreadTimeOut(true);
+        long period = Math.min(EVICTION_PERIOD_MILLIS, Math.max(1, repositoryIdleTimeoutMillis));
+        evictionExecutor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Accept requests until the daemon is closed
+     */
+    void serve() {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                // Socket is closed by close()
+                break;
+            }
+            try {
+                requestExecutor.execute(() -> handleRequest(socket));
+            } catch (RejectedExecutionException e) {
+                // Too many requests or the daemon is closed
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        close();
+    }
+
+    /**
+     * Get count of repositories kept open
+     *
+     * @return Count of repositories
+     */
+    synchronized int getOpenRepositoriesCount() {
+        return repositories.size();
+    }
+
+    /**
+     * Stop accepting requests, close the repositories and remove the daemon file
+     */
+    @Override
+    public void close() {
+        List<WarmRepository> toClose;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            toClose = new ArrayList<>(repositories.values());
+            repositories.clear();
+        }
+
+        evictionExecutor.shutdownNow();
+        requestExecutor.shutdown();
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+        }
+        for (WarmRepository repository : toClose) {
+            synchronized (repository) {
+                repository.gitFastReword.close();
+            }
+        }
+        try {
+            Files.deleteIfExists(daemonFile);
+            lock.release();
+            lockChannel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void handleRequest(Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            // Only reading of the request is timed out, the reword itself may take long
+            socket.setSoTimeout(REQUEST_READ_TIMEOUT_MILLIS);
+            if (in.readInt() != PROTOCOL_VERSION
+                    || !MessageDigest.isEqual(token.getBytes(StandardCharsets.US_ASCII),
+                    readString(in, TOKEN_LENGTH).getBytes(StandardCharsets.US_ASCII))) {
+                return;
+            }
+
+            byte[] workDirBytes = readBytes(in, MAX_STRING_BYTES);
+            int requestBytesLeft = MAX_REQUEST_BYTES - workDirBytes.length;
+            Path workDir = Paths.get(new String(workDirBytes, StandardCharsets.UTF_8)).toAbsolutePath().normalize();
+            int argsCount = in.readInt();
+            if (argsCount < 0 || argsCount > MAX_ARGS_COUNT) {
+                throw new IOException("Too many args: " + argsCount);
+            }
+            String[] args = new String[argsCount];
+            for (int i = 0; i < args.length; ++i) {
+                byte[] argBytes = readBytes(in, Math.min(MAX_STRING_BYTES, requestBytesLeft));
+                requestBytesLeft -= argBytes.length;
+                args[i] = new String(argBytes, StandardCharsets.UTF_8);
+            }
+            socket.setSoTimeout(0);
+
+            // Output lines are sent as they are printed, the exit status ends the response
+            PrintStream outStream = new PrintStream(new BufferedOutputStream(new FrameOutputStream(out, FRAME_OUT),
+                    FRAME_BUFFER_SIZE), true);
+            PrintStream errStream = new PrintStream(new BufferedOutputStream(new FrameOutputStream(out, FRAME_ERR),
+                    FRAME_BUFFER_SIZE), true);
+            int exitStatus = run(args, workDir, outStream, errStream);
+            outStream.flush();
+            errStream.flush();
+            synchronized (out) {
+                out.writeByte(FRAME_EXIT);
+                out.writeInt(exitStatus);
+                out.flush();
+            }
+        } catch (SocketException ignored) {
+            // Client has gone
+        } catch (IOException e) {
+            System.err.println("Request failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Run a CLI request on the repository kept open for the working directory
+     */
+    private int run(String[] args, Path workDir, PrintStream out, PrintStream err) {
+        Path gitDir = findGitDir(workDir);
+        Path key = gitDir != null ? gitDir : workDir;
+        WarmRepository repository = acquire(key);
+        if (repository == null) {
+            err.println("Daemon is stopping");
+            return 1;
+        }
+        try {
+            // Requests to the same repository are run one by one
+            synchronized (repository) {
+                if (gitDir != null && !repository.gitFastReword.isOpen()) {
+                    try {
+                        repository.gitFastReword.openRepository(gitDir);
+                    } catch (RepositoryNotFoundException | IOException ignored) {
+                        // CLI opens it by the working directory and reports the error
+                    }
+                }
+                GitFastRewordCli cli = new GitFastRewordCli(args, workDir, out, err, repository.gitFastReword);
+                cli.run();
+                return cli.getExitStatus();
+            }
+        } finally {
+            release(key, repository);
+        }
+    }
+
+    /**
+     * Find git directory of the repository containing a directory, parent directories are searched like git does
+     *
+     * @param workDir Directory to start search from
+     * @return Canonical path of the git directory or null if the directory is not in a repository
+     */
+    private static Path findGitDir(Path workDir) {
+        File gitDir = new FileRepositoryBuilder().findGitDir(workDir.toFile()).getGitDir();
+        if (gitDir == null) {
+            return null;
+        }
+        try {
+            return gitDir.toPath().toRealPath();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private synchronized WarmRepository acquire(Path key) {
+        if (closed) {
+            return null;
+        }
+        WarmRepository repository = repositories.computeIfAbsent(key, dir -> {
+            GitFastReword gitFastReword = new GitFastReword();
+            gitFastReword.setKeepCommitCache(true);
+            return new WarmRepository(gitFastReword);
+        });
+        ++repository.activeRequestsCount;
+        ++activeRequestsCount;
+        return repository;
+    }
+
+    private void release(Path key, WarmRepository repository) {
+        boolean closeRepository = false;
+        synchronized (this) {
+            --repository.activeRequestsCount;
+            --activeRequestsCount;
+            repository.lastUsedTime = lastRequestTime = System.currentTimeMillis();
+            // Not a repository, nothing to keep
+            if (repository.activeRequestsCount == 0 && !repository.gitFastReword.isOpen()
+                    && repositories.get(key) == repository) {
+                repositories.remove(key);
+                closeRepository = true;
+            }
+        }
+        if (closeRepository) {
+            repository.gitFastReword.close();
+        }
+    }
+
+    /**
+     * Close repositories not used for the repository idle timeout, stop the daemon if it has no requests for the
+     * daemon idle timeout
+     */
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        List<WarmRepository> toClose = new ArrayList<>();
+        boolean stop;
+        synchronized (this) {
+            Iterator<WarmRepository> iterator = repositories.values().iterator();
+            while (iterator.hasNext()) {
+                WarmRepository repository = iterator.next();
+                if (repository.activeRequestsCount == 0 && now - repository.lastUsedTime >= repositoryIdleTimeoutMillis) {
+                    iterator.remove();
+                    toClose.add(repository);
+                }
+            }
+            stop = activeRequestsCount == 0 && repositories.isEmpty() && now - lastRequestTime >= daemonIdleTimeoutMillis;
+        }
+
+        for (WarmRepository repository : toClose) {
+            synchronized (repository) {
+                repository.gitFastReword.close();
+            }
+        }
+        if (stop) {
+            try {
+                serverSocket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void writeDaemonFile() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(PORT_PROPERTY, Integer.toString(serverSocket.getLocalPort()));
+        properties.setProperty(TOKEN_PROPERTY, token);
+
+        // Written aside and moved, so a client never reads a partial file
+        Path tempFile = daemonFile.resolveSibling(daemonFile.getFileName() + ".tmp");
+        Files.deleteIfExists(tempFile);
+        Files.createFile(tempFile);
+        setOwnerOnlyPermissions(tempFile, "rw-------");
+        try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.ISO_8859_1)) {
+            properties.store(writer, null);
+        }
+        Files.move(tempFile, daemonFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void setOwnerOnlyPermissions(Path path, String permissions) throws IOException {
+        try {
+            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString(permissions));
+        } catch (UnsupportedOperationException ignored) {
+            // Not a POSIX filesystem, the user directory permissions are relied on
+        }
+    }
+
+    /**
+     * Read a string sent as UTF-8 bytes count and bytes
+     *
+     * @param in        Stream to read from
+     * @param maxLength Max bytes count, the bytes are not read if the count is higher
+     * @return Read string
+     * @throws IOException In case of I/O errors or if the string is too long
+     */
+    private static String readString(DataInputStream in, int maxLength) throws IOException {
+        return new String(readBytes(in, maxLength), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(DataInputStream in, int maxLength) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > maxLength) {
+            throw new IOException("Request string of " + length + " bytes exceeds the limit of " + maxLength);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Repository kept open between requests
+     */
+    private static final class WarmRepository {
+        private final GitFastReword gitFastReword;
+        private int activeRequestsCount;
+        private long lastUsedTime;
+
+        WarmRepository(GitFastReword gitFastReword) {
+            this.gitFastReword = gitFastReword;
+        }
+    }
+
+    /**
+     * Stream sending written bytes as response frames of a type, frames of the output and error streams of one
+     * response are not interleaved
+     */
+    private static final class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte type;
+
+        FrameOutputStream(DataOutputStream out, byte type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            synchronized (out) {
+                out.writeByte(type);
+                out.writeInt(len);
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (out) {
+                out.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+
+/**
+ * Inserter computing ids of objects without writing them, used in dry-run mode. Unlike
+ * {@link ObjectInserter.Formatter}, objects given as byte arrays can be inserted
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+class HashOnlyObjectInserter extends ObjectInserter.Formatter {
+    @Override
+    public ObjectId insert(int type, byte[] data, int off, int len) {
+        return idFor(type, data, off, len);
+    }
+}
@@ -0,0 +1,121 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Lower bound of a history walk: commits below it can't be descendants of the commits the cutoff is made for.
+ * <p>
+ * Generation numbers are compared if the commit-graph has them for all of the commits, a commit missing in the
+ * commit-graph is never below such a cutoff (the graph contains all ancestors of its commits). Otherwise commit times
+ * are compared, that is wrong only for commits with skewed clocks. Exact generation numbers are not computed for
+ * a cutoff, without commit-graph that walks the whole history down to the root commits
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+final class HistoryCutoff {
+    private final CommitLookup commitLookup;
+    private final boolean byGeneration;
+    private final long bound;
+
+    private HistoryCutoff(CommitLookup commitLookup, boolean byGeneration, long bound) {
+        this.commitLookup = commitLookup;
+        this.byGeneration = byGeneration;
+        this.bound = bound;
+    }
+
+    /**
+     * Create cutoff by generation number
+     *
+     * @param commitLookup Commits lookup to read generation numbers with
+     * @param generation   Commits with lower generation number are below the cutoff
+     * @return Cutoff
+     */
+    static HistoryCutoff byGeneration(CommitLookup commitLookup, int generation) {
+        return new HistoryCutoff(commitLookup, true, generation);
+    }
+
+    /**
+     * Create cutoff by commit time
+     *
+     * @param commitLookup Commits lookup to read commit times with
+     * @param commitTime   Commits with lower committer time are below the cutoff, seconds since epoch
+     * @return Cutoff
+     */
+    static HistoryCutoff byCommitTime(CommitLookup commitLookup, long commitTime) {
+        return new HistoryCutoff(commitLookup, false, commitTime);
+    }
+
+    /**
+     * Create cutoff for the commits: commits below it are descendants of none of them
+     *
+     * @param commitLookup Commits lookup to read generation numbers and commit times with
+     * @param commitsIds   Commits to create the cutoff for, must not be empty
+     * @return Cutoff by the lowest generation number if all the commits have ones in the commit-graph, otherwise by
+     * the lowest commit time
+     * @throws IOException In case of any fatal JGit errors (ex. commit not exists)
+     */
+    static HistoryCutoff of(CommitLookup commitLookup, Collection<? extends AnyObjectId> commitsIds)
+            throws IOException {
+        if (hasGraphGenerations(commitLookup, commitsIds)) {
+            int lowestGeneration = Integer.MAX_VALUE;
+            for (var commitId : commitsIds) {
+                lowestGeneration = Math.min(lowestGeneration, commitLookup.getGraphGeneration(commitId));
+            }
+            return byGeneration(commitLookup, lowestGeneration);
+        }
+
+        long lowestCommitTime = Long.MAX_VALUE;
+        for (var commitId : commitsIds) {
+            lowestCommitTime = Math.min(lowestCommitTime, commitLookup.getCommitTime(commitId));
+        }
+        return byCommitTime(commitLookup, lowestCommitTime);
+    }
+
+    /**
+     * Check do all the commits have generation numbers in the commit-graph
+     *
+     * @param commitLookup Commits lookup to read generation numbers with
+     * @param commitsIds   Commits to check
+     * @return True if generation numbers of all the commits are known
+     */
+    static boolean hasGraphGenerations(CommitLookup commitLookup, Collection<? extends AnyObjectId> commitsIds) {
+        for (var commitId : commitsIds) {
+            if (commitLookup.getGraphGeneration(commitId) == CommitLookup.GENERATION_UNKNOWN) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check is a commit below the cutoff
+     *
+     * @param commitId Commit id
+     * @return True if the commit can't be a descendant of the commits the cutoff is made for
+     * @throws IOException In case of any fatal JGit errors (ex. commit not exists)
+     */
+    boolean isBelow(AnyObjectId commitId) throws IOException {
+        if (byGeneration) {
+            int generation = commitLookup.getGraphGeneration(commitId);
+            return generation != CommitLookup.GENERATION_UNKNOWN && generation < bound;
+        }
+        return commitLookup.getCommitTime(commitId) < bound;
+    }
+
+    /**
+     * @return True if generation numbers are compared, false if commit times are
+     */
+    boolean isByGeneration() {
+        return byGeneration;
+    }
+
+    /**
+     * @return Lowest generation number or commit time not below the cutoff
+     */
+    long getBound() {
+        return bound;
+    }
+}
@@ -0,0 +1,101 @@
+package shchuko.git_fast_reword;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only memory-mapped file of any size. The file is mapped by windows, a window is remapped when a requested
+ * range is out of it. Slices returned earlier stay valid after remapping, as they keep their mappings alive
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+class MappedInput implements Closeable {
+    static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    /**
+     * Open mapped file
+     *
+     * @param path       Path to the file
+     * @param windowSize Preferred size of mapped windows
+     * @throws IOException If the file can't be opened
+     */
+    MappedInput(Path path, int windowSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * @return File size
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Get a byte
+     *
+     * @param position Position in the file, must be less than the file size
+     * @return Byte value
+     * @throws IOException If the file can't be mapped
+     */
+    byte get(long position) throws IOException {
+        ensureMapped(position, 1);
+        return window.get((int) (position - windowStart));
+    }
+
+    /**
+     * Get a big-endian int
+     *
+     * @param position Position in the file, 4 bytes must be available
+     * @return Int value
+     * @throws IOException If the file can't be mapped
+     */
+    int getInt(long position) throws IOException {
+        ensureMapped(position, Integer.BYTES);
+        return window.getInt((int) (position - windowStart));
+    }
+
+    /**
+     * Get bytes range of the file, no bytes are copied
+     *
+     * @param position Range start in the file
+     * @param length   Range length, position + length must not exceed the file size
+     * @return Read-only buffer of the range, its position is 0
+     * @throws IOException If the file can't be mapped
+     */
+    ByteBuffer slice(long position, int length) throws IOException {
+        ensureMapped(position, length);
+        ByteBuffer slice = window.duplicate();
+        int offset = (int) (position - windowStart);
+        slice.position(offset).limit(offset + length);
+        return slice.slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private void ensureMapped(long position, int length) throws IOException {
+        if (window != null && position >= windowStart && position + length <= windowStart + window.capacity()) {
+            return;
+        }
+        long mappedLength = Math.min(size - position, Math.max(windowSize, length));
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, mappedLength);
+        windowStart = position;
+    }
+}
@@ -0,0 +1,288 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Common ancestor search ordered by commit generation numbers, scales to tens of thousands of commits.
+ * <p>
+ * Commits are processed from the lowest generation to the highest one, the merge base of already processed commits
+ * is kept. Most of the commits reach the current merge base, that is checked by a walk memoizing commits known to
+ * reach it and commits known not to reach it, so each commit is walked about once while the merge base is not
+ * changed. Only if a commit does not reach the merge base, a pairwise merge base search is done.
+ * <p>
+ * Generation numbers are read from commit-graph only. Commits without them are ordered by commit time, and pairwise
+ * search is done by JGit date ordered walk, like git does without commit-graph
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+class MergeBaseFinder {
+    private static final int REACHABLE_FROM_LEFT = 1;
+    private static final int REACHABLE_FROM_RIGHT = 2;
+    private static final int REACHABLE_FROM_BOTH = REACHABLE_FROM_LEFT | REACHABLE_FROM_RIGHT;
+
+    private final CommitLookup commitLookup;
+
+    /**
+     * Create merge base finder
+     *
+     * @param commitLookup Commits lookup to read parents, generation numbers and commit times with
+     */
+    MergeBaseFinder(CommitLookup commitLookup) {
+        this.commitLookup = commitLookup;
+    }
+
+    /**
+     * Find the commit to rebase the commits onto: the first parent of their common ancestor
+     *
+     * @param commitsIds Commits to find common ancestor of, must not be empty
+     * @return Search result or null if the commits have no common ancestor or it has no parents
+     * @throws IOException In case of any fatal JGit errors (ex. commit not exists)
+     */
+    RebaseOnto findRebaseOnto(Collection<? extends AnyObjectId> commitsIds) throws IOException {
+        ObjectId mergeBaseId = findMergeBase(commitsIds);
+        if (mergeBaseId == null) {
+            return null;
+        }
+
+        ObjectId[] mergeBaseParents = commitLookup.getParents(mergeBaseId);
+        if (mergeBaseParents.length == 0) {
+            return null;
+        }
+        ObjectId ontoId = mergeBaseParents[0];
+        return new RebaseOnto(mergeBaseId, ontoId, commitLookup.getGraphGeneration(ontoId),
+                commitLookup.getCommitTime(ontoId));
+    }
+
+    /**
+     * Find common ancestor of all the commits, such that no other common ancestor is its descendant
+     *
+     * @param commitsIds Commits to find common ancestor of, must not be empty
+     * @return Common ancestor id or null if the commits have no common ancestor
+     * @throws IOException In case of any fatal JGit errors (ex. commit not exists)
+     */
+    ObjectId findMergeBase(Collection<? extends AnyObjectId> commitsIds) throws IOException {
+        // Order only affects how often the merge base is moved, not the result
+        boolean byGeneration = HistoryCutoff.hasGraphGenerations(commitLookup, commitsIds);
+        Map<ObjectId, Long> orderKeys = new HashMap<>();
+        for (var commitId : commitsIds) {
+            orderKeys.put(commitId.toObjectId(),
+                    byGeneration ? commitLookup.getGraphGeneration(commitId) : commitLookup.getCommitTime(commitId));
+        }
+        List<ObjectId> commits = new ArrayList<>(orderKeys.keySet());
+        commits.sort(Comparator.comparingLong(orderKeys::get));
+
+        // Descendants of the merge base can't move it, only ones not reaching it can
+        ObjectId mergeBase = commits.get(0);
+        HistoryCutoff mergeBaseCutoff = HistoryCutoff.of(commitLookup, List.of(mergeBase));
+        Set<ObjectId> reachingMergeBase = new HashSet<>();
+        Set<ObjectId> notReachingMergeBase = new HashSet<>();
+        reachingMergeBase.add(mergeBase);
+
+        for (int i = 1; i < commits.size(); ++i) {
+            ObjectId commitId = commits.get(i);
+            if (reachesMergeBase(commitId, mergeBaseCutoff, reachingMergeBase, notReachingMergeBase)) {
+                continue;
+            }
+
+            mergeBase = findMergeBase(mergeBase, commitId);
+            if (mergeBase == null) {
+                return null;
+            }
+            mergeBaseCutoff = HistoryCutoff.of(commitLookup, List.of(mergeBase));
+            // Commits reaching the old merge base reach the new one (its ancestor), other ones are unknown
+            notReachingMergeBase.clear();
+            reachingMergeBase.add(mergeBase);
+            reachingMergeBase.add(commitId);
+        }
+        return mergeBase;
+    }
+
+    /**
+     * Find best common ancestor of two commits: no other common ancestor is its descendant. Generation numbers
+     * are used if commit-graph has them for all the walked commits, otherwise search is ordered by commit time
+     *
+     * @param leftCommitId  First commit
+     * @param rightCommitId Second commit
+     * @return Common ancestor id or null if the commits have no common ancestor
+     * @throws IOException In case of any fatal JGit errors (ex. commit not exists)
+     */
+    ObjectId findMergeBase(AnyObjectId leftCommitId, AnyObjectId rightCommitId) throws IOException {
+        if (leftCommitId.equals(rightCommitId)) {
+            return leftCommitId.toObjectId();
+        }
+
+        int leftGeneration = commitLookup.getGraphGeneration(leftCommitId);
+        int rightGeneration = commitLookup.getGraphGeneration(rightCommitId);
+        if (leftGeneration == CommitLookup.GENERATION_UNKNOWN || rightGeneration == CommitLookup.GENERATION_UNKNOWN) {
+            return findMergeBaseByCommitTime(leftCommitId, rightCommitId);
+        }
+
+        Map<ObjectId, WalkNode> nodes = new HashMap<>();
+        PriorityQueue<WalkNode> queue = new PriorityQueue<>();
+        paint(leftCommitId.toObjectId(), leftGeneration, REACHABLE_FROM_LEFT, nodes, queue);
+        paint(rightCommitId.toObjectId(), rightGeneration, REACHABLE_FROM_RIGHT, nodes, queue);
+
+        // Parents have lower generation than children, so a commit is polled only after all its walked children
+        // and its flags are final. The first commit reachable from both sides has the highest generation among
+        // common ancestors, thus it can't be an ancestor of other common ancestor
+        while (!queue.isEmpty()) {
+            WalkNode node = queue.poll();
+            if (node.flags == REACHABLE_FROM_BOTH) {
+                return node.commitId;
+            }
+            for (var parentId : commitLookup.getParents(node.commitId)) {
+                int parentGeneration = commitLookup.getGraphGeneration(parentId);
+                if (parentGeneration == CommitLookup.GENERATION_UNKNOWN) {
+                    return findMergeBaseByCommitTime(leftCommitId, rightCommitId);
+                }
+                paint(parentId, parentGeneration, node.flags, nodes, queue);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find best common ancestor of two commits by JGit walk ordered by commit time, like git does without
+     * commit-graph. The result might be wrong only if commit times are skewed
+     */
+    private ObjectId findMergeBaseByCommitTime(AnyObjectId leftCommitId, AnyObjectId rightCommitId)
+            throws IOException {
+        try (RevWalk walk = new RevWalk(commitLookup.getObjectReader())) {
+            walk.setRevFilter(RevFilter.MERGE_BASE);
+            walk.markStart(walk.parseCommit(leftCommitId));
+            walk.markStart(walk.parseCommit(rightCommitId));
+            RevCommit mergeBase = walk.next();
+            return mergeBase != null ? mergeBase.copy() : null;
+        }
+    }
+
+    /**
+     * Check does a commit reach the merge base. Depth-first search is used, so when the merge base is reached,
+     * the whole search path is known to reach it. Commits below the merge base cutoff can't reach it
+     */
+    private boolean reachesMergeBase(ObjectId commitId, HistoryCutoff mergeBaseCutoff,
+                                     Set<ObjectId> reachingMergeBase, Set<ObjectId> notReachingMergeBase)
+            throws IOException {
+        if (reachingMergeBase.contains(commitId)) {
+            return true;
+        }
+        if (notReachingMergeBase.contains(commitId) || mergeBaseCutoff.isBelow(commitId)) {
+            return false;
+        }
+
+        Deque<SearchFrame> stack = new ArrayDeque<>();
+        stack.push(new SearchFrame(commitId, commitLookup.getParents(commitId)));
+        while (!stack.isEmpty()) {
+            SearchFrame frame = stack.peek();
+            if (frame.nextParentIndex == frame.parentsIds.length) {
+                stack.pop();
+                notReachingMergeBase.add(frame.commitId);
+                continue;
+            }
+
+            ObjectId parentId = frame.parentsIds[frame.nextParentIndex++];
+            if (reachingMergeBase.contains(parentId)) {
+                for (var pathFrame : stack) {
+                    reachingMergeBase.add(pathFrame.commitId);
+                }
+                return true;
+            }
+            if (!notReachingMergeBase.contains(parentId) && !mergeBaseCutoff.isBelow(parentId)) {
+                stack.push(new SearchFrame(parentId, commitLookup.getParents(parentId)));
+            }
+        }
+        return false;
+    }
+
+    private static void paint(ObjectId commitId, int generation, int flags, Map<ObjectId, WalkNode> nodes,
+                              PriorityQueue<WalkNode> queue) {
+        WalkNode node = nodes.get(commitId);
+        if (node == null) {
+            node = new WalkNode(commitId, generation);
+            nodes.put(commitId, node);
+            queue.add(node);
+        }
+        // Queue order depends on generation only, a queued node is updated in place
+        node.flags |= flags;
+    }
+
+    /**
+     * Commit to rebase onto with its generation number and time
+     */
+    static final class RebaseOnto {
+        private final ObjectId mergeBaseId;
+        private final ObjectId commitId;
+        private final int generation;
+        private final long commitTime;
+
+        private RebaseOnto(ObjectId mergeBaseId, ObjectId commitId, int generation, long commitTime) {
+            this.mergeBaseId = mergeBaseId;
+            this.commitId = commitId;
+            this.generation = generation;
+            this.commitTime = commitTime;
+        }
+
+        /**
+         * @return Common ancestor of the commits, 'onto' is its first parent
+         */
+        ObjectId getMergeBaseId() {
+            return mergeBaseId;
+        }
+
+        /**
+         * @return Id of the commit to rebase onto
+         */
+        ObjectId getCommitId() {
+            return commitId;
+        }
+
+        /**
+         * @return Generation number of the commit to rebase onto or {@link CommitLookup#GENERATION_UNKNOWN} if
+         * commit-graph has no generation number for it
+         */
+        int getGeneration() {
+            return generation;
+        }
+
+        /**
+         * @return Committer time of the commit to rebase onto, seconds since epoch
+         */
+        long getCommitTime() {
+            return commitTime;
+        }
+    }
+
+    private static final class SearchFrame {
+        private final ObjectId commitId;
+        private final ObjectId[] parentsIds;
+        private int nextParentIndex;
+
+        private SearchFrame(ObjectId commitId, ObjectId[] parentsIds) {
+            this.commitId = commitId;
+            this.parentsIds = parentsIds;
+        }
+    }
+
+    private static final class WalkNode implements Comparable<WalkNode> {
+        private final ObjectId commitId;
+        private final int generation;
+        private int flags;
+
+        private WalkNode(ObjectId commitId, int generation) {
+            this.commitId = commitId;
+            this.generation = generation;
+        }
+
+        @Override
+        public int compareTo(WalkNode other) {
+            return Integer.compare(other.generation, generation);
+        }
+    }
+}
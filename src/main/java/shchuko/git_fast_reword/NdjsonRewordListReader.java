@@ -0,0 +1,331 @@
+package shchuko.git_fast_reword;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Reader of NDJSON reword lists: a JSON object per line, like {"commit": "HEAD~2", "message": "New message"}.
+ * 'commit' is a revision string, other keys are ignored. The file is memory-mapped, messages are kept as slices of
+ * the mapped file and JSON escapes are decoded only when a message is needed.
+ * <p>
+ * Blank lines are skipped, lines not being such objects are skipped and counted as malformed
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public class NdjsonRewordListReader implements RewordListReader {
+    private static final String COMMIT_KEY = "commit";
+    private static final String MESSAGE_KEY = "message";
+    private static final int NOT_FOUND = -1;
+
+    private final MappedInput input;
+    private long position;
+    private int lineNumber = 1;
+    private int malformedRecordsCount;
+    private int firstMalformedRecordLine;
+
+    // Does the last scanned string have escape sequences
+    private boolean stringEscaped;
+
+    /**
+     * Open NDJSON reword list file, UTF-8 encoding is expected
+     *
+     * @param path Path to the file
+     * @throws IOException If the file can't be opened
+     */
+    public NdjsonRewordListReader(Path path) throws IOException {
+        this(path, MappedInput.DEFAULT_WINDOW_SIZE);
+    }
+
+    NdjsonRewordListReader(Path path, int windowSize) throws IOException {
+        input = new MappedInput(path, windowSize);
+        if (input.size() >= 3 && (input.get(0) & 0xFF) == 0xEF && (input.get(1) & 0xFF) == 0xBB
+                && (input.get(2) & 0xFF) == 0xBF) {
+            position = 3;
+        }
+    }
+
+    /**
+     * Read next record
+     *
+     * @return Next entry or null if there are no more records
+     * @throws IOException In case of reading errors
+     */
+    @Override
+    public RewordEntry next() throws IOException {
+        while (position < input.size()) {
+            long lineEnd = position;
+            while (lineEnd < input.size() && input.get(lineEnd) != '\n') {
+                ++lineEnd;
+            }
+            if (lineEnd - position > Integer.MAX_VALUE) {
+                throw new IOException("Line " + lineNumber + " is too long");
+            }
+
+            ByteBuffer line = input.slice(position, (int) (lineEnd - position));
+            int recordLine = lineNumber++;
+            position = Math.min(lineEnd + 1, input.size());
+
+            if (skipWhitespaces(line, 0) == line.limit()) {
+                continue;
+            }
+            RewordEntry entry = parseRecord(line);
+            if (entry == null) {
+                if (malformedRecordsCount++ == 0) {
+                    firstMalformedRecordLine = recordLine;
+                }
+                continue;
+            }
+            return entry;
+        }
+        return null;
+    }
+
+    @Override
+    public int getMalformedRecordsCount() {
+        return malformedRecordsCount;
+    }
+
+    @Override
+    public int getFirstMalformedRecordLine() {
+        return firstMalformedRecordLine;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    /**
+     * Decode JSON string content: UTF-8 bytes between the quotes, escape sequences must be valid
+     *
+     * @param bytes String content
+     * @return Decoded string
+     */
+    static String unescape(ByteBuffer bytes) {
+        String escaped = RewordEntry.decodeUtf8(bytes);
+        StringBuilder result = new StringBuilder(escaped.length());
+        for (int i = 0; i < escaped.length(); ++i) {
+            char c = escaped.charAt(i);
+            if (c != '\\') {
+                result.append(c);
+                continue;
+            }
+
+            char escape = escaped.charAt(++i);
+            switch (escape) {
+                case 'b':
+                    result.append('\b');
+                    break;
+                case 'f':
+                    result.append('\f');
+                    break;
+                case 'n':
+                    result.append('\n');
+                    break;
+                case 'r':
+                    result.append('\r');
+                    break;
+                case 't':
+                    result.append('\t');
+                    break;
+                case 'u':
+                    // Surrogate pairs are two escapes, chars are joined as they are appended
+                    result.append((char) Integer.parseInt(escaped.substring(i + 1, i + 5), 16));
+                    i += 4;
+                    break;
+                default:
+                    // '"', '\' and '/'
+                    result.append(escape);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Parse a line as a flat JSON object
+     *
+     * @return Entry or null if the line is malformed
+     */
+    private RewordEntry parseRecord(ByteBuffer line) {
+        int end = line.limit();
+        int i = skipWhitespaces(line, 0);
+        if (line.get(i) != '{') {
+            return null;
+        }
+
+        String revision = null;
+        ByteBuffer message = null;
+        boolean messageEscaped = false;
+        i = skipWhitespaces(line, i + 1);
+        while (true) {
+            if (i == end || line.get(i) != '"') {
+                return null;
+            }
+            int keyEnd = scanString(line, i);
+            if (keyEnd == NOT_FOUND) {
+                return null;
+            }
+            String key = decodeString(line, i, keyEnd, stringEscaped);
+
+            i = skipWhitespaces(line, keyEnd + 1);
+            if (i == end || line.get(i) != ':') {
+                return null;
+            }
+            i = skipWhitespaces(line, i + 1);
+            if (i == end) {
+                return null;
+            }
+
+            int valueEnd;
+            if (COMMIT_KEY.equals(key) || MESSAGE_KEY.equals(key)) {
+                valueEnd = line.get(i) == '"' ? scanString(line, i) : NOT_FOUND;
+                if (valueEnd == NOT_FOUND) {
+                    return null;
+                }
+                if (COMMIT_KEY.equals(key)) {
+                    revision = decodeString(line, i, valueEnd, stringEscaped).strip();
+                } else {
+                    message = slice(line, i + 1, valueEnd);
+                    messageEscaped = stringEscaped;
+                }
+            } else {
+                valueEnd = skipValue(line, i);
+                if (valueEnd == NOT_FOUND) {
+                    return null;
+                }
+            }
+
+            i = skipWhitespaces(line, valueEnd + 1);
+            if (i == end) {
+                return null;
+            }
+            if (line.get(i) == '}') {
+                break;
+            }
+            if (line.get(i) != ',') {
+                return null;
+            }
+            i = skipWhitespaces(line, i + 1);
+        }
+
+        if (skipWhitespaces(line, i + 1) != end || revision == null || revision.isEmpty() || message == null) {
+            return null;
+        }
+        return new RewordEntry(revision, null, message,
+                messageEscaped ? NdjsonRewordListReader::unescape : RewordEntry::decodeUtf8);
+    }
+
+    /**
+     * Scan JSON string, sets {@link #stringEscaped}
+     *
+     * @param line  Line bytes
+     * @param start Index of the opening quote
+     * @return Index of the closing quote or {@link #NOT_FOUND} if the string is malformed
+     */
+    private int scanString(ByteBuffer line, int start) {
+        stringEscaped = false;
+        int end = line.limit();
+        int i = start + 1;
+        while (i < end) {
+            int c = line.get(i) & 0xFF;
+            if (c == '"') {
+                return i;
+            }
+            if (c < 0x20) {
+                return NOT_FOUND;
+            }
+            if (c != '\\') {
+                ++i;
+                continue;
+            }
+
+            stringEscaped = true;
+            if (i + 1 == end) {
+                return NOT_FOUND;
+            }
+            int escape = line.get(i + 1);
+            if (escape == 'u') {
+                if (i + 6 > end) {
+                    return NOT_FOUND;
+                }
+                for (int j = i + 2; j < i + 6; ++j) {
+                    if (Character.digit(line.get(j), 16) == NOT_FOUND) {
+                        return NOT_FOUND;
+                    }
+                }
+                i += 6;
+            } else if ("\"\\/bfnrt".indexOf(escape) != NOT_FOUND) {
+                i += 2;
+            } else {
+                return NOT_FOUND;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Skip JSON value of any type, values other than strings, objects and arrays are not validated
+     *
+     * @param line  Line bytes
+     * @param start Index of the value first byte
+     * @return Index of the value last byte or {@link #NOT_FOUND} if the value is malformed
+     */
+    private int skipValue(ByteBuffer line, int start) {
+        int end = line.limit();
+        byte first = line.get(start);
+        if (first == '"') {
+            return scanString(line, start);
+        }
+        if (first != '{' && first != '[') {
+            // Number, true, false or null
+            if (isValueEnd(first)) {
+                return NOT_FOUND;
+            }
+            int i = start;
+            while (i + 1 < end && !isValueEnd(line.get(i + 1))) {
+                ++i;
+            }
+            return i;
+        }
+
+        int depth = 0;
+        for (int i = start; i < end; ++i) {
+            byte c = line.get(i);
+            if (c == '"') {
+                i = scanString(line, i);
+                if (i == NOT_FOUND) {
+                    return NOT_FOUND;
+                }
+            } else if (c == '{' || c == '[') {
+                ++depth;
+            } else if ((c == '}' || c == ']') && --depth == 0) {
+                return i;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    private static boolean isValueEnd(byte c) {
+        return c == ',' || c == '}' || c == ']' || Character.isWhitespace(c);
+    }
+
+    private static String decodeString(ByteBuffer line, int openingQuote, int closingQuote, boolean escaped) {
+        ByteBuffer content = slice(line, openingQuote + 1, closingQuote);
+        return escaped ? unescape(content) : RewordEntry.decodeUtf8(content);
+    }
+
+    private static ByteBuffer slice(ByteBuffer line, int start, int end) {
+        ByteBuffer slice = line.duplicate();
+        slice.position(start).limit(end);
+        return slice.slice();
+    }
+
+    private static int skipWhitespaces(ByteBuffer line, int start) {
+        int i = start;
+        while (i < line.limit() && Character.isWhitespace(line.get(i))) {
+            ++i;
+        }
+        return i;
+    }
+}
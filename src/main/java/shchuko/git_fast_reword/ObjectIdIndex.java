@@ -0,0 +1,138 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.util.Arrays;
+
+/**
+ * Set of object ids giving each id a dense index, in order of adding. Ids are stored inline as five ints in a flat
+ * array, lookup is done by an open addressing (linear probing) table of indexes, so no objects are allocated per id.
+ * Ids are SHA-1 hashes, so their bits are used as hash codes as they are
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+class ObjectIdIndex {
+    static final int ID_WORDS = Constants.OBJECT_ID_LENGTH / Integer.BYTES;
+    static final int NOT_FOUND = -1;
+
+    private static final int MIN_CAPACITY = 16;
+    private static final int EMPTY_SLOT = -1;
+
+    // Ids by index, ID_WORDS ints each
+    private int[] ids;
+    // Open addressing table: index of the id or EMPTY_SLOT, length is a power of two
+    private int[] slots;
+    private int size;
+
+    /**
+     * Create empty index
+     */
+    ObjectIdIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Create empty index
+     *
+     * @param expectedSize Count of ids to be added without resizing
+     */
+    ObjectIdIndex(int expectedSize) {
+        allocate(expectedSize);
+    }
+
+    /**
+     * @return Count of ids added
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Find index of an id
+     *
+     * @param id Id to find
+     * @return Index or {@link #NOT_FOUND}
+     */
+    int indexOf(AnyObjectId id) {
+        int mask = slots.length - 1;
+        for (int slot = id.hashCode() & mask; ; slot = (slot + 1) & mask) {
+            int index = slots[slot];
+            if (index == EMPTY_SLOT) {
+                return NOT_FOUND;
+            }
+            if (id.compareTo(ids, index * ID_WORDS) == 0) {
+                return index;
+            }
+        }
+    }
+
+    /**
+     * Add an id if it is not added yet
+     *
+     * @param id Id to add
+     * @return Index of the id, new ids get the index equal to the count of ids added before
+     */
+    int add(AnyObjectId id) {
+        int mask = slots.length - 1;
+        int slot = id.hashCode() & mask;
+        for (int index = slots[slot]; index != EMPTY_SLOT; index = slots[slot]) {
+            if (id.compareTo(ids, index * ID_WORDS) == 0) {
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int index = size++;
+        if (size * ID_WORDS > ids.length) {
+            ids = Arrays.copyOf(ids, ids.length * 2);
+        }
+        id.copyRawTo(ids, index * ID_WORDS);
+        slots[slot] = index;
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return index;
+    }
+
+    /**
+     * Get an id by its index
+     *
+     * @param index Index of the id, must be less than {@link #size()}
+     * @return New id instance
+     */
+    ObjectId getId(int index) {
+        return ObjectId.fromRaw(ids, index * ID_WORDS);
+    }
+
+    /**
+     * Remove all the ids and release allocated memory
+     */
+    void clear() {
+        allocate(MIN_CAPACITY);
+    }
+
+    private void allocate(int expectedSize) {
+        int capacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(expectedSize, 1) - 1) << 1);
+        ids = new int[capacity * ID_WORDS];
+        // Load factor is kept not higher than 0.5
+        slots = new int[capacity * 2];
+        Arrays.fill(slots, EMPTY_SLOT);
+        size = 0;
+    }
+
+    private void rehash(int slotsCount) {
+        slots = new int[slotsCount];
+        Arrays.fill(slots, EMPTY_SLOT);
+        int mask = slotsCount - 1;
+        for (int index = 0; index < size; ++index) {
+            // AnyObjectId.hashCode() is the second word of the id
+            int slot = ids[index * ID_WORDS + 1] & mask;
+            while (slots[slot] != EMPTY_SLOT) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = index;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Map with object id keys. Keys are kept by {@link ObjectIdIndex}, values are in a flat array by key index, so an
+ * entry costs no objects besides the value itself. Entries are iterated by index in order of adding
+ *
+ * @param <V> Values type
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+class ObjectIdMap<V> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final ObjectIdIndex keys = new ObjectIdIndex();
+    private Object[] values = new Object[INITIAL_CAPACITY];
+
+    /**
+     * @return Count of entries
+     */
+    int size() {
+        return keys.size();
+    }
+
+    /**
+     * @return True if the map has no entries
+     */
+    boolean isEmpty() {
+        return keys.size() == 0;
+    }
+
+    /**
+     * Get a value
+     *
+     * @param key Key to find
+     * @return Value or null if the key is not in the map
+     */
+    V get(AnyObjectId key) {
+        int index = keys.indexOf(key);
+        return index != ObjectIdIndex.NOT_FOUND ? getValue(index) : null;
+    }
+
+    /**
+     * Find index of an entry
+     *
+     * @param key Key to find
+     * @return Entry index or {@link ObjectIdIndex#NOT_FOUND}
+     */
+    int indexOf(AnyObjectId key) {
+        return keys.indexOf(key);
+    }
+
+    /**
+     * Put a value, replaces the previous value of the key
+     *
+     * @param key   Key
+     * @param value Value
+     */
+    void put(AnyObjectId key, V value) {
+        int index = keys.add(key);
+        if (index == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[index] = value;
+    }
+
+    /**
+     * Get key of an entry
+     *
+     * @param index Entry index, must be less than {@link #size()}
+     * @return New key instance
+     */
+    ObjectId getKey(int index) {
+        return keys.getId(index);
+    }
+
+    /**
+     * Get value of an entry
+     *
+     * @param index Entry index, must be less than {@link #size()}
+     * @return Value
+     */
+    @SuppressWarnings("unchecked")
+    V getValue(int index) {
+        return (V) values[index];
+    }
+
+    /**
+     * Get keys view, key instances are created while iterated
+     *
+     * @return Read-only keys collection
+     */
+    Collection<ObjectId> keys() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<ObjectId> iterator() {
+                return new Iterator<>() {
+                    private int index;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < keys.size();
+                    }
+
+                    @Override
+                    public ObjectId next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return keys.getId(index++);
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof AnyObjectId && keys.indexOf((AnyObjectId) o) != ObjectIdIndex.NOT_FOUND;
+            }
+
+            @Override
+            public int size() {
+                return keys.size();
+            }
+        };
+    }
+
+    /**
+     * Remove all the entries and release allocated memory
+     */
+    void clear() {
+        keys.clear();
+        values = new Object[INITIAL_CAPACITY];
+    }
+}
@@ -0,0 +1,416 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.internal.storage.file.PackIndexWriter;
+import org.eclipse.jgit.lib.*;
+import org.eclipse.jgit.transport.PackParser;
+import org.eclipse.jgit.transport.PackedObjectInfo;
+import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.NB;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * An object inserter writing all inserted objects into a single new pack file instead of a loose file per object.
+ * Objects are stored whole (not deltified). On {@link #flush()} pack trailer and index (v2) are written, then both
+ * files are atomically renamed into objects/pack. Inserted objects are readable only after flush
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+class PackObjectInserter extends ObjectInserter {
+    private static final int PACK_HEADER_LENGTH = 12;
+    private static final int PACK_VERSION = 2;
+    private static final int INDEX_VERSION = 2;
+    private static final byte[] ZLIB_STORED_HEADER = {0x78, 0x01};
+    private static final int MAX_STORED_BLOCK_LENGTH = 0xffff;
+
+    private final ObjectDirectory objectDirectory;
+    private final ObjectReader objectReader;
+    private final int compression;
+    private boolean checkExisting = true;
+
+    private File tmpPackFile;
+    private OutputStream packOut;
+    private long packOffset;
+
+    private final List<PackedObjectInfo> packedObjects = new ArrayList<>();
+    private final ObjectIdOwnerMap<PackedObjectInfo> packedObjectsIndex = new ObjectIdOwnerMap<>();
+
+    private final CRC32 crc32 = new CRC32();
+    private final Adler32 adler32 = new Adler32();
+    private final byte[] storedBlockBuffer = new byte[5];
+    private Deflater deflater;
+    private byte[] compressBuffer;
+
+    /**
+     * Create pack inserter
+     *
+     * @param objectDirectory Object directory to write pack into
+     * @param compression     zlib compression level
+     */
+    PackObjectInserter(ObjectDirectory objectDirectory, int compression) {
+        this.objectDirectory = objectDirectory;
+        this.objectReader = objectDirectory.newReader();
+        this.compression = compression;
+    }
+
+    /**
+     * Set lookup of inserted objects in the object database, objects already there are not written again. Objects
+     * known to be new (ex. generated into an empty repository) may skip the lookup, it costs a few file system calls
+     * per object. Objects are never written twice into the same pack
+     *
+     * @param checkExisting Pass false to skip the lookup
+     */
+    void setCheckExisting(boolean checkExisting) {
+        this.checkExisting = checkExisting;
+    }
+
+    @Override
+    public ObjectId insert(int type, byte[] data, int off, int len) throws IOException {
+        ObjectId objectId = idFor(type, data, off, len);
+        if (isInserted(objectId)) {
+            return objectId;
+        }
+
+        long objectOffset = beginObject(type, len);
+        if (compression == Deflater.NO_COMPRESSION) {
+            writeStored(data, off, len);
+            finishObject(objectId, objectOffset);
+            return objectId;
+        }
+
+        Deflater objectDeflater = getDeflater();
+        objectDeflater.setInput(data, off, len);
+        objectDeflater.finish();
+        while (!objectDeflater.finished()) {
+            int compressedLength = objectDeflater.deflate(compressBuffer);
+            writeObjectBytes(compressBuffer, 0, compressedLength);
+        }
+        finishObject(objectId, objectOffset);
+        return objectId;
+    }
+
+    /**
+     * Insert an object deflated ahead by {@link #deflate(ObjectId, int, byte[], Deflater)}
+     *
+     * @param object Deflated object
+     * @return Object id
+     * @throws IOException In case of any I/O errors
+     */
+    ObjectId insert(DeflatedObject object) throws IOException {
+        if (isInserted(object.objectId)) {
+            return object.objectId;
+        }
+
+        long objectOffset = beginObject(object.type, object.inflatedLength);
+        writeObjectBytes(object.deflatedData, 0, object.deflatedLength);
+        finishObject(object.objectId, objectOffset);
+        return object.objectId;
+    }
+
+    /**
+     * Get zlib compression level objects are deflated with
+     *
+     * @return Compression level
+     */
+    int getCompression() {
+        return compression;
+    }
+
+    /**
+     * Deflate an object to be inserted later, may be called on any thread
+     *
+     * @param objectId Object id
+     * @param type     Object type
+     * @param data     Object content
+     * @param deflater Deflater with the inserter compression level (see {@link #getCompression()}), owned by the
+     *                 calling thread
+     * @return Deflated object
+     */
+    static DeflatedObject deflate(ObjectId objectId, int type, byte[] data, Deflater deflater) {
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] deflatedData = new byte[data.length / 2 + 64];
+        int deflatedLength = 0;
+        while (!deflater.finished()) {
+            if (deflatedLength == deflatedData.length) {
+                deflatedData = Arrays.copyOf(deflatedData, deflatedData.length * 2);
+            }
+            deflatedLength += deflater.deflate(deflatedData, deflatedLength, deflatedData.length - deflatedLength);
+        }
+        return new DeflatedObject(objectId, type, data.length, deflatedData, deflatedLength);
+    }
+
+    @Override
+    public ObjectId insert(int type, long len, InputStream in) throws IOException {
+        if (len > Integer.MAX_VALUE) {
+            throw new IOException("Object is too large to be inserted into pack: " + len + " bytes");
+        }
+        byte[] data = new byte[(int) len];
+        IO.readFully(in, data, 0, data.length);
+        return insert(type, data, 0, data.length);
+    }
+
+    /**
+     * Create a parser of a received pack. The pack is stored as a separate pack of the object directory, not in the
+     * pack of this inserter
+     *
+     * @param in Pack stream
+     * @return Pack parser of the object directory
+     * @throws IOException In case of any I/O errors
+     */
+    @Override
+    public PackParser newPackParser(InputStream in) throws IOException {
+        // Called through ObjectInserter: the type newInserter() returns is not public
+        ObjectInserter directoryInserter = objectDirectory.newInserter();
+        return directoryInserter.newPackParser(in);
+    }
+
+    /**
+     * Create a reader of the repository objects. Objects inserted by this inserter are not visible until flush
+     *
+     * @return Object reader
+     */
+    @Override
+    public ObjectReader newReader() {
+        return objectDirectory.newReader();
+    }
+
+    /**
+     * Finish the pack, write its index and move both into objects/pack. Does nothing if no objects were inserted
+     *
+     * @throws IOException In case of any I/O errors, the pack is discarded then
+     */
+    @Override
+    public void flush() throws IOException {
+        if (packOut == null) {
+            return;
+        }
+
+        try {
+            byte[] packChecksum = finishPack();
+            String packName = "pack-" + ObjectId.fromRaw(packChecksum).name();
+            File packDirectory = tmpPackFile.getParentFile();
+
+            File tmpIndexFile = new File(packDirectory, tmpPackFile.getName().replaceFirst("\\.pack$", ".idx"));
+            Collections.sort(packedObjects);
+            try (OutputStream indexOut = new BufferedOutputStream(new FileOutputStream(tmpIndexFile))) {
+                PackIndexWriter.createVersion(indexOut, INDEX_VERSION).write(packedObjects, packChecksum);
+            }
+
+            // Pack must appear before its index, readers discover packs by index files
+            File packFile = new File(packDirectory, packName + ".pack");
+            File indexFile = new File(packDirectory, packName + ".idx");
+            Files.move(tmpPackFile.toPath(), packFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tmpIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            objectDirectory.openPack(packFile);
+        } finally {
+            discardPack();
+        }
+    }
+
+    /**
+     * Release resources, not flushed objects are discarded
+     */
+    @Override
+    public void close() {
+        discardPack();
+        objectReader.close();
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+    }
+
+    private void beginPack() throws IOException {
+        if (packOut != null) {
+            return;
+        }
+
+        File packDirectory = new File(objectDirectory.getDirectory(), "pack");
+        if (!packDirectory.isDirectory() && !packDirectory.mkdirs()) {
+            throw new IOException("Can't create pack directory " + packDirectory.getAbsolutePath());
+        }
+
+        // 'tmp_pack_' prefix is used by git itself, leftovers are cleaned by 'git gc'
+        tmpPackFile = File.createTempFile("tmp_pack_", ".pack", packDirectory);
+        packOut = new BufferedOutputStream(new FileOutputStream(tmpPackFile));
+
+        // Object count is unknown yet, it is written on flush
+        byte[] header = new byte[PACK_HEADER_LENGTH];
+        System.arraycopy(Constants.PACK_SIGNATURE, 0, header, 0, Constants.PACK_SIGNATURE.length);
+        NB.encodeInt32(header, 4, PACK_VERSION);
+        packOut.write(header);
+        packOffset = PACK_HEADER_LENGTH;
+    }
+
+    /**
+     * Write objects count into pack header and append the pack checksum
+     *
+     * @return Pack checksum
+     * @throws IOException In case of any I/O errors
+     */
+    private byte[] finishPack() throws IOException {
+        packOut.close();
+        packOut = null;
+
+        try (RandomAccessFile pack = new RandomAccessFile(tmpPackFile, "rw")) {
+            byte[] objectsCount = new byte[4];
+            NB.encodeInt32(objectsCount, 0, packedObjects.size());
+            pack.seek(8);
+            pack.write(objectsCount);
+
+            // Header is changed, so checksum is computed over the whole file once
+            MessageDigest packDigest = Constants.newMessageDigest();
+            byte[] buffer = buffer();
+            pack.seek(0);
+            int readLength;
+            while ((readLength = pack.read(buffer)) > 0) {
+                packDigest.update(buffer, 0, readLength);
+            }
+
+            byte[] packChecksum = packDigest.digest();
+            pack.write(packChecksum);
+            pack.getFD().sync();
+            return packChecksum;
+        }
+    }
+
+    private void discardPack() {
+        if (packOut != null) {
+            try {
+                packOut.close();
+            } catch (IOException ignored) {
+                // Pack is deleted anyway
+            }
+            packOut = null;
+        }
+        if (tmpPackFile != null) {
+            if (tmpPackFile.exists() && !tmpPackFile.delete()) {
+                tmpPackFile.deleteOnExit();
+            }
+            tmpPackFile = null;
+        }
+        packedObjects.clear();
+        packedObjectsIndex.clear();
+    }
+
+    private boolean isInserted(ObjectId objectId) throws IOException {
+        return packedObjectsIndex.contains(objectId) || (checkExisting && objectReader.has(objectId));
+    }
+
+    /**
+     * Start an object: write its header
+     *
+     * @return Object offset in the pack
+     */
+    private long beginObject(int type, long inflatedLength) throws IOException {
+        beginPack();
+        long objectOffset = packOffset;
+        crc32.reset();
+        byte[] header = buffer();
+        int headerLength = encodeObjectHeader(header, type, inflatedLength);
+        writeObjectBytes(header, 0, headerLength);
+        return objectOffset;
+    }
+
+    private void finishObject(ObjectId objectId, long objectOffset) {
+        PackedObjectInfo objectInfo = new PackedObjectInfo(objectId);
+        objectInfo.setOffset(objectOffset);
+        objectInfo.setCRC((int) crc32.getValue());
+        packedObjects.add(objectInfo);
+        packedObjectsIndex.add(objectInfo);
+    }
+
+    private void writeObjectBytes(byte[] bytes, int off, int len) throws IOException {
+        crc32.update(bytes, off, len);
+        packOut.write(bytes, off, len);
+        packOffset += len;
+    }
+
+    /**
+     * Write data as a zlib stream of stored (not compressed) blocks. zlib is not called, its state reset per object
+     * costs more than deflating of a small object
+     */
+    private void writeStored(byte[] data, int off, int len) throws IOException {
+        writeObjectBytes(ZLIB_STORED_HEADER, 0, ZLIB_STORED_HEADER.length);
+        int position = off;
+        int end = off + len;
+        do {
+            int blockLength = Math.min(end - position, MAX_STORED_BLOCK_LENGTH);
+            // BFINAL bit, BTYPE 00, then LEN and its one's complement NLEN, little-endian
+            storedBlockBuffer[0] = (byte) (position + blockLength == end ? 1 : 0);
+            storedBlockBuffer[1] = (byte) blockLength;
+            storedBlockBuffer[2] = (byte) (blockLength >>> 8);
+            storedBlockBuffer[3] = (byte) ~blockLength;
+            storedBlockBuffer[4] = (byte) (~blockLength >>> 8);
+            writeObjectBytes(storedBlockBuffer, 0, storedBlockBuffer.length);
+            writeObjectBytes(data, position, blockLength);
+            position += blockLength;
+        } while (position < end);
+
+        adler32.reset();
+        adler32.update(data, off, len);
+        NB.encodeInt32(storedBlockBuffer, 0, (int) adler32.getValue());
+        writeObjectBytes(storedBlockBuffer, 0, 4);
+    }
+
+    private Deflater getDeflater() {
+        if (deflater == null) {
+            deflater = new Deflater(compression);
+            compressBuffer = new byte[8192];
+        } else {
+            deflater.reset();
+        }
+        return deflater;
+    }
+
+    /**
+     * Encode pack object header: type and inflated size as a variable length integer
+     *
+     * @return Header length
+     */
+    private static int encodeObjectHeader(byte[] header, int type, long size) {
+        int length = 0;
+        int nextByte = (type << 4) | (int) (size & 0x0f);
+        size >>>= 4;
+        while (size > 0) {
+            header[length++] = (byte) (nextByte | 0x80);
+            nextByte = (int) (size & 0x7f);
+            size >>>= 7;
+        }
+        header[length++] = (byte) nextByte;
+        return length;
+    }
+
+    /**
+     * Object deflated ahead of insertion, see {@link #deflate(ObjectId, int, byte[], Deflater)}
+     */
+    static final class DeflatedObject {
+        private final ObjectId objectId;
+        private final int type;
+        private final int inflatedLength;
+        private final byte[] deflatedData;
+        private final int deflatedLength;
+
+        private DeflatedObject(ObjectId objectId, int type, int inflatedLength, byte[] deflatedData,
+                               int deflatedLength) {
+            this.objectId = objectId;
+            this.type = type;
+            this.inflatedLength = inflatedLength;
+            this.deflatedData = deflatedData;
+            this.deflatedLength = deflatedLength;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.Deflater;
+
+/**
+ * Writer of rewritten commits using several threads. New commits are planned first, parents before children, then
+ * they are written by windows of planned order:
+ * <ol>
+ * <li>old commits are read and new commits are formatted without parents, in parallel</li>
+ * <li>parents are put in and commits are hashed by topological levels. A commit level is greater than levels of all
+ * its planned parents, so commits of one level are hashed in parallel</li>
+ * <li>commits are deflated in parallel, if the inserter is a {@link PackObjectInserter}</li>
+ * <li>commits are inserted by the calling thread in planned order, so written data does not depend on threads
+ * count</li>
+ * </ol>
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+class ParallelCommitWriter {
+    private static final int WINDOW_SIZE = 8192;
+    // Smaller levels are hashed by the calling thread, forking costs more
+    private static final int PARALLEL_LEVEL_MIN_SIZE = 64;
+    private static final int TASK_MIN_SIZE = 16;
+
+    // New commits are formatted without parents, parent lines are put in right after the tree line
+    private static final int TREE_LINE_LENGTH = "tree ".length() + Constants.OBJECT_ID_STRING_LENGTH + 1;
+    private static final byte[] PARENT_PREFIX = Constants.encodeASCII("parent ");
+    private static final int PARENT_LINE_LENGTH = PARENT_PREFIX.length + Constants.OBJECT_ID_STRING_LENGTH + 1;
+
+    private final Repository repository;
+    private final int parallelism;
+    private final PersonIdent committer;
+
+    // <old commit id, entry with new commit message or null if only parents are changed>, in planned order
+    private final ObjectIdMap<RewordEntry> plannedCommits = new ObjectIdMap<>();
+    // Parents by planned commit index: old ids of planned parents, ids of not changed ones
+    private final List<ObjectId[]> plannedParents = new ArrayList<>();
+    // Topological levels by planned commit index
+    private int[] levels = new int[16];
+
+    // New ids by planned commit index, ObjectIdIndex.ID_WORDS ints each, filled while written
+    private int[] newIds;
+    private long writtenBytes;
+
+    /**
+     * Listener of written commits, called by the writing thread in planned order
+     */
+    @FunctionalInterface
+    interface Listener {
+        /**
+         * Called after a commit is inserted
+         *
+         * @param oldCommitId Id of the commit copied
+         * @param newCommitId Id of the new commit
+         * @param message     Message of the new commit
+         * @param reworded    True if the message is new, false if only parents are changed
+         * @throws IOException To stop writing
+         */
+        void onCommitWritten(ObjectId oldCommitId, ObjectId newCommitId, String message, boolean reworded)
+                throws IOException;
+    }
+
+    /**
+     * Create writer
+     *
+     * @param repository  Repository to read old commits from
+     * @param parallelism Count of threads
+     * @param committer   Committer of all the new commits
+     */
+    ParallelCommitWriter(Repository repository, int parallelism, PersonIdent committer) {
+        this.repository = repository;
+        this.parallelism = parallelism;
+        this.committer = committer;
+    }
+
+    /**
+     * Plan a commit copy. Planned parents must be planned before
+     *
+     * @param oldCommitId Commit to copy
+     * @param rewordEntry Entry with new message or null to keep the message
+     * @param parentsIds  Parents of the copy: old ids of planned commits, ids of other commits as they are
+     */
+    void plan(ObjectId oldCommitId, RewordEntry rewordEntry, ObjectId[] parentsIds) {
+        int level = 0;
+        for (ObjectId parentId : parentsIds) {
+            int parentIndex = plannedCommits.indexOf(parentId);
+            if (parentIndex != ObjectIdIndex.NOT_FOUND) {
+                level = Math.max(level, levels[parentIndex] + 1);
+            }
+        }
+
+        int index = plannedCommits.size();
+        plannedCommits.put(oldCommitId, rewordEntry);
+        plannedParents.add(parentsIds);
+        if (index == levels.length) {
+            levels = Arrays.copyOf(levels, levels.length * 2);
+        }
+        levels[index] = level;
+    }
+
+    /**
+     * Check is a commit planned
+     *
+     * @param oldCommitId Commit id
+     * @return True if the commit copy is planned
+     */
+    boolean isPlanned(AnyObjectId oldCommitId) {
+        return plannedCommits.indexOf(oldCommitId) != ObjectIdIndex.NOT_FOUND;
+    }
+
+    /**
+     * @return Count of planned commits
+     */
+    int getPlannedCount() {
+        return plannedCommits.size();
+    }
+
+    /**
+     * @return Total size of the written commits, the same if commits are only hashed
+     */
+    long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    /**
+     * Write all the planned commits
+     *
+     * @param objectInserter Inserter to write commits by, it is not flushed. If it is a
+     *                       {@link HashOnlyObjectInserter}, commits are not passed to it
+     * @param listener       Listener of written commits
+     * @throws IOException In case of any fatal JGit errors
+     */
+    void write(ObjectInserter objectInserter, Listener listener) throws IOException {
+        int count = plannedCommits.size();
+        newIds = new int[count * ObjectIdIndex.ID_WORDS];
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (int start = 0; start < count; start += WINDOW_SIZE) {
+                writeWindow(pool, objectInserter, listener, start, Math.min(count, start + WINDOW_SIZE));
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void writeWindow(ForkJoinPool pool, ObjectInserter objectInserter, Listener listener, int start, int end)
+            throws IOException {
+        int size = end - start;
+        byte[][] commits = new byte[size][];
+        String[] messages = new String[size];
+
+        // Formatting without parents
+        runParallel(pool, 0, size, (from, to) -> {
+            try (ObjectReader reader = repository.newObjectReader()) {
+                for (int i = from; i < to; ++i) {
+                    formatCommit(reader, start + i, commits, messages, i);
+                }
+            }
+        });
+
+        // Hashing by levels, positions in window are sorted by level
+        long[] levelOrder = new long[size];
+        for (int i = 0; i < size; ++i) {
+            levelOrder[i] = ((long) levels[start + i] << Integer.SIZE) | i;
+        }
+        Arrays.sort(levelOrder);
+        ObjectInserter.Formatter formatter = new ObjectInserter.Formatter();
+        int levelStart = 0;
+        while (levelStart < size) {
+            int level = (int) (levelOrder[levelStart] >>> Integer.SIZE);
+            int levelEnd = levelStart;
+            while (levelEnd < size && (int) (levelOrder[levelEnd] >>> Integer.SIZE) == level) {
+                ++levelEnd;
+            }
+
+            if (levelEnd - levelStart >= PARALLEL_LEVEL_MIN_SIZE) {
+                runParallel(pool, levelStart, levelEnd, (from, to) -> {
+                    ObjectInserter.Formatter taskFormatter = new ObjectInserter.Formatter();
+                    for (int i = from; i < to; ++i) {
+                        hashCommit(taskFormatter, start, commits, (int) levelOrder[i]);
+                    }
+                });
+            } else {
+                for (int i = levelStart; i < levelEnd; ++i) {
+                    hashCommit(formatter, start, commits, (int) levelOrder[i]);
+                }
+            }
+            levelStart = levelEnd;
+        }
+
+        // Deflating
+        PackObjectInserter packInserter =
+                objectInserter instanceof PackObjectInserter ? (PackObjectInserter) objectInserter : null;
+        PackObjectInserter.DeflatedObject[] deflatedCommits = null;
+        if (packInserter != null) {
+            PackObjectInserter.DeflatedObject[] deflated = new PackObjectInserter.DeflatedObject[size];
+            runParallel(pool, 0, size, (from, to) -> {
+                Deflater deflater = new Deflater(packInserter.getCompression());
+                try {
+                    for (int i = from; i < to; ++i) {
+                        deflated[i] = PackObjectInserter.deflate(getNewId(start + i), Constants.OBJ_COMMIT,
+                                commits[i], deflater);
+                    }
+                } finally {
+                    deflater.end();
+                }
+            });
+            deflatedCommits = deflated;
+        }
+
+        // Writing in planned order, commits are hashed already, so a hashing only inserter is not called
+        boolean hashOnly = objectInserter instanceof HashOnlyObjectInserter;
+        for (int i = 0; i < size; ++i) {
+            ObjectId newCommitId = getNewId(start + i);
+            if (deflatedCommits != null) {
+                packInserter.insert(deflatedCommits[i]);
+            } else if (!hashOnly) {
+                objectInserter.insert(Constants.OBJ_COMMIT, commits[i]);
+            }
+            writtenBytes += commits[i].length;
+            listener.onCommitWritten(plannedCommits.getKey(start + i), newCommitId, messages[i],
+                    plannedCommits.getValue(start + i) != null);
+            commits[i] = null;
+        }
+    }
+
+    /**
+     * Format a new commit without parents, the same way {@link CommitBuilder} does
+     */
+    private void formatCommit(ObjectReader reader, int index, byte[][] commits, String[] messages, int position)
+            throws IOException {
+        ObjectId oldCommitId = plannedCommits.getKey(index);
+        RevCommit oldCommit = RevCommit.parse(reader.open(oldCommitId, Constants.OBJ_COMMIT).getCachedBytes());
+        RewordEntry rewordEntry = plannedCommits.getValue(index);
+
+        CommitBuilder builder = new CommitBuilder();
+        builder.setTreeId(oldCommit.getTree());
+        builder.setAuthor(oldCommit.getAuthorIdent());
+        builder.setCommitter(committer);
+        builder.setEncoding(oldCommit.getEncoding());
+        String newCommitMessage = rewordEntry != null ? rewordEntry.getMessage() : null;
+        builder.setMessage(newCommitMessage != null ? newCommitMessage : oldCommit.getFullMessage());
+
+        commits[position] = builder.build();
+        messages[position] = builder.getMessage();
+    }
+
+    /**
+     * Put parent lines into a formatted commit and compute its id. New ids of planned parents must be known
+     */
+    private void hashCommit(ObjectInserter.Formatter formatter, int start, byte[][] commits, int position) {
+        int index = start + position;
+        ObjectId[] parentsIds = plannedParents.get(index);
+        byte[] formatted = commits[position];
+        byte[] commit = new byte[formatted.length + parentsIds.length * PARENT_LINE_LENGTH];
+
+        System.arraycopy(formatted, 0, commit, 0, TREE_LINE_LENGTH);
+        int offset = TREE_LINE_LENGTH;
+        for (ObjectId parentId : parentsIds) {
+            System.arraycopy(PARENT_PREFIX, 0, commit, offset, PARENT_PREFIX.length);
+            offset += PARENT_PREFIX.length;
+            int parentIndex = plannedCommits.indexOf(parentId);
+            (parentIndex != ObjectIdIndex.NOT_FOUND ? getNewId(parentIndex) : parentId).copyTo(commit, offset);
+            offset += Constants.OBJECT_ID_STRING_LENGTH;
+            commit[offset++] = '\n';
+        }
+        System.arraycopy(formatted, TREE_LINE_LENGTH, commit, offset, formatted.length - TREE_LINE_LENGTH);
+
+        commits[position] = commit;
+        formatter.idFor(Constants.OBJ_COMMIT, commit).copyRawTo(newIds, index * ObjectIdIndex.ID_WORDS);
+    }
+
+    private ObjectId getNewId(int index) {
+        return ObjectId.fromRaw(newIds, index * ObjectIdIndex.ID_WORDS);
+    }
+
+    /**
+     * Run an action over a range of positions on the pool, the range is split into tasks
+     */
+    private void runParallel(ForkJoinPool pool, int from, int to, RangeAction action) {
+        int taskSize = Math.max(TASK_MIN_SIZE, (to - from) / (parallelism * 4));
+        pool.invoke(new RangeTask(from, to, taskSize, action));
+    }
+
+    @FunctionalInterface
+    private interface RangeAction {
+        void run(int from, int to) throws IOException;
+    }
+
+    private static final class RangeTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final int taskSize;
+        private final RangeAction action;
+
+        RangeTask(int from, int to, int taskSize, RangeAction action) {
+            this.from = from;
+            this.to = to;
+            this.taskSize = taskSize;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= taskSize) {
+                try {
+                    action.run(from, to);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(from, middle, taskSize, action), new RangeTask(middle, to, taskSize, action));
+        }
+    }
+}
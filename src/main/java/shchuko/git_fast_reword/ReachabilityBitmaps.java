@@ -0,0 +1,95 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.BitmapIndex;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Reachability sets built of pack bitmaps (written by 'git repack -b'). A bitmap of a commit holds all the objects
+ * reachable from it, so the history is walked only from the start commit down to the nearest bitmapped commits
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+class ReachabilityBitmaps {
+    private final BitmapIndex bitmapIndex;
+    private final CommitLookup commitLookup;
+    private int walkedCommitsCount;
+
+    /**
+     * Create reachability bitmaps
+     *
+     * @param bitmapIndex  Pack bitmap index
+     * @param commitLookup Commits lookup to read parents of not bitmapped commits with
+     */
+    ReachabilityBitmaps(BitmapIndex bitmapIndex, CommitLookup commitLookup) {
+        this.bitmapIndex = bitmapIndex;
+        this.commitLookup = commitLookup;
+    }
+
+    /**
+     * Open reachability bitmaps of the repository
+     *
+     * @param commitLookup Commits lookup of the repository
+     * @return Reachability bitmaps or null if the repository has no pack bitmaps or they can't be read
+     */
+    static ReachabilityBitmaps open(CommitLookup commitLookup) {
+        BitmapIndex bitmapIndex;
+        try {
+            bitmapIndex = commitLookup.getBitmapIndex();
+        } catch (IOException e) {
+            bitmapIndex = null;
+        }
+        return bitmapIndex != null ? new ReachabilityBitmaps(bitmapIndex, commitLookup) : null;
+    }
+
+    /**
+     * Build set of the objects reachable from a commit, including the commit itself
+     *
+     * @param startCommitId Commit to start from
+     * @return Reachable objects, the builder may be modified by the caller
+     * @throws IOException In case of any fatal JGit errors (ex. commit not exists)
+     */
+    BitmapIndex.BitmapBuilder getReachable(AnyObjectId startCommitId) throws IOException {
+        walkedCommitsCount = 0;
+        BitmapIndex.BitmapBuilder reachable = bitmapIndex.newBitmapBuilder();
+
+        Deque<ObjectId> commitsToVisit = new ArrayDeque<>();
+        commitsToVisit.push(startCommitId.toObjectId());
+        while (!commitsToVisit.isEmpty()) {
+            ObjectId commitId = commitsToVisit.pop();
+            if (reachable.contains(commitId)) {
+                continue;
+            }
+
+            BitmapIndex.Bitmap commitBitmap = bitmapIndex.getBitmap(commitId);
+            if (commitBitmap != null) {
+                reachable.or(commitBitmap);
+                continue;
+            }
+
+            // The commit is newer than bitmaps or is not selected for a bitmap
+            ++walkedCommitsCount;
+            reachable.addObject(commitId, Constants.OBJ_COMMIT);
+            for (var parentId : commitLookup.getParents(commitId)) {
+                if (!reachable.contains(parentId)) {
+                    commitsToVisit.push(parentId);
+                }
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * Get count of commits walked by the last {@link #getReachable(AnyObjectId)} call because they have no bitmaps
+     *
+     * @return Walked commits count
+     */
+    int getWalkedCommitsCount() {
+        return walkedCommitsCount;
+    }
+}
@@ -0,0 +1,109 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Bounded reachability check: finds which of the target commits are reachable from a start commit. A commit with
+ * generation number lower than every not yet found target has can't lead to any of them, so the walk does not go
+ * through such commits and stops as soon as the remaining targets are provably unreachable. If commit-graph has no
+ * generation numbers for some of the targets, commits older than every not yet found target are not walked instead
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+class ReachabilityChecker {
+    private final CommitLookup commitLookup;
+    private int visitedCommitsCount;
+
+    /**
+     * Create reachability checker
+     *
+     * @param commitLookup Commits lookup to read parents, generation numbers and commit times with
+     */
+    ReachabilityChecker(CommitLookup commitLookup) {
+        this.commitLookup = commitLookup;
+    }
+
+    /**
+     * Find targets reachable from the start commit
+     *
+     * @param startCommitId   Commit to walk from
+     * @param targetCommitIds Commits to look for
+     * @return Reachable targets
+     * @throws IOException In case of any fatal JGit errors (ex. commit not exists)
+     */
+    Set<ObjectId> findReachable(AnyObjectId startCommitId, Collection<? extends AnyObjectId> targetCommitIds)
+            throws IOException {
+        visitedCommitsCount = 0;
+
+        // Targets by generation or commit time ascending, the lowest not found target bounds the walk
+        boolean byGeneration = HistoryCutoff.hasGraphGenerations(commitLookup, targetCommitIds);
+        List<ObjectId> targets = new ArrayList<>();
+        Map<ObjectId, Long> targetsOrderKeys = new HashMap<>();
+        for (var targetId : targetCommitIds) {
+            ObjectId target = targetId.toObjectId();
+            long orderKey = byGeneration ? commitLookup.getGraphGeneration(target) : commitLookup.getCommitTime(target);
+            if (targetsOrderKeys.put(target, orderKey) == null) {
+                targets.add(target);
+            }
+        }
+        targets.sort(Comparator.comparingLong(targetsOrderKeys::get));
+
+        Set<ObjectId> reachableTargets = new HashSet<>();
+        if (targets.isEmpty()) {
+            return reachableTargets;
+        }
+        int lowestTargetIndex = 0;
+        HistoryCutoff cutoff = newCutoff(byGeneration, targetsOrderKeys.get(targets.get(0)));
+
+        Set<ObjectId> seenCommits = new HashSet<>();
+        Deque<ObjectId> commitsToVisit = new ArrayDeque<>();
+        if (!cutoff.isBelow(startCommitId)) {
+            seenCommits.add(startCommitId.toObjectId());
+            commitsToVisit.push(startCommitId.toObjectId());
+        }
+
+        while (!commitsToVisit.isEmpty() && reachableTargets.size() < targets.size()) {
+            ObjectId commitId = commitsToVisit.pop();
+            // The bound might be raised after the commit was pushed
+            if (cutoff.isBelow(commitId)) {
+                continue;
+            }
+            ++visitedCommitsCount;
+
+            if (targetsOrderKeys.containsKey(commitId) && reachableTargets.add(commitId)) {
+                while (lowestTargetIndex < targets.size() && reachableTargets.contains(targets.get(lowestTargetIndex))) {
+                    ++lowestTargetIndex;
+                }
+                if (lowestTargetIndex == targets.size()) {
+                    break;
+                }
+                cutoff = newCutoff(byGeneration, targetsOrderKeys.get(targets.get(lowestTargetIndex)));
+            }
+
+            for (var parentId : commitLookup.getParents(commitId)) {
+                if (!cutoff.isBelow(parentId) && seenCommits.add(parentId)) {
+                    commitsToVisit.push(parentId);
+                }
+            }
+        }
+        return reachableTargets;
+    }
+
+    private HistoryCutoff newCutoff(boolean byGeneration, long bound) {
+        return byGeneration ? HistoryCutoff.byGeneration(commitLookup, (int) bound)
+                : HistoryCutoff.byCommitTime(commitLookup, bound);
+    }
+
+    /**
+     * Get count of commits visited by the last check
+     *
+     * @return Visited commits count
+     */
+    int getVisitedCommitsCount() {
+        return visitedCommitsCount;
+    }
+}
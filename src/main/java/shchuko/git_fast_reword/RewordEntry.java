@@ -0,0 +1,111 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * A commit to reword: revision string or commit id and new commit message. A message may be kept as encoded bytes
+ * (ex. a slice of a mapped file) and is decoded only when it is needed
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public final class RewordEntry {
+    private final String revision;
+    private final ObjectId commitId;
+    private String message;
+    private final ByteBuffer messageBytes;
+    private final Function<ByteBuffer, String> messageDecoder;
+
+    /**
+     * Create reword entry
+     *
+     * @param revision A string to identify the commit (sha-1 hash, HEAD^2, ...)
+     * @param message  New commit message
+     */
+    public RewordEntry(String revision, String message) {
+        this(revision, null, message, null, null);
+    }
+
+    /**
+     * Create reword entry of a known commit id, the id is not resolved
+     *
+     * @param commitId Commit id
+     * @param message  New commit message
+     */
+    public RewordEntry(ObjectId commitId, String message) {
+        this(null, commitId, message, null, null);
+    }
+
+    /**
+     * Create reword entry with a message to be decoded on demand
+     *
+     * @param revision       A string to identify the commit, null if commit id is given
+     * @param commitId       Commit id, null if revision string is given
+     * @param messageBytes   Encoded message, must not be modified
+     * @param messageDecoder Decoder of the message, called at most once
+     */
+    RewordEntry(String revision, ObjectId commitId, ByteBuffer messageBytes,
+                Function<ByteBuffer, String> messageDecoder) {
+        this(revision, commitId, null, messageBytes, messageDecoder);
+    }
+
+    private RewordEntry(String revision, ObjectId commitId, String message, ByteBuffer messageBytes,
+                        Function<ByteBuffer, String> messageDecoder) {
+        this.revision = revision;
+        this.commitId = commitId;
+        this.message = message;
+        this.messageBytes = messageBytes;
+        this.messageDecoder = messageDecoder;
+    }
+
+    /**
+     * Decode UTF-8 message bytes
+     *
+     * @param messageBytes Message bytes
+     * @return Decoded message
+     */
+    static String decodeUtf8(ByteBuffer messageBytes) {
+        return StandardCharsets.UTF_8.decode(messageBytes.duplicate()).toString();
+    }
+
+    /**
+     * @return A string to identify the commit (sha-1 hash, HEAD^2, ...)
+     */
+    public String getRevision() {
+        return revision != null || commitId == null ? revision : commitId.getName();
+    }
+
+    /**
+     * @return Commit id if it is known without resolving, otherwise null
+     */
+    public ObjectId getCommitId() {
+        return commitId;
+    }
+
+    /**
+     * @return True if the entry has a message (it may be empty)
+     */
+    public boolean hasMessage() {
+        return message != null || messageBytes != null;
+    }
+
+    /**
+     * @return True if the message is empty, the message is not decoded
+     */
+    public boolean isMessageEmpty() {
+        return message != null ? message.isEmpty() : messageBytes != null && !messageBytes.hasRemaining();
+    }
+
+    /**
+     * @return New commit message, decoded on the first call if it is kept encoded
+     */
+    public String getMessage() {
+        if (message == null && messageBytes != null) {
+            message = messageDecoder.apply(messageBytes);
+        }
+        return message;
+    }
+}
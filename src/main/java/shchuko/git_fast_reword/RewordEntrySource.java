@@ -0,0 +1,19 @@
+package shchuko.git_fast_reword;
+
+import java.io.IOException;
+
+/**
+ * Stream of commits to reword, entries are read one by one while they are resolved
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+@FunctionalInterface
+public interface RewordEntrySource {
+    /**
+     * Read next entry
+     *
+     * @return Next entry or null if there are no more entries
+     * @throws IOException In case of reading errors
+     */
+    RewordEntry next() throws IOException;
+}
@@ -0,0 +1,151 @@
+package shchuko.git_fast_reword;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timestamp;
+
+/**
+ * Java Flight Recorder events of the reword lifecycle. Events are recorded only if they are enabled in a recording,
+ * ex. {@code java -XX:StartFlightRecording:filename=reword.jfr,settings=profile}. Fields are filled only if an event
+ * is going to be committed, so disabled events cost an allocation
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+final class RewordEvents {
+    private static final String NAME_PREFIX = "shchuko.git_fast_reword.";
+    private static final String CATEGORY = "git-fast-reword";
+
+    private RewordEvents() {
+    }
+
+    @Name(NAME_PREFIX + "RewordStart")
+    @Label("Reword Start")
+    @Category(CATEGORY)
+    @Description("Reword is called")
+    @StackTrace(false)
+    static final class RewordStart extends Event {
+        @Label("Repository")
+        String repository;
+
+        @Label("Dry Run")
+        boolean dryRun;
+
+        @Label("Threads")
+        int parallelism;
+    }
+
+    @Name(NAME_PREFIX + "RewordEnd")
+    @Label("Reword End")
+    @Category(CATEGORY)
+    @Description("Reword is finished, spans the whole reword")
+    @StackTrace(false)
+    static final class RewordEnd extends Event {
+        @Label("Succeeded")
+        boolean succeeded;
+
+        @Label("Branch")
+        String branch;
+
+        @Label("Old Head")
+        String oldHeadId;
+
+        @Label("New Head")
+        String newHeadId;
+
+        @Label("Reworded Commits")
+        int rewordedCommitsCount;
+
+        @Label("Rewritten Commits")
+        int rewrittenCommitsCount;
+
+        @Label("Visited Commits")
+        int visitedCommitsCount;
+
+        @Label("Refs Updates")
+        int refUpdatesCount;
+    }
+
+    @Name(NAME_PREFIX + "ResolveBatch")
+    @Label("Resolve Batch")
+    @Category(CATEGORY)
+    @Description("Revision strings of commits to reword resolved together: object ids or ancestry expressions "
+            + "sharing a base")
+    @StackTrace(false)
+    static final class ResolveBatch extends Event {
+        @Label("Kind")
+        String kind;
+
+        @Label("Base")
+        String base;
+
+        @Label("Entries")
+        int entriesCount;
+
+        @Label("Resolved Commits")
+        int resolvedCount;
+    }
+
+    @Name(NAME_PREFIX + "MergeBase")
+    @Label("Merge Base")
+    @Category(CATEGORY)
+    @Description("Common ancestor search of commits to reword")
+    @StackTrace(false)
+    static final class MergeBase extends Event {
+        @Label("Commits To Reword")
+        int commitsCount;
+
+        @Label("Rebase Onto")
+        String ontoId;
+
+        @Label("Cutoff Generation")
+        @Description("Commits with lower generation are not walked, zero if commit times are compared")
+        int cutoffGeneration;
+
+        @Label("Cutoff Commit Time")
+        @Description("Commits older than it are not walked if there are no generation numbers in commit-graph")
+        @Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+        long cutoffCommitTime;
+    }
+
+    @Name(NAME_PREFIX + "RefUpdate")
+    @Label("Ref Update")
+    @Category(CATEGORY)
+    @Description("Ref update, refs updated by one batch share its duration")
+    @StackTrace(false)
+    static final class RefUpdate extends Event {
+        @Label("Ref")
+        String refName;
+
+        @Label("Old Id")
+        String oldId;
+
+        @Label("New Target")
+        String newTarget;
+
+        @Label("Result")
+        String result;
+
+        @Label("Batched")
+        boolean batched;
+    }
+
+    @Name(NAME_PREFIX + "InserterFlush")
+    @Label("Inserter Flush")
+    @Category(CATEGORY)
+    @Description("Object inserter flush after new commits and tags are inserted, a pack is completed by it")
+    @StackTrace(false)
+    static final class InserterFlush extends Event {
+        @Label("Inserter")
+        String inserter;
+
+        @Label("Inserted Objects")
+        int insertedObjectsCount;
+
+        @Label("Inserted Bytes")
+        long insertedBytes;
+    }
+}
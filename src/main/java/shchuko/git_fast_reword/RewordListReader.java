@@ -0,0 +1,62 @@
+package shchuko.git_fast_reword;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reader of reword list files. Formats are detected by the file content:
+ * <ul>
+ * <li>binary ({@link BinaryRewordListReader}) - starts with 'GFRW' magic</li>
+ * <li>NDJSON ({@link NdjsonRewordListReader}) - the first non-blank character is '{'</li>
+ * <li>CSV ({@link CsvRewordListReader}) - otherwise</li>
+ * </ul>
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public interface RewordListReader extends RewordEntrySource, Closeable {
+    /**
+     * Get count of records skipped because they were malformed
+     *
+     * @return Skipped records count
+     */
+    int getMalformedRecordsCount();
+
+    /**
+     * Get line number of the first malformed record
+     *
+     * @return Line number (1-based) or 0 if there were no malformed records
+     */
+    int getFirstMalformedRecordLine();
+
+    /**
+     * Open reword list file, format is detected by the file content
+     *
+     * @param path Path to the file
+     * @return Reader of the detected format
+     * @throws IOException If the file can't be opened
+     */
+    static RewordListReader open(Path path) throws IOException {
+        byte[] head;
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            // Enough to skip leading blank lines
+            head = inputStream.readNBytes(4096);
+        }
+
+        if (BinaryRewordListReader.hasMagic(head)) {
+            return new BinaryRewordListReader(path);
+        }
+
+        // UTF-8 byte order mark
+        int start = head.length >= 3 && (head[0] & 0xFF) == 0xEF && (head[1] & 0xFF) == 0xBB
+                && (head[2] & 0xFF) == 0xBF ? 3 : 0;
+        for (int i = start; i < head.length; ++i) {
+            if (!Character.isWhitespace(head[i])) {
+                return head[i] == '{' ? new NdjsonRewordListReader(path) : new CsvRewordListReader(path);
+            }
+        }
+        return new CsvRewordListReader(path);
+    }
+}
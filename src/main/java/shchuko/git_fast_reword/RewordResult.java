@@ -0,0 +1,117 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.transport.ReceiveCommand;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of a reword: ids of the new commits, refs updates, counts and statistics of the reword phases. In dry-run mode
+ * (see {@link GitFastReword#setDryRun(boolean)}) ids and refs updates are predicted, nothing is written
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public final class RewordResult {
+    private final boolean dryRun;
+    private final Map<ObjectId, ObjectId> rewrittenCommits;
+    private final List<ReceiveCommand> refUpdates;
+    private final int rewordedCommitsCount;
+    private final int visitedCommitsCount;
+    private final RewordStats stats;
+
+    RewordResult(boolean dryRun, Map<ObjectId, ObjectId> rewrittenCommits, List<ReceiveCommand> refUpdates,
+                 int rewordedCommitsCount, int visitedCommitsCount, RewordStats stats) {
+        this.dryRun = dryRun;
+        this.rewrittenCommits = Collections.unmodifiableMap(rewrittenCommits);
+        this.refUpdates = Collections.unmodifiableList(refUpdates);
+        this.rewordedCommitsCount = rewordedCommitsCount;
+        this.visitedCommitsCount = visitedCommitsCount;
+        this.stats = stats;
+    }
+
+    /**
+     * Create result of a reword with nothing to reword
+     *
+     * @param dryRun True if reword was done in dry-run mode
+     * @param stats  Statistics of the reword
+     * @return Result without rewritten commits and refs updates
+     */
+    static RewordResult empty(boolean dryRun, RewordStats stats) {
+        return new RewordResult(dryRun, Collections.emptyMap(), Collections.emptyList(), 0, 0, stats);
+    }
+
+    /**
+     * @return True if reword was done in dry-run mode, so new commits and refs updates are only predicted
+     */
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    /**
+     * Get ids of the new commits, the same mapping is written to a commit map file
+     * (see {@link GitFastReword#setCommitMapPath(java.nio.file.Path)})
+     *
+     * @return Key - id of a rewritten commit, value - id of its copy. Ordered the way commits were created,
+     * parents before children
+     */
+    public Map<ObjectId, ObjectId> getRewrittenCommits() {
+        return rewrittenCommits;
+    }
+
+    /**
+     * Get refs updates: the current branch, other rewritten branches and tags
+     *
+     * @return Refs updates, not executed in dry-run mode
+     */
+    public List<ReceiveCommand> getRefUpdates() {
+        return refUpdates;
+    }
+
+    /**
+     * @return Count of commits with new messages
+     */
+    public int getRewordedCommitsCount() {
+        return rewordedCommitsCount;
+    }
+
+    /**
+     * @return Count of commits visited by history search: rewritten, fast-forwarded (not changed, their ancestors are
+     * not changed too) and the ones search stopped at ('onto' and commits below the history cutoff)
+     */
+    public int getVisitedCommitsCount() {
+        return visitedCommitsCount;
+    }
+
+    /**
+     * Get statistics of the reword: phases times and counters
+     *
+     * @return Statistics, complete after the reword returns
+     */
+    public RewordStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return Time of repository checks, resolving and checking commits to reword, in nanoseconds
+     */
+    public long getLoadNanos() {
+        return stats.getWallNanos(RewordStats.Phase.PREPARE) + stats.getWallNanos(RewordStats.Phase.RESOLVE)
+                + stats.getWallNanos(RewordStats.Phase.REACHABILITY);
+    }
+
+    /**
+     * @return Time of the common ancestor search, in nanoseconds
+     */
+    public long getMergeBaseNanos() {
+        return stats.getWallNanos(RewordStats.Phase.MERGE_BASE);
+    }
+
+    /**
+     * @return Time of history search and new commits writing, in nanoseconds
+     */
+    public long getRewriteNanos() {
+        return stats.getWallNanos(RewordStats.Phase.REWRITE);
+    }
+}
@@ -0,0 +1,313 @@
+package shchuko.git_fast_reword;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statistics of a reword: wall and CPU time of each phase and counters of the work done. CPU time is the time of the
+ * thread the reword is called by, so time of the commit writing threads (see
+ * {@link GitFastReword#setParallelism(int)}) is not included. In dry-run mode the counters show the work that would
+ * be done, refs counters are zero
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public final class RewordStats {
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    /**
+     * Reword phases in the order they are run
+     */
+    public enum Phase {
+        // Repository state checks, branches and commits lookup loading
+        PREPARE("prepare"),
+        // Resolving revision strings of commits to reword
+        RESOLVE("resolve"),
+        // Filtering commits to reword reachable from the current branch
+        REACHABILITY("reachability"),
+        // Common ancestor search
+        MERGE_BASE("mergeBase"),
+        // History search and new commits and tags writing
+        REWRITE("rewrite"),
+        // Refs updates
+        PUBLISH("publish");
+
+        private final String key;
+
+        Phase(String key) {
+            this.key = key;
+        }
+
+        /**
+         * @return Name of the phase in the JSON report
+         */
+        public String getKey() {
+            return key;
+        }
+    }
+
+    private final long[] wallNanos = new long[Phase.values().length];
+    private final long[] cpuNanos = new long[Phase.values().length];
+    private final boolean cpuTimeMeasured;
+    private Phase currentPhase;
+    private long phaseStartWallNanos;
+    private long phaseStartCpuNanos;
+
+    private int parsedCommitsCount;
+    private int reachabilityVisitedCommitsCount;
+    private int rewrittenCommitsCount;
+    private int fastForwardedCommitsCount;
+    private int cutOffCommitsCount;
+    private int insertedObjectsCount;
+    private long insertedBytes;
+    private int updatedRefsCount;
+    private int reflogEntriesCount;
+
+    RewordStats() {
+        boolean cpuTimeMeasured;
+        try {
+            cpuTimeMeasured = THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() && THREAD_MX_BEAN.isThreadCpuTimeEnabled();
+        } catch (UnsupportedOperationException e) {
+            cpuTimeMeasured = false;
+        }
+        this.cpuTimeMeasured = cpuTimeMeasured;
+    }
+
+    /**
+     * Finish the current phase and start a new one. A phase may be started more than once, its times are summed
+     *
+     * @param phase Phase to start
+     */
+    void startPhase(Phase phase) {
+        finishPhase();
+        currentPhase = phase;
+        phaseStartWallNanos = System.nanoTime();
+        phaseStartCpuNanos = getCurrentThreadCpuNanos();
+    }
+
+    /**
+     * Finish the current phase if it is started
+     */
+    void finishPhase() {
+        if (currentPhase == null) {
+            return;
+        }
+        wallNanos[currentPhase.ordinal()] += System.nanoTime() - phaseStartWallNanos;
+        cpuNanos[currentPhase.ordinal()] += getCurrentThreadCpuNanos() - phaseStartCpuNanos;
+        currentPhase = null;
+    }
+
+    void addParsedCommits(int count) {
+        parsedCommitsCount += count;
+    }
+
+    void addReachabilityVisitedCommits(int count) {
+        reachabilityVisitedCommitsCount += count;
+    }
+
+    void addRewrittenCommit() {
+        ++rewrittenCommitsCount;
+    }
+
+    void addFastForwardedCommit() {
+        ++fastForwardedCommitsCount;
+    }
+
+    void addCutOffCommit() {
+        ++cutOffCommitsCount;
+    }
+
+    void addInsertedObjects(int count, long bytes) {
+        insertedObjectsCount += count;
+        insertedBytes += bytes;
+    }
+
+    void addUpdatedRefs(int count, int reflogEntriesCount) {
+        updatedRefsCount += count;
+        this.reflogEntriesCount += reflogEntriesCount;
+    }
+
+    /**
+     * @param phase Reword phase
+     * @return Wall time of the phase, in nanoseconds
+     */
+    public long getWallNanos(Phase phase) {
+        return wallNanos[phase.ordinal()];
+    }
+
+    /**
+     * @param phase Reword phase
+     * @return CPU time of the phase spent by the calling thread, in nanoseconds. 0 if CPU time is not measured
+     */
+    public long getCpuNanos(Phase phase) {
+        return cpuNanos[phase.ordinal()];
+    }
+
+    /**
+     * @return Wall time of all the phases, in nanoseconds
+     */
+    public long getTotalWallNanos() {
+        long total = 0;
+        for (long nanos : wallNanos) {
+            total += nanos;
+        }
+        return total;
+    }
+
+    /**
+     * @return CPU time of all the phases spent by the calling thread, in nanoseconds
+     */
+    public long getTotalCpuNanos() {
+        long total = 0;
+        for (long nanos : cpuNanos) {
+            total += nanos;
+        }
+        return total;
+    }
+
+    /**
+     * @return True if CPU time is measured, it is not supported by some JVMs
+     */
+    public boolean isCpuTimeMeasured() {
+        return cpuTimeMeasured;
+    }
+
+    /**
+     * @return Count of commits read from the object database: commits not in the commit-graph visited by history
+     * walks and commits copied
+     */
+    public int getParsedCommitsCount() {
+        return parsedCommitsCount;
+    }
+
+    /**
+     * @return Count of commits visited by the reachability check of commits to reword, or walked to build the
+     * reachability bitmap of the current branch head
+     */
+    public int getReachabilityVisitedCommitsCount() {
+        return reachabilityVisitedCommitsCount;
+    }
+
+    /**
+     * @return Count of new commits, reworded ones and their rewritten descendants
+     */
+    public int getRewrittenCommitsCount() {
+        return rewrittenCommitsCount;
+    }
+
+    /**
+     * @return Count of commits left as they are by history search, their parents are not changed
+     */
+    public int getFastForwardedCommitsCount() {
+        return fastForwardedCommitsCount;
+    }
+
+    /**
+     * @return Count of commits history search did not go through, as they can't be descendants of commits to reword
+     */
+    public int getCutOffCommitsCount() {
+        return cutOffCommitsCount;
+    }
+
+    /**
+     * @return Count of new commits and tags objects
+     */
+    public int getInsertedObjectsCount() {
+        return insertedObjectsCount;
+    }
+
+    /**
+     * @return Total size of new commits and tags objects, not compressed
+     */
+    public long getInsertedBytes() {
+        return insertedBytes;
+    }
+
+    /**
+     * @return Count of refs updates, including detached HEAD moves
+     */
+    public int getUpdatedRefsCount() {
+        return updatedRefsCount;
+    }
+
+    /**
+     * @return Count of reflog entries written by refs updates, tags are not counted as they have no reflogs by default
+     */
+    public int getReflogEntriesCount() {
+        return reflogEntriesCount;
+    }
+
+    /**
+     * Format statistics as a JSON object: "phases" object with "wallNanos" and "cpuNanos" of each phase, "counters"
+     * object, "cpuTimeMeasured" flag
+     *
+     * @return JSON report
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"phases\":{");
+        for (Phase phase : Phase.values()) {
+            if (phase.ordinal() > 0) {
+                json.append(',');
+            }
+            json.append('"').append(phase.getKey()).append("\":{\"wallNanos\":").append(getWallNanos(phase))
+                    .append(",\"cpuNanos\":").append(getCpuNanos(phase)).append('}');
+        }
+        json.append("},\"totalWallNanos\":").append(getTotalWallNanos())
+                .append(",\"totalCpuNanos\":").append(getTotalCpuNanos())
+                .append(",\"cpuTimeMeasured\":").append(cpuTimeMeasured)
+                .append(",\"counters\":{")
+                .append("\"parsedCommits\":").append(parsedCommitsCount)
+                .append(",\"reachabilityVisitedCommits\":").append(reachabilityVisitedCommitsCount)
+                .append(",\"rewrittenCommits\":").append(rewrittenCommitsCount)
+                .append(",\"fastForwardedCommits\":").append(fastForwardedCommitsCount)
+                .append(",\"cutOffCommits\":").append(cutOffCommitsCount)
+                .append(",\"insertedObjects\":").append(insertedObjectsCount)
+                .append(",\"insertedBytes\":").append(insertedBytes)
+                .append(",\"updatedRefs\":").append(updatedRefsCount)
+                .append(",\"reflogEntries\":").append(reflogEntriesCount)
+                .append("}}");
+        return json.toString();
+    }
+
+    /**
+     * Format statistics as human readable lines: a line per phase, then totals and counters
+     *
+     * @return Report lines separated by line separators
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            text.append(String.format(Locale.ROOT, "%-13s wall %8s, cpu %8s%n", phase.getKey(),
+                    formatMillis(getWallNanos(phase)), formatCpuMillis(getCpuNanos(phase))));
+        }
+        text.append(String.format(Locale.ROOT, "%-13s wall %8s, cpu %8s%n", "total",
+                formatMillis(getTotalWallNanos()), formatCpuMillis(getTotalCpuNanos())));
+        text.append("commits: ").append(parsedCommitsCount).append(" parsed, ")
+                .append(reachabilityVisitedCommitsCount).append(" visited by reachability check, ")
+                .append(rewrittenCommitsCount).append(" rewritten, ")
+                .append(fastForwardedCommitsCount).append(" fast-forwarded, ")
+                .append(cutOffCommitsCount).append(" skipped by cutoff")
+                .append(System.lineSeparator());
+        text.append("objects: ").append(insertedObjectsCount).append(" inserted, ")
+                .append(insertedBytes).append(" bytes")
+                .append(System.lineSeparator());
+        text.append("refs: ").append(updatedRefsCount).append(" updated, ")
+                .append(reflogEntriesCount).append(" reflog entries")
+                .append(System.lineSeparator());
+        return text.toString();
+    }
+
+    private String formatCpuMillis(long nanos) {
+        return cpuTimeMeasured ? formatMillis(nanos) : "n/a";
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f ms", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    private long getCurrentThreadCpuNanos() {
+        return cpuTimeMeasured ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : 0;
+    }
+}
@@ -0,0 +1,192 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Map of visited commits to their ids after rewrite. Old ids are kept by {@link ObjectIdIndex}, an entry value is an
+ * index into a flat array of new ids (five ints each). Most of the visited commits are not changed, such entries
+ * don't store a new id at all. New ids are stored in the order commits are put, so rewritten commits are viewed as
+ * a map in creation order without copying ({@link #getRewrittenView()})
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+class RewrittenCommitsMap {
+    private static final int NOT_CHANGED = -1;
+    private static final int MIN_CAPACITY = 16;
+
+    private final ObjectIdIndex oldIds;
+    // New ids of rewritten commits, ObjectIdIndex.ID_WORDS ints each
+    private int[] newIds;
+    private int newIdsCount;
+    // Old id index by new id index
+    private int[] rewrittenOldIndexes;
+    // Index of the new id by old id index, NOT_CHANGED if the commit is not rewritten
+    private int[] newIdIndexes;
+
+    /**
+     * Create empty map
+     */
+    RewrittenCommitsMap() {
+        this(0);
+    }
+
+    /**
+     * Create empty map
+     *
+     * @param expectedSize Count of commits to be put without resizing
+     */
+    RewrittenCommitsMap(int expectedSize) {
+        oldIds = new ObjectIdIndex(expectedSize);
+        newIds = new int[MIN_CAPACITY * ObjectIdIndex.ID_WORDS];
+        rewrittenOldIndexes = new int[MIN_CAPACITY];
+        newIdIndexes = new int[Math.max(MIN_CAPACITY, expectedSize)];
+    }
+
+    /**
+     * @return Count of visited commits
+     */
+    int size() {
+        return oldIds.size();
+    }
+
+    /**
+     * @return Count of rewritten commits (visited and changed)
+     */
+    int getRewrittenCount() {
+        return newIdsCount;
+    }
+
+    /**
+     * Put a visited commit, a commit is put once
+     *
+     * @param oldId Commit id
+     * @param newId Commit id after visit, equal to the old one if the commit is not changed
+     */
+    void put(AnyObjectId oldId, AnyObjectId newId) {
+        int index = oldIds.add(oldId);
+        if (index == newIdIndexes.length) {
+            newIdIndexes = Arrays.copyOf(newIdIndexes, newIdIndexes.length * 2);
+        }
+        newIdIndexes[index] = newId.equals(oldId) ? NOT_CHANGED : addNewId(index, newId);
+    }
+
+    /**
+     * Get commit id after visit
+     *
+     * @param oldId Commit id
+     * @return Commit id after visit (the passed instance if the commit is not changed) or null if not visited
+     */
+    ObjectId get(AnyObjectId oldId) {
+        int index = oldIds.indexOf(oldId);
+        if (index == ObjectIdIndex.NOT_FOUND) {
+            return null;
+        }
+        int newIdIndex = newIdIndexes[index];
+        return newIdIndex == NOT_CHANGED
+                ? oldId.toObjectId()
+                : ObjectId.fromRaw(newIds, newIdIndex * ObjectIdIndex.ID_WORDS);
+    }
+
+    /**
+     * Check is a visited commit rewritten
+     *
+     * @param oldId Commit id
+     * @return True if the commit is visited and changed
+     */
+    boolean isRewritten(AnyObjectId oldId) {
+        int index = oldIds.indexOf(oldId);
+        return index != ObjectIdIndex.NOT_FOUND && newIdIndexes[index] != NOT_CHANGED;
+    }
+
+    /**
+     * Get rewritten commits as a map. The view is backed by this map, so it must not be used after the map is cleared
+     *
+     * @return Unmodifiable map: key - id of a rewritten commit, value - its new id. Ordered the way commits were put
+     */
+    Map<ObjectId, ObjectId> getRewrittenView() {
+        return new RewrittenView();
+    }
+
+    /**
+     * Remove all the commits and release allocated memory
+     */
+    void clear() {
+        oldIds.clear();
+        newIds = new int[MIN_CAPACITY * ObjectIdIndex.ID_WORDS];
+        newIdsCount = 0;
+        rewrittenOldIndexes = new int[MIN_CAPACITY];
+        newIdIndexes = new int[MIN_CAPACITY];
+    }
+
+    private int addNewId(int oldIdIndex, AnyObjectId newId) {
+        int index = newIdsCount++;
+        if (newIdsCount > rewrittenOldIndexes.length) {
+            newIds = Arrays.copyOf(newIds, newIds.length * 2);
+            rewrittenOldIndexes = Arrays.copyOf(rewrittenOldIndexes, rewrittenOldIndexes.length * 2);
+        }
+        newId.copyRawTo(newIds, index * ObjectIdIndex.ID_WORDS);
+        rewrittenOldIndexes[index] = oldIdIndex;
+        return index;
+    }
+
+    /**
+     * Read-only map view of rewritten commits
+     */
+    private final class RewrittenView extends AbstractMap<ObjectId, ObjectId> {
+        @Override
+        public int size() {
+            return newIdsCount;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof AnyObjectId && isRewritten((AnyObjectId) key);
+        }
+
+        @Override
+        public ObjectId get(Object key) {
+            return containsKey(key) ? RewrittenCommitsMap.this.get((AnyObjectId) key) : null;
+        }
+
+        @Override
+        public Set<Entry<ObjectId, ObjectId>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public int size() {
+                    return newIdsCount;
+                }
+
+                @Override
+                public Iterator<Entry<ObjectId, ObjectId>> iterator() {
+                    return new Iterator<>() {
+                        private int nextIndex;
+
+                        @Override
+                        public boolean hasNext() {
+                            return nextIndex < newIdsCount;
+                        }
+
+                        @Override
+                        public Entry<ObjectId, ObjectId> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            int index = nextIndex++;
+                            return new SimpleImmutableEntry<>(oldIds.getId(rewrittenOldIndexes[index]),
+                                    ObjectId.fromRaw(newIds, index * ObjectIdIndex.ID_WORDS));
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
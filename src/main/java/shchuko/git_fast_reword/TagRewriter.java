@@ -0,0 +1,183 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.eclipse.jgit.util.RawParseUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewriter of tags pointing to rewritten commits. An annotated tag is recreated from its raw bytes with only the
+ * target id replaced, so the tagger, the message and all the other headers are kept as they are. Lightweight tags
+ * are just moved to the new commits.
+ * <p>
+ * Packed tags are filtered by the peeled values stored in packed-refs, so tag objects are read only for the tags to
+ * be rewritten and for loose tags
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+class TagRewriter {
+    private static final byte[] OBJECT_HEADER = Constants.encodeASCII("object ");
+    // Lines starting a signature appended to a tag message, as 'git tag -s' writes
+    private static final byte[][] SIGNATURE_STARTS = {
+            Constants.encodeASCII("-----BEGIN PGP SIGNATURE-----"),
+            Constants.encodeASCII("-----BEGIN PGP MESSAGE-----"),
+            Constants.encodeASCII("-----BEGIN SSH SIGNATURE-----"),
+            Constants.encodeASCII("-----BEGIN SIGNED MESSAGE-----")
+    };
+
+    private final Repository repository;
+    private final List<String> skippedTagsNames = new ArrayList<>();
+    private int strippedSignaturesCount;
+    private int createdTagsCount;
+    private long createdTagsBytes;
+
+    /**
+     * Create tags rewriter
+     *
+     * @param repository Repository to read tags of
+     */
+    TagRewriter(Repository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Create new tag objects for the tags pointing to rewritten commits
+     *
+     * @param rewrittenCommits Visited commits and their ids after rewrite
+     * @param objectInserter   Inserter to create tag objects by, it is not flushed
+     * @return Updates of the tags refs
+     * @throws IOException In case of any fatal JGit errors
+     */
+    List<ReceiveCommand> rewrite(RewrittenCommitsMap rewrittenCommits, ObjectInserter objectInserter)
+            throws IOException {
+        List<ReceiveCommand> updates = new ArrayList<>();
+        // A tag object may be referenced by several refs, it is recreated once
+        Map<ObjectId, ObjectId> rewrittenTags = new HashMap<>();
+        RefDatabase refDatabase = repository.getRefDatabase();
+
+        try (ObjectReader reader = repository.newObjectReader()) {
+            for (Ref ref : refDatabase.getRefs(Constants.R_TAGS).values()) {
+                if (ref.isSymbolic() || ref.getObjectId() == null) {
+                    continue;
+                }
+
+                // Packed refs are peeled already, loose tags are read to be peeled
+                Ref peeledRef = ref.isPeeled() ? ref : refDatabase.peel(ref);
+                ObjectId oldId = ref.getObjectId();
+                boolean annotated = peeledRef.getPeeledObjectId() != null;
+                ObjectId targetId = annotated ? peeledRef.getPeeledObjectId() : oldId;
+                if (!rewrittenCommits.isRewritten(targetId)) {
+                    continue;
+                }
+
+                ObjectId newTargetId = rewrittenCommits.get(targetId);
+                ObjectId newId = newTargetId;
+                if (annotated) {
+                    newId = rewrittenTags.get(oldId);
+                    if (newId == null) {
+                        newId = rewriteTag(reader, objectInserter, oldId, targetId, newTargetId);
+                        if (newId == null) {
+                            skippedTagsNames.add(ref.getName());
+                            continue;
+                        }
+                        rewrittenTags.put(oldId, newId);
+                    }
+                }
+                // Type is set explicitly, otherwise JGit walks the history to check for fast-forward
+                updates.add(new ReceiveCommand(oldId, newId, ref.getName(), ReceiveCommand.Type.UPDATE_NONFASTFORWARD));
+            }
+        }
+        return updates;
+    }
+
+    /**
+     * Get names of the tags pointing to rewritten commits through other tags, such tags are not rewritten
+     *
+     * @return Full names of the skipped tags
+     */
+    List<String> getSkippedTagsNames() {
+        return skippedTagsNames;
+    }
+
+    /**
+     * Get count of the tags recreated without their signatures. A signature can't stay valid after the target is
+     * changed, so it is dropped the same way 'git filter-branch' does
+     *
+     * @return Count of stripped signatures
+     */
+    int getStrippedSignaturesCount() {
+        return strippedSignaturesCount;
+    }
+
+    /**
+     * @return Count of new tag objects
+     */
+    int getCreatedTagsCount() {
+        return createdTagsCount;
+    }
+
+    /**
+     * @return Total size of new tag objects
+     */
+    long getCreatedTagsBytes() {
+        return createdTagsBytes;
+    }
+
+    /**
+     * Create a copy of a tag object pointing to a new target
+     *
+     * @return New tag id or null if the tag does not point to the target directly
+     */
+    private ObjectId rewriteTag(ObjectReader reader, ObjectInserter objectInserter, ObjectId tagId,
+                                ObjectId targetId, ObjectId newTargetId) throws IOException {
+        byte[] raw = reader.open(tagId, Constants.OBJ_TAG).getCachedBytes();
+        int targetIdStart = RawParseUtils.match(raw, 0, OBJECT_HEADER);
+        if (targetIdStart < 0 || raw.length < targetIdStart + Constants.OBJECT_ID_STRING_LENGTH
+                || !targetId.equals(ObjectId.fromString(raw, targetIdStart))) {
+            return null;
+        }
+
+        int end = findSignatureStart(raw);
+        if (end < raw.length) {
+            ++strippedSignaturesCount;
+        }
+        byte[] newRaw = Arrays.copyOf(raw, end);
+        newTargetId.copyTo(newRaw, targetIdStart);
+        ++createdTagsCount;
+        createdTagsBytes += newRaw.length;
+        return objectInserter.insert(Constants.OBJ_TAG, newRaw);
+    }
+
+    /**
+     * Find the last line of a tag message starting a signature, like git does
+     *
+     * @param raw Raw tag object
+     * @return Signature start or raw length if the tag is not signed
+     */
+    private static int findSignatureStart(byte[] raw) {
+        int signatureStart = raw.length;
+        int lineStart = RawParseUtils.tagMessage(raw, 0);
+        while (lineStart >= 0 && lineStart < raw.length) {
+            for (byte[] signatureLine : SIGNATURE_STARTS) {
+                if (RawParseUtils.match(raw, lineStart, signatureLine) >= 0) {
+                    signatureStart = lineStart;
+                    break;
+                }
+            }
+            lineStart = RawParseUtils.nextLF(raw, lineStart);
+        }
+        return signatureStart;
+    }
+}
@@ -0,0 +1,99 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.lib.ProgressMonitor;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Progress monitor printing a line per task at most once per interval: work done, percentage if the total work is
+ * known, and rate. A line with the total is printed when a task ends. Updates cost a counter increment and a clock
+ * read, so the monitor can be updated on every commit. Not thread-safe, updated by the reword thread only
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+class ThrottledProgressMonitor implements ProgressMonitor {
+    static final long DEFAULT_INTERVAL_MILLIS = 1000;
+
+    private final PrintStream out;
+    private final long intervalNanos;
+
+    private String taskName;
+    private int totalWork;
+    private long workDone;
+    private long taskStartNanos;
+    private long nextPrintNanos;
+
+    /**
+     * Create a monitor printing at most once per second
+     *
+     * @param out Print stream for progress lines
+     */
+    ThrottledProgressMonitor(PrintStream out) {
+        this(out, DEFAULT_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param out            Print stream for progress lines
+     * @param intervalMillis Minimal interval between progress lines of a task, in milliseconds
+     */
+    ThrottledProgressMonitor(PrintStream out, long intervalMillis) {
+        this.out = out;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    }
+
+    @Override
+    public void start(int totalTasks) {
+        // Tasks are reported one by one
+    }
+
+    @Override
+    public void beginTask(String title, int totalWork) {
+        taskName = title;
+        this.totalWork = totalWork;
+        workDone = 0;
+        taskStartNanos = System.nanoTime();
+        nextPrintNanos = taskStartNanos + intervalNanos;
+    }
+
+    @Override
+    public void update(int completed) {
+        workDone += completed;
+        long now = System.nanoTime();
+        if (now - nextPrintNanos >= 0) {
+            printProgress(now, false);
+            nextPrintNanos = now + intervalNanos;
+        }
+    }
+
+    @Override
+    public void endTask() {
+        if (taskName == null) {
+            return;
+        }
+        printProgress(System.nanoTime(), true);
+        taskName = null;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    private void printProgress(long now, boolean done) {
+        double seconds = Math.max(now - taskStartNanos, 1) / (double) TimeUnit.SECONDS.toNanos(1);
+        StringBuilder line = new StringBuilder(taskName).append(": ");
+        if (totalWork != UNKNOWN) {
+            line.append(String.format(Locale.ROOT, "%3d%% (%d/%d)", workDone * 100 / Math.max(totalWork, 1),
+                    workDone, totalWork));
+        } else {
+            line.append(workDone);
+        }
+        line.append(String.format(Locale.ROOT, ", %.0f/s", workDone / seconds));
+        if (done) {
+            line.append(String.format(Locale.ROOT, ", done in %.1f s", seconds));
+        }
+        out.println(line);
+    }
+}
@@ -0,0 +1,107 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public class AncestryResolverTest {
+    private File tempRepoDir;
+
+    @Rule
+    public TemporaryFolder tempRoot = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws IOException {
+        tempRepoDir = tempRoot.newFolder();
+    }
+
+    @Test
+    public void getBaseTest() {
+        Assert.assertEquals("HEAD", AncestryResolver.getBase("HEAD~3"));
+        Assert.assertEquals("b1", AncestryResolver.getBase("b1^2~10^"));
+        Assert.assertEquals("HEAD@{1}", AncestryResolver.getBase("HEAD@{1}~1"));
+        Assert.assertNull(AncestryResolver.getBase("HEAD"));
+        Assert.assertNull(AncestryResolver.getBase("v1.0^{commit}~1"));
+        Assert.assertNull(AncestryResolver.getBase("HEAD:file~1"));
+        Assert.assertNull(AncestryResolver.getBase("~1"));
+    }
+
+    @Test
+    public void resolveAsRepositoryTest() throws IOException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        String[] expressions = {
+                "HEAD~0", "HEAD^0", "HEAD^", "HEAD^1", "HEAD~", "HEAD~~", "HEAD^^", "HEAD^2", "HEAD^2~1", "HEAD^2^",
+                "HEAD~1^", "HEAD~1^2", "HEAD~2", "HEAD~4", "HEAD~5", "HEAD~10", "HEAD^3", "HEAD^2^2", "HEAD~1~1",
+                "b1~1", "b2^~1", "b2~2", "b2~3", "master^2~1^0"
+        };
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             CommitLookup commitLookup = new CommitLookup(repository)) {
+            AncestryResolver resolver = new AncestryResolver(commitLookup);
+            for (String expression : expressions) {
+                ObjectId baseId = repository.resolve(AncestryResolver.getBase(expression));
+                Assert.assertEquals(expression, repository.resolve(expression), resolver.resolve(baseId, expression));
+            }
+        }
+    }
+
+    @Test
+    public void resolveHugeStepsTest() throws IOException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             CommitLookup commitLookup = new CommitLookup(repository)) {
+            AncestryResolver resolver = new AncestryResolver(commitLookup);
+            ObjectId headId = repository.resolve(Constants.HEAD);
+            Assert.assertNull(resolver.resolve(headId, "HEAD~99999999999"));
+            Assert.assertNull(resolver.resolve(headId, "HEAD^99999999999"));
+            Assert.assertNull(resolver.resolve(headId, "HEAD~2147483647~2147483647"));
+            Assert.assertEquals(repository.resolve("HEAD~1"), resolver.resolve(headId, "HEAD~00000000000000000001"));
+        }
+    }
+
+    @Test
+    public void resolveSharedBaseTest() throws IOException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.LONG_LINEAR_HISTORY, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             CommitLookup commitLookup = new CommitLookup(repository);
+             RevWalk revWalk = new RevWalk(repository)) {
+            ObjectId headId = repository.resolve(Constants.HEAD);
+            List<ObjectId> expectedChain = new ArrayList<>();
+            revWalk.markStart(revWalk.parseCommit(headId));
+            for (RevCommit commit : revWalk) {
+                expectedChain.add(commit.copy());
+            }
+            Assert.assertEquals(GitRepositoryFactory.LONG_LINEAR_HISTORY_COMMIT_COUNT, expectedChain.size());
+
+            // Descending order makes the first expression walk the whole chain, others are memoized
+            AncestryResolver resolver = new AncestryResolver(commitLookup);
+            for (int i = expectedChain.size(); i >= 0; --i) {
+                ObjectId expectedId = i < expectedChain.size() ? expectedChain.get(i) : null;
+                Assert.assertEquals(expectedId, resolver.resolve(headId, "HEAD~" + i));
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.*;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public class BulkObjectResolverTest {
+    private static final int BLOBS_COUNT = 300;
+
+    private Path repoPath;
+    private final Map<ObjectId, Integer> objectTypes = new HashMap<>();
+
+    @Rule
+    public TemporaryFolder tempRoot = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws IOException {
+        repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.MERGED_BRANCHES, tempRoot.newFolder());
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             ObjectInserter inserter = repository.newObjectInserter();
+             RevWalk revWalk = new RevWalk(repository)) {
+            // Similar blobs, so they are stored as deltas after gc. More blobs than two-digits prefixes exist
+            StringBuilder commonContent = new StringBuilder();
+            for (int i = 0; i < 200; ++i) {
+                commonContent.append("Common line ").append(i).append('\n');
+            }
+            TreeFormatter blobsTree = new TreeFormatter();
+            for (int i = 0; i < BLOBS_COUNT; ++i) {
+                byte[] content = (commonContent + "Blob " + i + '\n').getBytes(StandardCharsets.UTF_8);
+                ObjectId blobId = inserter.insert(Constants.OBJ_BLOB, content);
+                blobsTree.append(String.format("blob%03d", i), FileMode.REGULAR_FILE, blobId);
+                objectTypes.put(blobId, Constants.OBJ_BLOB);
+            }
+            ObjectId blobsTreeId = inserter.insert(blobsTree);
+            objectTypes.put(blobsTreeId, Constants.OBJ_TREE);
+            inserter.flush();
+
+            // Keeps the blobs reachable, so they are packed by gc
+            RefUpdate refUpdate = repository.updateRef("refs/blobs");
+            refUpdate.setNewObjectId(blobsTreeId);
+            refUpdate.update();
+
+            revWalk.markStart(revWalk.parseCommit(repository.resolve(Constants.HEAD)));
+            for (RevCommit commit : revWalk) {
+                objectTypes.put(commit.copy(), Constants.OBJ_COMMIT);
+                objectTypes.put(commit.getTree().copy(), Constants.OBJ_TREE);
+            }
+        }
+    }
+
+    @Test
+    public void resolveLooseObjectsTest() throws IOException {
+        assertResolvesAsRepository();
+    }
+
+    @Test
+    public void resolvePackedObjectsTest() throws Exception {
+        try (Git git = Git.open(repoPath.toFile())) {
+            git.gc().call();
+        }
+        assertResolvesAsRepository();
+    }
+
+    private void assertResolvesAsRepository() throws IOException {
+        List<String> objectNames = new ArrayList<>();
+        for (var objectId : objectTypes.keySet()) {
+            objectNames.add(objectId.name());
+            objectNames.add(objectId.name().substring(0, 10).toUpperCase());
+            objectNames.add(objectId.name().substring(0, 2));
+        }
+        objectNames.add("deadbeef");
+
+        BulkObjectResolver resolver = new BulkObjectResolver(getObjectsDir());
+        BulkObjectResolver.Resolution[] resolutions = resolver.resolve(objectNames);
+        Assert.assertEquals(objectNames.size(), resolutions.length);
+
+        int ambiguousCount = 0;
+        // Names are compared with objects resolution only, refs with the same names are not taken into account
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             ObjectReader reader = repository.newObjectReader()) {
+            for (int i = 0; i < resolutions.length; ++i) {
+                String objectName = objectNames.get(i);
+                Collection<ObjectId> expectedIds = reader.resolve(AbbreviatedObjectId.fromString(objectName));
+                if (expectedIds.size() > 1) {
+                    Assert.assertTrue(objectName, resolutions[i].isAmbiguous());
+                    Assert.assertNull(objectName, resolutions[i].getObjectId());
+                    ++ambiguousCount;
+                    continue;
+                }
+
+                ObjectId expectedId = expectedIds.isEmpty() ? null : expectedIds.iterator().next();
+                Assert.assertFalse(objectName, resolutions[i].isAmbiguous());
+                if (expectedId == null || !repository.hasObject(expectedId)) {
+                    Assert.assertNull(objectName, resolutions[i].getObjectId());
+                    Assert.assertEquals(objectName, Constants.OBJ_BAD, resolutions[i].getType());
+                } else {
+                    Assert.assertEquals(objectName, expectedId, resolutions[i].getObjectId());
+                    Assert.assertEquals(objectName, repository.open(expectedId).getType(), resolutions[i].getType());
+                }
+            }
+        }
+
+        // Two-digits prefixes are shared by some of the objects
+        Assert.assertTrue(ambiguousCount > 0);
+        for (var objectType : objectTypes.entrySet()) {
+            int index = objectNames.indexOf(objectType.getKey().name());
+            Assert.assertEquals(objectType.getKey(), resolutions[index].getObjectId());
+            Assert.assertEquals((int) objectType.getValue(), resolutions[index].getType());
+        }
+    }
+
+    private File getObjectsDir() {
+        return repoPath.resolve(Constants.DOT_GIT).resolve("objects").toFile();
+    }
+}
@@ -0,0 +1,241 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.*;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Commit-graph files are written by git itself, tests are skipped if git is not installed
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public class CommitGraphTest {
+    private File tempRepoDir;
+
+    @Rule
+    public TemporaryFolder tempRoot = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws IOException {
+        tempRepoDir = tempRoot.newFolder();
+    }
+
+    @Test
+    public void noCommitGraphTest() throws IOException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.ONE_BRANCH_FIVE_COMMITS, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        Assert.assertNull(CommitGraph.open(getObjectsDir(repoPath)));
+    }
+
+    @Test
+    public void readCommitGraphTest() throws IOException {
+//        * (HEAD -> master) Octopus merge of master~1, b1, b2
+//        |\
+//        | \
+//        |  \
+//        * | | Merge branch 'b1'
+//        ...   (MERGED_BRANCHES repo)
+
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+        commitOctopusMerge(repoPath);
+
+        runGit(repoPath, "commit-graph", "write", "--reachable");
+
+        CommitGraph commitGraph = CommitGraph.open(getObjectsDir(repoPath));
+        Assert.assertNotNull(commitGraph);
+        assertGraphMatchesRepository(repoPath, commitGraph);
+    }
+
+    @Test
+    public void readSplitCommitGraphChainTest() throws IOException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.NOT_MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        runGit(repoPath, "commit-graph", "write", "--reachable", "--split=no-merge");
+        try (Git git = Git.open(repoPath.toFile())) {
+            git.commit().setAllowEmpty(true).setMessage("5th on master").call();
+            git.commit().setAllowEmpty(true).setMessage("6th on master").call();
+        } catch (Exception e) {
+            Assert.fail("Error while adding commits to test repo");
+        }
+        commitOctopusMerge(repoPath);
+        runGit(repoPath, "commit-graph", "write", "--reachable", "--split=no-merge");
+
+        Path chainFile = getObjectsDir(repoPath).toPath().resolve("info/commit-graphs/commit-graph-chain");
+        Assert.assertEquals(2, Files.readAllLines(chainFile).size());
+
+        CommitGraph commitGraph = CommitGraph.open(getObjectsDir(repoPath));
+        Assert.assertNotNull(commitGraph);
+        assertGraphMatchesRepository(repoPath, commitGraph);
+    }
+
+    @Test
+    public void zeroGenerationNumbersTest() throws IOException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+        runGit(repoPath, "commit-graph", "write", "--reachable");
+        clearGenerationNumbers(getObjectsDir(repoPath).toPath().resolve("info/commit-graph"));
+
+        CommitGraph commitGraph = CommitGraph.open(getObjectsDir(repoPath));
+        Assert.assertNotNull(commitGraph);
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             CommitLookup commitLookup = new CommitLookup(repository, commitGraph)) {
+            ObjectId headId = repository.resolve(Constants.HEAD);
+            Assert.assertEquals(CommitGraph.GENERATION_NUMBER_ZERO,
+                    commitGraph.getGeneration(commitGraph.findCommit(headId)));
+
+            // Not computed generations are unknown like for commits not in the graph, commit times bound walks
+            Assert.assertEquals(CommitLookup.GENERATION_UNKNOWN, commitLookup.getGraphGeneration(headId));
+            Assert.assertEquals(CommitLookup.GENERATION_UNKNOWN,
+                    commitLookup.getGraphGeneration(repository.resolve("HEAD~4")));
+            HistoryCutoff cutoff = HistoryCutoff.of(commitLookup, List.of(headId));
+            Assert.assertFalse(cutoff.isByGeneration());
+            Assert.assertEquals(commitLookup.getCommitTime(headId), cutoff.getBound());
+        }
+    }
+
+    @Test
+    public void rewordWithCommitGraphTest()
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException, GitOperationFailureException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+        runGit(repoPath, "commit-graph", "write", "--reachable");
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository()) {
+            Assert.assertNotNull(CommitLookup.openCommitGraph(repository));
+        }
+
+        Map<String, String> commitsToReword = new HashMap<>();
+        commitsToReword.put("HEAD^2", "2nd on b1 reword");
+        commitsToReword.put("HEAD~2", "3rd on master reword");
+
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.openRepository(repoPath);
+            gitFastReword.reword(commitsToReword);
+        }
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             RevWalk revWalk = new RevWalk(repository)) {
+            for (var mapEntry : commitsToReword.entrySet()) {
+                String actualMsg = revWalk.parseCommit(repository.resolve(mapEntry.getKey())).getFullMessage();
+                Assert.assertEquals(mapEntry.getValue(), actualMsg);
+            }
+            Assert.assertEquals("2nd on master", revWalk.parseCommit(repository.resolve("HEAD~3")).getFullMessage());
+        }
+    }
+
+    private static void assertGraphMatchesRepository(Path repoPath, CommitGraph commitGraph) throws IOException {
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             RevWalk revWalk = new RevWalk(repository)) {
+            for (Ref ref : repository.getRefDatabase().getRefs(Constants.R_HEADS).values()) {
+                revWalk.markStart(revWalk.parseCommit(ref.getObjectId()));
+            }
+            revWalk.sort(RevSort.TOPO);
+            revWalk.sort(RevSort.REVERSE, true);
+
+            Map<ObjectId, Integer> expectedGenerations = new HashMap<>();
+            int commitsCount = 0;
+            for (RevCommit commit : revWalk) {
+                ++commitsCount;
+                int position = commitGraph.findCommit(commit);
+                Assert.assertNotEquals(CommitGraph.NO_POSITION, position);
+                Assert.assertEquals(commit, commitGraph.getCommitId(position));
+                Assert.assertEquals(position, commitGraph.findCommit(commitGraph.getCommitId(position)));
+
+                Assert.assertEquals(commit.getTree(), commitGraph.getTreeId(position));
+                Assert.assertEquals(commit.getCommitTime(), commitGraph.getCommitTime(position));
+
+                int[] parents = commitGraph.getParents(position);
+                Assert.assertEquals(commit.getParentCount(), parents.length);
+                int expectedGeneration = 1;
+                for (int i = 0; i < parents.length; ++i) {
+                    Assert.assertEquals(commit.getParent(i), commitGraph.getCommitId(parents[i]));
+                    expectedGeneration = Math.max(expectedGeneration, expectedGenerations.get(commit.getParent(i)) + 1);
+                }
+                expectedGenerations.put(commit, expectedGeneration);
+                Assert.assertEquals(expectedGeneration, commitGraph.getGeneration(position));
+            }
+            Assert.assertEquals(commitsCount, commitGraph.getCommitCount());
+        }
+        Assert.assertEquals(CommitGraph.NO_POSITION, commitGraph.findCommit(ObjectId.zeroId()));
+    }
+
+    /**
+     * Set generation numbers of all the commits to zero, like git writes them when they are not computed
+     */
+    private static void clearGenerationNumbers(Path graphFile) throws IOException {
+        byte[] data = Files.readAllBytes(graphFile);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+
+        int chunksCount = data[6] & 0xff;
+        int commitDataOffset = -1;
+        int commitCount = 0;
+        for (int i = 0; i < chunksCount; ++i) {
+            int entryOffset = 8 + i * 12;
+            int chunkId = buffer.getInt(entryOffset);
+            int chunkOffset = (int) buffer.getLong(entryOffset + 4);
+            if (chunkId == 0x4f494446) { // "OIDF"
+                commitCount = buffer.getInt(chunkOffset + 255 * 4);
+            } else if (chunkId == 0x43444154) { // "CDAT"
+                commitDataOffset = chunkOffset;
+            }
+        }
+        Assert.assertNotEquals(-1, commitDataOffset);
+
+        for (int i = 0; i < commitCount; ++i) {
+            // Generation is stored in the upper 30 bits, commit time upper bits in the lower 2 ones
+            int generationOffset = commitDataOffset + i * (Constants.OBJECT_ID_LENGTH + 16)
+                    + Constants.OBJECT_ID_LENGTH + 8;
+            buffer.putInt(generationOffset, buffer.getInt(generationOffset) & 0x3);
+        }
+        // git writes commit-graph read-only
+        Assert.assertTrue(graphFile.toFile().setWritable(true));
+        Files.write(graphFile, data);
+    }
+
+    private static void commitOctopusMerge(Path repoPath) throws IOException {
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             ObjectInserter inserter = repository.newObjectInserter();
+             RevWalk revWalk = new RevWalk(repository)) {
+            RevCommit head = revWalk.parseCommit(repository.resolve(Constants.HEAD));
+
+            CommitBuilder builder = new CommitBuilder();
+            builder.setTreeId(head.getTree());
+            builder.setParentIds(head, repository.resolve("b1"), repository.resolve("b2"));
+            builder.setAuthor(new PersonIdent("Some Author", "some@author.email"));
+            builder.setCommitter(new PersonIdent("Some Author", "some@author.email"));
+            builder.setMessage("Octopus merge");
+            ObjectId octopusId = inserter.insert(builder);
+            inserter.flush();
+
+            RefUpdate refUpdate = repository.updateRef(Constants.HEAD);
+            refUpdate.setNewObjectId(octopusId);
+            refUpdate.update();
+        }
+    }
+
+    private static File getObjectsDir(Path repoPath) {
+        return repoPath.resolve(Constants.DOT_GIT).resolve("objects").toFile();
+    }
+
+    private static void runGit(Path repoPath, String... args) {
+        Assume.assumeTrue("git is not available: git " + String.join(" ", args),
+                GitRepositoryFactory.runGit(repoPath, args));
+    }
+}
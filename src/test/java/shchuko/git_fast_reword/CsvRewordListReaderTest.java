@@ -0,0 +1,148 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public class CsvRewordListReaderTest {
+    @Rule
+    public TemporaryFolder tempRoot = new TemporaryFolder();
+
+    @Test
+    public void plainRecordsTest() throws IOException {
+        List<RewordEntry> entries = readAll(new CsvRewordListReader(new StringReader(
+                "HEAD~10,Message for commit HEAD~10\n" +
+                        "\n" +
+                        "  ef652dys ,  Message for commit ef652dys  \r\n" +
+                        "HEAD,No line break at the end")));
+
+        Assert.assertEquals(3, entries.size());
+        assertEntry("HEAD~10", "Message for commit HEAD~10", entries.get(0));
+        assertEntry("ef652dys", "Message for commit ef652dys", entries.get(1));
+        assertEntry("HEAD", "No line break at the end", entries.get(2));
+    }
+
+    @Test
+    public void quotedFieldsTest() throws IOException {
+        List<RewordEntry> entries = readAll(new CsvRewordListReader(new StringReader(
+                "\uFEFFHEAD, \"Message, with, commas\"\n" +
+                        "\"HEAD~1\",\"Summary\r\n\r\nBody with \"\"quotes\"\"\"\r\n" +
+                        "HEAD~2,\"\"\n" +
+                        "HEAD~3,\"  kept as is  \"  \n")));
+
+        Assert.assertEquals(4, entries.size());
+        assertEntry("HEAD", "Message, with, commas", entries.get(0));
+        assertEntry("HEAD~1", "Summary\r\n\r\nBody with \"quotes\"", entries.get(1));
+        assertEntry("HEAD~2", "", entries.get(2));
+        assertEntry("HEAD~3", "  kept as is  ", entries.get(3));
+    }
+
+    @Test
+    public void malformedRecordsTest() throws IOException {
+        CsvRewordListReader reader = new CsvRewordListReader(new StringReader(
+                "HEAD~1,First\n" +
+                        "HEAD~2,Second,Third\n" +
+                        "HEAD~3\n" +
+                        "HEAD~4,\"Quoted\" tail\n" +
+                        ",No revision\n" +
+                        "HEAD~5,\"Multi\nline\"\n"));
+        List<RewordEntry> entries = readAll(reader);
+
+        Assert.assertEquals(2, entries.size());
+        assertEntry("HEAD~1", "First", entries.get(0));
+        assertEntry("HEAD~5", "Multi\nline", entries.get(1));
+        Assert.assertEquals(4, reader.getMalformedRecordsCount());
+        Assert.assertEquals(2, reader.getFirstMalformedRecordLine());
+    }
+
+    @Test
+    public void unterminatedQuoteTest() throws IOException {
+        CsvRewordListReader reader = new CsvRewordListReader(new StringReader(
+                "HEAD~1,First\n" +
+                        "HEAD~2,\"Second\n" +
+                        "HEAD~3,Third\n"));
+        assertEntry("HEAD~1", "First", reader.next());
+        try {
+            reader.next();
+            Assert.fail("Unterminated quoted field is not detected");
+        } catch (IOException e) {
+            Assert.assertEquals("Unterminated quoted field started at line 2", e.getMessage());
+        }
+    }
+
+    @Test
+    public void largeFileTest() throws IOException {
+        // Records cross the read buffer bounds
+        int recordsCount = 20000;
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < recordsCount; ++i) {
+            csv.append("HEAD~").append(i).append(",\"Message ").append(i).append(",\r\n\"\"line\"\"\"\r\n");
+        }
+        Path csvPath = tempRoot.newFile().toPath();
+        Files.writeString(csvPath, csv, StandardCharsets.UTF_8);
+
+        List<RewordEntry> entries;
+        try (CsvRewordListReader reader = new CsvRewordListReader(csvPath)) {
+            entries = readAll(reader);
+            Assert.assertEquals(0, reader.getMalformedRecordsCount());
+        }
+        Assert.assertEquals(recordsCount, entries.size());
+        for (int i = 0; i < recordsCount; ++i) {
+            assertEntry("HEAD~" + i, "Message " + i + ",\r\n\"line\"", entries.get(i));
+        }
+    }
+
+    @Test
+    public void rewordFromCsvTest()
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException, GitOperationFailureException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.ONE_BRANCH_FIVE_COMMITS,
+                tempRoot.newFolder());
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        String csv = "HEAD~1,\"Summary, with comma\n\nBody\"\n" +
+                "HEAD~3,Plain message\n";
+        try (GitFastReword gitFastReword = new GitFastReword();
+             CsvRewordListReader reader = new CsvRewordListReader(new StringReader(csv))) {
+            gitFastReword.openRepository(repoPath);
+            gitFastReword.reword(reader);
+        }
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             RevWalk revWalk = new RevWalk(repository)) {
+            Assert.assertEquals("Summary, with comma\n\nBody",
+                    revWalk.parseCommit(repository.resolve("HEAD~1")).getFullMessage());
+            Assert.assertEquals("Plain message", revWalk.parseCommit(repository.resolve("HEAD~3")).getFullMessage());
+            Assert.assertEquals("Commit 2", revWalk.parseCommit(repository.resolve("HEAD~2")).getFullMessage());
+        }
+    }
+
+    private static List<RewordEntry> readAll(CsvRewordListReader reader) throws IOException {
+        List<RewordEntry> entries = new ArrayList<>();
+        RewordEntry entry;
+        while ((entry = reader.next()) != null) {
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private static void assertEntry(String revision, String message, RewordEntry entry) {
+        Assert.assertNotNull(entry);
+        Assert.assertEquals(revision, entry.getRevision());
+        Assert.assertEquals(message, entry.getMessage());
+    }
+}
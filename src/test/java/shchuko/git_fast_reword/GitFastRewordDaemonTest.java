@@ -0,0 +1,165 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public class GitFastRewordDaemonTest {
+    private Path daemonFile;
+    private GitFastRewordDaemon daemon;
+    private Thread serveThread;
+
+    @Rule
+    public TemporaryFolder tempRoot = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws IOException {
+        daemonFile = tempRoot.newFolder().toPath().resolve("daemon");
+        daemon = GitFastRewordDaemon.start(daemonFile, TimeUnit.MINUTES.toMillis(10), TimeUnit.MINUTES.toMillis(10));
+        Assert.assertNotNull(daemon);
+        serveThread = new Thread(daemon::serve);
+        serveThread.start();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        daemon.close();
+        serveThread.join();
+        Assert.assertFalse(Files.exists(daemonFile));
+    }
+
+    @Test
+    public void secondDaemonNotStartedTest() throws IOException {
+        Assert.assertTrue(Files.exists(daemonFile));
+        Assert.assertNull(GitFastRewordDaemon.start(daemonFile, 1, 1));
+    }
+
+    @Test
+    public void rewordByDaemonTest() throws IOException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.ONE_BRANCH_FIVE_COMMITS,
+                tempRoot.newFolder());
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        // The repository is kept open between requests
+        Assert.assertEquals(0, run(repoPath, "HEAD~1", "Commit 4 reword"));
+        Assert.assertEquals(1, daemon.getOpenRepositoriesCount());
+        Assert.assertEquals(0, run(repoPath, "HEAD~3", "Commit 2 reword"));
+        Assert.assertEquals(1, daemon.getOpenRepositoriesCount());
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             RevWalk revWalk = new RevWalk(repository)) {
+            Assert.assertEquals("Commit 4 reword", revWalk.parseCommit(repository.resolve("HEAD~1")).getShortMessage());
+            Assert.assertEquals("Commit 2 reword", revWalk.parseCommit(repository.resolve("HEAD~3")).getShortMessage());
+        }
+    }
+
+    @Test
+    public void subdirectoryRequestsShareRepositoryTest() throws IOException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.ONE_BRANCH_FIVE_COMMITS,
+                tempRoot.newFolder());
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+        Path subdirectoryPath = Files.createDirectories(repoPath.resolve("src").resolve("main"));
+
+        // The repository is kept by its git directory, not by the working directory of a request
+        Assert.assertEquals(0, run(subdirectoryPath, "HEAD~1", "Commit 4 reword"));
+        Assert.assertEquals(1, daemon.getOpenRepositoriesCount());
+        Assert.assertEquals(0, run(repoPath, "HEAD~3", "Commit 2 reword"));
+        Assert.assertEquals(1, daemon.getOpenRepositoriesCount());
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             RevWalk revWalk = new RevWalk(repository)) {
+            Assert.assertEquals("Commit 4 reword", revWalk.parseCommit(repository.resolve("HEAD~1")).getShortMessage());
+            Assert.assertEquals("Commit 2 reword", revWalk.parseCommit(repository.resolve("HEAD~3")).getShortMessage());
+        }
+    }
+
+    @Test
+    public void notRepositoryNotKeptTest() throws IOException {
+        Path notRepoPath = tempRoot.newFolder().toPath();
+        Assert.assertNotEquals(0, run(notRepoPath, "HEAD", "Reword"));
+        Assert.assertEquals(0, daemon.getOpenRepositoriesCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void daemonNotRunningTest() throws IOException {
+        daemon.close();
+        run(tempRoot.newFolder().toPath(), "HEAD", "Reword");
+    }
+
+    @Test
+    public void oversizedRequestRejectedTest() throws IOException {
+        Properties daemonProperties = new Properties();
+        try (Reader reader = Files.newBufferedReader(daemonFile, StandardCharsets.ISO_8859_1)) {
+            daemonProperties.load(reader);
+        }
+        int port = Integer.parseInt(daemonProperties.getProperty(GitFastRewordDaemon.PORT_PROPERTY));
+        String token = daemonProperties.getProperty(GitFastRewordDaemon.TOKEN_PROPERTY);
+
+        // Huge token is not read
+        Assert.assertEquals(-1, sendRawRequest(port, out -> out.writeInt(0x7ffffff0)));
+        // Huge args count and arg are not read even with the right token
+        Assert.assertEquals(-1, sendRawRequest(port, out -> {
+            GitFastRewordDaemon.writeString(out, token);
+            GitFastRewordDaemon.writeString(out, tempRoot.getRoot().getPath());
+            out.writeInt(0x7ffffff0);
+        }));
+        Assert.assertEquals(-1, sendRawRequest(port, out -> {
+            GitFastRewordDaemon.writeString(out, token);
+            GitFastRewordDaemon.writeString(out, tempRoot.getRoot().getPath());
+            out.writeInt(1);
+            out.writeInt(0x7ffffff0);
+        }));
+
+        // Daemon keeps serving requests
+        Assert.assertNotEquals(0, run(tempRoot.newFolder().toPath(), "HEAD", "Reword"));
+    }
+
+    /**
+     * Send protocol version and the rest of a request
+     *
+     * @return First byte of the response, -1 if the daemon closed the connection
+     */
+    private static int sendRawRequest(int port, RequestWriter requestWriter) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             DataOutputStream out = new DataOutputStream(socket.getOutputStream())) {
+            socket.setSoTimeout((int) TimeUnit.SECONDS.toMillis(30));
+            out.writeInt(GitFastRewordDaemon.PROTOCOL_VERSION);
+            requestWriter.write(out);
+            out.flush();
+            return socket.getInputStream().read();
+        }
+    }
+
+    private int run(Path workDir, String... args) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        return new DaemonClient(daemonFile, false).run(args, workDir, new PrintStream(out), new PrintStream(err));
+    }
+
+    @FunctionalInterface
+    private interface RequestWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
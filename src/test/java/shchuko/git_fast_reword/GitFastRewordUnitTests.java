@@ -3,18 +3,25 @@ package shchuko.git_fast_reword;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TagBuilder;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.OffsetDateTime;
 import java.util.*;
 
 /**
@@ -780,18 +787,52 @@ public class GitFastRewordUnitTests {
         try (GitFastReword gitFastReword = new GitFastReword()) {
             gitFastReword.setInfoPrintStream(printStream);
             gitFastReword.setErrPrintStream(printStream);
+            gitFastReword.setVerbose(true);
             gitFastReword.openRepository(tempRepoDir.toPath());
             gitFastReword.reword(commitHash, commitMessage);
         }
 
         // GitFastReword will find parent of 6788ba863f8388a19de7c09d2f7f404eb4e132fc and use it as 'onto' for rebase
-        // After it will stop dfs on all commits older than 'onto', the first one is 2c027b8e6b0dcd673a4166faa99c4dd95e11f496
+        // The clone has no commit-graph, so dfs stops on all commits older than 'onto', the first one is
+        // 2c027b8e6b0dcd673a4166faa99c4dd95e11f496
         String expectedLogBeginning = "[ Info ] rebase (start): checkout 6788ba863f8388a19de7c09d2f7f404eb4e132fc" +
                 System.lineSeparator() + "[ Info ] rebase (reset): '2c027b8e6b0dcd673a4166faa99c4dd95e11f496'";
         String actualLogBeginning = byteArrayOutputStream.toString().substring(0, expectedLogBeginning.length());
         Assert.assertEquals(expectedLogBeginning, actualLogBeginning);
     }
 
+    @Test
+    public void rewordSkewedCommitTimesTest()
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException, GitOperationFailureException {
+//        * (HEAD -> master) Merge branch 'b1'
+//        |\
+//        | * (b1) 1st on b1           [older than 2nd on master]
+//        * | 3rd on master
+//        |/
+//        * 2nd on master ->[reword]->"2nd on master reword"
+//        * 1st on master
+
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.SKEWED_COMMIT_TIMES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+        // Without commit-graph generation numbers commit times bound the search
+        Assume.assumeTrue("git is not available",
+                GitRepositoryFactory.runGit(repoPath, "commit-graph", "write", "--reachable"));
+
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.openRepository(repoPath);
+            gitFastReword.reword("HEAD~2", "2nd on master reword");
+        }
+
+        // '1st on b1' descends from the reworded commit despite of its time, so it must be copied too
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             RevWalk revWalk = new RevWalk(repository)) {
+            RevCommit rewordedCommit = revWalk.parseCommit(repository.resolve("HEAD~2"));
+            Assert.assertEquals("2nd on master reword", rewordedCommit.getFullMessage());
+            Assert.assertEquals(rewordedCommit, repository.resolve("HEAD^2^"));
+            Assert.assertEquals("1st on master", revWalk.parseCommit(repository.resolve("HEAD~3")).getFullMessage());
+        }
+    }
+
     @Test
     public void rewordNullCommitIdentValue()
             throws RepositoryNotOpenedException, GitOperationFailureException, IOException, RepositoryNotFoundException {
@@ -858,4 +899,801 @@ public class GitFastRewordUnitTests {
         Assert.assertFalse(byteArrayOutputStream.toString().isBlank());
         Assert.assertEquals(headIdBeforeReword, headIdAfterReword);
     }
+
+    @Test
+    public void rewordDeepHistoryOnSmallStackTest() throws InterruptedException {
+//        On branch 'master'
+//
+//        * (HEAD -> master) Commit 4999
+//        * ...
+//        * Commit 1  ->[reword]->"Commit 1 reword", all 4998 successors are copied
+//        * Commit 0
+
+        final int rewordCommitFromHeadNo = GitRepositoryFactory.LONG_LINEAR_HISTORY_COMMIT_COUNT - 2;
+        final String commitMsg = "Commit 1 reword";
+
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.LONG_LINEAR_HISTORY, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        List<Throwable> errors = new ArrayList<>();
+        // Stack is too small for a recursion as deep as the history
+        Thread rewordThread = new Thread(null, () -> {
+            try (GitFastReword gitFastReword = new GitFastReword()) {
+                gitFastReword.openRepository(repoPath);
+                gitFastReword.reword("HEAD~" + rewordCommitFromHeadNo, commitMsg);
+            } catch (Throwable e) {
+                errors.add(e);
+            }
+        }, "reword", 128 * 1024);
+        rewordThread.start();
+        rewordThread.join();
+        Assert.assertEquals(Collections.emptyList(), errors);
+
+        List<String> messagesAfterReword = new ArrayList<>();
+        try (Git git = Git.open(repoPath.toFile())) {
+            git.log().call().forEach(commit -> messagesAfterReword.add(commit.getFullMessage()));
+        } catch (Exception e) {
+            Assert.fail("Error while reading test repo after reword");
+            return;
+        }
+
+        Assert.assertEquals(GitRepositoryFactory.LONG_LINEAR_HISTORY_COMMIT_COUNT, messagesAfterReword.size());
+        Assert.assertEquals(commitMsg, messagesAfterReword.get(rewordCommitFromHeadNo));
+        Assert.assertEquals("Commit 2", messagesAfterReword.get(rewordCommitFromHeadNo - 1));
+    }
+
+    @Test
+    public void rewordBatchRefUpdateTest()
+            throws RepositoryNotOpenedException, GitOperationFailureException, IOException, RepositoryNotFoundException {
+//        On branch 'master'
+//
+//        * (HEAD -> master) Merge branch 'b1'
+//        |\
+//        | * (b1) 2nd on b1  ->[reword]->"2nd on b1 reword"
+//        | * 1st on b1
+//        * | 4th on master
+//        | | * (b2) 2nd on b2
+//        | | * 1st on b2
+//        | |/
+//        |/|
+//        * | 3rd on master   ->[reword]->"3rd on master reword" (HEAD~2)
+//        |/
+//        * 2nd on master
+//        * 1st on master
+
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        Map<String, String> commitsToReword = new HashMap<>();
+        commitsToReword.put("HEAD^2", "2nd on b1 reword");
+        commitsToReword.put("HEAD~2", "3rd on master reword");
+
+        int headRefLogSizeBeforeReword;
+        int branchRefLogSizeBeforeReword;
+        try (Git git = Git.open(repoPath.toFile())) {
+            Repository repository = git.getRepository();
+            headRefLogSizeBeforeReword = repository.getReflogReader(Constants.HEAD).getReverseEntries().size();
+            branchRefLogSizeBeforeReword = repository.getReflogReader("master").getReverseEntries().size();
+        }
+
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.openRepository(repoPath);
+            gitFastReword.setBatchRefUpdate(true);
+            gitFastReword.reword(commitsToReword);
+        }
+
+        try (Git git = Git.open(repoPath.toFile())) {
+            Repository repository = git.getRepository();
+            Assert.assertEquals(Constants.R_HEADS + "master", repository.getFullBranch());
+
+            try (RevWalk revWalk = new RevWalk(repository)) {
+                for (var mapEntry : commitsToReword.entrySet()) {
+                    String expectedMsg = mapEntry.getValue();
+                    String actualMsg = revWalk.parseCommit(repository.resolve(mapEntry.getKey())).getFullMessage();
+                    Assert.assertEquals(expectedMsg, actualMsg);
+                }
+            }
+
+            // Merge commit, 4th on master, 3rd on master, 2nd on b1 were rewritten
+            var headRefLog = repository.getReflogReader(Constants.HEAD).getReverseEntries();
+            var branchRefLog = repository.getReflogReader("master").getReverseEntries();
+            Assert.assertEquals(headRefLogSizeBeforeReword + 1, headRefLog.size());
+            Assert.assertEquals(branchRefLogSizeBeforeReword + 1, branchRefLog.size());
+            Assert.assertTrue(headRefLog.get(0).getComment().endsWith("4 commits rewritten"));
+            Assert.assertEquals(headRefLog.get(0).getComment(), branchRefLog.get(0).getComment());
+        }
+    }
+
+    @Test
+    public void rewordSinglePackWriteTest()
+            throws RepositoryNotOpenedException, GitOperationFailureException, IOException, RepositoryNotFoundException {
+//        On branch 'master'
+//
+//        * (HEAD -> master) Commit 5
+//        * Commit 4
+//        * Commit 3                  ->[reword]->"HEAD~2 commit message"
+//        * Commit 2
+//        * Commit 1
+
+        final int rewordCommitFromHeadNo = 2;
+        final String commitMsg = "HEAD~" + rewordCommitFromHeadNo + " commit message";
+
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.ONE_BRANCH_FIVE_COMMITS, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        List<String> messagesBeforeReword = new ArrayList<>();
+        Set<String> looseObjectsBeforeReword = new HashSet<>();
+        File objectsDir = repoPath.resolve(Constants.DOT_GIT).resolve("objects").toFile();
+        try (Git git = Git.open(repoPath.toFile())) {
+            git.log().call().forEach(commit -> messagesBeforeReword.add(commit.getFullMessage()));
+        } catch (Exception e) {
+            Assert.fail("Error while reading test repo before reword");
+            return;
+        }
+        try (var files = Files.walk(objectsDir.toPath())) {
+            files.filter(path -> path.toFile().isFile()).forEach(path -> looseObjectsBeforeReword.add(path.toString()));
+        }
+
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.openRepository(repoPath);
+            gitFastReword.setSinglePackWrite(true);
+            gitFastReword.reword("HEAD~" + rewordCommitFromHeadNo, commitMsg);
+        }
+
+        Set<String> newFiles = new HashSet<>();
+        try (var files = Files.walk(objectsDir.toPath())) {
+            files.filter(path -> path.toFile().isFile())
+                    .map(Path::toString)
+                    .filter(path -> !looseObjectsBeforeReword.contains(path))
+                    .forEach(newFiles::add);
+        }
+        // 3 new commits are in a single pack with its index
+        Assert.assertEquals(2, newFiles.size());
+        Assert.assertTrue(newFiles.stream().allMatch(path -> path.matches(".*pack-[0-9a-f]{40}\\.(pack|idx)$")));
+
+        List<String> messagesAfterReword = new ArrayList<>();
+        try (Git git = Git.open(repoPath.toFile())) {
+            git.log().call().forEach(commit -> messagesAfterReword.add(commit.getFullMessage()));
+        } catch (Exception e) {
+            Assert.fail("Error while reading test repo after reword");
+            return;
+        }
+
+        List<String> expectedMessages = new ArrayList<>(messagesBeforeReword);
+        expectedMessages.set(rewordCommitFromHeadNo, commitMsg);
+        Assert.assertEquals(expectedMessages, messagesAfterReword);
+
+        // Pack is readable by git itself
+        Process fsck = new ProcessBuilder("git", "fsck", "--strict").directory(repoPath.toFile()).start();
+        try {
+            Assert.assertEquals(0, fsck.waitFor());
+        } catch (InterruptedException e) {
+            Assert.fail("Interrupted while waiting for git fsck");
+        }
+    }
+
+    @Test
+    public void rewordAbbreviatedIdsTest()
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException, GitOperationFailureException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.ONE_BRANCH_FIVE_COMMITS, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        Map<String, String> commitsToReword = new HashMap<>();
+        String treeAbbreviation;
+        try (Git git = Git.open(repoPath.toFile())) {
+            Repository repository = git.getRepository();
+            commitsToReword.put(repository.resolve("HEAD~1").getName().substring(0, 7), "Commit 3 reword");
+            commitsToReword.put(repository.resolve("HEAD~3").getName().substring(0, 12).toUpperCase(),
+                    "Commit 1 reword");
+            treeAbbreviation = repository.resolve("HEAD^{tree}").getName().substring(0, 8);
+            commitsToReword.put(treeAbbreviation, "won't be written tree message");
+
+            // Branch named as an abbreviated id is preferred over the id
+            git.branchCreate().setName("cafe").setStartPoint("HEAD~2").call();
+            commitsToReword.put("cafe", "Commit 2 reword");
+        } catch (Exception e) {
+            Assert.fail("Error while reading test repo before reword");
+            return;
+        }
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        PrintStream errPrintStream = new PrintStream(byteArrayOutputStream, true);
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.setErrPrintStream(errPrintStream);
+            gitFastReword.openRepository(repoPath);
+            gitFastReword.reword(commitsToReword);
+        }
+
+        List<String> messagesAfterReword = new ArrayList<>();
+        try (Git git = Git.open(repoPath.toFile())) {
+            git.log().call().forEach(commit -> messagesAfterReword.add(commit.getFullMessage()));
+        } catch (Exception e) {
+            Assert.fail("Error while reading test repo after reword");
+            return;
+        }
+
+        List<String> expectedMessages = List.of("Commit 4", "Commit 3 reword", "Commit 2 reword", "Commit 1 reword",
+                "Commit 0");
+        Assert.assertEquals(expectedMessages, messagesAfterReword);
+        Assert.assertTrue(byteArrayOutputStream.toString().contains(treeAbbreviation + " not found"));
+    }
+
+    @Test
+    public void rewordHugeAncestryStepTest()
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException, GitOperationFailureException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.ONE_BRANCH_FIVE_COMMITS, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        Map<String, String> commitsToReword = new HashMap<>();
+        commitsToReword.put("HEAD~99999999999", "No such commit");
+        commitsToReword.put("HEAD~1", "Commit 3 reword");
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        PrintStream errPrintStream = new PrintStream(byteArrayOutputStream, true);
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.setErrPrintStream(errPrintStream);
+            gitFastReword.openRepository(repoPath);
+            gitFastReword.reword(commitsToReword);
+        }
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             RevWalk revWalk = new RevWalk(repository)) {
+            Assert.assertEquals("Commit 3 reword",
+                    revWalk.parseCommit(repository.resolve("HEAD~1")).getFullMessage());
+        }
+        Assert.assertTrue(byteArrayOutputStream.toString().contains("HEAD~99999999999 not found"));
+    }
+
+    @Test
+    public void rewordAllBranchesTest()
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException, GitOperationFailureException {
+//        On branch 'master'
+//
+//        * (HEAD -> master) Merge branch 'b1'
+//        |\
+//        | * (b1) 2nd on b1
+//        | * 1st on b1
+//        * | 4th on master
+//        | | * (b2, origin/b2) 2nd on b2
+//        | | * 1st on b2
+//        | |/
+//        |/|
+//        * | 3rd on master
+//        |/
+//        * 2nd on master   ->[reword]->"2nd on master reword"
+//        * (origin/old) 1st on master
+
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        ObjectId oldRemoteHeadId;
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository()) {
+            createRef(repository, Constants.R_REMOTES + "origin/b2", "b2");
+            oldRemoteHeadId = createRef(repository, Constants.R_REMOTES + "origin/old", "HEAD~4");
+            repository.updateRef(Constants.R_REMOTES + "origin/HEAD").link(Constants.R_REMOTES + "origin/b2");
+        }
+
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.openRepository(repoPath);
+            gitFastReword.setRewriteAllBranches(true);
+            gitFastReword.setRewriteRemoteTrackingBranches(true);
+            gitFastReword.reword("HEAD~3", "2nd on master reword");
+        }
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             RevWalk revWalk = new RevWalk(repository)) {
+            RevCommit rewordedCommit = revWalk.parseCommit(repository.resolve("HEAD~3"));
+            Assert.assertEquals("2nd on master reword", rewordedCommit.getFullMessage());
+
+            // Commits shared by the branches are created once
+            Assert.assertEquals(repository.resolve("HEAD^2"), repository.resolve("b1"));
+            Assert.assertEquals(rewordedCommit, repository.resolve("b1~2"));
+            Assert.assertEquals(repository.resolve("HEAD~2"), repository.resolve("b2~2"));
+            Assert.assertEquals("2nd on b2", revWalk.parseCommit(repository.resolve("b2")).getFullMessage());
+
+            Assert.assertEquals(repository.resolve("b2"), repository.resolve("origin/b2"));
+            Assert.assertEquals(repository.resolve("b2"), repository.resolve("origin/HEAD"));
+            Assert.assertEquals(oldRemoteHeadId, repository.resolve("origin/old"));
+
+            var b1RefLog = repository.getReflogReader("b1").getReverseEntries();
+            Assert.assertTrue(b1RefLog.get(0).getComment().startsWith("rebase (finish): refs/heads/b1 onto "));
+        }
+    }
+
+    @Test
+    public void rewordAllLocalBranchesTest()
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException, GitOperationFailureException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.NOT_MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        ObjectId oldRemoteHeadId;
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository()) {
+            oldRemoteHeadId = createRef(repository, Constants.R_REMOTES + "origin/b1", "b1");
+        }
+
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.openRepository(repoPath);
+            gitFastReword.setRewriteAllBranches(true);
+            gitFastReword.reword("HEAD~2", "2nd on master reword");
+        }
+
+        // Remote-tracking branches are not rewritten by default
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             RevWalk revWalk = new RevWalk(repository)) {
+            ObjectId rewordedCommitId = repository.resolve("HEAD~2");
+            Assert.assertEquals("2nd on master reword", revWalk.parseCommit(rewordedCommitId).getFullMessage());
+            Assert.assertEquals(rewordedCommitId, repository.resolve("b1~2"));
+            Assert.assertEquals(rewordedCommitId, repository.resolve("b2~3"));
+            Assert.assertEquals(oldRemoteHeadId, repository.resolve("origin/b1"));
+        }
+    }
+
+    @Test
+    public void rewordRejectedRefRollBackTest()
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.NOT_MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        ObjectId oldHeadId;
+        ObjectId oldB2Id;
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository()) {
+            oldHeadId = repository.resolve("HEAD");
+            oldB2Id = repository.resolve("b2");
+        }
+        // A stale lock file makes the update of b1 fail
+        Files.createFile(repoPath.resolve(".git/refs/heads/b1.lock"));
+
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.openRepository(repoPath);
+            gitFastReword.setRewriteAllBranches(true);
+            gitFastReword.reword("HEAD~2", "2nd on master reword");
+            Assert.fail("Rejected ref update is not reported");
+        } catch (GitOperationFailureException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("1 of 3 ref(s) rejected"));
+        }
+
+        // Refs updated by the batch are moved back
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository()) {
+            Assert.assertEquals(oldHeadId, repository.resolve("HEAD"));
+            Assert.assertEquals(oldB2Id, repository.resolve("b2"));
+            Assert.assertEquals(Constants.R_HEADS + "master", repository.getFullBranch());
+        }
+    }
+
+    @Test
+    public void rewordParallelTest()
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException, GitOperationFailureException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.openRepository(repoPath);
+            gitFastReword.setRewriteAllBranches(true);
+            gitFastReword.setParallelism(4);
+            Assert.assertEquals(4, gitFastReword.getParallelism());
+            gitFastReword.reword("HEAD~3", "2nd on master reword");
+        }
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             RevWalk revWalk = new RevWalk(repository)) {
+            RevCommit rewordedCommit = revWalk.parseCommit(repository.resolve("HEAD~3"));
+            Assert.assertEquals("2nd on master reword", rewordedCommit.getFullMessage());
+            Assert.assertEquals("Merge branch 'b1'", revWalk.parseCommit(repository.resolve("HEAD")).getShortMessage());
+
+            // Commits shared by the branches are created once
+            Assert.assertEquals(repository.resolve("HEAD^2"), repository.resolve("b1"));
+            Assert.assertEquals(rewordedCommit, repository.resolve("b1~2"));
+            Assert.assertEquals(repository.resolve("HEAD~2"), repository.resolve("b2~2"));
+            Assert.assertEquals("2nd on b2", revWalk.parseCommit(repository.resolve("b2")).getFullMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setParallelismThrowsTest() {
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.setParallelism(0);
+        }
+    }
+
+    @Test
+    public void rewordDryRunTest()
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException, GitOperationFailureException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        ObjectId oldHeadId;
+        ObjectId oldB2Id;
+        int oldRefLogSize;
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository()) {
+            oldHeadId = repository.resolve("HEAD");
+            oldB2Id = repository.resolve("b2");
+            oldRefLogSize = repository.getReflogReader(Constants.HEAD).getReverseEntries().size();
+        }
+
+        RewordResult report;
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.openRepository(repoPath);
+            gitFastReword.setRewriteAllBranches(true);
+            gitFastReword.setDryRun(true);
+            Assert.assertTrue(gitFastReword.isDryRun());
+            report = gitFastReword.reword("HEAD~3", "2nd on master reword");
+        }
+
+        Assert.assertTrue(report.isDryRun());
+        // 2nd, 3rd, 4th on master, b1 commits, merge, b2 commits
+        Assert.assertEquals(8, report.getRewrittenCommits().size());
+        Assert.assertEquals(1, report.getRewordedCommitsCount());
+        Assert.assertEquals(3, report.getRefUpdates().size());
+        Assert.assertEquals(Constants.R_HEADS + "master", report.getRefUpdates().get(0).getRefName());
+        Assert.assertEquals(report.getRewrittenCommits().get(oldHeadId), report.getRefUpdates().get(0).getNewId());
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository()) {
+            Assert.assertEquals(oldHeadId, repository.resolve("HEAD"));
+            Assert.assertEquals(oldB2Id, repository.resolve("b2"));
+            Assert.assertEquals(oldRefLogSize, repository.getReflogReader(Constants.HEAD).getReverseEntries().size());
+            for (var newCommitId : report.getRewrittenCommits().values()) {
+                Assert.assertFalse(repository.hasObject(newCommitId));
+            }
+        }
+    }
+
+    @Test
+    public void rewordDryRunSameCommitterTimeTest()
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException, GitOperationFailureException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+        OffsetDateTime committerTime = OffsetDateTime.parse("2020-05-01T12:30:15+03:00");
+
+        RewordResult report;
+        RewordResult result;
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.openRepository(repoPath);
+            gitFastReword.setRewriteAllBranches(true);
+            gitFastReword.setCommitterTime(committerTime);
+            Assert.assertEquals(committerTime, gitFastReword.getCommitterTime());
+            gitFastReword.setDryRun(true);
+            report = gitFastReword.reword("HEAD~3", "2nd on master reword");
+
+            // Commits written by threads are the same as the predicted ones
+            gitFastReword.setDryRun(false);
+            gitFastReword.setParallelism(2);
+            result = gitFastReword.reword("HEAD~3", "2nd on master reword");
+        }
+
+        Assert.assertEquals(8, result.getRewrittenCommits().size());
+        Assert.assertEquals(report.getRewrittenCommits(), result.getRewrittenCommits());
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             RevWalk revWalk = new RevWalk(repository)) {
+            Assert.assertEquals(report.getRefUpdates().get(0).getNewId(), repository.resolve("HEAD"));
+            PersonIdent committer = revWalk.parseCommit(repository.resolve("HEAD")).getCommitterIdent();
+            Assert.assertEquals(committerTime.toInstant().toEpochMilli(), committer.getWhen().getTime());
+            Assert.assertEquals(180, committer.getTimeZoneOffset());
+        }
+    }
+
+    @Test
+    public void rewordVisitedCommitsCountTest()
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException, GitOperationFailureException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+        Assume.assumeTrue("git is not available",
+                GitRepositoryFactory.runGit(repoPath, "commit-graph", "write", "--reachable"));
+
+        RewordResult result;
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.openRepository(repoPath);
+            result = gitFastReword.reword("HEAD~1", "4th on master reword");
+        }
+
+        // Merge and 4th on master rewritten, 2nd on b1 fast-forwarded, 1st on b1 cut off, 3rd on master is 'onto'
+        Assert.assertEquals(2, result.getRewrittenCommits().size());
+        Assert.assertEquals(1, result.getStats().getFastForwardedCommitsCount());
+        Assert.assertEquals(1, result.getStats().getCutOffCommitsCount());
+        Assert.assertEquals(5, result.getVisitedCommitsCount());
+    }
+
+    @Test
+    public void rewordCommitMapTest()
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException, GitOperationFailureException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.ONE_BRANCH_FIVE_COMMITS, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+        Path commitMapPath = tempRoot.newFile().toPath();
+
+        ObjectId oldHeadId;
+        ObjectId ontoId;
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository()) {
+            oldHeadId = repository.resolve("HEAD");
+            ontoId = repository.resolve("HEAD~3");
+        }
+
+        RewordResult result;
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.openRepository(repoPath);
+            gitFastReword.setCommitMapPath(commitMapPath);
+            Assert.assertEquals(commitMapPath, gitFastReword.getCommitMapPath());
+            result = gitFastReword.reword("HEAD~2", "Commit 3 reword");
+        }
+
+        Assert.assertFalse(result.isDryRun());
+        Assert.assertEquals(3, result.getRewrittenCommits().size());
+        Assert.assertEquals(1, result.getRefUpdates().size());
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository()) {
+            Assert.assertEquals(repository.resolve("HEAD"), result.getRewrittenCommits().get(oldHeadId));
+            Assert.assertEquals(repository.resolve("HEAD"), result.getRefUpdates().get(0).getNewId());
+        }
+
+        // Header, 'onto' mapped to itself, then the same mapping as the result has
+        List<String> expectedLines = new ArrayList<>();
+        expectedLines.add("old                                      new");
+        expectedLines.add(ontoId.getName() + " " + ontoId.getName());
+        result.getRewrittenCommits().forEach((oldId, newId) -> expectedLines.add(oldId.getName() + " " + newId.getName()));
+        Assert.assertEquals(expectedLines, Files.readAllLines(commitMapPath));
+        Assert.assertFalse(Files.exists(commitMapPath.resolveSibling(commitMapPath.getFileName() + ".tmp")));
+    }
+
+    @Test
+    public void rewordStatsTest()
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException, GitOperationFailureException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.ONE_BRANCH_FIVE_COMMITS, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        RewordResult result;
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.openRepository(repoPath);
+            result = gitFastReword.reword("HEAD~2", "Commit 3 reword");
+        }
+
+        RewordStats stats = result.getStats();
+        Assert.assertEquals(3, stats.getRewrittenCommitsCount());
+        Assert.assertEquals(3, stats.getInsertedObjectsCount());
+        Assert.assertTrue(stats.getInsertedBytes() > 0);
+        Assert.assertEquals(0, stats.getFastForwardedCommitsCount());
+        Assert.assertTrue(stats.getParsedCommitsCount() >= 3);
+        Assert.assertTrue(stats.getReachabilityVisitedCommitsCount() >= 3);
+        // Rebase start, 3 commits, the branch and HEAD return
+        Assert.assertEquals(6, stats.getUpdatedRefsCount());
+        Assert.assertEquals(6, stats.getReflogEntriesCount());
+
+        long totalWallNanos = 0;
+        for (RewordStats.Phase phase : RewordStats.Phase.values()) {
+            totalWallNanos += stats.getWallNanos(phase);
+        }
+        Assert.assertEquals(totalWallNanos, stats.getTotalWallNanos());
+        Assert.assertTrue(stats.getTotalWallNanos() > 0);
+        Assert.assertEquals(result.getRewriteNanos(), stats.getWallNanos(RewordStats.Phase.REWRITE));
+        Assert.assertTrue(stats.toJson().startsWith("{\"phases\":{\"prepare\":{\"wallNanos\":"));
+        Assert.assertTrue(stats.toJson().contains("\"rewrittenCommits\":3,"));
+    }
+
+    @Test
+    public void rewordStatsBatchRefUpdateTest()
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException, GitOperationFailureException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        RewordStats stats;
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.openRepository(repoPath);
+            gitFastReword.setRewriteAllBranches(true);
+            gitFastReword.setParallelism(2);
+            stats = gitFastReword.reword("HEAD~3", "2nd on master reword").getStats();
+        }
+
+        // 2nd, 3rd, 4th on master, b1 commits, merge, b2 commits
+        Assert.assertEquals(8, stats.getRewrittenCommitsCount());
+        Assert.assertEquals(8, stats.getInsertedObjectsCount());
+        // master through HEAD, b1 and b2 by one batch
+        Assert.assertEquals(3, stats.getUpdatedRefsCount());
+        Assert.assertEquals(4, stats.getReflogEntriesCount());
+    }
+
+    @Test
+    public void rewordStatsCliTest() throws IOException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.ONE_BRANCH_FIVE_COMMITS, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+        Path statsJsonPath = tempRoot.newFile().toPath();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GitFastRewordCli cli = new GitFastRewordCli(
+                new String[]{"HEAD~2", "Commit 3 reword", "--batch-ref-update", "--stats", "--stats-json",
+                        statsJsonPath.toString()},
+                repoPath, new PrintStream(out, true), new PrintStream(new ByteArrayOutputStream()), null);
+        cli.run();
+
+        Assert.assertEquals(0, cli.getExitStatus());
+        Assert.assertTrue(out.toString().contains("commits: "));
+        Assert.assertTrue(out.toString().contains(" 3 rewritten, "));
+        String json = Files.readString(statsJsonPath).strip();
+        Assert.assertTrue(json.startsWith("{\"phases\":"));
+        Assert.assertTrue(json.endsWith("\"updatedRefs\":1,\"reflogEntries\":2}}"));
+    }
+
+    @Test
+    public void rewordVerboseTest()
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException, GitOperationFailureException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.ONE_BRANCH_FIVE_COMMITS, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.openRepository(repoPath);
+            gitFastReword.setInfoPrintStream(new PrintStream(out, true));
+            gitFastReword.reword("HEAD~2", "Commit 2 reword");
+
+            // Only the branch and HEAD updates are printed by default
+            Assert.assertFalse(out.toString().contains("rebase (reword)"));
+            Assert.assertFalse(out.toString().contains("rebase (pick)"));
+            Assert.assertTrue(out.toString().contains("[ Info ] rebase (finish): refs/heads/master onto "));
+
+            out.reset();
+            gitFastReword.setVerbose(true);
+            gitFastReword.reword("HEAD~2", "Commit 2 second reword");
+        }
+
+        String expectedLog = "[ Info ] rebase (start): checkout " + System.lineSeparator()
+                + "[ Info ] rebase (reword): Commit 2 second reword" + System.lineSeparator()
+                + "[ Info ] rebase (pick): Commit 3" + System.lineSeparator()
+                + "[ Info ] rebase (pick): Commit 4" + System.lineSeparator();
+        Assert.assertEquals(expectedLog, out.toString().replaceAll("checkout [0-9a-f]{40}", "checkout ")
+                .substring(0, expectedLog.length()));
+    }
+
+    @Test
+    public void rewordProgressTest()
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException, GitOperationFailureException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.ONE_BRANCH_FIVE_COMMITS, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        ByteArrayOutputStream progress = new ByteArrayOutputStream();
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.openRepository(repoPath);
+            gitFastReword.setParallelism(2);
+            gitFastReword.setProgressMonitor(new ThrottledProgressMonitor(new PrintStream(progress, true), 0));
+            gitFastReword.reword("HEAD~2", "Commit 2 reword");
+        }
+
+        // Commits 4, 3, 2 are walked and then written by threads, a line per update and a summary line of each task
+        String[] lines = progress.toString().split(System.lineSeparator());
+        Assert.assertEquals(8, lines.length);
+        Assert.assertTrue(lines[0].startsWith("Walking commits: 1, "));
+        Assert.assertTrue(lines[3].startsWith("Walking commits: 3, "));
+        Assert.assertTrue(lines[3].contains(", done in "));
+        Assert.assertTrue(lines[4].startsWith("Writing commits:  33% (1/3), "));
+        Assert.assertTrue(lines[7].startsWith("Writing commits: 100% (3/3), "));
+        Assert.assertTrue(lines[7].contains(", done in "));
+    }
+
+    @Test
+    public void rewordProgressCliTest() throws IOException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.ONE_BRANCH_FIVE_COMMITS, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        GitFastRewordCli cli = new GitFastRewordCli(new String[]{"HEAD~2", "Commit 3 reword", "--progress", "-v"},
+                repoPath, new PrintStream(out, true), new PrintStream(err, true), null);
+        cli.run();
+
+        Assert.assertEquals(0, cli.getExitStatus());
+        Assert.assertTrue(err.toString().startsWith("Walking commits: 3, "));
+        Assert.assertTrue(out.toString().contains("[ Info ] rebase (reword): Commit 3 reword"));
+    }
+
+    @Test
+    public void rewordTagsTest()
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException, GitOperationFailureException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.ONE_BRANCH_FIVE_COMMITS, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        Map<String, ObjectId> oldTagsIds = createTags(repoPath);
+        String errOutput = rewordWithTags(repoPath);
+        assertTagsRewritten(repoPath, oldTagsIds, errOutput);
+    }
+
+    @Test
+    public void rewordPackedTagsTest()
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException, GitOperationFailureException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.ONE_BRANCH_FIVE_COMMITS, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        Map<String, ObjectId> oldTagsIds = createTags(repoPath);
+        // Tags are filtered by peeled values of packed-refs
+        Assume.assumeTrue("git is not available", GitRepositoryFactory.runGit(repoPath, "pack-refs", "--all"));
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository()) {
+            Assert.assertTrue(repository.getRefDatabase().exactRef(Constants.R_TAGS + "v1").isPeeled());
+        }
+
+        String errOutput = rewordWithTags(repoPath);
+        assertTagsRewritten(repoPath, oldTagsIds, errOutput);
+    }
+
+    /**
+     * Create tags: annotated 'v0' below the commit to reword (HEAD~2), annotated 'v1' on HEAD~1, lightweight
+     * 'lightweight' and signed 'signed' on HEAD, 'nested' tag of 'v1'
+     *
+     * @return Tags ids
+     */
+    private static Map<String, ObjectId> createTags(Path repoPath) throws IOException {
+        Map<String, ObjectId> tagsIds = new HashMap<>();
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             ObjectInserter inserter = repository.newObjectInserter()) {
+            ObjectId headId = repository.resolve("HEAD");
+            tagsIds.put("v0", insertTag(inserter, repository.resolve("HEAD~3"), Constants.OBJ_COMMIT, "v0",
+                    "Release 0\n"));
+            tagsIds.put("v1", insertTag(inserter, repository.resolve("HEAD~1"), Constants.OBJ_COMMIT, "v1",
+                    "Release 1\n\nWith body\n"));
+            tagsIds.put("signed", insertTag(inserter, headId, Constants.OBJ_COMMIT, "signed",
+                    "Signed tag\n-----BEGIN PGP SIGNATURE-----\n\niQEzBAABCAAdFiEE\n-----END PGP SIGNATURE-----\n"));
+            tagsIds.put("nested", insertTag(inserter, tagsIds.get("v1"), Constants.OBJ_TAG, "nested", "Nested\n"));
+            tagsIds.put("lightweight", headId);
+            inserter.flush();
+
+            for (var tag : tagsIds.entrySet()) {
+                createRef(repository, Constants.R_TAGS + tag.getKey(), tag.getValue().getName());
+            }
+        }
+        return tagsIds;
+    }
+
+    private static ObjectId insertTag(ObjectInserter inserter, ObjectId objectId, int type, String name, String message)
+            throws IOException {
+        TagBuilder tagBuilder = new TagBuilder();
+        tagBuilder.setObjectId(objectId, type);
+        tagBuilder.setTag(name);
+        tagBuilder.setTagger(new PersonIdent("Tagger", "tagger@example.com", new Date(1000000000000L),
+                TimeZone.getTimeZone("UTC")));
+        tagBuilder.setMessage(message);
+        return inserter.insert(tagBuilder);
+    }
+
+    private static String rewordWithTags(Path repoPath)
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException, GitOperationFailureException {
+        ByteArrayOutputStream errStream = new ByteArrayOutputStream();
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.openRepository(repoPath);
+            gitFastReword.setErrPrintStream(new PrintStream(errStream, true));
+            gitFastReword.setRewriteTags(true);
+            gitFastReword.reword("HEAD~2", "HEAD~2 reword");
+        }
+        return errStream.toString();
+    }
+
+    private static void assertTagsRewritten(Path repoPath, Map<String, ObjectId> oldTagsIds, String errOutput)
+            throws IOException {
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             RevWalk revWalk = new RevWalk(repository)) {
+            Assert.assertEquals("HEAD~2 reword", revWalk.parseCommit(repository.resolve("HEAD~2")).getFullMessage());
+
+            // Not rewritten: below the reworded commit, tag of tag
+            Assert.assertEquals(oldTagsIds.get("v0"), repository.resolve(Constants.R_TAGS + "v0"));
+            Assert.assertEquals(oldTagsIds.get("nested"), repository.resolve(Constants.R_TAGS + "nested"));
+            Assert.assertTrue(errOutput.contains(Constants.R_TAGS + "nested points to a rewritten commit"));
+
+            ObjectId newHeadId = repository.resolve("HEAD");
+            Assert.assertEquals(newHeadId, repository.resolve(Constants.R_TAGS + "lightweight"));
+
+            // Everything but the target is kept byte for byte
+            ObjectId newV1Id = repository.resolve(Constants.R_TAGS + "v1");
+            Assert.assertNotEquals(oldTagsIds.get("v1"), newV1Id);
+            Assert.assertEquals(repository.resolve("HEAD~1"), repository.resolve(Constants.R_TAGS + "v1^{commit}"));
+            String oldV1Raw = new String(repository.open(oldTagsIds.get("v1")).getCachedBytes());
+            String newV1Raw = new String(repository.open(newV1Id).getCachedBytes());
+            Assert.assertEquals(oldV1Raw.replace(revWalk.parseTag(oldTagsIds.get("v1")).getObject().getName(),
+                    repository.resolve("HEAD~1").getName()), newV1Raw);
+
+            // Signature can't stay valid
+            Assert.assertEquals(newHeadId, repository.resolve(Constants.R_TAGS + "signed^{commit}"));
+            Assert.assertEquals("Signed tag\n",
+                    revWalk.parseTag(repository.resolve(Constants.R_TAGS + "signed")).getFullMessage());
+            Assert.assertTrue(errOutput.contains("1 signed tag(s) rewritten without signature"));
+        }
+    }
+
+    private static ObjectId createRef(Repository repository, String refName, String revision) throws IOException {
+        ObjectId objectId = repository.resolve(revision);
+        RefUpdate refUpdate = repository.updateRef(refName);
+        refUpdate.setNewObjectId(objectId);
+        Assert.assertEquals(RefUpdate.Result.NEW, refUpdate.update());
+        return objectId;
+    }
 }
@@ -2,12 +2,16 @@ package shchuko.git_fast_reword;
 
 
 import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.*;
 import org.eclipse.jgit.merge.MergeStrategy;
 
 import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
@@ -20,9 +24,13 @@ public class GitRepositoryFactory {
         NOT_MERGED_BRANCHES,
         MERGED_BRANCHES,
         MERGED_ORPHAN,
-        MERGE_CONFLICT
+        MERGE_CONFLICT,
+        LONG_LINEAR_HISTORY,
+        SKEWED_COMMIT_TIMES
     }
 
+    public static final int LONG_LINEAR_HISTORY_COMMIT_COUNT = 5000;
+
 /* - EMPTY -
    [empty repository]
 */
@@ -80,6 +88,39 @@ public class GitRepositoryFactory {
     * 1st on master
 */
 
+/* - LONG_LINEAR_HISTORY -
+    * (HEAD -> master) Commit 4999
+    * ...
+    * Commit 0
+*/
+
+/* - SKEWED_COMMIT_TIMES -
+    * (HEAD -> master) Merge branch 'b1'    [time 5000]
+    |\
+    | * (b1) 1st on b1                      [time 1500, older than its ancestors]
+    * | 3rd on master                       [time 4000]
+    |/
+    * 2nd on master                         [time 3000]
+    * 1st on master                         [time 2000]
+*/
+
+    /**
+     * Run git itself in a repository, used to write files JGit can't write (commit-graph, pack bitmaps)
+     *
+     * @return True if git exited successfully, false if it failed or is not installed
+     */
+    public static boolean runGit(Path repoPath, String... args) {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.addAll(Arrays.asList(args));
+
+        try {
+            return new ProcessBuilder(command).directory(repoPath.toFile()).inheritIO().start().waitFor() == 0;
+        } catch (IOException | InterruptedException e) {
+            return false;
+        }
+    }
+
     public static Path create(RepoTypes repoType, File root) {
         switch (repoType) {
             case EMPTY:
@@ -96,6 +137,10 @@ public class GitRepositoryFactory {
                 return getMergedOrphanRepo(root);
             case MERGE_CONFLICT:
                 return getMergeConflictRepo(root);
+            case LONG_LINEAR_HISTORY:
+                return getLongLinearHistoryRepo(root);
+            case SKEWED_COMMIT_TIMES:
+                return getSkewedCommitTimesRepo(root);
             default:
                 return null;
         }
@@ -269,4 +314,106 @@ public class GitRepositoryFactory {
         return root.toPath();
     }
 
+    private static Path getLongLinearHistoryRepo(File root) {
+        if (root == null) {
+            return null;
+        }
+
+        // Commits are inserted directly, porcelain commands are too slow for thousands of commits
+        try (Git git = Git.init().setDirectory(root).call();
+             ObjectInserter inserter = git.getRepository().newObjectInserter()) {
+            Repository repository = git.getRepository();
+            ObjectId treeId = inserter.insert(new TreeFormatter());
+            PersonIdent ident = new PersonIdent("Some Author", "some@author.email");
+
+            ObjectId parentId = null;
+            for (int i = 0; i < LONG_LINEAR_HISTORY_COMMIT_COUNT; ++i) {
+                CommitBuilder builder = new CommitBuilder();
+                builder.setTreeId(treeId);
+                if (parentId != null) {
+                    builder.setParentId(parentId);
+                }
+                builder.setAuthor(ident);
+                builder.setCommitter(ident);
+                builder.setMessage("Commit " + i);
+                parentId = inserter.insert(builder);
+            }
+            inserter.flush();
+
+            RefUpdate refUpdate = repository.updateRef(Constants.R_HEADS + Constants.MASTER);
+            refUpdate.setNewObjectId(parentId);
+            refUpdate.update();
+        } catch (Exception e) {
+            return null;
+        }
+        return root.toPath();
+    }
+
+    private static Path getSkewedCommitTimesRepo(File root) {
+        if (root == null) {
+            return null;
+        }
+
+        // Commits are inserted directly to set committer times explicitly
+        try (Git git = Git.init().setDirectory(root).call();
+             ObjectInserter inserter = git.getRepository().newObjectInserter()) {
+            Repository repository = git.getRepository();
+            ObjectId treeId = inserter.insert(new TreeFormatter());
+
+            ObjectId first = insertCommit(inserter, treeId, "1st on master", 2000);
+            ObjectId second = insertCommit(inserter, treeId, "2nd on master", 3000, first);
+            ObjectId third = insertCommit(inserter, treeId, "3rd on master", 4000, second);
+            ObjectId firstOnB1 = insertCommit(inserter, treeId, "1st on b1", 1500, second);
+            ObjectId merge = insertCommit(inserter, treeId, "Merge branch 'b1'", 5000, third, firstOnB1);
+            inserter.flush();
+
+            RefUpdate b1Update = repository.updateRef(Constants.R_HEADS + "b1");
+            b1Update.setNewObjectId(firstOnB1);
+            b1Update.update();
+
+            RefUpdate masterUpdate = repository.updateRef(Constants.R_HEADS + Constants.MASTER);
+            masterUpdate.setNewObjectId(merge);
+            masterUpdate.update();
+        } catch (Exception e) {
+            return null;
+        }
+        return root.toPath();
+    }
+
+    /**
+     * Insert a commit with the tree of HEAD and point a branch to it
+     *
+     * @param repository Repository to insert the commit to
+     * @param branchName Short name of the branch to create or move
+     * @param message    Commit message
+     * @param commitTime Author and committer time, in seconds
+     * @param parentsIds Parents of the commit
+     * @return Id of the inserted commit
+     * @throws IOException In case of any I/O errors
+     */
+    static ObjectId createBranchCommit(Repository repository, String branchName, String message, long commitTime,
+                                       ObjectId... parentsIds) throws IOException {
+        ObjectId commitId;
+        try (ObjectInserter inserter = repository.newObjectInserter()) {
+            commitId = insertCommit(inserter, repository.resolve("HEAD^{tree}"), message, commitTime, parentsIds);
+            inserter.flush();
+        }
+
+        RefUpdate refUpdate = repository.updateRef(Constants.R_HEADS + branchName);
+        refUpdate.setNewObjectId(commitId);
+        refUpdate.update();
+        return commitId;
+    }
+
+    private static ObjectId insertCommit(ObjectInserter inserter, ObjectId treeId, String message, long commitTime,
+                                         ObjectId... parentsIds) throws IOException {
+        PersonIdent ident = new PersonIdent("Some Author", "some@author.email", commitTime * 1000, 0);
+        CommitBuilder builder = new CommitBuilder();
+        builder.setTreeId(treeId);
+        builder.setParentIds(parentsIds);
+        builder.setAuthor(ident);
+        builder.setCommitter(ident);
+        builder.setMessage(message);
+        return inserter.insert(builder);
+    }
 }
@@ -0,0 +1,79 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public class HistoryCutoffTest {
+    private File tempRepoDir;
+
+    @Rule
+    public TemporaryFolder tempRoot = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws IOException {
+        tempRepoDir = tempRoot.newFolder();
+    }
+
+    @Test
+    public void commitTimeCutoffTest() throws IOException {
+//        * (HEAD -> master) Merge branch 'b1'    [time 5000]
+//        |\
+//        | * (b1) 1st on b1                      [time 1500]
+//        * | 3rd on master                       [time 4000]
+//        |/
+//        * 2nd on master                         [time 3000]
+//        * 1st on master                         [time 2000]
+
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.SKEWED_COMMIT_TIMES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             CommitLookup commitLookup = new CommitLookup(repository)) {
+            ObjectId masterSecondId = repository.resolve("HEAD~2");
+            HistoryCutoff cutoff = HistoryCutoff.of(commitLookup, List.of(masterSecondId, repository.resolve("HEAD")));
+            Assert.assertFalse(cutoff.isByGeneration());
+            Assert.assertEquals(3000, cutoff.getBound());
+
+            Assert.assertTrue(cutoff.isBelow(repository.resolve("HEAD~3")));
+            Assert.assertFalse(cutoff.isBelow(masterSecondId));
+            Assert.assertFalse(cutoff.isBelow(repository.resolve("HEAD~1")));
+            // Skewed commit time is not detected without commit-graph
+            Assert.assertTrue(cutoff.isBelow(repository.resolve("b1")));
+        }
+    }
+
+    @Test
+    public void generationCutoffTest() throws IOException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.SKEWED_COMMIT_TIMES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+        Assume.assumeTrue("git is not available",
+                GitRepositoryFactory.runGit(repoPath, "commit-graph", "write", "--reachable"));
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             CommitLookup commitLookup = new CommitLookup(repository)) {
+            ObjectId masterSecondId = repository.resolve("HEAD~2");
+            HistoryCutoff cutoff = HistoryCutoff.of(commitLookup, List.of(masterSecondId, repository.resolve("HEAD")));
+            Assert.assertTrue(cutoff.isByGeneration());
+            Assert.assertEquals(2, cutoff.getBound());
+
+            Assert.assertTrue(cutoff.isBelow(repository.resolve("HEAD~3")));
+            Assert.assertFalse(cutoff.isBelow(masterSecondId));
+            Assert.assertFalse(cutoff.isBelow(repository.resolve("b1")));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Scaling benchmark of the common ancestor search: time to find the commit to rebase onto by count of commits to
+ * reword. History is generated in memory by {@link SyntheticRepositoryGenerator}: mainline with short side branches
+ * merged back periodically, or linear history if merge interval is 0.
+ * <p>
+ * Run with 'gradle mergeBaseBenchmark', optional args: commit count, merge interval, comma separated target counts
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public class MergeBaseFinderBenchmark {
+    private static final int DEFAULT_COMMIT_COUNT = 100_000;
+    private static final int DEFAULT_MERGE_INTERVAL = 10;
+    private static final String DEFAULT_TARGET_COUNTS = "10,100,1000,10000,50000";
+    private static final int SIDE_BRANCH_LENGTH = 3;
+    private static final int PAIRWISE_MAX_TARGET_COUNT = 1000;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int commitCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_COMMIT_COUNT;
+        int mergeInterval = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MERGE_INTERVAL;
+        String targetCounts = args.length > 2 ? args[2] : DEFAULT_TARGET_COUNTS;
+
+        try (Repository repository = new InMemoryRepository(new DfsRepositoryDescription("benchmark"))) {
+            long generationStart = System.nanoTime();
+            SyntheticRepositoryGenerator.Shape shape = mergeInterval > 0 ? SyntheticRepositoryGenerator.Shape.MERGES
+                    : SyntheticRepositoryGenerator.Shape.LINEAR;
+            List<ObjectId> commits = new SyntheticRepositoryGenerator(shape, commitCount)
+                    .setMergeInterval(mergeInterval)
+                    .setSideBranchLength(SIDE_BRANCH_LENGTH)
+                    .generate(repository)
+                    .getCommits();
+            System.out.printf("History: %d commits (merge every %d), generated in %d ms%n",
+                    commits.size(), mergeInterval, millisSince(generationStart));
+
+            // In-memory repository has no commit-graph, so commits are ordered by commit time
+            try (CommitLookup commitLookup = new CommitLookup(repository)) {
+                System.out.printf("%10s %14s %14s %14s%n", "targets", "onto gen", "ms (finder)", "ms (pairwise)");
+                for (String count : targetCounts.split(",")) {
+                    runBenchmark(commitLookup, commits, Integer.parseInt(count.trim()));
+                }
+            }
+        }
+    }
+
+    private static void runBenchmark(CommitLookup commitLookup, List<ObjectId> commits, int targetCount)
+            throws IOException {
+        List<ObjectId> shuffled = new ArrayList<>(commits);
+        Collections.shuffle(shuffled, new Random(targetCount));
+        List<ObjectId> targets = shuffled.subList(0, Math.min(targetCount, shuffled.size()));
+
+        MergeBaseFinder finder = new MergeBaseFinder(commitLookup);
+        MergeBaseFinder.RebaseOnto rebaseOnto = null;
+        long bestFinderTime = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; ++i) {
+            long start = System.nanoTime();
+            rebaseOnto = finder.findRebaseOnto(targets);
+            bestFinderTime = Math.min(bestFinderTime, System.nanoTime() - start);
+        }
+
+        // Merge base folded pair by pair, as it was done before
+        String pairwiseTime = "-";
+        if (targets.size() <= PAIRWISE_MAX_TARGET_COUNT) {
+            long start = System.nanoTime();
+            ObjectId mergeBase = targets.get(0);
+            for (int i = 1; i < targets.size() && mergeBase != null; ++i) {
+                mergeBase = finder.findMergeBase(mergeBase, targets.get(i));
+            }
+            pairwiseTime = Long.toString(millisSince(start));
+            if (rebaseOnto != null && !rebaseOnto.getMergeBaseId().equals(mergeBase)) {
+                throw new IllegalStateException("Merge base mismatch for " + targets.size() + " targets");
+            }
+        }
+
+        System.out.printf("%10d %14s %14d %14s%n", targets.size(),
+                rebaseOnto != null && rebaseOnto.getGeneration() != CommitLookup.GENERATION_UNKNOWN
+                        ? Integer.toString(rebaseOnto.getGeneration()) : "-",
+                bestFinderTime / 1_000_000, pairwiseTime);
+    }
+
+    private static long millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+}
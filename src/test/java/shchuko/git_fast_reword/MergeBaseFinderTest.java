@@ -0,0 +1,135 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public class MergeBaseFinderTest {
+    private File tempRepoDir;
+
+    @Rule
+    public TemporaryFolder tempRoot = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws IOException {
+        tempRepoDir = tempRoot.newFolder();
+    }
+
+    @Test
+    public void mergedBranchesTest() throws IOException {
+//        * (HEAD -> master) Merge branch 'b1'
+//        |\
+//        | * (b1) 2nd on b1
+//        | * 1st on b1
+//        * | 4th on master
+//        | | * (b2) 2nd on b2
+//        | | * 1st on b2
+//        | |/
+//        |/|
+//        * | 3rd on master
+//        |/
+//        * 2nd on master
+//        * 1st on master
+
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        // No commit-graph, commits are ordered by commit time and generation numbers are not computed
+        assertMergedBranchesMergeBases(repoPath, CommitLookup.GENERATION_UNKNOWN);
+    }
+
+    @Test
+    public void mergedBranchesWithCommitGraphTest() throws IOException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+        Assume.assumeTrue("git is not available",
+                GitRepositoryFactory.runGit(repoPath, "commit-graph", "write", "--reachable"));
+
+        assertMergedBranchesMergeBases(repoPath, 1);
+    }
+
+    @Test
+    public void noCommonAncestorTest() throws IOException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.MERGED_ORPHAN, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             CommitLookup commitLookup = new CommitLookup(repository)) {
+            MergeBaseFinder finder = new MergeBaseFinder(commitLookup);
+            Assert.assertNull(finder.findMergeBase(List.of(
+                    repository.resolve("HEAD"), repository.resolve("orphan_b"), repository.resolve("HEAD~2"))));
+            Assert.assertNull(finder.findRebaseOnto(List.of(repository.resolve("orphan_b"), repository.resolve("HEAD~2"))));
+        }
+    }
+
+    @Test
+    public void manyTargetsTest() throws IOException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.LONG_LINEAR_HISTORY, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             CommitLookup commitLookup = new CommitLookup(repository)) {
+            // All the commits except the root one
+            List<ObjectId> targets = new ArrayList<>();
+            ObjectId commitId = repository.resolve(Constants.HEAD);
+            ObjectId[] parents = commitLookup.getParents(commitId);
+            while (parents.length > 0) {
+                targets.add(commitId);
+                commitId = parents[0];
+                parents = commitLookup.getParents(commitId);
+            }
+            Assert.assertEquals(GitRepositoryFactory.LONG_LINEAR_HISTORY_COMMIT_COUNT - 1, targets.size());
+
+            MergeBaseFinder.RebaseOnto rebaseOnto = new MergeBaseFinder(commitLookup).findRebaseOnto(targets);
+            Assert.assertNotNull(rebaseOnto);
+            Assert.assertEquals(targets.get(targets.size() - 1), rebaseOnto.getMergeBaseId());
+            Assert.assertEquals(commitId, rebaseOnto.getCommitId());
+            Assert.assertEquals(CommitLookup.GENERATION_UNKNOWN, rebaseOnto.getGeneration());
+        }
+    }
+
+    private static void assertMergedBranchesMergeBases(Path repoPath, int expectedOntoGeneration)
+            throws IOException {
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             CommitLookup commitLookup = new CommitLookup(repository)) {
+            MergeBaseFinder finder = new MergeBaseFinder(commitLookup);
+            ObjectId masterFirstId = repository.resolve("HEAD~4");
+            ObjectId masterSecondId = repository.resolve("HEAD~3");
+            ObjectId masterThirdId = repository.resolve("HEAD~2");
+
+            Assert.assertEquals(masterSecondId, finder.findMergeBase(List.of(
+                    repository.resolve("b1~1"), repository.resolve("HEAD~1"))));
+            Assert.assertEquals(masterSecondId, finder.findMergeBase(List.of(
+                    repository.resolve("HEAD"), repository.resolve("b2"), repository.resolve("b1"))));
+            Assert.assertEquals(masterThirdId, finder.findMergeBase(List.of(
+                    repository.resolve("HEAD~1"), repository.resolve("b2"), repository.resolve("b2~1"))));
+
+            MergeBaseFinder.RebaseOnto rebaseOnto = finder.findRebaseOnto(List.of(
+                    repository.resolve("HEAD"), repository.resolve("b2"), repository.resolve("b1~1")));
+            Assert.assertNotNull(rebaseOnto);
+            Assert.assertEquals(masterSecondId, rebaseOnto.getMergeBaseId());
+            Assert.assertEquals(masterFirstId, rebaseOnto.getCommitId());
+            Assert.assertEquals(expectedOntoGeneration, rebaseOnto.getGeneration());
+            Assert.assertEquals(commitLookup.getCommitTime(masterFirstId), rebaseOnto.getCommitTime());
+
+            // Root commit has nothing to rebase onto
+            Assert.assertNull(finder.findRebaseOnto(List.of(repository.resolve("HEAD"), masterFirstId)));
+        }
+    }
+}
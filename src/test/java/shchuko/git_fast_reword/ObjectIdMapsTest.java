@@ -0,0 +1,132 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public class ObjectIdMapsTest {
+    private static final int IDS_COUNT = 100_000;
+
+    @Test
+    public void objectIdIndexTest() {
+        List<ObjectId> ids = generateIds(IDS_COUNT, 0);
+        ObjectIdIndex index = new ObjectIdIndex();
+        for (int i = 0; i < ids.size(); ++i) {
+            Assert.assertEquals(i, index.add(ids.get(i)));
+        }
+        // Added again, indexes are kept
+        for (int i = 0; i < ids.size(); ++i) {
+            Assert.assertEquals(i, index.add(ids.get(i).copy()));
+        }
+        Assert.assertEquals(IDS_COUNT, index.size());
+
+        for (int i = 0; i < ids.size(); ++i) {
+            Assert.assertEquals(i, index.indexOf(ids.get(i)));
+            Assert.assertEquals(ids.get(i), index.getId(i));
+        }
+        for (ObjectId id : generateIds(1000, IDS_COUNT)) {
+            Assert.assertEquals(ObjectIdIndex.NOT_FOUND, index.indexOf(id));
+        }
+
+        index.clear();
+        Assert.assertEquals(0, index.size());
+        Assert.assertEquals(ObjectIdIndex.NOT_FOUND, index.indexOf(ids.get(0)));
+    }
+
+    @Test
+    public void objectIdMapTest() {
+        List<ObjectId> ids = generateIds(IDS_COUNT, 0);
+        ObjectIdMap<String> map = new ObjectIdMap<>();
+        Assert.assertTrue(map.isEmpty());
+        for (ObjectId id : ids) {
+            map.put(id, "Old " + id.getName());
+        }
+        for (ObjectId id : ids) {
+            map.put(id, id.getName());
+        }
+
+        Assert.assertEquals(IDS_COUNT, map.size());
+        for (int i = 0; i < ids.size(); ++i) {
+            Assert.assertEquals(ids.get(i).getName(), map.get(ids.get(i)));
+            Assert.assertEquals(ids.get(i), map.getKey(i));
+            Assert.assertEquals(ids.get(i).getName(), map.getValue(i));
+        }
+        Assert.assertNull(map.get(ObjectId.zeroId()));
+
+        // Keys view
+        Assert.assertEquals(ids, new ArrayList<>(map.keys()));
+        Assert.assertTrue(map.keys().contains(ids.get(IDS_COUNT / 2)));
+        Assert.assertFalse(map.keys().contains(ObjectId.zeroId()));
+
+        map.clear();
+        Assert.assertTrue(map.isEmpty());
+        Assert.assertNull(map.get(ids.get(0)));
+    }
+
+    @Test
+    public void rewrittenCommitsMapTest() {
+        List<ObjectId> oldIds = generateIds(IDS_COUNT, 0);
+        List<ObjectId> newIds = generateIds(IDS_COUNT, IDS_COUNT);
+        RewrittenCommitsMap map = new RewrittenCommitsMap();
+        for (int i = 0; i < IDS_COUNT; ++i) {
+            // Every third commit is rewritten
+            map.put(oldIds.get(i), i % 3 == 0 ? newIds.get(i) : oldIds.get(i).copy());
+        }
+
+        Assert.assertEquals(IDS_COUNT, map.size());
+        Assert.assertEquals((IDS_COUNT + 2) / 3, map.getRewrittenCount());
+        for (int i = 0; i < IDS_COUNT; ++i) {
+            ObjectId oldId = oldIds.get(i);
+            if (i % 3 == 0) {
+                Assert.assertTrue(map.isRewritten(oldId));
+                Assert.assertEquals(newIds.get(i), map.get(oldId));
+            } else {
+                Assert.assertFalse(map.isRewritten(oldId));
+                // Not changed commits are returned without new instances
+                Assert.assertSame(oldId, map.get(oldId));
+            }
+        }
+        Assert.assertNull(map.get(newIds.get(0)));
+        Assert.assertFalse(map.isRewritten(newIds.get(0)));
+
+        // Rewritten commits are viewed in the order they were put
+        Map<ObjectId, ObjectId> rewrittenView = map.getRewrittenView();
+        Assert.assertEquals(map.getRewrittenCount(), rewrittenView.size());
+        int expectedIndex = 0;
+        for (Map.Entry<ObjectId, ObjectId> entry : rewrittenView.entrySet()) {
+            Assert.assertEquals(oldIds.get(expectedIndex), entry.getKey());
+            Assert.assertEquals(newIds.get(expectedIndex), entry.getValue());
+            expectedIndex += 3;
+        }
+        Assert.assertEquals(map.getRewrittenCount() * 3, expectedIndex);
+        Assert.assertEquals(newIds.get(3), rewrittenView.get(oldIds.get(3)));
+        Assert.assertFalse(rewrittenView.containsKey(oldIds.get(1)));
+        Assert.assertNull(rewrittenView.get(oldIds.get(1)));
+
+        map.clear();
+        Assert.assertEquals(0, map.size());
+        Assert.assertNull(map.get(oldIds.get(0)));
+    }
+
+    private static List<ObjectId> generateIds(int count, int seed) {
+        List<ObjectId> ids = new ArrayList<>(count);
+        HashSet<ObjectId> unique = new HashSet<>();
+        for (int i = 0; i < count; ++i) {
+            // Distinct non-zero ids spread like SHA-1 hashes
+            int n = seed + i + 1;
+            ObjectId id = ObjectId.fromString(String.format("%08x%08x%08x%08x%08x", n * 0x9E3779B9, n * 0x85EBCA6B,
+                    n, n * 0xC2B2AE35, i));
+            Assert.assertTrue(unique.add(id));
+            ids.add(id);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,207 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.internal.storage.pack.PackWriter;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.zip.Deflater;
+
+/**
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public class ParallelCommitWriterTest {
+    private static final PersonIdent COMMITTER = new PersonIdent("Committer", "committer@example.com",
+            new Date(1000000000000L), TimeZone.getTimeZone("UTC"));
+
+    private File tempRepoDir;
+
+    @Rule
+    public TemporaryFolder tempRoot = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws IOException {
+        tempRepoDir = tempRoot.newFolder();
+    }
+
+    @Test
+    public void writeLooseObjectsTest() throws IOException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository()) {
+            List<RevCommit> commits = listCommitsToCopy(repository);
+            Map<ObjectId, ObjectId> expectedIds = buildSequentially(commits);
+
+            Map<ObjectId, ObjectId> writtenIds;
+            try (ObjectInserter inserter = repository.newObjectInserter()) {
+                writtenIds = write(repository, commits, 4, inserter);
+                inserter.flush();
+            }
+            Assert.assertEquals(new ArrayList<>(expectedIds.entrySet()), new ArrayList<>(writtenIds.entrySet()));
+            assertCommitsReadable(repository, writtenIds);
+        }
+    }
+
+    @Test
+    public void writePackTest() throws IOException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository()) {
+            List<RevCommit> commits = listCommitsToCopy(repository);
+            Map<ObjectId, ObjectId> expectedIds = buildSequentially(commits);
+
+            // Ids do not depend on threads count and inserter
+            Assert.assertEquals(expectedIds, write(repository, commits, 1, new HashOnlyObjectInserter()));
+            Map<ObjectId, ObjectId> writtenIds;
+            try (ObjectInserter inserter = new PackObjectInserter((ObjectDirectory) repository.getObjectDatabase(),
+                    Deflater.DEFAULT_COMPRESSION)) {
+                writtenIds = write(repository, commits, 8, inserter);
+                inserter.flush();
+            }
+            Assert.assertEquals(expectedIds, writtenIds);
+        }
+
+        // Pack is found by a repository opened after it is written
+        try (Repository repository = new FileRepositoryBuilder().findGitDir(repoPath.toFile()).build()) {
+            assertCommitsReadable(repository, buildSequentially(listCommitsToCopy(repository)));
+        }
+    }
+
+    @Test
+    public void packParserTest() throws IOException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        ObjectId headId;
+        ByteArrayOutputStream packBytes = new ByteArrayOutputStream();
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             PackWriter packWriter = new PackWriter(repository)) {
+            headId = repository.resolve(Constants.HEAD);
+            packWriter.preparePack(NullProgressMonitor.INSTANCE, Collections.singleton(headId), Collections.emptySet());
+            packWriter.writePack(NullProgressMonitor.INSTANCE, NullProgressMonitor.INSTANCE, packBytes);
+        }
+
+        // Received pack is stored by the object directory
+        try (Repository repository = FileRepositoryBuilder.create(new File(tempRoot.newFolder(), Constants.DOT_GIT))) {
+            repository.create();
+            try (ObjectInserter inserter = new PackObjectInserter((ObjectDirectory) repository.getObjectDatabase(),
+                    Deflater.DEFAULT_COMPRESSION)) {
+                inserter.newPackParser(new ByteArrayInputStream(packBytes.toByteArray()))
+                        .parse(NullProgressMonitor.INSTANCE);
+                inserter.flush();
+            }
+            Assert.assertTrue(repository.getObjectDatabase().has(headId));
+        }
+    }
+
+    /**
+     * List commits to be copied if '2nd on master' (HEAD~3) of MERGED_BRANCHES is reworded, parents first
+     */
+    private static List<RevCommit> listCommitsToCopy(Repository repository) throws IOException {
+        List<RevCommit> commits = new ArrayList<>();
+        try (RevWalk revWalk = new RevWalk(repository)) {
+            revWalk.sort(RevSort.TOPO);
+            revWalk.sort(RevSort.REVERSE, true);
+            revWalk.markStart(revWalk.parseCommit(repository.resolve("HEAD")));
+            revWalk.markStart(revWalk.parseCommit(repository.resolve("b2")));
+            revWalk.markUninteresting(revWalk.parseCommit(repository.resolve("HEAD~4")));
+            revWalk.forEach(commits::add);
+        }
+        Assert.assertEquals(8, commits.size());
+        Assert.assertEquals("2nd on master", commits.get(0).getFullMessage());
+        return commits;
+    }
+
+    /**
+     * Build copies of the commits one by one, the first commit gets new message
+     *
+     * @return Key - old commit id, value - new commit id, in building order
+     */
+    private static Map<ObjectId, ObjectId> buildSequentially(List<RevCommit> commits)
+            throws IOException {
+        Map<ObjectId, ObjectId> newIds = new LinkedHashMap<>();
+        ObjectInserter.Formatter formatter = new ObjectInserter.Formatter();
+        for (int i = 0; i < commits.size(); ++i) {
+            RevCommit commit = commits.get(i);
+            ObjectId[] parentsIds = new ObjectId[commit.getParentCount()];
+            for (int j = 0; j < parentsIds.length; ++j) {
+                parentsIds[j] = newIds.getOrDefault(commit.getParent(j), commit.getParent(j));
+            }
+
+            CommitBuilder builder = new CommitBuilder();
+            builder.setTreeId(commit.getTree());
+            builder.setParentIds(parentsIds);
+            builder.setAuthor(commit.getAuthorIdent());
+            builder.setCommitter(COMMITTER);
+            builder.setEncoding(commit.getEncoding());
+            builder.setMessage(i == 0 ? "2nd on master reword" : commit.getFullMessage());
+            newIds.put(commit.copy(), formatter.idFor(Constants.OBJ_COMMIT, builder.build()));
+        }
+        return newIds;
+    }
+
+    private static Map<ObjectId, ObjectId> write(Repository repository, List<RevCommit> commits, int parallelism,
+                                                 ObjectInserter inserter) throws IOException {
+        ParallelCommitWriter writer = new ParallelCommitWriter(repository, parallelism, COMMITTER);
+        for (int i = 0; i < commits.size(); ++i) {
+            RevCommit commit = commits.get(i);
+            RewordEntry rewordEntry = i == 0 ? new RewordEntry(commit.copy(), "2nd on master reword") : null;
+            writer.plan(commit.copy(), rewordEntry, commit.getParents());
+        }
+        Assert.assertEquals(commits.size(), writer.getPlannedCount());
+        Assert.assertTrue(writer.isPlanned(commits.get(0)));
+        Assert.assertFalse(writer.isPlanned(commits.get(0).getParent(0)));
+
+        Map<ObjectId, ObjectId> newIds = new LinkedHashMap<>();
+        Map<ObjectId, Boolean> reworded = new HashMap<>();
+        writer.write(inserter, (oldCommitId, newCommitId, message, isReworded) -> {
+            newIds.put(oldCommitId, newCommitId);
+            reworded.put(oldCommitId, isReworded);
+        });
+        Assert.assertEquals(Boolean.TRUE, reworded.get(commits.get(0)));
+        Assert.assertEquals(Boolean.FALSE, reworded.get(commits.get(1)));
+        return newIds;
+    }
+
+    private static void assertCommitsReadable(Repository repository, Map<ObjectId, ObjectId> newIds)
+            throws IOException {
+        try (RevWalk revWalk = new RevWalk(repository)) {
+            for (var entry : newIds.entrySet()) {
+                RevCommit oldCommit = revWalk.parseCommit(entry.getKey());
+                RevCommit newCommit = revWalk.parseCommit(entry.getValue());
+                Assert.assertEquals(oldCommit.getTree(), newCommit.getTree());
+                Assert.assertEquals(COMMITTER, newCommit.getCommitterIdent());
+            }
+        }
+    }
+}
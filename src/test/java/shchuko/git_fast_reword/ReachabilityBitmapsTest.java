@@ -0,0 +1,162 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.BitmapIndex;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pack bitmaps are written by git itself, tests are skipped if git is not installed
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public class ReachabilityBitmapsTest {
+    private File tempRepoDir;
+
+    @Rule
+    public TemporaryFolder tempRoot = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws IOException {
+        tempRepoDir = tempRoot.newFolder();
+    }
+
+    @Test
+    public void noBitmapsTest() throws IOException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.NOT_MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             CommitLookup commitLookup = new CommitLookup(repository)) {
+            Assert.assertNull(ReachabilityBitmaps.open(commitLookup));
+        }
+    }
+
+    @Test
+    public void getReachableTest() throws IOException {
+//        * (HEAD -> master) 6th on master      [not bitmapped]
+//        * 5th on master                       [not bitmapped]
+//        * 4th on master
+//        | * (b2) 2nd on b2
+//        | * 1st on b2
+//        |/
+//        * 3rd on master
+//        | * (b1) 2nd on b1
+//        | * 1st on b1
+//        |/
+//        * 2nd on master
+//        * 1st on master
+
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.NOT_MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+        repackWithBitmaps(repoPath);
+        commitOnTop(repoPath, "5th on master", "6th on master");
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             CommitLookup commitLookup = new CommitLookup(repository)) {
+            ReachabilityBitmaps bitmaps = ReachabilityBitmaps.open(commitLookup);
+            Assert.assertNotNull(bitmaps);
+
+            BitmapIndex.BitmapBuilder reachable = bitmaps.getReachable(repository.resolve(Constants.HEAD));
+            // Only commits newer than bitmaps are walked
+            Assert.assertEquals(2, bitmaps.getWalkedCommitsCount());
+            for (int i = 0; i < 6; ++i) {
+                Assert.assertTrue(reachable.contains(repository.resolve("HEAD~" + i)));
+            }
+            Assert.assertTrue(reachable.contains(repository.resolve("HEAD^{tree}")));
+            Assert.assertFalse(reachable.contains(repository.resolve("b1")));
+            Assert.assertFalse(reachable.contains(repository.resolve("b2~1")));
+
+            // Commits between 'onto' and HEAD
+            reachable.andNot(bitmaps.getReachable(repository.resolve("HEAD~3")));
+            Assert.assertTrue(reachable.contains(repository.resolve("HEAD~2")));
+            Assert.assertFalse(reachable.contains(repository.resolve("HEAD~3")));
+            Assert.assertFalse(reachable.contains(repository.resolve("HEAD~5")));
+        }
+    }
+
+    @Test
+    public void rewordWithBitmapsTest()
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException, GitOperationFailureException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+        repackWithBitmaps(repoPath);
+        commitOnTop(repoPath, "5th on master");
+
+        ObjectId unchangedCommitId;
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository()) {
+            unchangedCommitId = repository.resolve("HEAD~4");
+        }
+
+        Map<String, String> commitsToReword = new HashMap<>();
+        commitsToReword.put("HEAD~1^2", "2nd on b1 reword");
+        commitsToReword.put("HEAD~3", "3rd on master reword");
+        commitsToReword.put("b2", "won't be written b2 head message");
+
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.openRepository(repoPath);
+            gitFastReword.reword(commitsToReword);
+        }
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             RevWalk revWalk = new RevWalk(repository)) {
+            Assert.assertEquals("5th on master", revWalk.parseCommit(repository.resolve("HEAD")).getFullMessage());
+            Assert.assertEquals("2nd on b1 reword", revWalk.parseCommit(repository.resolve("HEAD~1^2")).getFullMessage());
+            Assert.assertEquals("3rd on master reword", revWalk.parseCommit(repository.resolve("HEAD~3")).getFullMessage());
+            Assert.assertEquals("2nd on b2", revWalk.parseCommit(repository.resolve("b2")).getFullMessage());
+            Assert.assertEquals(unchangedCommitId, repository.resolve("HEAD~4"));
+        }
+    }
+
+    @Test
+    public void rewordAllBranchesWithBitmapsTest()
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException, GitOperationFailureException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.NOT_MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+        repackWithBitmaps(repoPath);
+        commitOnTop(repoPath, "5th on master");
+
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.openRepository(repoPath);
+            gitFastReword.setRewriteAllBranches(true);
+            gitFastReword.reword("HEAD~3", "2nd on master reword");
+        }
+
+        // Branches are not reachable from HEAD, their commits must not be cut off by HEAD reachability bitmap
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             RevWalk revWalk = new RevWalk(repository)) {
+            ObjectId rewordedCommitId = repository.resolve("HEAD~3");
+            Assert.assertEquals("2nd on master reword", revWalk.parseCommit(rewordedCommitId).getFullMessage());
+            Assert.assertEquals(rewordedCommitId, repository.resolve("b1~2"));
+            Assert.assertEquals(rewordedCommitId, repository.resolve("b2~3"));
+        }
+    }
+
+    private static void repackWithBitmaps(Path repoPath) {
+        Assume.assumeTrue("git is not available", GitRepositoryFactory.runGit(repoPath, "repack", "-adbq"));
+    }
+
+    private static void commitOnTop(Path repoPath, String... messages) {
+        try (Git git = Git.open(repoPath.toFile())) {
+            for (String message : messages) {
+                git.commit().setAllowEmpty(true).setMessage(message).call();
+            }
+        } catch (Exception e) {
+            Assert.fail("Error while adding commits to test repo");
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.*;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public class ReachabilityCheckerTest {
+    private File tempRepoDir;
+
+    @Rule
+    public TemporaryFolder tempRoot = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws IOException {
+        tempRepoDir = tempRoot.newFolder();
+    }
+
+    @Test
+    public void notMergedBranchTest() throws IOException {
+//        * (HEAD -> master) 4th on master
+//        | * (b2) 2nd on b2
+//        | * 1st on b2
+//        |/
+//        * 3rd on master
+//        | * (b1) 2nd on b1          <- target
+//        | * 1st on b1
+//        |/
+//        * 2nd on master             <- target
+//        * 1st on master
+
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.NOT_MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+        writeCommitGraph(repoPath);
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             CommitLookup commitLookup = new CommitLookup(repository)) {
+            ObjectId headId = repository.resolve(Constants.HEAD);
+            ObjectId b1HeadId = repository.resolve("b1");
+            ObjectId masterSecondId = repository.resolve("HEAD~2");
+
+            ReachabilityChecker checker = new ReachabilityChecker(commitLookup);
+            Assert.assertEquals(Set.of(masterSecondId), checker.findReachable(headId, List.of(b1HeadId, masterSecondId)));
+            Assert.assertEquals(3, checker.getVisitedCommitsCount());
+
+            // '2nd on b1' has the same generation as '4th on master', the walk stops right away
+            Assert.assertEquals(Set.of(), checker.findReachable(headId, List.of(b1HeadId)));
+            Assert.assertEquals(1, checker.getVisitedCommitsCount());
+
+            Assert.assertEquals(Set.of(), checker.findReachable(headId, List.of()));
+            Assert.assertEquals(0, checker.getVisitedCommitsCount());
+        }
+    }
+
+    @Test
+    public void unreachableRecentCommitTest() throws IOException {
+//        * (HEAD -> master) Commit 4999
+//        * Commit 4998               <- target
+//        | * Side commit             <- target
+//        |/
+//        * Commit 4997
+//        * ...
+
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.LONG_LINEAR_HISTORY, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        ObjectId sideCommitId;
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository()) {
+            sideCommitId = GitRepositoryFactory.createBranchCommit(repository, "side", "Side commit",
+                    System.currentTimeMillis() / 1000, repository.resolve("HEAD~2"));
+        }
+        writeCommitGraph(repoPath);
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             CommitLookup commitLookup = new CommitLookup(repository)) {
+            ObjectId headId = repository.resolve(Constants.HEAD);
+            ObjectId headParentId = repository.resolve("HEAD~1");
+            ObjectId rootId = repository.resolve("HEAD~" + (GitRepositoryFactory.LONG_LINEAR_HISTORY_COMMIT_COUNT - 1));
+
+            // Commits below 'Commit 4998' can't lead to the side commit
+            ReachabilityChecker checker = new ReachabilityChecker(commitLookup);
+            Assert.assertEquals(Set.of(headParentId), checker.findReachable(headId, List.of(sideCommitId, headParentId)));
+            Assert.assertEquals(2, checker.getVisitedCommitsCount());
+
+            Assert.assertEquals(Set.of(rootId), checker.findReachable(headId, List.of(sideCommitId, rootId)));
+            Assert.assertEquals(GitRepositoryFactory.LONG_LINEAR_HISTORY_COMMIT_COUNT, checker.getVisitedCommitsCount());
+        }
+    }
+
+    @Test
+    public void commitTimeBoundTest() throws IOException {
+//        * (HEAD -> master) Merge branch 'b1'    [time 5000]
+//        |\
+//        | * (b1) 1st on b1                      [time 1500]
+//        * | 3rd on master                       [time 4000]
+//        |/
+//        | * (side) Side commit                  [time 3500]   <- target
+//        |/
+//        * 2nd on master                         [time 3000]   <- target
+//        * 1st on master                         [time 2000]
+
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.SKEWED_COMMIT_TIMES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             CommitLookup commitLookup = new CommitLookup(repository)) {
+            ObjectId headId = repository.resolve(Constants.HEAD);
+            ObjectId masterSecondId = repository.resolve("HEAD~2");
+            ObjectId sideCommitId = GitRepositoryFactory.createBranchCommit(repository, "side", "Side commit", 3500,
+                    masterSecondId);
+
+            // No commit-graph: commits older than the side commit are not walked
+            ReachabilityChecker checker = new ReachabilityChecker(commitLookup);
+            Assert.assertEquals(Set.of(), checker.findReachable(headId, List.of(sideCommitId)));
+            Assert.assertEquals(2, checker.getVisitedCommitsCount());
+
+            Assert.assertEquals(Set.of(masterSecondId),
+                    checker.findReachable(headId, List.of(sideCommitId, masterSecondId)));
+            Assert.assertEquals(3, checker.getVisitedCommitsCount());
+        }
+    }
+
+    private static void writeCommitGraph(Path repoPath) {
+        Assume.assumeTrue("git is not available",
+                GitRepositoryFactory.runGit(repoPath, "commit-graph", "write", "--reachable"));
+    }
+}
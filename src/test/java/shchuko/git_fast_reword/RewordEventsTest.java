@@ -0,0 +1,184 @@
+package shchuko.git_fast_reword;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public class RewordEventsTest {
+    private static final String EVENT_NAME_PREFIX = "shchuko.git_fast_reword.";
+
+    @Rule
+    public TemporaryFolder tempRoot = new TemporaryFolder();
+
+    private File tempRepoDir;
+
+    @Before
+    public void setUp() throws IOException {
+        tempRepoDir = tempRoot.newFolder();
+    }
+
+    @Test
+    public void rewordEventsTest()
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException, GitOperationFailureException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.MERGED_BRANCHES, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        ObjectId oldHeadId;
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository()) {
+            oldHeadId = repository.resolve(Constants.HEAD);
+        }
+
+        List<RecordedEvent> events;
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.openRepository(repoPath);
+            gitFastReword.setRewriteAllBranches(true);
+            gitFastReword.setSinglePackWrite(true);
+            events = record(() -> gitFastReword.reword("HEAD~3", "2nd on master reword"));
+        }
+
+        RecordedEvent rewordStart = findEvent(events, "RewordStart");
+        Assert.assertTrue(rewordStart.getString("repository").endsWith(Constants.DOT_GIT));
+        Assert.assertFalse(rewordStart.getBoolean("dryRun"));
+
+        RecordedEvent rewordEnd = findEvent(events, "RewordEnd");
+        Assert.assertTrue(rewordEnd.getBoolean("succeeded"));
+        Assert.assertEquals(Constants.R_HEADS + Constants.MASTER, rewordEnd.getString("branch"));
+        Assert.assertEquals(oldHeadId.getName(), rewordEnd.getString("oldHeadId"));
+        Assert.assertEquals(1, rewordEnd.getInt("rewordedCommitsCount"));
+        // 2nd, 3rd, 4th on master, b1 commits, merge, b2 commits
+        Assert.assertEquals(8, rewordEnd.getInt("rewrittenCommitsCount"));
+        Assert.assertEquals(3, rewordEnd.getInt("refUpdatesCount"));
+
+        RecordedEvent resolveBatch = findEvent(events, "ResolveBatch");
+        Assert.assertEquals("ancestry", resolveBatch.getString("kind"));
+        Assert.assertEquals("HEAD", resolveBatch.getString("base"));
+        Assert.assertEquals(1, resolveBatch.getInt("resolvedCount"));
+
+        RecordedEvent mergeBase = findEvent(events, "MergeBase");
+        Assert.assertEquals(1, mergeBase.getInt("commitsCount"));
+        Assert.assertNotNull(mergeBase.getString("ontoId"));
+
+        RecordedEvent inserterFlush = findEvent(events, "InserterFlush");
+        Assert.assertEquals("PackObjectInserter", inserterFlush.getString("inserter"));
+        Assert.assertEquals(8, inserterFlush.getInt("insertedObjectsCount"));
+
+        // master, b1 and b2 by one batch
+        int batchedRefUpdatesCount = 0;
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(EVENT_NAME_PREFIX + "RefUpdate")) {
+                Assert.assertTrue(event.getBoolean("batched"));
+                Assert.assertEquals("OK", event.getString("result"));
+                ++batchedRefUpdatesCount;
+            }
+        }
+        Assert.assertEquals(3, batchedRefUpdatesCount);
+        Assert.assertTrue(rewordEnd.getDuration().compareTo(mergeBase.getDuration()) >= 0);
+    }
+
+    @Test
+    public void rewordEventsRefUpdatesTest()
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException, GitOperationFailureException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.ONE_BRANCH_FIVE_COMMITS, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        List<RecordedEvent> events;
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.openRepository(repoPath);
+            events = record(() -> gitFastReword.reword("HEAD~2", "Commit 3 reword"));
+        }
+
+        // Rebase start, 3 commits, the branch and HEAD return
+        List<String> refNames = new ArrayList<>();
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(EVENT_NAME_PREFIX + "RefUpdate")) {
+                Assert.assertFalse(event.getBoolean("batched"));
+                refNames.add(event.getString("refName"));
+            }
+        }
+        Assert.assertEquals(List.of(Constants.HEAD, Constants.HEAD, Constants.HEAD, Constants.HEAD,
+                Constants.R_HEADS + Constants.MASTER, Constants.HEAD), refNames);
+        Assert.assertEquals("ObjectDirectoryInserter", findEvent(events, "InserterFlush").getString("inserter"));
+    }
+
+    @Test
+    public void rewordEventsFailureTest() throws IOException, RepositoryNotFoundException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.HEAD_DETACHED, tempRepoDir);
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        List<RecordedEvent> events;
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.openRepository(repoPath);
+            events = record(() -> {
+                try {
+                    gitFastReword.reword("HEAD", "SomeHeadMsg");
+                    Assert.fail("Reword with detached HEAD should fail");
+                } catch (GitOperationFailureException e) {
+                    // Expected
+                }
+                return null;
+            });
+        } catch (RepositoryNotOpenedException | GitOperationFailureException e) {
+            throw new AssertionError(e);
+        }
+
+        RecordedEvent rewordEnd = findEvent(events, "RewordEnd");
+        Assert.assertFalse(rewordEnd.getBoolean("succeeded"));
+        Assert.assertEquals(0, rewordEnd.getInt("rewrittenCommitsCount"));
+    }
+
+    /**
+     * Run an action while all the reword events are recorded
+     *
+     * @return Recorded events in the order of their start
+     */
+    private List<RecordedEvent> record(RecordedAction action)
+            throws IOException, RepositoryNotOpenedException, GitOperationFailureException {
+        Path recordingPath = tempRoot.newFile("reword.jfr").toPath();
+        try (Recording recording = new Recording()) {
+            for (String name : new String[]{"RewordStart", "RewordEnd", "ResolveBatch", "MergeBase", "RefUpdate",
+                    "InserterFlush"}) {
+                recording.enable(EVENT_NAME_PREFIX + name).withoutThreshold();
+            }
+            recording.start();
+            action.run();
+            recording.stop();
+            recording.dump(recordingPath);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingPath);
+        events.sort((first, second) -> first.getStartTime().compareTo(second.getStartTime()));
+        return events;
+    }
+
+    private static RecordedEvent findEvent(List<RecordedEvent> events, String name) {
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(EVENT_NAME_PREFIX + name)) {
+                return event;
+            }
+        }
+        throw new AssertionError(name + " event is not recorded");
+    }
+
+    @FunctionalInterface
+    private interface RecordedAction {
+        Object run() throws RepositoryNotOpenedException, GitOperationFailureException;
+    }
+}
@@ -0,0 +1,173 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public class RewordListReaderTest {
+    @Rule
+    public TemporaryFolder tempRoot = new TemporaryFolder();
+
+    @Test
+    public void formatDetectionTest() throws IOException {
+        try (RewordListReader reader = RewordListReader.open(writeText("HEAD,{Message}\n"))) {
+            Assert.assertTrue(reader instanceof CsvRewordListReader);
+        }
+        try (RewordListReader reader = RewordListReader.open(writeText("\uFEFF\n  \n{\"commit\":\"HEAD\",\"message\":\"M\"}\n"))) {
+            Assert.assertTrue(reader instanceof NdjsonRewordListReader);
+            assertEntry("HEAD", "M", reader.next());
+        }
+        try (RewordListReader reader = RewordListReader.open(writeBinary(List.of(), List.of()))) {
+            Assert.assertTrue(reader instanceof BinaryRewordListReader);
+            Assert.assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void binaryRecordsTest() throws IOException {
+        int recordsCount = 1000;
+        List<ObjectId> commitIds = new ArrayList<>();
+        List<String> messages = new ArrayList<>();
+        for (int i = 0; i < recordsCount; ++i) {
+            commitIds.add(ObjectId.fromString(String.format("%040x", i + 1)));
+            messages.add("Message " + i + ",\n\n\u041f\u0440\u043e\u0432\u0435\u0440\u043a\u0430 \u2713".repeat(i % 3));
+        }
+        Path path = writeBinary(commitIds, messages);
+
+        // Small window, records cross the windows bounds
+        try (BinaryRewordListReader reader = new BinaryRewordListReader(path, 100)) {
+            for (int i = 0; i < recordsCount; ++i) {
+                RewordEntry entry = reader.next();
+                Assert.assertNotNull(entry);
+                Assert.assertEquals(commitIds.get(i), entry.getCommitId());
+                Assert.assertEquals(commitIds.get(i).getName(), entry.getRevision());
+                Assert.assertEquals(messages.get(i).isEmpty(), entry.isMessageEmpty());
+                Assert.assertEquals(messages.get(i), entry.getMessage());
+            }
+            Assert.assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void binaryTruncatedTest() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryRewordListReader.writeHeader(bytes);
+        BinaryRewordListReader.writeRecord(bytes, ObjectId.zeroId(), "Complete");
+        BinaryRewordListReader.writeRecord(bytes, ObjectId.zeroId(), "Truncated");
+        byte[] content = bytes.toByteArray();
+        Path path = tempRoot.newFile().toPath();
+        Files.write(path, Arrays.copyOf(content, content.length - 1));
+
+        try (BinaryRewordListReader reader = new BinaryRewordListReader(path)) {
+            assertEntry(ObjectId.zeroId().getName(), "Complete", reader.next());
+            try {
+                reader.next();
+                Assert.fail("Truncated record is not detected");
+            } catch (IOException e) {
+                Assert.assertTrue(e.getMessage().startsWith("Truncated record"));
+            }
+        }
+    }
+
+    @Test
+    public void ndjsonRecordsTest() throws IOException {
+        Path path = writeText(
+                "{\"commit\": \"HEAD~1\", \"message\": \"Summary\\n\\nBody with \\\"quotes\\\" \\u2713 \\ud83d\\ude00\"}\n" +
+                        "  {\"id\": 5, \"extra\": {\"a\": [1, \"}\"]}, \"message\": \"\u041f\u0440\u043e\u0432\u0435\u0440\u043a\u0430\", \"commit\": \"HEAD~2\"}  \r\n" +
+                        "\n" +
+                        "{\"commit\": \"HEAD~3\"}\n" +
+                        "{\"commit\": \"HEAD~4\", \"message\": \"Bad \\x escape\"}\n" +
+                        "{\"commit\": \"HEAD~5\", \"message\": \"Trailing\"} garbage\n" +
+                        "not a json\n" +
+                        "{\"commit\":\"HEAD~6\",\"message\":\"\"}");
+
+        try (NdjsonRewordListReader reader = new NdjsonRewordListReader(path, 64)) {
+            assertEntry("HEAD~1", "Summary\n\nBody with \"quotes\" \u2713 \ud83d\ude00", reader.next());
+            assertEntry("HEAD~2", "\u041f\u0440\u043e\u0432\u0435\u0440\u043a\u0430", reader.next());
+            RewordEntry emptyMessageEntry = reader.next();
+            Assert.assertNotNull(emptyMessageEntry);
+            Assert.assertTrue(emptyMessageEntry.isMessageEmpty());
+            assertEntry("HEAD~6", "", emptyMessageEntry);
+            Assert.assertNull(reader.next());
+
+            Assert.assertEquals(4, reader.getMalformedRecordsCount());
+            Assert.assertEquals(4, reader.getFirstMalformedRecordLine());
+        }
+    }
+
+    @Test
+    public void rewordFromBinaryTest()
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException, GitOperationFailureException {
+        Path repoPath = GitRepositoryFactory.create(GitRepositoryFactory.RepoTypes.ONE_BRANCH_FIVE_COMMITS,
+                tempRoot.newFolder());
+        Assert.assertNotNull("Repository creation unsuccessful", repoPath);
+
+        List<ObjectId> commitIds = new ArrayList<>();
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository()) {
+            commitIds.add(repository.resolve("HEAD~1"));
+            commitIds.add(repository.resolve("HEAD~3"));
+            // Not a commit, skipped
+            commitIds.add(repository.resolve("HEAD^{tree}"));
+        }
+        Path path = writeBinary(commitIds, List.of("Summary, with comma\n\nBody", "Binary message", "Tree"));
+
+        ByteArrayOutputStream errStream = new ByteArrayOutputStream();
+        try (GitFastReword gitFastReword = new GitFastReword();
+             RewordListReader reader = RewordListReader.open(path)) {
+            gitFastReword.openRepository(repoPath);
+            gitFastReword.setErrPrintStream(new PrintStream(errStream, true));
+            gitFastReword.reword(reader);
+        }
+        Assert.assertTrue(errStream.toString().contains(commitIds.get(2).getName() + " not found"));
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             RevWalk revWalk = new RevWalk(repository)) {
+            Assert.assertEquals("Summary, with comma\n\nBody",
+                    revWalk.parseCommit(repository.resolve("HEAD~1")).getFullMessage());
+            Assert.assertEquals("Binary message", revWalk.parseCommit(repository.resolve("HEAD~3")).getFullMessage());
+            Assert.assertEquals("Commit 4", revWalk.parseCommit(repository.resolve("HEAD")).getFullMessage());
+        }
+    }
+
+    private Path writeText(String content) throws IOException {
+        Path path = tempRoot.newFile().toPath();
+        Files.writeString(path, content, StandardCharsets.UTF_8);
+        return path;
+    }
+
+    private Path writeBinary(List<ObjectId> commitIds, List<String> messages) throws IOException {
+        Path path = tempRoot.newFile().toPath();
+        try (OutputStream outputStream = Files.newOutputStream(path)) {
+            BinaryRewordListReader.writeHeader(outputStream);
+            for (int i = 0; i < commitIds.size(); ++i) {
+                BinaryRewordListReader.writeRecord(outputStream, commitIds.get(i), messages.get(i));
+            }
+        }
+        return path;
+    }
+
+    private static void assertEntry(String revision, String message, RewordEntry entry) {
+        Assert.assertNotNull(entry);
+        Assert.assertEquals(revision, entry.getRevision());
+        Assert.assertEquals(message, entry.getMessage());
+    }
+}
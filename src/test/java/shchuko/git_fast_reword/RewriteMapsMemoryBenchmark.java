@@ -0,0 +1,143 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Memory benchmark of the rewrite bookkeeping: retained heap, GC count and time of filling visited commits map
+ * with HashMap and with {@link RewrittenCommitsMap}. Ids are generated on the fly, so only the maps are retained.
+ * <p>
+ * Run with 'gradle rewriteMapsBenchmark', optional args: visited commits count, percent of rewritten commits
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public class RewriteMapsMemoryBenchmark {
+    private static final int DEFAULT_COMMITS_COUNT = 1_000_000;
+    private static final int DEFAULT_REWRITTEN_PERCENT = 100;
+
+    public static void main(String[] args) {
+        int commitsCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_COMMITS_COUNT;
+        int rewrittenPercent = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_REWRITTEN_PERCENT;
+
+        System.out.printf("Visited commits: %d, rewritten: %d%%%n", commitsCount, rewrittenPercent);
+        System.out.printf("%22s %14s %10s %10s %12s %12s%n",
+                "map", "retained MiB", "fill ms", "get ms", "GC count", "GC ms");
+
+        // Warm up, not printed
+        runHashMap(commitsCount / 10, rewrittenPercent, false);
+        runRewrittenCommitsMap(commitsCount / 10, rewrittenPercent, false);
+
+        runHashMap(commitsCount, rewrittenPercent, true);
+        runRewrittenCommitsMap(commitsCount, rewrittenPercent, true);
+    }
+
+    private static void runHashMap(int commitsCount, int rewrittenPercent, boolean print) {
+        Measurement measurement = new Measurement();
+        Map<ObjectId, ObjectId> map = new HashMap<>();
+        for (int i = 0; i < commitsCount; ++i) {
+            ObjectId oldId = generateId(i, 0);
+            map.put(oldId, isRewritten(i, rewrittenPercent) ? generateId(i, 1) : oldId);
+        }
+        measurement.filled();
+
+        long found = 0;
+        for (int i = 0; i < commitsCount; ++i) {
+            found += map.get(generateId(i, 0)) != null ? 1 : 0;
+        }
+        measurement.finish(found, commitsCount);
+        if (print) {
+            measurement.print("HashMap");
+        }
+        map.clear();
+    }
+
+    private static void runRewrittenCommitsMap(int commitsCount, int rewrittenPercent, boolean print) {
+        Measurement measurement = new Measurement();
+        RewrittenCommitsMap map = new RewrittenCommitsMap();
+        for (int i = 0; i < commitsCount; ++i) {
+            ObjectId oldId = generateId(i, 0);
+            map.put(oldId, isRewritten(i, rewrittenPercent) ? generateId(i, 1) : oldId);
+        }
+        measurement.filled();
+
+        long found = 0;
+        for (int i = 0; i < commitsCount; ++i) {
+            found += map.get(generateId(i, 0)) != null ? 1 : 0;
+        }
+        measurement.finish(found, commitsCount);
+        if (print) {
+            measurement.print("RewrittenCommitsMap");
+        }
+        map.clear();
+    }
+
+    private static boolean isRewritten(int commitNo, int rewrittenPercent) {
+        return commitNo % 100 < rewrittenPercent;
+    }
+
+    private static ObjectId generateId(int commitNo, int salt) {
+        // Distinct ids spread like SHA-1 hashes
+        int seed = commitNo * 2 + salt;
+        return ObjectId.fromRaw(new int[]{seed * 0x9E3779B9, seed * 0x85EBCA6B, seed, seed * 0xC2B2AE35, salt});
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; ++i) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long[] gcCountAndTime() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+            time += Math.max(0, bean.getCollectionTime());
+        }
+        return new long[]{count, time};
+    }
+
+    /**
+     * Heap and GC figures of a map fill, GC figures cover filling and lookups only
+     */
+    private static final class Measurement {
+        private final long heapBefore;
+        private final long[] gcBefore;
+        private final long start;
+        private long fillNanos;
+        private long getNanos;
+        private long[] gcAfter;
+        private long retainedBytes;
+
+        Measurement() {
+            heapBefore = usedHeapAfterGc();
+            gcBefore = gcCountAndTime();
+            start = System.nanoTime();
+        }
+
+        void filled() {
+            fillNanos = System.nanoTime() - start;
+        }
+
+        void finish(long found, int expected) {
+            getNanos = System.nanoTime() - start - fillNanos;
+            gcAfter = gcCountAndTime();
+            if (found != expected) {
+                throw new IllegalStateException("Found " + found + " of " + expected + " commits");
+            }
+            // The map is still referenced by the caller
+            retainedBytes = usedHeapAfterGc() - heapBefore;
+        }
+
+        void print(String mapName) {
+            System.out.printf("%22s %14d %10d %10d %12d %12d%n", mapName, retainedBytes / (1024 * 1024),
+                    fillNanos / 1_000_000, getNanos / 1_000_000, gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Cold start benchmark of one-shot CLI use: wall time of 'git-fast-reword HEAD~2 msg', each run in a new process,
+ * on a linear history generated by {@link SyntheticRepositoryGenerator}. The branch is moved back after each run, so
+ * every run does the same work.
+ * <p>
+ * Run with 'gradle startupBenchmark' (launchers of the installed distribution and of the native executable if it is
+ * built) or with args: [--runs N] [--history-depth N] {[--java-opts OPTS] LAUNCHER}... where JAVA_OPTS are passed to
+ * the following launchers. With '--runs 1 --java-opts -XX:DumpLoadedClassList=FILE LAUNCHER' it is the training run
+ * of the AppCDS archive
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public class StartupBenchmark {
+    private static final int DEFAULT_RUNS = 10;
+    private static final int DEFAULT_HISTORY_DEPTH = 1000;
+    private static final String BRANCH = SyntheticRepositoryGenerator.MAIN_BRANCH;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int runs = DEFAULT_RUNS;
+        int historyDepth = DEFAULT_HISTORY_DEPTH;
+        String javaOpts = "";
+        List<String[]> launchers = new ArrayList<>();
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+                case "--runs":
+                    runs = Integer.parseInt(args[++i]);
+                    break;
+                case "--history-depth":
+                    historyDepth = Integer.parseInt(args[++i]);
+                    break;
+                case "--java-opts":
+                    javaOpts = args[++i];
+                    break;
+                default:
+                    launchers.add(new String[]{args[i], javaOpts});
+            }
+        }
+        if (launchers.isEmpty()) {
+            System.err.println("No launchers passed");
+            System.exit(1);
+        }
+
+        Path repoDir = Files.createTempDirectory("startup-benchmark");
+        try (Repository repository = createRepository(repoDir, historyDepth)) {
+            ObjectId headId = repository.resolve(Constants.HEAD);
+            System.out.printf("History: %d commits, %d runs per launcher%n", historyDepth, runs);
+            System.out.printf("%10s %10s %10s  %s%n", "min ms", "median ms", "max ms", "launcher");
+            for (String[] launcher : launchers) {
+                runBenchmark(repository, headId, launcher[0], launcher[1], runs);
+            }
+        } finally {
+            deleteRecursively(repoDir.toFile());
+        }
+    }
+
+    private static void runBenchmark(Repository repository, ObjectId headId, String launcher, String javaOpts, int runs)
+            throws IOException, InterruptedException {
+        long[] times = new long[runs];
+        for (int i = 0; i < runs; ++i) {
+            ProcessBuilder processBuilder = new ProcessBuilder(launcher, "HEAD~2", "Benchmark reword " + i);
+            processBuilder.directory(repository.getWorkTree());
+            processBuilder.environment().put("JAVA_OPTS", javaOpts);
+            processBuilder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+            processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
+
+            long start = System.nanoTime();
+            int exitStatus = processBuilder.start().waitFor();
+            times[i] = System.nanoTime() - start;
+            if (exitStatus != 0) {
+                throw new IllegalStateException(launcher + " exited with status " + exitStatus);
+            }
+
+            RefUpdate refUpdate = repository.updateRef(BRANCH);
+            refUpdate.setNewObjectId(headId);
+            refUpdate.forceUpdate();
+        }
+
+        Arrays.sort(times);
+        System.out.printf("%10d %10d %10d  %s%s%n", times[0] / 1_000_000, times[runs / 2] / 1_000_000,
+                times[runs - 1] / 1_000_000, launcher, javaOpts.isEmpty() ? "" : " (JAVA_OPTS=" + javaOpts + ")");
+    }
+
+    private static Repository createRepository(Path repoDir, int historyDepth) throws IOException {
+        new SyntheticRepositoryGenerator(SyntheticRepositoryGenerator.Shape.LINEAR, historyDepth).generate(repoDir);
+        return new FileRepositoryBuilder().setWorkTree(repoDir.toFile()).build();
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
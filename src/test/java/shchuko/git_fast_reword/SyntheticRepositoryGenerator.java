@@ -0,0 +1,377 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.lib.*;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileBasedConfig;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.ReceiveCommand;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/**
+ * Generator of large synthetic histories for scale tests and benchmarks. Commit objects are formatted directly and
+ * written into a single pack (see {@link PackObjectInserter}), no working tree and no per-commit porcelain calls,
+ * so millions of commits are generated in seconds. All commits have the empty tree.
+ * <p>
+ * Shapes: linear history, mainline with side branches merged back, octopus merges, wide fan-out of branches from
+ * a shared trunk. Any shape can get extra orphan roots merged into the mainline and skewed commit timestamps
+ * (commits older than their parents, as made by machines with wrong clocks). The output is deterministic for
+ * the same parameters
+ *
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public class SyntheticRepositoryGenerator {
+    public enum Shape {
+        // Chain of commits
+        LINEAR,
+        // Mainline with a side branch merged back every merge interval
+        MERGES,
+        // Mainline with 'width' side branches merged back by an octopus merge every merge interval
+        OCTOPUS,
+        // Trunk of half of the commits, then 'width' branches sharing the rest of the commits
+        FAN_OUT
+    }
+
+    public static final String USER_NAME = "Generator";
+    public static final String USER_EMAIL = "generator@example.com";
+    public static final String MAIN_BRANCH = Constants.R_HEADS + Constants.MASTER;
+    public static final String FAN_OUT_BRANCH_PREFIX = Constants.R_HEADS + "fan-out-";
+
+    private static final long BASE_TIME_SECONDS = 1_000_000_000L;
+    private static final int COMMIT_INTERVAL_SECONDS = 60;
+    private static final int MAX_SKEW_SECONDS = 10 * 365 * 24 * 60 * 60;
+
+    private final Shape shape;
+    private final int commitCount;
+    private int mergeInterval = 10;
+    private int sideBranchLength = 3;
+    private int width = 4;
+    private int orphanRootsCount;
+    private int skewInterval;
+    private long seed;
+
+    // State of a generate() call
+    private ObjectInserter inserter;
+    private ObjectId treeId;
+    private List<ObjectId> commits;
+    private Random random;
+    private final CommitFormatter formatter = new CommitFormatter();
+
+    /**
+     * Create generator
+     *
+     * @param shape       History shape
+     * @param commitCount Count of commits to generate, including side branches and orphan roots
+     */
+    public SyntheticRepositoryGenerator(Shape shape, int commitCount) {
+        if (commitCount < 1) {
+            throw new IllegalArgumentException("Commit count must be positive");
+        }
+        this.shape = shape;
+        this.commitCount = commitCount;
+    }
+
+    /**
+     * @param mergeInterval Count of mainline commits between merges of MERGES and OCTOPUS shapes, 10 by default
+     * @return This generator
+     */
+    public SyntheticRepositoryGenerator setMergeInterval(int mergeInterval) {
+        this.mergeInterval = Math.max(1, mergeInterval);
+        return this;
+    }
+
+    /**
+     * @param sideBranchLength Count of commits of each merged side branch and orphan root branch, 3 by default
+     * @return This generator
+     */
+    public SyntheticRepositoryGenerator setSideBranchLength(int sideBranchLength) {
+        this.sideBranchLength = Math.max(1, sideBranchLength);
+        return this;
+    }
+
+    /**
+     * @param width Count of branches merged by an octopus merge or of fan-out branches, 4 by default
+     * @return This generator
+     */
+    public SyntheticRepositoryGenerator setWidth(int width) {
+        this.width = Math.max(1, width);
+        return this;
+    }
+
+    /**
+     * @param orphanRootsCount Count of branches with their own root commits merged into the mainline at evenly
+     *                         spaced points, none by default
+     * @return This generator
+     */
+    public SyntheticRepositoryGenerator setOrphanRootsCount(int orphanRootsCount) {
+        this.orphanRootsCount = Math.max(0, orphanRootsCount);
+        return this;
+    }
+
+    /**
+     * @param skewInterval Every N-th commit gets committer and author time up to 10 years before its parents, 0 (by
+     *                     default) for monotonic timestamps
+     * @return This generator
+     */
+    public SyntheticRepositoryGenerator setSkewInterval(int skewInterval) {
+        this.skewInterval = Math.max(0, skewInterval);
+        return this;
+    }
+
+    /**
+     * @param seed Seed of skewed timestamps
+     * @return This generator
+     */
+    public SyntheticRepositoryGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Create a repository with user.name and user.email set in its config and generate history in it
+     *
+     * @param workTree Working tree directory of the repository to create
+     * @return Generated history
+     * @throws IOException In case of any I/O errors
+     */
+    public Result generate(Path workTree) throws IOException {
+        try (Repository repository = FileRepositoryBuilder.create(workTree.resolve(Constants.DOT_GIT).toFile())) {
+            repository.create();
+            FileBasedConfig config = (FileBasedConfig) repository.getConfig();
+            config.setString("user", null, "name", USER_NAME);
+            config.setString("user", null, "email", USER_EMAIL);
+            config.save();
+            return generate(repository);
+        }
+    }
+
+    /**
+     * Generate history in a repository, objects are written into a pack if the repository is stored on a local
+     * filesystem. The main branch (and fan-out branches) are created or moved to the generated commits
+     *
+     * @param repository Repository to generate history in
+     * @return Generated history
+     * @throws IOException In case of any I/O errors
+     */
+    public Result generate(Repository repository) throws IOException {
+        commits = new ArrayList<>(commitCount);
+        random = new Random(seed);
+        Map<String, ObjectId> branches = new LinkedHashMap<>();
+
+        ObjectDatabase objectDatabase = repository.getObjectDatabase();
+        if (objectDatabase instanceof ObjectDirectory) {
+            PackObjectInserter packObjectInserter = new PackObjectInserter((ObjectDirectory) objectDatabase,
+                    Deflater.NO_COMPRESSION);
+            // All generated objects are new, except the empty tree
+            packObjectInserter.setCheckExisting(false);
+            inserter = packObjectInserter;
+        } else {
+            inserter = objectDatabase.newInserter();
+        }
+
+        try {
+            treeId = inserter.insert(new TreeFormatter());
+            // Orphan branches are merged at evenly spaced points of the mainline (of the trunk for FAN_OUT)
+            int orphanRootsLeft = orphanRootsCount;
+            int mainlineCommitsCount = shape == Shape.FAN_OUT ? commitCount / 2
+                    : commitCount - orphanRootsCount * (sideBranchLength + 1);
+            int orphanSpacing = Math.max(1, mainlineCommitsCount / (orphanRootsCount + 1));
+
+            ObjectId head = null;
+            int sinceMerge = 0;
+            while (commits.size() < commitCount) {
+                if (head != null && orphanRootsLeft > 0 && commitsLeft() >= 2
+                        && commits.size() >= (orphanRootsCount - orphanRootsLeft + 1) * orphanSpacing) {
+                    --orphanRootsLeft;
+                    ObjectId orphanHead = addChain(null, Math.min(sideBranchLength, commitsLeft() - 1));
+                    head = addCommit(head, orphanHead);
+                    continue;
+                }
+
+                boolean merge = head != null && ++sinceMerge >= mergeInterval;
+                if (merge && shape == Shape.MERGES && commitsLeft() > sideBranchLength) {
+                    sinceMerge = 0;
+                    head = addCommit(head, addChain(head, sideBranchLength));
+                } else if (merge && shape == Shape.OCTOPUS && commitsLeft() > width * sideBranchLength) {
+                    sinceMerge = 0;
+                    ObjectId[] parents = new ObjectId[width + 1];
+                    parents[0] = head;
+                    for (int i = 1; i <= width; ++i) {
+                        parents[i] = addChain(head, sideBranchLength);
+                    }
+                    head = addCommit(parents);
+                } else if (shape == Shape.FAN_OUT && commits.size() >= commitCount / 2) {
+                    // Trunk is done, the rest is shared by the branches round-robin
+                    ObjectId[] branchHeads = new ObjectId[width];
+                    Arrays.fill(branchHeads, head);
+                    for (int i = 0; commits.size() < commitCount; i = (i + 1) % width) {
+                        branchHeads[i] = addCommit(branchHeads[i]);
+                    }
+                    for (int i = 0; i < width; ++i) {
+                        branches.put(FAN_OUT_BRANCH_PREFIX + i, branchHeads[i]);
+                    }
+                    head = branchHeads[0];
+                } else {
+                    head = head == null ? addCommit() : addCommit(head);
+                }
+            }
+            inserter.flush();
+
+            branches.put(MAIN_BRANCH, head);
+            updateBranches(repository, branches);
+            return new Result(commits, head, branches);
+        } finally {
+            inserter.close();
+            inserter = null;
+            commits = null;
+        }
+    }
+
+    private int commitsLeft() {
+        return commitCount - commits.size();
+    }
+
+    /**
+     * Add a chain of commits
+     *
+     * @param base   Parent of the first commit or null for a root commit
+     * @param length Count of commits, at least one is added
+     * @return Last commit of the chain
+     */
+    private ObjectId addChain(ObjectId base, int length) throws IOException {
+        ObjectId head = base == null ? addCommit() : addCommit(base);
+        for (int i = 1; i < length; ++i) {
+            head = addCommit(head);
+        }
+        return head;
+    }
+
+    private ObjectId addCommit(ObjectId... parents) throws IOException {
+        int index = commits.size();
+        long time = BASE_TIME_SECONDS + (long) index * COMMIT_INTERVAL_SECONDS;
+        if (skewInterval > 0 && index > 0 && index % skewInterval == 0) {
+            time -= 1 + random.nextInt(MAX_SKEW_SECONDS);
+        }
+
+        formatter.format(treeId, parents, time, "Commit " + index);
+        ObjectId commitId = inserter.insert(Constants.OBJ_COMMIT, formatter.buffer, 0, formatter.length);
+        commits.add(commitId);
+        return commitId;
+    }
+
+    private static void updateBranches(Repository repository, Map<String, ObjectId> branches) throws IOException {
+        BatchRefUpdate batchUpdate = repository.getRefDatabase().newBatchUpdate();
+        batchUpdate.setAllowNonFastForwards(true);
+        for (var branch : branches.entrySet()) {
+            Ref ref = repository.exactRef(branch.getKey());
+            ObjectId oldId = ref != null && ref.getObjectId() != null ? ref.getObjectId() : ObjectId.zeroId();
+            batchUpdate.addCommand(new ReceiveCommand(oldId, branch.getValue(), branch.getKey(),
+                    oldId.equals(ObjectId.zeroId()) ? ReceiveCommand.Type.CREATE
+                            : ReceiveCommand.Type.UPDATE_NONFASTFORWARD));
+        }
+        try (RevWalk walk = new RevWalk(repository)) {
+            batchUpdate.execute(walk, NullProgressMonitor.INSTANCE);
+        }
+        for (var command : batchUpdate.getCommands()) {
+            if (command.getResult() != ReceiveCommand.Result.OK) {
+                throw new IOException("Update of " + command.getRefName() + " rejected: " + command.getResult());
+            }
+        }
+    }
+
+    /**
+     * Generated history
+     */
+    public static final class Result {
+        private final List<ObjectId> commits;
+        private final ObjectId headId;
+        private final Map<String, ObjectId> branches;
+
+        private Result(List<ObjectId> commits, ObjectId headId, Map<String, ObjectId> branches) {
+            this.commits = Collections.unmodifiableList(commits);
+            this.headId = headId;
+            this.branches = Collections.unmodifiableMap(branches);
+        }
+
+        /**
+         * @return All generated commits, parents before children
+         */
+        public List<ObjectId> getCommits() {
+            return commits;
+        }
+
+        /**
+         * @return Head of the main branch
+         */
+        public ObjectId getHeadId() {
+            return headId;
+        }
+
+        /**
+         * @return Key - full branch name, value - branch head
+         */
+        public Map<String, ObjectId> getBranches() {
+            return branches;
+        }
+    }
+
+    /**
+     * Formatter of commit objects into a reused buffer, the same bytes as {@link CommitBuilder#build()} gives for
+     * ASCII messages with the generator identity in UTC
+     */
+    private static final class CommitFormatter {
+        private static final byte[] IDENT = Constants.encode(" " + USER_NAME + " <" + USER_EMAIL + "> ");
+
+        private byte[] buffer = new byte[1024];
+        private int length;
+
+        void format(ObjectId treeId, ObjectId[] parents, long time, String message) {
+            length = 0;
+            appendId("tree ", treeId);
+            for (ObjectId parent : parents) {
+                appendId("parent ", parent);
+            }
+            byte[] timeBytes = Constants.encodeASCII(time + " +0000\n");
+            appendIdent("author", timeBytes);
+            appendIdent("committer", timeBytes);
+            append(new byte[]{'\n'});
+            append(Constants.encodeASCII(message));
+        }
+
+        private void appendId(String header, ObjectId id) {
+            append(Constants.encodeASCII(header));
+            ensureCapacity(Constants.OBJECT_ID_STRING_LENGTH + 1);
+            id.copyTo(buffer, length);
+            length += Constants.OBJECT_ID_STRING_LENGTH;
+            buffer[length++] = '\n';
+        }
+
+        private void appendIdent(String header, byte[] timeBytes) {
+            append(Constants.encodeASCII(header));
+            append(IDENT);
+            append(timeBytes);
+        }
+
+        private void append(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, length, bytes.length);
+            length += bytes.length;
+        }
+
+        private void ensureCapacity(int extraLength) {
+            if (length + extraLength > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extraLength));
+            }
+        }
+    }
+}
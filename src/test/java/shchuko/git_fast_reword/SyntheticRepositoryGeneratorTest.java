@@ -0,0 +1,208 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public class SyntheticRepositoryGeneratorTest {
+    @Rule
+    public TemporaryFolder tempRoot = new TemporaryFolder();
+
+    @Test
+    public void linearTest() throws IOException {
+        Path repoPath = tempRoot.newFolder().toPath();
+        SyntheticRepositoryGenerator.Result result =
+                new SyntheticRepositoryGenerator(SyntheticRepositoryGenerator.Shape.LINEAR, 1000).generate(repoPath);
+        Assert.assertEquals(1000, result.getCommits().size());
+        Assert.assertEquals(result.getCommits().get(999), result.getHeadId());
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             RevWalk revWalk = new RevWalk(repository)) {
+            Assert.assertEquals(result.getHeadId(), repository.resolve(Constants.HEAD));
+            Assert.assertEquals(result.getCommits().get(0), repository.resolve("HEAD~999"));
+            Assert.assertEquals(1000, countCommits(revWalk, result.getHeadId(), new int[3]));
+
+            // Commits are the same as built by JGit
+            RevCommit commit = revWalk.parseCommit(result.getHeadId());
+            Assert.assertEquals("Commit 999", commit.getFullMessage());
+            CommitBuilder builder = new CommitBuilder();
+            builder.setTreeId(commit.getTree());
+            builder.setParentIds(commit.getParents());
+            builder.setAuthor(commit.getAuthorIdent());
+            builder.setCommitter(commit.getCommitterIdent());
+            builder.setMessage(commit.getFullMessage());
+            Assert.assertEquals(commit, new ObjectInserter.Formatter().idFor(Constants.OBJ_COMMIT, builder.build()));
+            Assert.assertEquals(SyntheticRepositoryGenerator.USER_NAME, commit.getCommitterIdent().getName());
+        }
+
+        // Generated history does not depend on the repository
+        Path otherRepoPath = tempRoot.newFolder().toPath();
+        Assert.assertEquals(result.getHeadId(),
+                new SyntheticRepositoryGenerator(SyntheticRepositoryGenerator.Shape.LINEAR, 1000)
+                        .generate(otherRepoPath).getHeadId());
+    }
+
+    @Test
+    public void mergesTest() throws IOException {
+        Path repoPath = tempRoot.newFolder().toPath();
+        SyntheticRepositoryGenerator.Result result = new SyntheticRepositoryGenerator(
+                SyntheticRepositoryGenerator.Shape.MERGES, 1000).setMergeInterval(5).setSideBranchLength(2)
+                .generate(repoPath);
+        Assert.assertEquals(1000, result.getCommits().size());
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             RevWalk revWalk = new RevWalk(repository)) {
+            // <count of commits with 0, 1 and more parents>
+            int[] parentsCounts = new int[3];
+            Assert.assertEquals(1000, countCommits(revWalk, result.getHeadId(), parentsCounts));
+            Assert.assertEquals(1, parentsCounts[0]);
+            // Merge and its side branch take 3 commits, 4 mainline commits between merges
+            Assert.assertTrue(parentsCounts[2] > 1000 / 10);
+            for (var commitId : result.getCommits()) {
+                Assert.assertTrue(revWalk.parseCommit(commitId).getParentCount() <= 2);
+            }
+        }
+    }
+
+    @Test
+    public void octopusTest() throws IOException {
+        Path repoPath = tempRoot.newFolder().toPath();
+        SyntheticRepositoryGenerator.Result result = new SyntheticRepositoryGenerator(
+                SyntheticRepositoryGenerator.Shape.OCTOPUS, 500).setWidth(5).generate(repoPath);
+        Assert.assertEquals(500, result.getCommits().size());
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             RevWalk revWalk = new RevWalk(repository)) {
+            Assert.assertEquals(500, countCommits(revWalk, result.getHeadId(), new int[3]));
+            int octopusMergesCount = 0;
+            for (var commitId : result.getCommits()) {
+                int parentCount = revWalk.parseCommit(commitId).getParentCount();
+                Assert.assertTrue(parentCount <= 6);
+                if (parentCount == 6) {
+                    ++octopusMergesCount;
+                }
+            }
+            Assert.assertTrue(octopusMergesCount > 0);
+        }
+    }
+
+    @Test
+    public void fanOutTest() throws IOException {
+        Path repoPath = tempRoot.newFolder().toPath();
+        SyntheticRepositoryGenerator.Result result = new SyntheticRepositoryGenerator(
+                SyntheticRepositoryGenerator.Shape.FAN_OUT, 1000).setWidth(10).generate(repoPath);
+        Assert.assertEquals(1000, result.getCommits().size());
+        Assert.assertEquals(11, result.getBranches().size());
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             RevWalk revWalk = new RevWalk(repository)) {
+            ObjectId trunkHeadId = result.getCommits().get(499);
+            for (int i = 0; i < 10; ++i) {
+                String branch = SyntheticRepositoryGenerator.FAN_OUT_BRANCH_PREFIX + i;
+                ObjectId branchHeadId = repository.resolve(branch);
+                Assert.assertEquals(result.getBranches().get(branch), branchHeadId);
+                // 500 trunk commits and 50 commits of the branch
+                Assert.assertEquals(550, countCommits(revWalk, branchHeadId, new int[3]));
+                Assert.assertTrue(revWalk.isMergedInto(revWalk.parseCommit(trunkHeadId),
+                        revWalk.parseCommit(branchHeadId)));
+                revWalk.reset();
+            }
+            Assert.assertEquals(repository.resolve(SyntheticRepositoryGenerator.FAN_OUT_BRANCH_PREFIX + 0),
+                    repository.resolve(Constants.HEAD));
+        }
+    }
+
+    @Test
+    public void orphanRootsAndSkewedTimestampsTest() throws IOException {
+        Path repoPath = tempRoot.newFolder().toPath();
+        SyntheticRepositoryGenerator.Result result = new SyntheticRepositoryGenerator(
+                SyntheticRepositoryGenerator.Shape.MERGES, 2000).setOrphanRootsCount(4).setSkewInterval(50)
+                .setSeed(42).generate(repoPath);
+        Assert.assertEquals(2000, result.getCommits().size());
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             RevWalk revWalk = new RevWalk(repository)) {
+            int[] parentsCounts = new int[3];
+            Assert.assertEquals(2000, countCommits(revWalk, result.getHeadId(), parentsCounts));
+            Assert.assertEquals(5, parentsCounts[0]);
+
+            int olderThanParentCount = 0;
+            for (var commitId : result.getCommits()) {
+                RevCommit commit = revWalk.parseCommit(commitId);
+                for (RevCommit parent : commit.getParents()) {
+                    if (revWalk.parseCommit(parent).getCommitTime() > commit.getCommitTime()) {
+                        ++olderThanParentCount;
+                        break;
+                    }
+                }
+            }
+            // Every 50-th commit is skewed, except root commits
+            Assert.assertTrue(olderThanParentCount > 0);
+            Assert.assertTrue(olderThanParentCount <= 2000 / 50 - 1);
+        }
+    }
+
+    @Test
+    public void rewordGeneratedHistoryTest()
+            throws IOException, RepositoryNotFoundException, RepositoryNotOpenedException, GitOperationFailureException {
+        Path repoPath = tempRoot.newFolder().toPath();
+        SyntheticRepositoryGenerator.Result result = new SyntheticRepositoryGenerator(
+                SyntheticRepositoryGenerator.Shape.OCTOPUS, 3000).setOrphanRootsCount(2).setSkewInterval(7)
+                .generate(repoPath);
+        // Skewed commit times are handled by commit-graph generation numbers only
+        Assume.assumeTrue("git is not available",
+                GitRepositoryFactory.runGit(repoPath, "commit-graph", "write", "--reachable"));
+
+        RewordResult rewordResult;
+        try (GitFastReword gitFastReword = new GitFastReword()) {
+            gitFastReword.openRepository(repoPath);
+            gitFastReword.setBatchRefUpdate(true);
+            rewordResult = gitFastReword.reword(result.getCommits().get(100).getName(), "Commit 100 reword");
+        }
+
+        try (Repository repository = Git.open(repoPath.toFile()).getRepository();
+             RevWalk revWalk = new RevWalk(repository)) {
+            ObjectId newHeadId = repository.resolve(Constants.HEAD);
+            Assert.assertEquals(rewordResult.getRewrittenCommits().get(result.getHeadId()), newHeadId);
+            Assert.assertEquals(3000, countCommits(revWalk, newHeadId, new int[3]));
+            Map<ObjectId, ObjectId> rewrittenCommits = rewordResult.getRewrittenCommits();
+            Assert.assertEquals("Commit 100 reword",
+                    revWalk.parseCommit(rewrittenCommits.get(result.getCommits().get(100))).getFullMessage());
+        }
+    }
+
+    /**
+     * Count commits reachable from a commit
+     *
+     * @param parentsCounts Counts of reachable commits with 0, 1 and more parents are added to
+     * @return Count of reachable commits
+     */
+    private static int countCommits(RevWalk revWalk, ObjectId headId, int[] parentsCounts) throws IOException {
+        revWalk.reset();
+        revWalk.markStart(revWalk.parseCommit(headId));
+        int count = 0;
+        for (RevCommit commit : revWalk) {
+            ++parentsCounts[Math.min(commit.getParentCount(), 2)];
+            ++count;
+        }
+        revWalk.reset();
+        return count;
+    }
+}
@@ -0,0 +1,54 @@
+package shchuko.git_fast_reword;
+
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+/**
+ * @author Vladislav Yaroahshchuk (yaroshchuk2000@gmail.com)
+ */
+public class ThrottledProgressMonitorTest {
+    @Test
+    public void throttledUpdatesTest() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ThrottledProgressMonitor monitor = new ThrottledProgressMonitor(new PrintStream(out, true), 60_000);
+
+        monitor.beginTask("Walking commits", ProgressMonitor.UNKNOWN);
+        for (int i = 0; i < 100_000; ++i) {
+            monitor.update(1);
+        }
+        monitor.endTask();
+
+        // Only the summary line, updates are done within the interval
+        String[] lines = out.toString().split(System.lineSeparator());
+        Assert.assertEquals(1, lines.length);
+        Assert.assertTrue(lines[0].startsWith("Walking commits: 100000, "));
+        Assert.assertTrue(lines[0].matches(".*, \\d+/s, done in \\d+\\.\\d s"));
+    }
+
+    @Test
+    public void percentageTest() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ThrottledProgressMonitor monitor = new ThrottledProgressMonitor(new PrintStream(out, true), 0);
+
+        monitor.beginTask("Writing commits", 4);
+        monitor.update(1);
+        monitor.update(2);
+        monitor.update(1);
+        monitor.endTask();
+        // Not begun task is not printed
+        monitor.endTask();
+
+        String[] lines = out.toString().split(System.lineSeparator());
+        Assert.assertEquals(4, lines.length);
+        Assert.assertTrue(lines[0].startsWith("Writing commits:  25% (1/4), "));
+        Assert.assertTrue(lines[1].startsWith("Writing commits:  75% (3/4), "));
+        Assert.assertTrue(lines[2].startsWith("Writing commits: 100% (4/4), "));
+        Assert.assertFalse(lines[2].contains("done"));
+        Assert.assertTrue(lines[3].startsWith("Writing commits: 100% (4/4), "));
+        Assert.assertTrue(lines[3].contains(", done in "));
+    }
+}